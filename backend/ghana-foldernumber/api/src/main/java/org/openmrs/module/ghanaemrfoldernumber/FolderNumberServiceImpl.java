@@ -10,10 +10,23 @@ public class FolderNumberServiceImpl implements FolderNumberService {
 
     private FolderNumberDao folderNumberDao;
 
+    private volatile ReservedRangeCache rangeCache;
+
+    private int reservedRangeSize = 1;
+
     public void setFolderNumberDao(FolderNumberDao folderNumberDao) {
         this.folderNumberDao = folderNumberDao;
     }
 
+    /**
+     * Number of sequences reserved per database round trip and kept in memory on this node.
+     * 1 (default) disables the cache and keeps numbers strictly increasing across nodes.
+     */
+    public void setReservedRangeSize(int reservedRangeSize) {
+        this.reservedRangeSize = reservedRangeSize;
+        this.rangeCache = null;
+    }
+
     @Override
     @Transactional
     public String generateNext(String regionCode, String facilityCode) {
@@ -21,8 +34,23 @@ public class FolderNumberServiceImpl implements FolderNumberService {
         String facility = (facilityCode == null || facilityCode.trim().isEmpty()) ? "KBTH" : facilityCode.trim().toUpperCase();
         int year = LocalDate.now().getYear();
         String prefix = region + "-" + facility + "-" + year;
-        int seq = folderNumberDao.nextSequence(prefix);
+        int seq = nextSequence(prefix);
         return String.format("%s-%06d", prefix, seq);
     }
-}
 
+    private int nextSequence(String prefix) {
+        if (reservedRangeSize <= 1) {
+            return folderNumberDao.nextSequence(prefix);
+        }
+        ReservedRangeCache cache = rangeCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (rangeCache == null) {
+                    rangeCache = new ReservedRangeCache(folderNumberDao, reservedRangeSize);
+                }
+                cache = rangeCache;
+            }
+        }
+        return cache.next(prefix);
+    }
+}
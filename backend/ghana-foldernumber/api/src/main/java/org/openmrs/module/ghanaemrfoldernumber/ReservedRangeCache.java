@@ -0,0 +1,54 @@
+package org.openmrs.module.ghanaemrfoldernumber;
+
+import org.openmrs.module.ghanaemrfoldernumber.db.FolderNumberDao;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-node cache of sequence ranges reserved from gh_folder_number_sequence.
+ *
+ * One database round trip serves rangeSize folder numbers. Numbers stay unique across nodes but
+ * are not strictly increasing between nodes, and a range not used up before shutdown is lost.
+ */
+public class ReservedRangeCache {
+
+    private final FolderNumberDao dao;
+    private final int rangeSize;
+    private final ConcurrentHashMap<String, Range> ranges = new ConcurrentHashMap<String, Range>();
+
+    public ReservedRangeCache(FolderNumberDao dao, int rangeSize) {
+        if (rangeSize < 1) {
+            throw new IllegalArgumentException("rangeSize must be at least 1");
+        }
+        this.dao = dao;
+        this.rangeSize = rangeSize;
+    }
+
+    public int next(String prefix) {
+        Range range = ranges.get(prefix);
+        if (range == null) {
+            Range created = new Range();
+            range = ranges.putIfAbsent(prefix, created);
+            if (range == null) {
+                range = created;
+            }
+        }
+        synchronized (range) {
+            if (range.next > range.max) {
+                int hi = dao.reserveRange(prefix, rangeSize);
+                range.next = hi - rangeSize + 1;
+                range.max = hi;
+            }
+            return range.next++;
+        }
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    private static final class Range {
+        int next = 1;
+        int max = 0;
+    }
+}
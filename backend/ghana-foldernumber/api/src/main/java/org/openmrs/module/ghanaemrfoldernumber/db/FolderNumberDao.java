@@ -10,5 +10,14 @@ public interface FolderNumberDao {
      * @return the new sequence value after increment
      */
     int nextSequence(String prefix);
-}
 
+    /**
+     * Atomically advances last_seq by size and commits, reserving the range
+     * (returned - size, returned] for the caller. Unused values become gaps.
+     *
+     * @param prefix sequence prefix (e.g., GA-KBTH-2025)
+     * @param size number of sequences to reserve, at least 1
+     * @return the new last_seq value, i.e. the highest reserved sequence
+     */
+    int reserveRange(String prefix, int size);
+}
@@ -1,12 +1,27 @@
 package org.openmrs.module.ghanaemrfoldernumber.db.hibernate;
 
-import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
 import org.openmrs.module.ghanaemrfoldernumber.db.FolderNumberDao;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 public class HibernateFolderNumberDao implements FolderNumberDao {
 
+    /**
+     * Creates or increments the row and records the new value with LAST_INSERT_ID(expr), which
+     * the driver reports back as the generated key of the same statement.
+     */
+    static final String INCREMENT_SQL =
+            "INSERT INTO gh_folder_number_sequence (prefix, last_seq) VALUES (?, LAST_INSERT_ID(?)) " +
+            "ON DUPLICATE KEY UPDATE last_seq = LAST_INSERT_ID(last_seq + ?)";
+
     private SessionFactory sessionFactory;
 
     public void setSessionFactory(SessionFactory sessionFactory) {
@@ -14,32 +29,65 @@ public class HibernateFolderNumberDao implements FolderNumberDao {
     }
 
     @Override
-    @Transactional
     public int nextSequence(String prefix) {
-        // Try optimistic update first
-        Query update = sessionFactory.getCurrentSession().createSQLQuery(
-                "UPDATE gh_folder_number_sequence SET last_seq = last_seq + 1 WHERE prefix = :prefix");
-        update.setString("prefix", prefix);
-        int updated = update.executeUpdate();
-        if (updated == 0) {
-            // Insert initial row with last_seq = 1
-            Query insert = sessionFactory.getCurrentSession().createSQLQuery(
-                    "INSERT IGNORE INTO gh_folder_number_sequence(prefix, last_seq) VALUES (:prefix, 0)");
-            insert.setString("prefix", prefix);
-            insert.executeUpdate();
-
-            // Now increment
-            Query update2 = sessionFactory.getCurrentSession().createSQLQuery(
-                    "UPDATE gh_folder_number_sequence SET last_seq = last_seq + 1 WHERE prefix = :prefix");
-            update2.setString("prefix", prefix);
-            update2.executeUpdate();
+        return reserveRange(prefix, 1);
+    }
+
+    /**
+     * Runs the increment in its own short transaction so the row lock is released as soon as the
+     * statement commits rather than being held until the caller's registration commits. A caller
+     * that rolls back therefore leaves a gap instead of blocking other registrations.
+     */
+    @Override
+    public int reserveRange(final String prefix, final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
         }
+        Session session = sessionFactory.openSession();
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            Long value = session.doReturningWork(new ReturningWork<Long>() {
+                @Override
+                public Long execute(Connection connection) throws SQLException {
+                    return increment(connection, prefix, size);
+                }
+            });
+            tx.commit();
+            return value.intValue();
+        } catch (RuntimeException e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
 
-        Query select = sessionFactory.getCurrentSession().createSQLQuery(
-                "SELECT last_seq FROM gh_folder_number_sequence WHERE prefix = :prefix");
-        select.setString("prefix", prefix);
-        Number val = (Number) select.uniqueResult();
-        return val == null ? 1 : val.intValue();
+    static long increment(Connection connection, String prefix, int size) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INCREMENT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, prefix);
+            ps.setLong(2, size);
+            ps.setLong(3, size);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    long value = keys.getLong(1);
+                    if (value > 0) {
+                        return value;
+                    }
+                }
+            }
+        }
+        // Drivers that do not surface LAST_INSERT_ID(expr) as a generated key: same connection,
+        // no table access, so no extra locking.
+        try (PreparedStatement ps = connection.prepareStatement("SELECT LAST_INSERT_ID()");
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("LAST_INSERT_ID() returned no row for prefix " + prefix);
+            }
+            return rs.getLong(1);
+        }
     }
 }
-
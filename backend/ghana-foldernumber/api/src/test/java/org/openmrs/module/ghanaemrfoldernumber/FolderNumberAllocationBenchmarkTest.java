@@ -0,0 +1,126 @@
+package org.openmrs.module.ghanaemrfoldernumber;
+
+import org.junit.Test;
+import org.openmrs.module.ghanaemrfoldernumber.db.FolderNumberDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.*;
+
+/**
+ * Multithreaded run of folder-number allocation under contention on one facility prefix; every
+ * strategy must issue each number exactly once. Throughput depends on the machine and is not asserted.
+ *
+ * The counter row is modelled by a lock and each database round trip by a fixed delay, so the
+ * runs exercise the allocation strategies rather than a particular MySQL server:
+ * - legacy: UPDATE / INSERT IGNORE / UPDATE / SELECT inside the registration transaction,
+ *   the row lock is held until the registration commits
+ * - single statement: one INSERT ... ON DUPLICATE KEY UPDATE in its own short transaction
+ * - reserved range: the single statement once per range of 20 numbers
+ */
+public class FolderNumberAllocationBenchmarkTest {
+
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int REGISTRATION_ROUND_TRIPS = 6;
+    private static final int THREADS = 16;
+    private static final int REGISTRATIONS = 1600;
+    private static final String PREFIX = "GA-KBTH-2025";
+
+    /** Counter row guarded by a row lock; every statement costs one round trip. */
+    private static final class SimulatedCounterTable implements FolderNumberDao {
+        final ReentrantLock rowLock = new ReentrantLock();
+        final boolean lockHeldUntilCommit;
+        int lastSeq;
+
+        SimulatedCounterTable(boolean lockHeldUntilCommit) {
+            this.lockHeldUntilCommit = lockHeldUntilCommit;
+        }
+
+        @Override
+        public int nextSequence(String prefix) {
+            if (lockHeldUntilCommit) {
+                rowLock.lock();
+                // UPDATE, INSERT IGNORE + UPDATE on a new row, SELECT; lock kept for the caller
+                roundTrips(lastSeq == 0 ? 4 : 2);
+                return ++lastSeq;
+            }
+            return reserveRange(prefix, 1);
+        }
+
+        @Override
+        public int reserveRange(String prefix, int size) {
+            rowLock.lock();
+            try {
+                roundTrips(1);
+                lastSeq += size;
+                return lastSeq;
+            } finally {
+                rowLock.unlock();
+            }
+        }
+
+        void commit() {
+            if (rowLock.isHeldByCurrentThread()) {
+                rowLock.unlock();
+            }
+        }
+    }
+
+    private interface Allocator {
+        int next();
+    }
+
+    @Test
+    public void everyStrategyIssuesUniqueNumbersUnderContention() throws Exception {
+        final SimulatedCounterTable legacyTable = new SimulatedCounterTable(true);
+        run(legacyTable, () -> legacyTable.nextSequence(PREFIX));
+
+        final SimulatedCounterTable singleTable = new SimulatedCounterTable(false);
+        run(singleTable, () -> singleTable.nextSequence(PREFIX));
+
+        final SimulatedCounterTable rangeTable = new SimulatedCounterTable(false);
+        final ReservedRangeCache cache = new ReservedRangeCache(rangeTable, 20);
+        run(rangeTable, () -> cache.next(PREFIX));
+    }
+
+    private static void run(final SimulatedCounterTable table, final Allocator allocator) throws Exception {
+        final Set<Integer> issued = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < REGISTRATIONS / THREADS; i++) {
+                    int seq = allocator.next();
+                    // rest of the registration: patient, names, identifiers, attributes
+                    roundTrips(REGISTRATION_ROUND_TRIPS);
+                    table.commit();
+                    assertTrue("duplicate folder number " + seq, issued.add(seq));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(120, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(REGISTRATIONS, issued.size());
+    }
+
+    private static void roundTrips(int n) {
+        LockSupport.parkNanos(n * ROUND_TRIP_NANOS);
+    }
+}
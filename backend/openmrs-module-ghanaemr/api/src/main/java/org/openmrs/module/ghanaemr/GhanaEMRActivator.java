@@ -2,7 +2,22 @@ package org.openmrs.module.ghanaemr;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.metrics.QueryCounter;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+import org.openmrs.module.ghanaemr.api.reports.DailyStats;
+import org.openmrs.module.ghanaemr.api.reports.ReportJobRunner;
+import org.openmrs.module.ghanaemr.api.search.GhanaCardBloomFilter;
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientNameIndex;
+import org.openmrs.module.ghanaemr.util.CounterTableSequenceProvider;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.io.File;
+import java.time.LocalDate;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
@@ -39,6 +54,206 @@ public class GhanaEMRActivator extends BaseModuleActivator {
 		log.info("Ghana EMR Module started successfully");
 		log.info("Ghana EMR Queue Management System initialized");
 		log.info("Ghana EMR NHIE Integration Services initialized");
+		precomputeFolderNumberYears();
+		buildSearchIndexes();
+		buildConceptIcd10Map();
+		startDailyStats();
+		startReportJobs();
+		startNHIEMetrics();
+		startQueryCounter();
+	}
+
+	/**
+	 * Loads the NHIE transaction log counters behind the metrics endpoint and reconciles them
+	 * every ghana.nhie.metrics.reconcileSeconds. The endpoint queries the log while they are
+	 * disabled (ghana.nhie.metrics.enabled = false) or loading.
+	 */
+	private void startNHIEMetrics() {
+		try {
+			if (!isEnabled("ghana.nhie.metrics.enabled")) {
+				log.info("NHIE metrics counters disabled");
+				return;
+			}
+			NHIEMetrics metrics = first(NHIEMetrics.class);
+			if (metrics != null) {
+				metrics.start(getLong("ghana.nhie.metrics.reconcileSeconds", NHIEMetrics.DEFAULT_RECONCILE_SECONDS));
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not start NHIE metrics counters", e);
+		}
+	}
+
+	/**
+	 * Counts SQL statements per REST request for the metrics endpoint. Disable with
+	 * ghana.metrics.queryCount.enabled = false.
+	 */
+	private void startQueryCounter() {
+		try {
+			if (!isEnabled("ghana.metrics.queryCount.enabled")) {
+				log.info("Metrics query counter disabled");
+				return;
+			}
+			SessionFactory sessionFactory = first(SessionFactory.class);
+			if (sessionFactory != null && !QueryCounter.install(sessionFactory)) {
+				log.info("Metrics query counter not installed: the session factory has another session listener");
+			}
+		}
+		catch (Exception | LinkageError e) {
+			log.warn("Could not install metrics query counter", e);
+		}
+	}
+
+	/**
+	 * Fails report jobs a restart interrupted and deletes results past their retention.
+	 */
+	private void startReportJobs() {
+		try {
+			ReportJobRunner runner = first(ReportJobRunner.class);
+			if (runner != null) {
+				runner.start();
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not start report jobs", e);
+		}
+	}
+
+	/**
+	 * Starts ghanaemr_daily_stats maintenance: backfills unaggregated days among the last
+	 * ghana.reports.dailyStats.backfillDays, flushes days changed by saves every minute and
+	 * re-aggregates the last ghana.reports.dailyStats.reconcileDays every night. Reports count raw
+	 * rows while it is disabled (ghana.reports.dailyStats.enabled = false) or a range is not yet
+	 * aggregated.
+	 */
+	private void startDailyStats() {
+		try {
+			if (!isEnabled("ghana.reports.dailyStats.enabled")) {
+				log.info("Daily report stats disabled");
+				return;
+			}
+			DailyStats stats = first(DailyStats.class);
+			if (stats != null) {
+				stats.start((int) getLong("ghana.reports.dailyStats.reconcileDays", DailyStats.DEFAULT_RECONCILE_DAYS),
+				    (int) getLong("ghana.reports.dailyStats.backfillDays", DailyStats.DEFAULT_BACKFILL_DAYS));
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not start daily report stats", e);
+		}
+	}
+
+	/**
+	 * Builds the concept_id to ICD-10 table on a background thread; lookups use one batched query
+	 * until it is ready. Disable with ghana.fhir.icd10Map.enabled = false.
+	 */
+	private void buildConceptIcd10Map() {
+		try {
+			if (!isEnabled("ghana.fhir.icd10Map.enabled")) {
+				log.info("ICD-10 concept map disabled");
+				return;
+			}
+			ConceptIcd10Map map = first(ConceptIcd10Map.class);
+			if (map != null) {
+				map.rebuildInBackground();
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not start ICD-10 concept map build", e);
+		}
+	}
+
+	/**
+	 * Loads the Ghana Card filter, then builds the in-memory identifier and name indexes on a
+	 * background thread; searches use the database until they report ready. Once loaded, a
+	 * definite miss in the filter lets registration skip its duplicate query, and a miss in the
+	 * identifier index answers an exact identifier search without one. Both are only safe while
+	 * every identifier is saved through this node's PatientService: set ghana.search.singleNode =
+	 * false when several nodes register against the same database and neither is built. Disable individually with ghana.registration.bloom.enabled,
+	 * ghana.search.identifierIndex.enabled or ghana.search.nameIndex.enabled = false. The filter is
+	 * sized by ghana.registration.bloom.expectedInsertions and ghana.registration.bloom.fpp.
+	 */
+	private void buildSearchIndexes() {
+		try {
+			final boolean singleNode = isEnabled("ghana.search.singleNode");
+			final boolean bloom = singleNode && isEnabled("ghana.registration.bloom.enabled");
+			final boolean identifiers = singleNode && isEnabled("ghana.search.identifierIndex.enabled");
+			final boolean names = isEnabled("ghana.search.nameIndex.enabled");
+			if (!bloom && !identifiers && !names) {
+				log.info("Patient search indexes disabled");
+				return;
+			}
+			final GhanaCardBloomFilter filter = bloom ? ghanaCardFilter() : null;
+			final long expectedInsertions = getLong("ghana.registration.bloom.expectedInsertions",
+			    GhanaCardBloomFilter.DEFAULT_EXPECTED_INSERTIONS);
+			final double fpp = getDouble("ghana.registration.bloom.fpp", GhanaCardBloomFilter.DEFAULT_FPP);
+			final PatientIdentifierIndex identifierIndex = identifiers ? first(PatientIdentifierIndex.class) : null;
+			final PatientNameIndex nameIndex = names ? first(PatientNameIndex.class) : null;
+			Thread builder = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						if (filter != null) {
+							filter.load(expectedInsertions, fpp);
+						}
+						if (identifierIndex != null) {
+							identifierIndex.rebuild();
+						}
+						if (nameIndex != null) {
+							nameIndex.rebuild();
+						}
+					}
+					catch (Exception e) {
+						log.warn("Could not build patient search indexes", e);
+					}
+				}
+			}, "ghanaemr-search-index");
+			builder.setDaemon(true);
+			builder.start();
+		}
+		catch (Exception e) {
+			log.warn("Could not start patient search index build", e);
+		}
+	}
+
+	private static boolean isEnabled(String property) {
+		return "true".equalsIgnoreCase(Context.getAdministrationService().getGlobalProperty(property, "true"));
+	}
+
+	private GhanaCardBloomFilter ghanaCardFilter() {
+		GhanaCardBloomFilter filter = first(GhanaCardBloomFilter.class);
+		if (filter != null && filter.getFile() == null) {
+			filter.setFile(new File(OpenmrsUtil.getApplicationDataDirectory(), "ghanaemr" + File.separator
+			        + "ghana-card.bloom"));
+		}
+		return filter;
+	}
+
+	private long getLong(String property, long defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(property);
+		try {
+			return value == null || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("Invalid " + property + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	private double getDouble(String property, double defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(property);
+		try {
+			return value == null || value.trim().isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("Invalid " + property + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	private static <T> T first(Class<T> type) {
+		return Context.getRegisteredComponents(type).stream().findFirst().orElse(null);
 	}
 
 	/**
@@ -52,6 +267,33 @@ public class GhanaEMRActivator extends BaseModuleActivator {
 	 * @see BaseModuleActivator#stopped()
 	 */
 	public void stopped() {
+		try {
+			DailyStats stats = first(DailyStats.class);
+			if (stats != null) {
+				stats.stop();
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not stop daily report stats", e);
+		}
+		try {
+			GhanaCardBloomFilter filter = first(GhanaCardBloomFilter.class);
+			if (filter != null) {
+				filter.save();
+			}
+		}
+		catch (Exception e) {
+			log.warn("Could not save Ghana Card filter", e);
+		}
+		try {
+			SessionFactory sessionFactory = first(SessionFactory.class);
+			if (sessionFactory != null) {
+				QueryCounter.uninstall(sessionFactory);
+			}
+		}
+		catch (Exception | LinkageError e) {
+			log.warn("Could not remove metrics query counter", e);
+		}
 		log.info("Ghana EMR Module stopped");
 	}
 }
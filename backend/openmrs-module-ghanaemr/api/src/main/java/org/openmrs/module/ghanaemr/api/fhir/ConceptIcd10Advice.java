@@ -0,0 +1,91 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * Keeps {@link ConceptIcd10Map} current for concept edits made anywhere in the system. Declared as
+ * advice on ConceptService in config.xml. A saved concept's code is read from its own mappings and
+ * applied after the surrounding transaction commits, also while the startup build is running, which
+ * replays it onto the new table; a changed reference term or source can affect many concepts, so
+ * it triggers a background rebuild instead.
+ */
+public class ConceptIcd10Advice implements AfterReturningAdvice {
+
+    private static final Logger log = LoggerFactory.getLogger(ConceptIcd10Advice.class);
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) {
+        String name = method.getName();
+        boolean purge = name.startsWith("purge");
+        if (!(purge || name.startsWith("save") || name.startsWith("retire") || name.startsWith("unretire"))) {
+            return;
+        }
+        Object subject = args != null && args.length > 0 ? args[0] : null;
+        if (returnValue instanceof Concept || returnValue instanceof ConceptReferenceTerm
+                || returnValue instanceof ConceptSource) {
+            subject = returnValue;
+        }
+        if (!(subject instanceof Concept || subject instanceof ConceptReferenceTerm || subject instanceof ConceptSource)) {
+            return;
+        }
+        final ConceptIcd10Map map = getMap();
+        if (map == null) {
+            return;
+        }
+        if (subject instanceof Concept) {
+            Concept concept = (Concept) subject;
+            if (concept.getConceptId() == null) {
+                return;
+            }
+            final int conceptId = concept.getConceptId();
+            final String code = purge ? null : ConceptIcd10Map.icd10Code(concept);
+            afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    map.update(conceptId, code);
+                }
+            });
+        } else {
+            afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    map.rebuildInBackground();
+                }
+            });
+        }
+    }
+
+    private static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static ConceptIcd10Map getMap() {
+        try {
+            return Context.getRegisteredComponents(ConceptIcd10Map.class).stream().findFirst().orElse(null);
+        } catch (Exception e) {
+            log.debug("ConceptIcd10Map not available: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.ghanaemr.api.fhir.db.ConceptIcd10DAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory concept_id to ICD-10 code table shared by FHIR encounter mapping, reports and the
+ * consultation screens, so none of them walk concept mappings per concept.
+ *
+ * The table is two sorted parallel arrays (concept ids and codes, with one String per distinct
+ * code) published through a volatile reference, so lookups are a lock-free binary search. It is
+ * built by streaming concept_reference_map once at startup and kept current by concept edits,
+ * which replace the table copy-on-write; edits that arrive while a rebuild is running are replayed
+ * onto the new table before it is published. Until the first build completes lookups fall back to
+ * one batched query.
+ */
+public class ConceptIcd10Map implements ConceptIcd10Resolver {
+
+    private static final Logger log = LoggerFactory.getLogger(ConceptIcd10Map.class);
+
+    /** Receives concept_id/code rows, in concept_id order, while the table is being built. */
+    public interface Sink {
+        void code(int conceptId, String icd10Code);
+    }
+
+    private final Object buildLock = new Object();
+
+    private ConceptIcd10DAO dao;
+
+    private volatile Table table = Table.EMPTY;
+    private volatile boolean ready;
+    private List<Object[]> pending;
+
+    private long buildMillis;
+    private long rowsScanned;
+    private long builtAt;
+
+    public void setDao(ConceptIcd10DAO dao) {
+        this.dao = dao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Streams every ICD-10 mapping into a fresh table and swaps it in. Safe to call again to
+     * resynchronise; lookups keep using the previous table until the swap.
+     */
+    public void rebuild() {
+        synchronized (buildLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                pending = new ArrayList<Object[]>();
+            }
+            final TableBuilder builder = new TableBuilder();
+            try {
+                dao.scanIcd10Codes(builder);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pending = null;
+                }
+                throw e;
+            }
+            Table fresh = builder.build();
+            synchronized (this) {
+                for (Object[] update : pending) {
+                    fresh = fresh.with((Integer) update[0], (String) update[1]);
+                }
+                pending = null;
+                table = fresh;
+                ready = true;
+                rowsScanned = builder.rows;
+                buildMillis = System.currentTimeMillis() - start;
+                builtAt = System.currentTimeMillis();
+            }
+            log.info("ICD-10 concept map built: {} concepts, {} distinct codes from {} rows in {} ms, ~{} KB",
+                    fresh.size(), fresh.distinctCodes(), builder.rows, buildMillis, fresh.footprintBytes() / 1024);
+        }
+    }
+
+    /**
+     * Rebuilds on a daemon thread, e.g. after a reference term or source changed.
+     */
+    public void rebuildInBackground() {
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.warn("Could not rebuild ICD-10 concept map", e);
+                }
+            }
+        }, "ghanaemr-icd10-map");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records a concept's current ICD-10 code; null removes it.
+     */
+    public synchronized void update(int conceptId, String icd10Code) {
+        if (pending != null) {
+            pending.add(new Object[] { conceptId, icd10Code });
+        }
+        table = table.with(conceptId, icd10Code);
+    }
+
+    /**
+     * @return the concept's ICD-10 code, or null; only authoritative while {@link #isReady()}
+     */
+    public String get(int conceptId) {
+        return table.get(conceptId);
+    }
+
+    @Override
+    public Map<Integer, String> resolve(Collection<Integer> conceptIds) {
+        if (!ready) {
+            return dao == null ? Collections.<Integer, String>emptyMap() : dao.getIcd10Codes(conceptIds);
+        }
+        Table t = table;
+        Map<Integer, String> codes = new HashMap<Integer, String>();
+        for (Integer conceptId : conceptIds) {
+            String code = conceptId == null ? null : t.get(conceptId);
+            if (code != null) {
+                codes.put(conceptId, code);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Approximate bytes held by the table: both arrays plus one String per distinct code.
+     */
+    public long footprintBytes() {
+        return table.footprintBytes();
+    }
+
+    public Map<String, Object> getStats() {
+        Table t = table;
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("ready", ready);
+        stats.put("concepts", t.size());
+        stats.put("distinctCodes", t.distinctCodes());
+        stats.put("footprintBytes", t.footprintBytes());
+        synchronized (this) {
+            stats.put("rowsScanned", rowsScanned);
+            stats.put("buildMillis", buildMillis);
+            stats.put("builtAt", builtAt);
+        }
+        return stats;
+    }
+
+    /**
+     * ICD-10 code from the concept's own mappings, using the same rules as the database scan: of
+     * the ICD mappings with a code, the lowest concept_map_id wins, and unsaved mappings come last.
+     * Null if it has none.
+     */
+    public static String icd10Code(Concept concept) {
+        Collection<ConceptMap> mappings = concept.getConceptMappings();
+        if (mappings == null) {
+            return null;
+        }
+        ConceptMap first = null;
+        String code = null;
+        for (ConceptMap mapping : mappings) {
+            ConceptReferenceTerm term = mapping.getConceptReferenceTerm();
+            ConceptSource source = term == null ? null : term.getConceptSource();
+            if (source == null || !(containsIcd(source.getName()) || containsIcd(source.getHl7Code()))
+                    || term.getCode() == null || term.getCode().trim().isEmpty()) {
+                continue;
+            }
+            if (first == null || isOlder(mapping, first)) {
+                first = mapping;
+                code = term.getCode();
+            }
+        }
+        return code;
+    }
+
+    private static boolean isOlder(ConceptMap mapping, ConceptMap than) {
+        Integer id = mapping.getConceptMapId();
+        Integer other = than.getConceptMapId();
+        return id != null && (other == null || id < other);
+    }
+
+    private static boolean containsIcd(String value) {
+        return value != null && value.toUpperCase().contains("ICD");
+    }
+
+    /** Immutable sorted table; changes return a copy. */
+    static final class Table {
+
+        static final Table EMPTY = new Table(new int[0], new String[0]);
+
+        private final int[] conceptIds;
+        private final String[] codes;
+
+        Table(int[] conceptIds, String[] codes) {
+            this.conceptIds = conceptIds;
+            this.codes = codes;
+        }
+
+        int size() {
+            return conceptIds.length;
+        }
+
+        String get(int conceptId) {
+            int i = Arrays.binarySearch(conceptIds, conceptId);
+            return i >= 0 ? codes[i] : null;
+        }
+
+        Table with(int conceptId, String code) {
+            int i = Arrays.binarySearch(conceptIds, conceptId);
+            int n = conceptIds.length;
+            if (i >= 0) {
+                if (code == null) {
+                    int[] ids = new int[n - 1];
+                    String[] values = new String[n - 1];
+                    System.arraycopy(conceptIds, 0, ids, 0, i);
+                    System.arraycopy(conceptIds, i + 1, ids, i, n - i - 1);
+                    System.arraycopy(codes, 0, values, 0, i);
+                    System.arraycopy(codes, i + 1, values, i, n - i - 1);
+                    return new Table(ids, values);
+                }
+                if (code.equals(codes[i])) {
+                    return this;
+                }
+                String[] values = codes.clone();
+                values[i] = code;
+                return new Table(conceptIds, values);
+            }
+            if (code == null) {
+                return this;
+            }
+            int at = -i - 1;
+            int[] ids = new int[n + 1];
+            String[] values = new String[n + 1];
+            System.arraycopy(conceptIds, 0, ids, 0, at);
+            System.arraycopy(conceptIds, at, ids, at + 1, n - at);
+            System.arraycopy(codes, 0, values, 0, at);
+            System.arraycopy(codes, at, values, at + 1, n - at);
+            ids[at] = conceptId;
+            values[at] = code;
+            return new Table(ids, values);
+        }
+
+        int distinctCodes() {
+            return distinct().size();
+        }
+
+        /** Array headers, 4-byte ids and references, and 40 bytes plus 2 per char for each String. */
+        long footprintBytes() {
+            long bytes = 16 + 4L * conceptIds.length + 16 + 4L * codes.length;
+            for (String code : distinct().keySet()) {
+                bytes += 40 + 2L * code.length();
+            }
+            return bytes;
+        }
+
+        private Map<String, Boolean> distinct() {
+            Map<String, Boolean> seen = new IdentityHashMap<String, Boolean>();
+            for (String code : codes) {
+                seen.put(code, Boolean.TRUE);
+            }
+            return seen;
+        }
+    }
+
+    /** Collects scanned rows; the first code per concept wins and equal codes share one String. */
+    static final class TableBuilder implements Sink {
+
+        private int[] conceptIds = new int[1024];
+        private String[] codes = new String[1024];
+        private final Map<String, String> interned = new HashMap<String, String>();
+        private int size;
+        private boolean sorted = true;
+        long rows;
+
+        @Override
+        public void code(int conceptId, String icd10Code) {
+            rows++;
+            if (icd10Code == null || icd10Code.trim().isEmpty()) {
+                return;
+            }
+            if (size > 0) {
+                int last = conceptIds[size - 1];
+                if (conceptId == last) {
+                    return;
+                }
+                if (conceptId < last) {
+                    sorted = false;
+                }
+            }
+            if (size == conceptIds.length) {
+                conceptIds = Arrays.copyOf(conceptIds, size * 2);
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            String code = interned.get(icd10Code);
+            if (code == null) {
+                code = icd10Code;
+                interned.put(code, code);
+            }
+            conceptIds[size] = conceptId;
+            codes[size] = code;
+            size++;
+        }
+
+        Table build() {
+            if (sorted) {
+                return new Table(Arrays.copyOf(conceptIds, size), Arrays.copyOf(codes, size));
+            }
+            Map<Integer, String> first = new LinkedHashMap<Integer, String>();
+            for (int i = 0; i < size; i++) {
+                first.putIfAbsent(conceptIds[i], codes[i]);
+            }
+            Integer[] ids = first.keySet().toArray(new Integer[0]);
+            Arrays.sort(ids);
+            int[] sortedIds = new int[ids.length];
+            String[] sortedCodes = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                sortedIds[i] = ids[i];
+                sortedCodes[i] = first.get(ids[i]);
+            }
+            return new Table(sortedIds, sortedCodes);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Resolves the ICD-10 codes of many concepts at once, so mapping an encounter costs one lookup
+ * instead of walking (and lazy-loading) the mappings of every observed concept.
+ */
+public interface ConceptIcd10Resolver {
+
+    /**
+     * @param conceptIds concept ids to resolve
+     * @return ICD-10 code by concept id, for those concepts that have one
+     */
+    Map<Integer, String> resolve(Collection<Integer> conceptIds);
+}
@@ -7,9 +7,6 @@ import org.hl7.fhir.r4.model.Period;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.openmrs.Concept;
-import org.openmrs.ConceptMap;
-import org.openmrs.ConceptSource;
-import org.openmrs.ConceptReferenceTerm;
 import org.openmrs.EncounterType;
 import org.openmrs.Obs;
 import org.openmrs.PatientIdentifier;
@@ -18,10 +15,17 @@ import org.openmrs.Visit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.Collection;
 
 /**
  * FHIR R4 Encounter Mapper for NHIE Integration
@@ -35,7 +39,7 @@ import java.util.Collection;
  * - Status defaults to finished (OpenMRS has no status field)
  * - Period start from encounterDatetime; end from visit stopDatetime when available
  * - Subject references Patient by Ghana Card identifier if present, else UUID reference
- * - ReasonCode attempts ICD-10 mapping from Encounter observations
+ * - ReasonCode carries every distinct ICD-10 code found on Encounter observations
  */
 public class FhirEncounterMapper {
 
@@ -48,6 +52,16 @@ public class FhirEncounterMapper {
     public static final String ICD10_SYSTEM = "http://hl7.org/fhir/sid/icd-10";
     public static final String GHANA_CARD_SYSTEM = "http://moh.gov.gh/fhir/identifier/ghana-card";
 
+    private ConceptIcd10Resolver icd10Resolver;
+
+    /**
+     * Resolve ICD-10 codes for all observed concepts in one batch. Optional; without it each
+     * concept's mappings are read individually.
+     */
+    public void setIcd10Resolver(ConceptIcd10Resolver icd10Resolver) {
+        this.icd10Resolver = icd10Resolver;
+    }
+
     /**
      * Convert OpenMRS Encounter to FHIR R4 Encounter resource
      *
@@ -138,45 +152,65 @@ public class FhirEncounterMapper {
         return null;
     }
 
+    /**
+     * One reasonCode per distinct ICD-10 code among the encounter's observations. The ICD-10
+     * code of an obs is that of its concept, else that of its coded value. All concepts are
+     * resolved in one batch before any reason is built.
+     */
     private void addReasonCodesFromObs(org.openmrs.Encounter omrsEncounter, Encounter fhirEncounter) {
         Set<Obs> obsSet = omrsEncounter.getObs();
         if (obsSet == null || obsSet.isEmpty()) {
             return;
         }
 
+        Set<Concept> concepts = new LinkedHashSet<>();
+        for (Obs obs : obsSet) {
+            if (obs.getConcept() != null) concepts.add(obs.getConcept());
+            if (obs.getValueCoded() != null) concepts.add(obs.getValueCoded());
+        }
+        Map<Concept, String> codes = resolveIcd10Codes(concepts);
+        if (codes.isEmpty()) {
+            return;
+        }
+
+        Set<String> emitted = new HashSet<>();
         for (Obs obs : obsSet) {
             Concept concept = obs.getConcept();
-            if (concept == null) continue;
-
-            // Attempt to find ICD-10 mapping on the concept
-            Collection<ConceptMap> mappings = concept.getConceptMappings();
-            Optional<ConceptMap> icd10Map = (mappings != null ? mappings.stream() : java.util.stream.Stream.<ConceptMap>empty())
-                    .filter(cm -> cm.getConceptReferenceTerm() != null)
-                    .filter(cm -> {
-                        ConceptReferenceTerm term = cm.getConceptReferenceTerm();
-                        ConceptSource src = term.getConceptSource();
-                        if (src == null) return false;
-                        String name = src.getName();
-                        String hl7Code = src.getHl7Code();
-                        return (name != null && name.toUpperCase().contains("ICD")) ||
-                                (hl7Code != null && hl7Code.toUpperCase().contains("ICD"));
-                    })
-                    .findFirst();
-
-            if (icd10Map.isPresent()) {
-                ConceptReferenceTerm term = icd10Map.get().getConceptReferenceTerm();
-                String code = term.getCode();
-                String display = concept.getName() != null ? concept.getName().getName() : null;
-                CodeableConcept reason = new CodeableConcept().addCoding(new Coding()
-                        .setSystem(ICD10_SYSTEM)
-                        .setCode(code)
-                        .setDisplay(display));
-                fhirEncounter.addReasonCode(reason);
-                // Only map first ICD-10 concept by default
-                return;
+            String code = concept == null ? null : codes.get(concept);
+            if (code == null && obs.getValueCoded() != null) {
+                concept = obs.getValueCoded();
+                code = codes.get(concept);
+            }
+            if (code == null || !emitted.add(code)) {
+                continue;
             }
+            String display = concept.getName() != null ? concept.getName().getName() : null;
+            fhirEncounter.addReasonCode(new CodeableConcept().addCoding(new Coding()
+                    .setSystem(ICD10_SYSTEM)
+                    .setCode(code)
+                    .setDisplay(display)));
         }
     }
-}
-
 
+    private Map<Concept, String> resolveIcd10Codes(Collection<Concept> concepts) {
+        Map<Integer, String> byId = Collections.emptyMap();
+        if (icd10Resolver != null) {
+            List<Integer> ids = new ArrayList<>(concepts.size());
+            for (Concept concept : concepts) {
+                if (concept.getConceptId() != null) ids.add(concept.getConceptId());
+            }
+            byId = icd10Resolver.resolve(ids);
+        }
+        Map<Concept, String> codes = new HashMap<>();
+        for (Concept concept : concepts) {
+            // Unsaved concepts, or no resolver configured: read the concept's own mappings
+            String code = icd10Resolver != null && concept.getConceptId() != null
+                    ? byId.get(concept.getConceptId())
+                    : ConceptIcd10Map.icd10Code(concept);
+            if (code != null) {
+                codes.put(concept, code);
+            }
+        }
+        return codes;
+    }
+}
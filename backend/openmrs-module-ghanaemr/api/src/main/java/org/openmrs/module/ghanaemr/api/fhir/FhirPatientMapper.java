@@ -16,7 +16,10 @@ import org.openmrs.PersonName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -52,6 +55,13 @@ public class FhirPatientMapper {
     // OpenMRS Person Attribute Type Names
     private static final String NHIS_ATTRIBUTE_TYPE_NAME = "NHIS Number";
     
+    /** Top-level Patient elements this mapper produces, in the order of {@link #fingerprintElements}. */
+    public static final List<String> ELEMENTS = Collections.unmodifiableList(
+        Arrays.asList("identifier", "name", "gender", "birthDate", "telecom", "address"));
+
+    /** Element fingerprint of an element the resource does not have. */
+    public static final long ABSENT = 0L;
+
     private final FhirContext fhirContext;
     
     /**
@@ -99,10 +109,164 @@ public class FhirPatientMapper {
         mapAddress(person, fhirPatient);
         
         log.debug("Mapped OpenMRS Patient {} to FHIR Patient", patient.getUuid());
-        
+
         return fhirPatient;
     }
-    
+
+    /**
+     * 64-bit hash of every value toFhirPatient reads, in the order it reads them, so patients with
+     * the same fingerprint map to the same resource. Much cheaper than mapping and serializing;
+     * used as the version of a cached resource. Keep in step with the map* methods below.
+     *
+     * @param patient OpenMRS patient object
+     * @return fingerprint of the FHIR-relevant fields
+     * @throws IllegalArgumentException if patient is null or has no Person
+     */
+    public long fingerprint(org.openmrs.Patient patient) {
+        return fingerprint(fingerprintElements(patient));
+    }
+
+    /**
+     * @param elements element fingerprints from {@link #fingerprintElements}
+     * @return the same value as {@link #fingerprint(org.openmrs.Patient)} for that patient
+     */
+    public static long fingerprint(long[] elements) {
+        Fingerprint f = new Fingerprint();
+        for (long element : elements) {
+            f.add(element);
+        }
+        return f.hash;
+    }
+
+    /**
+     * Fingerprints of the top-level Patient elements this mapper produces, one per entry of
+     * {@link #ELEMENTS}; {@link #ABSENT} where the resource will not have the element. Comparing
+     * two of these tells which elements an update has to send.
+     *
+     * @param patient OpenMRS patient object
+     * @return element fingerprints in ELEMENTS order
+     * @throws IllegalArgumentException if patient is null or has no Person
+     */
+    public long[] fingerprintElements(org.openmrs.Patient patient) {
+        if (patient == null) {
+            throw new IllegalArgumentException("Patient cannot be null");
+        }
+        Person person = patient.getPerson();
+        if (person == null) {
+            throw new IllegalArgumentException("Patient must have associated Person");
+        }
+        long[] elements = new long[ELEMENTS.size()];
+
+        // identifier
+        Fingerprint f = new Fingerprint();
+        boolean any = false;
+        for (PatientIdentifier identifier : patient.getIdentifiers()) {
+            String typeName = identifier.getIdentifierType().getName();
+            String value = identifier.getIdentifier();
+            if (value == null || value.trim().isEmpty()) {
+                continue;
+            }
+            if (GHANA_CARD_TYPE_NAME.equalsIgnoreCase(typeName)) {
+                f.add(GHANA_CARD_SYSTEM).add(value);
+                any = true;
+            } else if (FOLDER_NUMBER_TYPE_NAME.equalsIgnoreCase(typeName)) {
+                f.add(FOLDER_NUMBER_SYSTEM).add(value);
+                any = true;
+            }
+        }
+        for (PersonAttribute attribute : person.getAttributes()) {
+            if (NHIS_ATTRIBUTE_TYPE_NAME.equalsIgnoreCase(attribute.getAttributeType().getName())) {
+                String nhisNumber = attribute.getValue();
+                if (nhisNumber != null && !nhisNumber.trim().isEmpty()) {
+                    f.add(NHIS_SYSTEM).add(nhisNumber);
+                    any = true;
+                }
+                break;
+            }
+        }
+        elements[0] = any ? f.value() : ABSENT;
+
+        // name
+        PersonName personName = person.getPersonName();
+        elements[1] = personName == null ? ABSENT : new Fingerprint()
+            .add(personName.getFamilyName()).add(personName.getGivenName()).add(personName.getMiddleName()).value();
+
+        // gender (always present, unknown when missing)
+        elements[2] = new Fingerprint().add(person.getGender() == null ? null : person.getGender().toUpperCase()).value();
+
+        // birthDate
+        elements[3] = person.getBirthdate() == null ? ABSENT
+            : new Fingerprint().add(Long.toString(person.getBirthdate().getTime())).value();
+
+        // telecom
+        elements[4] = ABSENT;
+        for (PersonAttribute attribute : person.getAttributes()) {
+            String attrName = attribute.getAttributeType().getName();
+            if (attrName != null && isPhoneAttribute(attrName)) {
+                String phone = attribute.getValue();
+                if (phone != null && !phone.trim().isEmpty()) {
+                    elements[4] = new Fingerprint().add(phone).value();
+                    break;
+                }
+            }
+        }
+
+        // address
+        PersonAddress address = person.getPersonAddress();
+        elements[5] = address == null ? ABSENT : new Fingerprint()
+            .add(address.getAddress1()).add(address.getAddress2()).add(address.getCityVillage())
+            .add(address.getCountyDistrict()).add(address.getStateProvince()).add(address.getCountry()).value();
+        return elements;
+    }
+
+    private static boolean isPhoneAttribute(String attrName) {
+        return attrName.equalsIgnoreCase("Phone Number")
+            || attrName.equalsIgnoreCase("Telephone Number")
+            || attrName.equalsIgnoreCase("Mobile Number")
+            || attrName.equalsIgnoreCase("Contact Number");
+    }
+
+    /**
+     * FNV-1a over the chars of each value, with a separator after each one so that ("ab", "c")
+     * and ("a", "bc") differ, and a distinct marker for null.
+     */
+    private static final class Fingerprint {
+        private static final long PRIME = 0x100000001b3L;
+
+        long hash = 0xcbf29ce484222325L;
+
+        Fingerprint add(long value) {
+            for (int i = 0; i < 64; i += 16) {
+                mix((int) (value >>> i) & 0xFFFF);
+            }
+            return this;
+        }
+
+        /** Never {@link #ABSENT}. */
+        long value() {
+            return hash == ABSENT ? 1 : hash;
+        }
+
+        Fingerprint add(String value) {
+            if (value == null) {
+                mix(0xFFFF);
+            } else {
+                for (int i = 0; i < value.length(); i++) {
+                    mix(value.charAt(i));
+                }
+            }
+            mix(0xFFFE);
+            return this;
+        }
+
+        private void mix(int c) {
+            hash ^= c & 0xFF;
+            hash *= PRIME;
+            hash ^= c >>> 8;
+            hash *= PRIME;
+        }
+    }
+
     /**
      * Map patient identifiers (Ghana Card, NHIS, Folder Number)
      */
@@ -254,12 +418,7 @@ public class FhirPatientMapper {
             String attrName = attrType.getName();
             
             // Look for phone number attributes (common names)
-            if (attrName != null && (
-                attrName.equalsIgnoreCase("Phone Number") ||
-                attrName.equalsIgnoreCase("Telephone Number") ||
-                attrName.equalsIgnoreCase("Mobile Number") ||
-                attrName.equalsIgnoreCase("Contact Number")
-            )) {
+            if (attrName != null && isPhoneAttribute(attrName)) {
                 String phone = attribute.getValue();
                 if (phone != null && !phone.trim().isEmpty()) {
                     ContactPoint contactPoint = new ContactPoint();
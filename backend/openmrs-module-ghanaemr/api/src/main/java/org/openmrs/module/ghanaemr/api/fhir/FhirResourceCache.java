@@ -0,0 +1,155 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.openmrs.module.ghanaemr.api.metrics.MetricsCollector;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serialized FHIR resources keyed by resource (e.g. Patient/uuid) and a version of the source
+ * data, so syncs, retries and 409 handling of an unchanged patient reuse the JSON instead of
+ * mapping and serializing it again. A lookup with a different version is a miss and the stale
+ * entry is dropped.
+ *
+ * Least recently used entries are evicted once the cached JSON exceeds maxBytes; entries are
+ * weighed by their character data (2 bytes per char) plus a fixed overhead.
+ */
+public class FhirResourceCache implements MetricsCollector {
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /** Map entry, key String and entry object headers. */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        evict();
+    }
+
+    /**
+     * @return the cached JSON, or null if absent or cached for another version
+     */
+    public synchronized String get(String key, long version) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        if (e.version != version) {
+            remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.json;
+    }
+
+    public synchronized void put(String key, long version, String json) {
+        remove(key);
+        long weight = weigh(key, json);
+        if (weight > maxBytes) {
+            return;
+        }
+        entries.put(key, new Entry(version, json, weight));
+        bytes += weight;
+        evict();
+    }
+
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        long lookups = hits + misses;
+        stats.put("hitRate", lookups == 0 ? 0.0 : hits / (double) lookups);
+        return stats;
+    }
+
+    /**
+     * Writes the ghanaemr_fhir_cache_* families; the hit rate is hits over hits plus misses.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        long h;
+        long m;
+        long evicted;
+        long size;
+        long held;
+        synchronized (this) {
+            h = hits;
+            m = misses;
+            evicted = evictions;
+            size = entries.size();
+            held = bytes;
+        }
+        out.family("ghanaemr_fhir_cache_hits_total", "counter", "FHIR resources reused from the cache");
+        out.sample("ghanaemr_fhir_cache_hits_total", h);
+        out.family("ghanaemr_fhir_cache_misses_total", "counter", "FHIR resources absent or cached for an older version");
+        out.sample("ghanaemr_fhir_cache_misses_total", m);
+        out.family("ghanaemr_fhir_cache_evictions_total", "counter", "FHIR resources evicted to stay within maxBytes");
+        out.sample("ghanaemr_fhir_cache_evictions_total", evicted);
+        out.family("ghanaemr_fhir_cache_entries", "gauge", "FHIR resources held by the cache");
+        out.sample("ghanaemr_fhir_cache_entries", size);
+        out.family("ghanaemr_fhir_cache_bytes", "gauge", "Estimated bytes held by the FHIR resource cache");
+        out.sample("ghanaemr_fhir_cache_bytes", held);
+    }
+
+    static long weigh(String key, String json) {
+        return ENTRY_OVERHEAD + 2L * (key.length() + json.length());
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static final class Entry {
+        final long version;
+        final String json;
+        final long weight;
+
+        Entry(long version, String json, long weight) {
+            this.version = version;
+            this.json = json;
+            this.weight = weight;
+        }
+    }
+}
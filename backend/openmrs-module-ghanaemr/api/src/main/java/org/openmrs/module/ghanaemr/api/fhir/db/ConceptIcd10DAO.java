@@ -0,0 +1,23 @@
+package org.openmrs.module.ghanaemr.api.fhir.db;
+
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads ICD-10 codes from concept_reference_map/term/source.
+ */
+public interface ConceptIcd10DAO {
+
+    /**
+     * @param conceptIds concept ids to resolve
+     * @return ICD-10 code by concept id, for those concepts that have one
+     */
+    Map<Integer, String> getIcd10Codes(Collection<Integer> conceptIds);
+
+    /**
+     * Streams every concept's ICD-10 code in concept_id order, on its own session.
+     */
+    void scanIcd10Codes(ConceptIcd10Map.Sink sink);
+}
@@ -0,0 +1,95 @@
+package org.openmrs.module.ghanaemr.api.fhir.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.fhir.db.ConceptIcd10DAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native SQL over concept_reference_map. A source counts as ICD-10 when its name or HL7 code
+ * contains "ICD"; where a concept has several ICD mappings the oldest wins.
+ */
+public class HibernateConceptIcd10DAO implements ConceptIcd10DAO {
+
+    /** Bound on IN list parameters per statement. */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String SELECT =
+            "SELECT m.concept_id, t.code FROM concept_reference_map m " +
+            "JOIN concept_reference_term t ON t.concept_reference_term_id = m.concept_reference_term_id " +
+            "JOIN concept_reference_source s ON s.concept_source_id = t.concept_source_id " +
+            "WHERE (UPPER(s.name) LIKE '%ICD%' OR UPPER(s.hl7_code) LIKE '%ICD%')";
+
+    private static final String ORDER = " ORDER BY m.concept_id, m.concept_map_id";
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Map<Integer, String> getIcd10Codes(Collection<Integer> conceptIds) {
+        if (conceptIds == null || conceptIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final List<Integer> ids = new ArrayList<Integer>(new LinkedHashSet<Integer>(conceptIds));
+        ids.remove(null);
+        final Map<Integer, String> codes = new HashMap<Integer, String>();
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+                StringBuilder sql = new StringBuilder(SELECT).append(" AND m.concept_id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                }
+                sql.append(')').append(ORDER);
+                try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            codes.putIfAbsent(rs.getInt(1), rs.getString(2));
+                        }
+                    }
+                }
+            }
+        });
+        return codes;
+    }
+
+    /**
+     * Forward-only, read-only statement with fetch size Integer.MIN_VALUE so MySQL Connector/J
+     * streams the rows.
+     */
+    @Override
+    public void scanIcd10Codes(final ConceptIcd10Map.Sink sink) {
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(SELECT + ORDER,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            sink.code(rs.getInt(1), rs.getString(2));
+                        }
+                    }
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Counts observations into fixed buckets, Prometheus style: bucket i holds values up to and
+ * including bounds[i], and the last bucket everything larger. Recording is two atomic adds and
+ * no allocation, so it can sit on every call; quantiles are interpolated within a bucket, which
+ * is accurate to the bucket width.
+ */
+public class Histogram {
+
+    /** Milliseconds from 1 ms to one minute, about 1.5x apart. */
+    public static final double[] LATENCY_MILLIS = {1, 2, 3, 5, 7.5, 10, 15, 20, 30, 50, 75, 100, 150, 200, 300, 500, 750,
+            1000, 1500, 2000, 3000, 5000, 7500, 10000, 15000, 20000, 30000, 60000};
+
+    private final double[] bounds;
+    private final AtomicLongArray counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * @param bounds ascending upper bounds
+     */
+    public Histogram(double[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bounds must be ascending");
+            }
+        }
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void observe(double value) {
+        int i = Arrays.binarySearch(bounds, value);
+        counts.incrementAndGet(i >= 0 ? i : -i - 1);
+        sum.add(value);
+    }
+
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(bounds, copy, sum.sum());
+    }
+
+    /**
+     * Bucket counts read one at a time while recording continues; each count is exact.
+     */
+    public static final class Snapshot {
+        private final double[] bounds;
+        private final long[] counts;
+        private final double sum;
+        private final long count;
+
+        Snapshot(double[] bounds, long[] counts, double sum) {
+            this.bounds = bounds;
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * Observations up to and including bounds[i]; i = bounds.length counts all of them.
+         */
+        public long getCumulativeCount(int i) {
+            long total = 0;
+            for (int b = 0; b <= i; b++) {
+                total += counts[b];
+            }
+            return total;
+        }
+
+        /**
+         * @param q between 0 and 1
+         * @return the estimated value at q, 0 with no observations, or the last bound when it
+         *         falls among values above it
+         */
+        public double quantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            double rank = q * count;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                if (seen + counts[i] >= rank) {
+                    if (i == bounds.length) {
+                        return bounds[bounds.length - 1];
+                    }
+                    double lower = i == 0 ? 0 : bounds[i - 1];
+                    return lower + (bounds[i] - lower) * ((rank - seen) / counts[i]);
+                }
+                seen += counts[i];
+            }
+            return bounds[bounds.length - 1];
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Memory, garbage collection, threads and classes of the JVM OpenMRS runs in, read from the
+ * platform MXBeans on each scrape. Names follow the Prometheus Java client so existing JVM
+ * dashboards work unchanged.
+ */
+public class JvmMetrics implements MetricsCollector {
+
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        out.family("jvm_memory_bytes_used", "gauge", "Used bytes of a JVM memory area");
+        out.sample("jvm_memory_bytes_used", heap.getUsed(), "area", "heap");
+        out.sample("jvm_memory_bytes_used", nonHeap.getUsed(), "area", "nonheap");
+        out.family("jvm_memory_bytes_committed", "gauge", "Committed bytes of a JVM memory area");
+        out.sample("jvm_memory_bytes_committed", heap.getCommitted(), "area", "heap");
+        out.sample("jvm_memory_bytes_committed", nonHeap.getCommitted(), "area", "nonheap");
+        out.family("jvm_memory_bytes_max", "gauge", "Max bytes of a JVM memory area, -1 when unbounded");
+        out.sample("jvm_memory_bytes_max", heap.getMax(), "area", "heap");
+        out.sample("jvm_memory_bytes_max", nonHeap.getMax(), "area", "nonheap");
+
+        out.family("jvm_gc_collection_seconds", "summary", "Time spent in a garbage collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.sample("jvm_gc_collection_seconds_count", Math.max(0, gc.getCollectionCount()), "gc", gc.getName());
+            out.sample("jvm_gc_collection_seconds_sum", Math.max(0, gc.getCollectionTime()) / 1000.0, "gc", gc.getName());
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        out.family("jvm_threads_current", "gauge", "Current thread count of the JVM");
+        out.sample("jvm_threads_current", threads.getThreadCount());
+        out.family("jvm_threads_daemon", "gauge", "Daemon thread count of the JVM");
+        out.sample("jvm_threads_daemon", threads.getDaemonThreadCount());
+        out.family("jvm_threads_peak", "gauge", "Peak thread count of the JVM");
+        out.sample("jvm_threads_peak", threads.getPeakThreadCount());
+
+        ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+        out.family("jvm_classes_loaded", "gauge", "Classes currently loaded in the JVM");
+        out.sample("jvm_classes_loaded", classes.getLoadedClassCount());
+
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        out.family("process_start_time_seconds", "gauge", "Start time of the process since the epoch in seconds");
+        out.sample("process_start_time_seconds", runtime.getStartTime() / 1000.0);
+
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        if (load >= 0) {
+            out.family("jvm_system_load_average", "gauge", "System load average over the last minute");
+            out.sample("jvm_system_load_average", load);
+        }
+        out.family("jvm_available_processors", "gauge", "Processors available to the JVM");
+        out.sample("jvm_available_processors", Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,16 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import java.io.IOException;
+
+/**
+ * A source of metric families for the module's Prometheus endpoint. Implementations are listed on
+ * the metricsRegistry bean and called on every scrape, so they write what they already hold, or
+ * run one cheap query.
+ */
+public interface MetricsCollector {
+
+    /**
+     * Writes this collector's families; each family name must be unique across collectors.
+     */
+    void writePrometheus(PrometheusWriter out) throws IOException;
+}
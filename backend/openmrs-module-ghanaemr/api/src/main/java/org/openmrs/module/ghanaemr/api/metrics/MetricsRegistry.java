@@ -0,0 +1,71 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The module's metrics for GET /ws/rest/v1/ghana/metrics/prometheus: every collector listed on
+ * the metricsRegistry bean, in order. A collector that fails is left out of that scrape rather
+ * than failing it; its output is buffered so a partial family is never written. The time each
+ * collector took and its failures are exported too.
+ */
+public class MetricsRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private volatile List<MetricsCollector> collectors = Collections.emptyList();
+
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+
+    public void setCollectors(List<MetricsCollector> collectors) {
+        this.collectors = Collections.unmodifiableList(new ArrayList<MetricsCollector>(collectors));
+    }
+
+    public List<MetricsCollector> getCollectors() {
+        return collectors;
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        Map<String, Double> seconds = new LinkedHashMap<String, Double>();
+        for (MetricsCollector collector : collectors) {
+            String name = name(collector);
+            StringWriter buffer = new StringWriter();
+            long start = System.nanoTime();
+            try {
+                collector.writePrometheus(new PrometheusWriter(buffer));
+                out.write(buffer.toString());
+            } catch (Exception e) {
+                log.warn("Metrics collector {} failed: {}", name, e.getMessage());
+                failures.computeIfAbsent(name, n -> new LongAdder()).increment();
+            }
+            seconds.put(name, (System.nanoTime() - start) / 1e9);
+        }
+        PrometheusWriter writer = new PrometheusWriter(out);
+        writer.family("ghanaemr_metrics_collect_seconds", "gauge", "Time each metrics collector took in this scrape");
+        for (Map.Entry<String, Double> e : seconds.entrySet()) {
+            writer.sample("ghanaemr_metrics_collect_seconds", e.getValue(), "collector", e.getKey());
+        }
+        writer.family("ghanaemr_metrics_collect_failures_total", "counter", "Scrapes a metrics collector failed and was left out of");
+        for (String name : seconds.keySet()) {
+            LongAdder count = failures.get(name);
+            writer.sample("ghanaemr_metrics_collect_failures_total", count != null ? count.sum() : 0, "collector", name);
+        }
+        writer.flush();
+    }
+
+    private static String name(MetricsCollector collector) {
+        return collector.getClass().getSimpleName();
+    }
+}
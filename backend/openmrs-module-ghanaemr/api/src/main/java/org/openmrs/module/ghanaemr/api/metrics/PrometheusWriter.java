@@ -0,0 +1,93 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the Prometheus text exposition format (version 0.0.4): a HELP and TYPE line per metric
+ * family followed by its samples. Labels are given as name, value pairs.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Writer out;
+
+    public PrometheusWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param type counter, gauge or histogram
+     */
+    public PrometheusWriter family(String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+        return this;
+    }
+
+    public PrometheusWriter sample(String name, double value, String... labels) throws IOException {
+        out.write(name);
+        writeLabels(labels, null);
+        out.write(" " + format(value) + "\n");
+        return this;
+    }
+
+    /**
+     * The _bucket, _sum and _count samples of a histogram family.
+     *
+     * @param scale multiplies bounds and sum, e.g. 0.001 to export milliseconds as seconds
+     */
+    public PrometheusWriter histogram(String name, Histogram.Snapshot snapshot, double[] bounds, double scale,
+                                      String... labels) throws IOException {
+        for (int i = 0; i <= bounds.length; i++) {
+            out.write(name + "_bucket");
+            writeLabels(labels, i < bounds.length ? format(bounds[i] * scale) : "+Inf");
+            out.write(" " + snapshot.getCumulativeCount(i) + "\n");
+        }
+        sample(name + "_sum", snapshot.getSum() * scale, labels);
+        sample(name + "_count", snapshot.getCount(), labels);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeLabels(String[] labels, String le) throws IOException {
+        if (labels.length == 0 && le == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        if (le != null) {
+            sb.append(labels.length > 0 ? "," : "").append("le=\"").append(le).append('"');
+        }
+        out.write(sb.append('}').toString());
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
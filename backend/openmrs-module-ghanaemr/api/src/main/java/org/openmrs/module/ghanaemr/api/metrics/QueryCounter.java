@@ -0,0 +1,72 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.BaselineSessionEventsListenerBuilder;
+
+/**
+ * Counts the SQL statements Hibernate prepares on each thread, so RequestMetricsFilter can
+ * report statements per request as the difference before and after. Hibernate creates one
+ * instance per session once {@link #install} has registered the class as the session factory's
+ * automatic session listener; GhanaEMRActivator does this on start unless
+ * ghana.metrics.queryCount.enabled is false.
+ *
+ * Registered at runtime rather than through the hibernate.session.events.auto runtime property,
+ * because OpenMRS builds its first session factory before module classes can be loaded.
+ * Statements run over a raw JDBC connection (Work and ReturningWork) are not seen. While not
+ * installed nothing is counted and the per-request query histogram is left out of the export.
+ */
+public class QueryCounter extends BaseSessionEventListener {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static volatile boolean installed;
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+        COUNT.get()[0]++;
+    }
+
+    /**
+     * @return false if the session factory already has another automatic listener, which is kept
+     */
+    public static synchronized boolean install(SessionFactory sessionFactory) {
+        BaselineSessionEventsListenerBuilder builder = sessionFactory.getSessionFactoryOptions()
+                .getBaselineSessionEventsListenerBuilder();
+        Class<?> current = builder.getAutoListener();
+        if (current != null && current != QueryCounter.class) {
+            return false;
+        }
+        builder.setAutoListener(QueryCounter.class);
+        installed = true;
+        return true;
+    }
+
+    /**
+     * Removes the listener, so the session factory no longer refers to this module's classes.
+     */
+    public static synchronized void uninstall(SessionFactory sessionFactory) {
+        BaselineSessionEventsListenerBuilder builder = sessionFactory.getSessionFactoryOptions()
+                .getBaselineSessionEventsListenerBuilder();
+        if (builder.getAutoListener() == QueryCounter.class) {
+            builder.setAutoListener(null);
+        }
+        installed = false;
+    }
+
+    /** For tests. */
+    static void setInstalled(boolean value) {
+        installed = value;
+    }
+
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    /**
+     * Statements prepared on the current thread so far.
+     */
+    public static long current() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,141 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of the module's REST requests per controller and HTTP method, with response counts by
+ * status class and, when {@link QueryCounter} is installed, the number of SQL statements each
+ * request ran. Fed by the web layer's RequestMetricsFilter.
+ *
+ * One instance per JVM, like NHIECallMetrics: the filter is created by the servlet container, not
+ * by Spring. Recording allocates nothing once a controller and method have been seen.
+ */
+public class RequestMetrics implements MetricsCollector {
+
+    /** SQL statements per request. */
+    public static final double[] QUERY_COUNTS = {0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private static final RequestMetrics INSTANCE = new RequestMetrics();
+
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public static RequestMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Counts a request as in flight until its {@link #end}.
+     */
+    public void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param status the response status; anything outside 100-599 counts as 5xx
+     * @param queries SQL statements the request ran, or -1 when not counted
+     */
+    public void end(String controller, String method, int status, long nanos, long queries) {
+        inFlight.decrementAndGet();
+        String m = method(method);
+        String key = controller + ' ' + m;
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(controller, m));
+        }
+        endpoint.latency.observe(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        if (queries >= 0) {
+            endpoint.queries.observe(queries);
+        }
+        int statusClass = status / 100 - 1;
+        endpoint.statuses[statusClass >= 0 && statusClass < STATUS_CLASSES.length ? statusClass : 4].increment();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public Histogram.Snapshot getLatency(String controller, String method) {
+        Endpoint endpoint = endpoints.get(controller + ' ' + method);
+        return endpoint != null ? endpoint.latency.snapshot() : null;
+    }
+
+    public Histogram.Snapshot getQueries(String controller, String method) {
+        Endpoint endpoint = endpoints.get(controller + ' ' + method);
+        return endpoint != null ? endpoint.queries.snapshot() : null;
+    }
+
+    /**
+     * Writes the ghanaemr_http_* families: latency in seconds, responses by status class, SQL
+     * statements per request (only once the query counter is installed) and requests in flight.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        Map<String, Endpoint> sorted = new TreeMap<String, Endpoint>(endpoints);
+        out.family("ghanaemr_http_request_seconds", "histogram", "Time to serve a module REST request, by controller and method");
+        for (Endpoint e : sorted.values()) {
+            out.histogram("ghanaemr_http_request_seconds", e.latency.snapshot(), Histogram.LATENCY_MILLIS, 0.001,
+                    "controller", e.controller, "method", e.method);
+        }
+        out.family("ghanaemr_http_responses_total", "counter", "Module REST responses by controller, method and status class");
+        for (Endpoint e : sorted.values()) {
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                long count = e.statuses[i].sum();
+                if (count > 0) {
+                    out.sample("ghanaemr_http_responses_total", count, "controller", e.controller, "method", e.method,
+                            "status", STATUS_CLASSES[i]);
+                }
+            }
+        }
+        if (QueryCounter.isInstalled()) {
+            out.family("ghanaemr_http_request_queries", "histogram", "SQL statements run by a module REST request");
+            for (Endpoint e : sorted.values()) {
+                out.histogram("ghanaemr_http_request_queries", e.queries.snapshot(), QUERY_COUNTS, 1,
+                        "controller", e.controller, "method", e.method);
+            }
+        }
+        out.family("ghanaemr_http_requests_in_flight", "gauge", "Module REST requests being served");
+        out.sample("ghanaemr_http_requests_in_flight", inFlight.get());
+    }
+
+    /** For tests. */
+    void reset() {
+        endpoints.clear();
+        inFlight.set(0);
+    }
+
+    /** Keeps the method label to a fixed set whatever clients send. */
+    private static String method(String method) {
+        if ("GET".equals(method) || "POST".equals(method) || "PUT".equals(method) || "DELETE".equals(method)
+                || "PATCH".equals(method)) {
+            return method;
+        }
+        return "OTHER";
+    }
+
+    private static final class Endpoint {
+        private final String controller;
+        private final String method;
+        private final Histogram latency = new Histogram(Histogram.LATENCY_MILLIS);
+        private final Histogram queries = new Histogram(QUERY_COUNTS);
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+
+        Endpoint(String controller, String method) {
+            this.controller = controller;
+            this.method = method;
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+    }
+}
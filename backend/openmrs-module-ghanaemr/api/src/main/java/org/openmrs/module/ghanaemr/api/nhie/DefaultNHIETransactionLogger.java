@@ -1,22 +1,31 @@
 package org.openmrs.module.ghanaemr.api.nhie;
 
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.reports.ReportCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
 
 /**
  * Default JDBC-based implementation of NHIETransactionLogger.
  * Writes to ghanaemr_nhie_transaction_log via direct JDBC using runtime properties.
+ * Every write drops the cached NHIE metrics (see {@link ReportCache}) and is counted by
+ * {@link NHIEMetrics}, which needs the row's previous state and created_at: they are read by
+ * transaction_id first while the counters are live.
  */
 public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultNHIETransactionLogger.class);
 
+    private static final String SELECT_STATE =
+            "SELECT status, resource_type, response_status, created_at FROM ghanaemr_nhie_transaction_log WHERE transaction_id = ?";
+
     @Override
     public void log(String transactionId, Integer patientId, String resourceType, String httpMethod, String endpoint,
                     String maskedRequestBody, String maskedResponseBody, Integer responseStatus, int retryCount,
@@ -29,6 +38,9 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
                 "request_body, response_status, response_body, retry_count, status, created_at, updated_at, creator) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
                 "ON DUPLICATE KEY UPDATE " +
+                "http_method = VALUES(http_method), " +
+                "endpoint = VALUES(endpoint), " +
+                "request_body = VALUES(request_body), " +
                 "response_status = VALUES(response_status), " +
                 "response_body = VALUES(response_body), " +
                 "retry_count = VALUES(retry_count), " +
@@ -43,6 +55,9 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
                 ) : null) {
 
             if (connection != null) {
+                NHIEMetrics metrics = metrics();
+                NHIEMetrics.State before = metrics != null ? currentState(connection, transactionId) : null;
+                Timestamp now = new Timestamp(new Date().getTime());
                 try (PreparedStatement stmt = connection.prepareStatement(sql)) {
                     stmt.setString(1, transactionId);
                     stmt.setInt(2, patientId);
@@ -58,7 +73,6 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
                     stmt.setString(8, maskedResponseBody);
                     stmt.setInt(9, retryCount);
                     stmt.setString(10, status);
-                    Timestamp now = new Timestamp(new Date().getTime());
                     stmt.setTimestamp(11, now);
                     stmt.setTimestamp(12, now);
                     // creator: use authenticated user if available, else default to 1
@@ -72,6 +86,13 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
 
                     stmt.executeUpdate();
                 }
+                if (metrics != null) {
+                    // an existing row keeps its resource type and created_at
+                    metrics.record(before, before != null
+                            ? new NHIEMetrics.State(status, before.getResourceType(), responseStatus, before.getCreatedAt())
+                            : new NHIEMetrics.State(status, resourceType, responseStatus, now.getTime()));
+                }
+                invalidateMetrics();
             }
         } catch (Exception e) {
             // Don't fail main flow if logging fails
@@ -96,6 +117,9 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
                 ) : null) {
 
             if (connection != null) {
+                NHIEMetrics metrics = metrics();
+                NHIEMetrics.State before = metrics != null ? currentState(connection, transactionId) : null;
+                int updated;
                 try (PreparedStatement stmt = connection.prepareStatement(sql)) {
                     stmt.setInt(1, responseStatus);
                     stmt.setString(2, maskedResponseBody);
@@ -106,12 +130,57 @@ public class DefaultNHIETransactionLogger implements NHIETransactionLogger {
                     stmt.setTimestamp(7, new Timestamp(new Date().getTime()));
                     stmt.setString(8, transactionId);
 
-                    stmt.executeUpdate();
+                    updated = stmt.executeUpdate();
                 }
+                if (metrics != null && before != null && updated > 0) {
+                    metrics.record(before, new NHIEMetrics.State(status, before.getResourceType(), responseStatus,
+                            before.getCreatedAt()));
+                }
+                invalidateMetrics();
             }
         } catch (Exception e) {
             // Don't fail main flow if logging fails
             log.error("Failed to update NHIE transaction log: {}", e.getMessage(), e);
         }
     }
+
+    private static NHIEMetrics.State currentState(Connection connection, String transactionId) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_STATE)) {
+            stmt.setString(1, transactionId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                int responseStatus = rs.getInt(3);
+                Integer response = rs.wasNull() ? null : responseStatus;
+                Timestamp created = rs.getTimestamp(4);
+                return new NHIEMetrics.State(rs.getString(1), rs.getString(2), response,
+                        created != null ? created.getTime() : null);
+            }
+        }
+    }
+
+    /**
+     * @return the live counters, or null while they are not loaded and writes need not be counted
+     */
+    private static NHIEMetrics metrics() {
+        try {
+            NHIEMetrics metrics = Context.getRegisteredComponents(NHIEMetrics.class).stream().findFirst().orElse(null);
+            return metrics != null && metrics.isReady() ? metrics : null;
+        } catch (Exception e) {
+            log.debug("NHIE metrics not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void invalidateMetrics() {
+        try {
+            ReportCache cache = Context.getRegisteredComponents(ReportCache.class).stream().findFirst().orElse(null);
+            if (cache != null) {
+                cache.invalidate(ReportCache.Topic.NHIE_LOG);
+            }
+        } catch (Exception e) {
+            log.debug("Report cache not available: {}", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,216 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import org.openmrs.module.ghanaemr.api.metrics.Histogram;
+import org.openmrs.module.ghanaemr.api.metrics.MetricsCollector;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of every NHIE call, kept per call (submitPatient, getPatient, oauthToken, ...) as
+ * histograms of connect time, time to the first response byte and total time, with request and
+ * response bytes and counts by HTTP status ("error" when no response came back). Time spent on our
+ * side before a call, mapping to FHIR and masking for the log, is kept as separate phases, so a
+ * slow registration can be put down to NHIE or to the module.
+ *
+ * One instance per JVM, like NHIEHttpClient's token cache: clients are created with new by the
+ * services that use them. Recording allocates nothing once a call or phase has been seen.
+ */
+public class NHIECallMetrics implements MetricsCollector {
+
+    public static final String PHASE_PATIENT_MAPPING = "patientMapping";
+    public static final String PHASE_ENCOUNTER_MAPPING = "encounterMapping";
+    public static final String PHASE_MASKING = "masking";
+
+    private static final NHIECallMetrics INSTANCE = new NHIECallMetrics();
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final ConcurrentMap<String, Call> calls = new ConcurrentHashMap<String, Call>();
+    private final ConcurrentMap<String, Histogram> phases = new ConcurrentHashMap<String, Histogram>();
+
+    public static NHIECallMetrics get() {
+        return INSTANCE;
+    }
+
+    public Call call(String name) {
+        Call call = calls.get(name);
+        if (call == null) {
+            call = calls.computeIfAbsent(name, n -> new Call());
+        }
+        return call;
+    }
+
+    public void recordPhase(String phase, long nanos) {
+        Histogram histogram = phases.get(phase);
+        if (histogram == null) {
+            histogram = phases.computeIfAbsent(phase, p -> new Histogram(Histogram.LATENCY_MILLIS));
+        }
+        histogram.observe(millis(nanos));
+    }
+
+    /**
+     * Per call: count, counts by status, bytes, and p50/p95/p99 in milliseconds of connect,
+     * firstByte and total; per phase: count and p50/p95/p99.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> byCall = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Call> e : new TreeMap<String, Call>(calls).entrySet()) {
+            Call call = e.getValue();
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            Histogram.Snapshot total = call.total.snapshot();
+            m.put("count", total.getCount());
+            m.put("statuses", call.getStatusCounts());
+            m.put("requestBytes", call.requestBytes.sum());
+            m.put("responseBytes", call.responseBytes.sum());
+            m.put("connectMs", quantiles(call.connect.snapshot()));
+            m.put("firstByteMs", quantiles(call.firstByte.snapshot()));
+            m.put("totalMs", quantiles(total));
+            byCall.put(e.getKey(), m);
+        }
+        Map<String, Object> byPhase = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(phases).entrySet()) {
+            Histogram.Snapshot snapshot = e.getValue().snapshot();
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("count", snapshot.getCount());
+            m.putAll(quantiles(snapshot));
+            byPhase.put(e.getKey(), m);
+        }
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("calls", byCall);
+        m.put("phases", byPhase);
+        return m;
+    }
+
+    /**
+     * Writes the ghanaemr_nhie_* families: latency histograms in seconds, byte and status counters.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        Map<String, Call> sorted = new TreeMap<String, Call>(calls);
+        double[] bounds = Histogram.LATENCY_MILLIS;
+        out.family("ghanaemr_nhie_connect_seconds", "histogram",
+                "Time to obtain a connection to NHIE, near zero when one is reused");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            out.histogram("ghanaemr_nhie_connect_seconds", e.getValue().connect.snapshot(), bounds, 0.001,
+                    "call", e.getKey());
+        }
+        out.family("ghanaemr_nhie_first_byte_seconds", "histogram", "Time from sending an NHIE call to its response headers");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            out.histogram("ghanaemr_nhie_first_byte_seconds", e.getValue().firstByte.snapshot(), bounds, 0.001,
+                    "call", e.getKey());
+        }
+        out.family("ghanaemr_nhie_request_seconds", "histogram", "Total time of an NHIE call including reading the response");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            out.histogram("ghanaemr_nhie_request_seconds", e.getValue().total.snapshot(), bounds, 0.001,
+                    "call", e.getKey());
+        }
+        out.family("ghanaemr_nhie_responses_total", "counter", "NHIE calls by HTTP status, error when none was received");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            for (Map.Entry<String, Long> s : e.getValue().getStatusCounts().entrySet()) {
+                out.sample("ghanaemr_nhie_responses_total", s.getValue(), "call", e.getKey(), "status", s.getKey());
+            }
+        }
+        out.family("ghanaemr_nhie_request_bytes_total", "counter", "Bytes sent in NHIE request bodies");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            out.sample("ghanaemr_nhie_request_bytes_total", e.getValue().requestBytes.sum(), "call", e.getKey());
+        }
+        out.family("ghanaemr_nhie_response_bytes_total", "counter", "Bytes received in NHIE response bodies");
+        for (Map.Entry<String, Call> e : sorted.entrySet()) {
+            out.sample("ghanaemr_nhie_response_bytes_total", e.getValue().responseBytes.sum(), "call", e.getKey());
+        }
+        out.family("ghanaemr_nhie_phase_seconds", "histogram", "Module time around NHIE calls: FHIR mapping and PII masking");
+        for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(phases).entrySet()) {
+            out.histogram("ghanaemr_nhie_phase_seconds", e.getValue().snapshot(), bounds, 0.001, "phase", e.getKey());
+        }
+    }
+
+    /** For tests. */
+    void reset() {
+        calls.clear();
+        phases.clear();
+    }
+
+    private static Map<String, Object> quantiles(Histogram.Snapshot snapshot) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        for (double q : QUANTILES) {
+            m.put("p" + Math.round(q * 100), Math.round(snapshot.quantile(q) * 10) / 10.0);
+        }
+        return m;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Counters for one kind of NHIE call.
+     */
+    public static final class Call {
+        private final Histogram connect = new Histogram(Histogram.LATENCY_MILLIS);
+        private final Histogram firstByte = new Histogram(Histogram.LATENCY_MILLIS);
+        private final Histogram total = new Histogram(Histogram.LATENCY_MILLIS);
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> statuses = new ConcurrentHashMap<String, LongAdder>();
+
+        /**
+         * @param connectNanos -1 when not measured
+         * @param firstByteNanos -1 when not measured
+         * @param status the HTTP status, or null when the call failed without a response
+         */
+        public void record(long connectNanos, long firstByteNanos, long totalNanos, long requestBytes,
+                           long responseBytes, Integer status) {
+            if (connectNanos >= 0) {
+                connect.observe(millis(connectNanos));
+            }
+            if (firstByteNanos >= 0) {
+                firstByte.observe(millis(firstByteNanos));
+            }
+            total.observe(millis(totalNanos));
+            this.requestBytes.add(Math.max(0, requestBytes));
+            this.responseBytes.add(Math.max(0, responseBytes));
+            String key = status != null ? status.toString() : "error";
+            LongAdder count = statuses.get(key);
+            if (count == null) {
+                count = statuses.computeIfAbsent(key, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        public Map<String, Long> getStatusCounts() {
+            Map<String, Long> m = new TreeMap<String, Long>();
+            for (Map.Entry<String, LongAdder> e : statuses.entrySet()) {
+                m.put(e.getKey(), e.getValue().sum());
+            }
+            return m;
+        }
+
+        public Histogram.Snapshot getTotal() {
+            return total.snapshot();
+        }
+
+        public Histogram.Snapshot getConnect() {
+            return connect.snapshot();
+        }
+
+        public Histogram.Snapshot getFirstByte() {
+            return firstByte.snapshot();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+    }
+}
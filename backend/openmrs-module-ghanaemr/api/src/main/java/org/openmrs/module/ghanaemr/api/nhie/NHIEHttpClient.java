@@ -1,17 +1,27 @@
 package org.openmrs.module.ghanaemr.api.nhie;
 
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -41,6 +51,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * - Request/response timeouts (30s connect, 60s read)
  * - Exponential backoff retry logic
  * - PII masking in logs
+ * - Per-call latency (connect, first byte, total), payload sizes and status counts, kept in
+ *   {@link NHIECallMetrics}
  * 
  * Configuration (openmrs-runtime.properties):
  * - ghana.nhie.mode=mock|sandbox|production
@@ -71,6 +83,10 @@ public class NHIEHttpClient {
     // Retry configuration
     private static final int[] RETRY_DELAYS_MS = {0, 5000, 30000, 120000, 600000, 3600000}; // 0s, 5s, 30s, 2m, 10m, 1h
     private static final int MAX_RETRY_ATTEMPTS = 8;
+
+    // HttpContext attributes set by TimingRequestExecutor
+    private static final String SENT_AT = "ghanaemr.nhie.sentAt";
+    private static final String FIRST_BYTE_AT = "ghanaemr.nhie.firstByteAt";
     
     private final CloseableHttpClient httpClient;
     private final ObjectMapper objectMapper;
@@ -117,11 +133,13 @@ public class NHIEHttpClient {
                 return HttpClients.custom()
                         .setDefaultRequestConfig(requestConfig)
                         .setSSLSocketFactory(sslSocketFactory)
+                        .setRequestExecutor(new TimingRequestExecutor())
                         .build();
             } else {
                 // Standard HTTP client (for mock and most sandbox environments)
                 return HttpClients.custom()
                         .setDefaultRequestConfig(requestConfig)
+                        .setRequestExecutor(new TimingRequestExecutor())
                         .build();
             }
         } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
@@ -222,9 +240,14 @@ public class NHIEHttpClient {
         String body = "grant_type=client_credentials&scope=patient.write encounter.write coverage.read";
         request.setEntity(new StringEntity(body, StandardCharsets.UTF_8));
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
+        HttpClientContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        boolean recorded = false;
+        try (CloseableHttpResponse response = httpClient.execute(request, context)) {
             int statusCode = response.getStatusLine().getStatusCode();
             String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            record("oauthToken", request, context, start, responseBody, statusCode);
+            recorded = true;
             
             if (statusCode == 200) {
                 Map<String, Object> tokenResponse = objectMapper.readValue(responseBody, Map.class);
@@ -237,6 +260,11 @@ public class NHIEHttpClient {
                 log.error("OAuth token request failed: {} - {}", statusCode, responseBody);
                 throw new IOException("Failed to acquire OAuth token: " + statusCode);
             }
+        } catch (IOException e) {
+            if (!recorded) {
+                record("oauthToken", request, context, start, null, null);
+            }
+            throw e;
         }
     }
     
@@ -281,11 +309,49 @@ public class NHIEHttpClient {
         
         log.info("Submitting patient to NHIE: POST {}", url);
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return handleResponse(response, "POST", url);
-        }
+        return send("submitPatient", request, "POST", url);
     }
     
+    /**
+     * Send changed elements of an NHIE Patient as FHIR PATCH
+     *
+     * @param nhiePatientId NHIE patient ID
+     * @param jsonPatch JSON Patch (RFC 6902) document
+     * @return NHIEResponse; 405/415 when NHIE does not accept PATCH for Patient
+     */
+    public NHIEResponse patchPatient(String nhiePatientId, String jsonPatch) throws IOException {
+        String url = getBaseUrl() + "/Patient/" + nhiePatientId;
+        HttpPatch request = new HttpPatch(url);
+        return sendPatientUpdate("patchPatient", request, "PATCH", url, "application/json-patch+json", jsonPatch);
+    }
+
+    /**
+     * Replace an NHIE Patient with the full resource (FHIR update)
+     *
+     * @param nhiePatientId NHIE patient ID
+     * @param patientJson FHIR R4 Patient resource as JSON string, with id set to nhiePatientId
+     */
+    public NHIEResponse updatePatient(String nhiePatientId, String patientJson) throws IOException {
+        String url = getBaseUrl() + "/Patient/" + nhiePatientId;
+        HttpPut request = new HttpPut(url);
+        return sendPatientUpdate("updatePatient", request, "PUT", url, "application/fhir+json", patientJson);
+    }
+
+    private NHIEResponse sendPatientUpdate(String call, HttpEntityEnclosingRequestBase request, String method,
+                                           String url, String contentType, String body) throws IOException {
+        request.setHeader("Content-Type", contentType);
+        request.setHeader("Accept", "application/fhir+json");
+        String token = getAccessToken();
+        if (token != null) {
+            request.setHeader("Authorization", "Bearer " + token);
+        }
+        request.setEntity(new StringEntity(body, StandardCharsets.UTF_8));
+
+        log.info("Updating patient in NHIE: {} {}", method, url);
+
+        return send(call, request, method, url);
+    }
+
     /**
      * Get Patient resource from NHIE by ID
      */
@@ -302,9 +368,7 @@ public class NHIEHttpClient {
         
         log.info("Fetching patient from NHIE: GET {}", url);
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return handleResponse(response, "GET", url);
-        }
+        return send("getPatient", request, "GET", url);
     }
     
     /**
@@ -323,9 +387,7 @@ public class NHIEHttpClient {
         
         log.info("Searching patient in NHIE: GET {}", maskIdentifier(url));
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return handleResponse(response, "GET", url);
-        }
+        return send("searchPatient", request, "GET", url);
     }
     
     /**
@@ -345,11 +407,64 @@ public class NHIEHttpClient {
         
         log.info("Checking NHIS coverage: GET {}", maskIdentifier(url));
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return handleResponse(response, "GET", url);
-        }
+        return send("checkCoverage", request, "GET", url);
     }
     
+    /**
+     * Execute a FHIR call and record its timings under the given call name
+     */
+    private NHIEResponse send(String call, HttpUriRequest request, String method, String url) throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        NHIEResponse nhieResponse;
+        try (CloseableHttpResponse response = httpClient.execute(request, context)) {
+            nhieResponse = handleResponse(response, method, url);
+        } catch (IOException e) {
+            record(call, request, context, start, null, null);
+            throw e;
+        }
+        record(call, request, context, start, nhieResponse.getResponseBody(), nhieResponse.getStatusCode());
+        return nhieResponse;
+    }
+
+    /**
+     * @param status null when the call failed without a response
+     */
+    private static void record(String call, HttpUriRequest request, HttpContext context, long start,
+                               String responseBody, Integer status) {
+        long total = System.nanoTime() - start;
+        Long sentAt = (Long) context.getAttribute(SENT_AT);
+        Long firstByteAt = (Long) context.getAttribute(FIRST_BYTE_AT);
+        long requestBytes = 0;
+        if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+            requestBytes = ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+        }
+        NHIECallMetrics.get().call(call).record(sentAt != null ? sentAt - start : -1,
+                sentAt != null && firstByteAt != null ? firstByteAt - sentAt : -1, total, requestBytes,
+                utf8Length(responseBody), status);
+    }
+
+    static long utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
     /**
      * Handle HTTP response with comprehensive error handling
      */
@@ -479,9 +594,7 @@ public class NHIEHttpClient {
             request.setHeader("Authorization", "Bearer " + token);
         }
         request.setEntity(new StringEntity(encounterJson, StandardCharsets.UTF_8));
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return handleResponse(response, "POST", url);
-        }
+        return send("submitEncounter", request, "POST", url);
     }
 
     /**
@@ -491,6 +604,25 @@ public class NHIEHttpClient {
         return handleResponse(response, "POST", "encounter");
     }
     
+    /**
+     * Inner class: stamps when a request is written to its (already connected) connection and when
+     * the response headers arrive, so connect time and time to first byte can be told apart
+     */
+    private static class TimingRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            // a retried or redirected call keeps its first send time
+            if (context.getAttribute(SENT_AT) == null) {
+                context.setAttribute(SENT_AT, System.nanoTime());
+            }
+            HttpResponse response = super.execute(request, conn, context);
+            context.setAttribute(FIRST_BYTE_AT, System.nanoTime());
+            return response;
+        }
+    }
+
     /**
      * Inner class: OAuth 2.0 token with expiry tracking
      */
@@ -47,6 +47,10 @@ public interface NHIEIntegrationService {
      * 4. Log transaction to nhie_transaction_log (PII masked)
      * 5. Store NHIE patient ID as patient attribute for future reference
      * 
+     * A patient that already has an NHIE patient ID is not created again: when change tracking is
+     * configured, only the FHIR elements changed since the last sync are sent (PATCH, or PUT when
+     * there is no record of the last sync), and nothing is sent if nothing changed.
+     * 
      * @param patient OpenMRS patient to sync
      * @return NHIE patient ID (e.g., "patient-123" from NHIE response)
      * @throws NHIEIntegrationException if sync fails (network error, validation error, etc.)
@@ -54,6 +58,28 @@ public interface NHIEIntegrationService {
      */
     String syncPatientToNHIE(Patient patient) throws NHIEIntegrationException;
     
+    /**
+     * Same as {@link #syncPatientToNHIE(Patient)}, but logs the attempt against an existing
+     * nhie_transaction_log row instead of a new one. NHIERetryJob passes the transaction_id of the
+     * outbox or failed row it is draining, so a retry does not leave a second row behind to be
+     * submitted again.
+     * 
+     * @param patient OpenMRS patient to sync
+     * @param transactionId transaction_id of the row to log against
+     * @return NHIE patient ID
+     * @throws NHIEIntegrationException if sync fails
+     */
+    String syncPatientToNHIE(Patient patient, String transactionId) throws NHIEIntegrationException;
+    
+    /**
+     * Queue an NHIE update if a synced patient's FHIR-relevant fields changed since the last sync.
+     * Called on every patient save; a save that changes nothing NHIE receives costs no NHIE traffic.
+     * 
+     * @param patient OpenMRS patient that was saved
+     * @return true if an update is waiting for NHIERetryJob
+     */
+    boolean queueSyncIfChanged(Patient patient);
+    
     /**
      * Handle 409 Conflict response (duplicate patient detected by NHIE).
      * 
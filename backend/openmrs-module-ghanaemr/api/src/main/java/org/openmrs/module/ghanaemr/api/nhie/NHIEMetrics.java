@@ -0,0 +1,471 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import org.openmrs.module.ghanaemr.api.metrics.MetricsCollector;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+import org.openmrs.module.ghanaemr.api.nhie.db.NHIEMetricsDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory counts of ghanaemr_nhie_transaction_log rows by status, by resource type and status,
+ * and by HTTP response status, plus the failed-retryable count, successes in the last 24 hours and
+ * the latest update, so the NHIE metrics endpoint answers without touching the log.
+ *
+ * DefaultNHIETransactionLogger and NHIERetryJob report each row they write as a transition from
+ * its previous state ({@link #record}); the bulk import reports its outbox rows once their chunk
+ * commits ({@link #recordNewAfterCommit}). Writers that cannot tell a new row from an existing one
+ * (the patient-change outbox, DLQ requeue) ask for a reconcile instead. Reconciliation replaces the
+ * counters from one GROUP BY over the log, on request and every few minutes, which also corrects
+ * anything a crash or a manual fix left behind.
+ * Successes are kept in hourly buckets of the row's created_at, the same hour reconciliation
+ * counts them in, so the 24 hour window moves an hour at a time.
+ */
+public class NHIEMetrics implements MetricsCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(NHIEMetrics.class);
+
+    public static final long DEFAULT_RECONCILE_SECONDS = 300;
+
+    /** Response statuses NHIERetryJob retries; a FAILED row without a response is retryable too. */
+    static final Set<Integer> RETRYABLE_STATUSES = Collections.unmodifiableSet(
+            new HashSet<Integer>(Arrays.asList(401, 429, 500, 502, 503)));
+
+    static final int WINDOW_HOURS = 24;
+    static final String NO_RESPONSE = "none";
+    static final String UNKNOWN_RESOURCE = "unknown";
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private NHIEMetricsDAO dao;
+    private Clock clock = Clock.systemDefaultZone();
+
+    /** Guards every counter below, so one transition moves all of its counts together. */
+    private final Object lock = new Object();
+    private final Map<String, Long> byStatus = new TreeMap<String, Long>();
+    private final Map<String, Map<String, Long>> byResourceType = new TreeMap<String, Map<String, Long>>();
+    private final Map<String, Long> byHttpStatus = new TreeMap<String, Long>();
+    private long failedRetryable;
+    /** Successes per hour since the epoch, in slot hour % WINDOW_HOURS. */
+    private final long[] successHour = new long[WINDOW_HOURS];
+    private final long[] successCount = new long[WINDOW_HOURS];
+    private long lastUpdatedAt;
+
+    private volatile boolean ready;
+    private ScheduledExecutorService scheduler;
+    /** Set while a requested reconcile waits to run, so a burst of requests runs one. */
+    private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+
+    private long transitions;
+    private long reconciles;
+    private long reconcileMillis;
+    private long lastReconciledAt;
+    private long lastDrift;
+
+    public void setDao(NHIEMetricsDAO dao) {
+        this.dao = dao;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * True once the counters have been loaded from the log; until then callers query the log.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Loads the counters, then reconciles every reconcileSeconds. Called by GhanaEMRActivator.
+     */
+    public synchronized void start(long reconcileSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ghanaemr-nhie-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    log.warn("Could not reconcile NHIE metrics", e);
+                }
+            }
+        }, 0, Math.max(1, reconcileSeconds), TimeUnit.SECONDS);
+    }
+
+    public synchronized void shutdown() {
+        ready = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reconciles soon on the background thread, for writers that do not report transitions.
+     * Requests made before a waiting reconcile starts share it.
+     */
+    public synchronized void requestReconcile() {
+        if (scheduler != null && reconcileRequested.compareAndSet(false, true)) {
+            scheduler.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    reconcileRequested.set(false);
+                    try {
+                        reconcile();
+                    } catch (Exception e) {
+                        log.warn("Could not reconcile NHIE metrics", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts one written log row.
+     *
+     * @param before the row's state before the write, or null for a new row
+     * @param after the row's state after the write
+     */
+    public void record(State before, State after) {
+        if (!ready || after == null) {
+            return;
+        }
+        long now = clock.millis();
+        synchronized (lock) {
+            if (before != null) {
+                add(before, -1);
+            }
+            add(after, 1);
+            if ("SUCCESS".equals(after.status) && (before == null || !"SUCCESS".equals(before.status))) {
+                long created = after.createdAt != null ? Math.min(after.createdAt, now) : now;
+                addSuccess(created / HOUR_MILLIS, 1, now);
+            }
+            lastUpdatedAt = Math.max(lastUpdatedAt, now);
+            transitions++;
+        }
+    }
+
+    /**
+     * Counts rows inserted in the caller's transaction once it commits, so rows of a rolled-back
+     * transaction are never counted; outside a transaction they are counted at once.
+     *
+     * @param after the state of each new row
+     * @param rows the number of rows inserted
+     */
+    public void recordNewAfterCommit(final State after, final int rows) {
+        if (!ready || rows <= 0) {
+            return;
+        }
+        afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < rows; i++) {
+                    record(null, after);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@link #requestReconcile} once the caller's transaction commits, so the reconcile sees its rows.
+     */
+    public void requestReconcileAfterCommit() {
+        if (!ready) {
+            return;
+        }
+        afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                requestReconcile();
+            }
+        });
+    }
+
+    private static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Replaces the counters with one grouped count of the log.
+     */
+    public void reconcile() {
+        long start = clock.millis();
+        List<Count> counts = dao.countByState(new Date(start), WINDOW_HOURS);
+        long nowHour = start / HOUR_MILLIS;
+        synchronized (lock) {
+            Map<String, Long> previous = new TreeMap<String, Long>(byStatus);
+            byStatus.clear();
+            byResourceType.clear();
+            byHttpStatus.clear();
+            failedRetryable = 0;
+            Arrays.fill(successHour, 0);
+            Arrays.fill(successCount, 0);
+            lastUpdatedAt = 0;
+            for (Count c : counts) {
+                add(c.state, c.rows);
+                if (c.successHoursAgo != null) {
+                    addSuccess(nowHour - Math.min(c.successHoursAgo, WINDOW_HOURS - 1), c.rows, start);
+                }
+                if (c.lastUpdatedAt != null) {
+                    lastUpdatedAt = Math.max(lastUpdatedAt, c.lastUpdatedAt);
+                }
+            }
+            long drift = 0;
+            Set<String> statuses = new HashSet<String>(previous.keySet());
+            statuses.addAll(byStatus.keySet());
+            for (String status : statuses) {
+                drift += Math.abs(value(byStatus, status) - value(previous, status));
+            }
+            lastDrift = ready ? drift : 0;
+            reconciles++;
+            lastReconciledAt = clock.millis();
+            reconcileMillis += lastReconciledAt - start;
+        }
+        if (ready && lastDrift > 0) {
+            log.debug("NHIE metrics reconciled with drift of {} rows", lastDrift);
+        }
+        ready = true;
+    }
+
+    /**
+     * The metrics endpoint body: dlqCount, failedRetryable, success24h and lastUpdatedAt as before,
+     * plus the counts by status, resource type and HTTP status.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        long now = clock.millis();
+        synchronized (lock) {
+            m.put("dlqCount", value(byStatus, "DLQ"));
+            m.put("failedRetryable", failedRetryable);
+            m.put("success24h", success24h(now / HOUR_MILLIS));
+            m.put("lastUpdatedAt", lastUpdatedAt == 0 ? null
+                    : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(lastUpdatedAt)));
+            m.put("byStatus", new LinkedHashMap<String, Long>(byStatus));
+            Map<String, Object> resources = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Map<String, Long>> e : byResourceType.entrySet()) {
+                resources.put(e.getKey(), new LinkedHashMap<String, Long>(e.getValue()));
+            }
+            m.put("byResourceType", resources);
+            m.put("byHttpStatus", new LinkedHashMap<String, Long>(byHttpStatus));
+            m.put("reconciledAt", lastReconciledAt);
+        }
+        return m;
+    }
+
+    /**
+     * Writes the log counts as gauges; nothing until the counters are loaded.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        if (!ready) {
+            return;
+        }
+        Map<String, Map<String, Long>> resources = new TreeMap<String, Map<String, Long>>();
+        long retryable;
+        long success;
+        synchronized (lock) {
+            for (Map.Entry<String, Map<String, Long>> e : byResourceType.entrySet()) {
+                resources.put(e.getKey(), new TreeMap<String, Long>(e.getValue()));
+            }
+            retryable = failedRetryable;
+            success = success24h(clock.millis() / HOUR_MILLIS);
+        }
+        out.family("ghanaemr_nhie_log_rows", "gauge", "NHIE transaction log rows by resource type and status");
+        for (Map.Entry<String, Map<String, Long>> e : resources.entrySet()) {
+            for (Map.Entry<String, Long> status : e.getValue().entrySet()) {
+                out.sample("ghanaemr_nhie_log_rows", status.getValue(), "resource_type", e.getKey(), "status",
+                        status.getKey());
+            }
+        }
+        out.family("ghanaemr_nhie_failed_retryable", "gauge", "FAILED NHIE log rows the retry job will pick up");
+        out.sample("ghanaemr_nhie_failed_retryable", retryable);
+        out.family("ghanaemr_nhie_success_24h", "gauge", "NHIE log rows that succeeded in the last 24 hours");
+        out.sample("ghanaemr_nhie_success_24h", success);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("ready", ready);
+        synchronized (lock) {
+            stats.put("transitions", transitions);
+            stats.put("reconciles", reconciles);
+            stats.put("reconcileMillis", reconcileMillis);
+            stats.put("lastReconciledAt", lastReconciledAt);
+            stats.put("lastDrift", lastDrift);
+        }
+        return stats;
+    }
+
+    static boolean isFailedRetryable(State state) {
+        return "FAILED".equals(state.status)
+                && (state.responseStatus == null || RETRYABLE_STATUSES.contains(state.responseStatus));
+    }
+
+    private void add(State state, long delta) {
+        String status = state.status != null ? state.status : UNKNOWN_RESOURCE;
+        byStatus.merge(status, delta, Long::sum);
+        String resource = state.resourceType != null ? state.resourceType : UNKNOWN_RESOURCE;
+        Map<String, Long> statuses = byResourceType.get(resource);
+        if (statuses == null) {
+            statuses = new TreeMap<String, Long>();
+            byResourceType.put(resource, statuses);
+        }
+        statuses.merge(status, delta, Long::sum);
+        byHttpStatus.merge(state.responseStatus != null ? String.valueOf(state.responseStatus) : NO_RESPONSE, delta,
+                Long::sum);
+        if (isFailedRetryable(state)) {
+            failedRetryable += delta;
+        }
+    }
+
+    private void addSuccess(long hour, long rows, long now) {
+        if (hour <= now / HOUR_MILLIS - WINDOW_HOURS) {
+            return;
+        }
+        int slot = (int) (hour % WINDOW_HOURS);
+        if (successHour[slot] != hour) {
+            successHour[slot] = hour;
+            successCount[slot] = 0;
+        }
+        successCount[slot] += rows;
+    }
+
+    private long success24h(long nowHour) {
+        long total = 0;
+        for (int i = 0; i < WINDOW_HOURS; i++) {
+            if (successHour[i] > nowHour - WINDOW_HOURS && successHour[i] <= nowHour) {
+                total += successCount[i];
+            }
+        }
+        return total;
+    }
+
+    private static long value(Map<String, Long> counts, String key) {
+        Long v = counts.get(key);
+        return v != null ? v : 0L;
+    }
+
+    /**
+     * The counted columns of one log row.
+     */
+    public static final class State {
+        private final String status;
+        private final String resourceType;
+        private final Integer responseStatus;
+        private final Long createdAt;
+
+        public State(String status, String resourceType, Integer responseStatus) {
+            this(status, resourceType, responseStatus, null);
+        }
+
+        /**
+         * @param createdAt the row's created_at in millis, or null if unknown, in which case a
+         *            success is counted in the current hour
+         */
+        public State(String status, String resourceType, Integer responseStatus, Long createdAt) {
+            this.status = status;
+            this.resourceType = resourceType;
+            this.responseStatus = responseStatus;
+            this.createdAt = createdAt;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public Integer getResponseStatus() {
+            return responseStatus;
+        }
+
+        public Long getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    /**
+     * One group of the reconciliation query.
+     */
+    public static final class Count {
+        private final State state;
+        private final Integer successHoursAgo;
+        private final long rows;
+        private final Long lastUpdatedAt;
+
+        /**
+         * @param successHoursAgo whole hours since created_at for SUCCESS rows inside the window,
+         *            otherwise null
+         * @param lastUpdatedAt latest updated_at in millis, or null
+         */
+        public Count(State state, Integer successHoursAgo, long rows, Long lastUpdatedAt) {
+            this.state = state;
+            this.successHoursAgo = successHoursAgo;
+            this.rows = rows;
+            this.lastUpdatedAt = lastUpdatedAt;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public Integer getSuccessHoursAgo() {
+            return successHoursAgo;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public Long getLastUpdatedAt() {
+            return lastUpdatedAt;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonAddress;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queues an NHIE update when a synced patient is edited anywhere in the system (this module, the
+ * core UI, REST). Declared as advice on PatientService and PersonService in config.xml. The outbox
+ * row is written in the transaction of the edit and sent by NHIERetryJob; saves that do not change
+ * what NHIE receives are filtered out by {@link NHIEIntegrationService#queueSyncIfChanged}.
+ */
+public class NHIEPatientChangeAdvice implements AfterReturningAdvice {
+
+    private static final Logger log = LoggerFactory.getLogger(NHIEPatientChangeAdvice.class);
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) {
+        String name = method.getName();
+        if (!(name.startsWith("save") || name.startsWith("void") || name.startsWith("unvoid"))) {
+            return;
+        }
+        List<Person> persons = new ArrayList<Person>();
+        collect(returnValue, persons);
+        if (args != null) {
+            for (Object arg : args) {
+                collect(arg, persons);
+            }
+        }
+        if (persons.isEmpty()) {
+            return;
+        }
+        NHIEIntegrationService service = getService();
+        if (service == null) {
+            return;
+        }
+        for (Person person : persons) {
+            Patient patient = toPatient(person);
+            if (patient == null) {
+                continue;
+            }
+            try {
+                service.queueSyncIfChanged(patient);
+            } catch (Exception e) {
+                // never fail the edit itself
+                log.warn("Could not queue NHIE update for patient {}: {}", patient.getPatientId(), e.getMessage());
+            }
+        }
+    }
+
+    private static void collect(Object value, List<Person> persons) {
+        Person person = null;
+        if (value instanceof Person) {
+            person = (Person) value;
+        } else if (value instanceof PersonName) {
+            person = ((PersonName) value).getPerson();
+        } else if (value instanceof PersonAddress) {
+            person = ((PersonAddress) value).getPerson();
+        } else if (value instanceof PersonAttribute) {
+            person = ((PersonAttribute) value).getPerson();
+        } else if (value instanceof PatientIdentifier) {
+            person = ((PatientIdentifier) value).getPatient();
+        }
+        if (person != null && person.getPersonId() != null && !persons.contains(person)) {
+            persons.add(person);
+        }
+    }
+
+    private static Patient toPatient(Person person) {
+        if (person instanceof Patient) {
+            return (Patient) person;
+        }
+        return person.getIsPatient() ? Context.getPatientService().getPatient(person.getPersonId()) : null;
+    }
+
+    private static NHIEIntegrationService getService() {
+        try {
+            return Context.getRegisteredComponents(NHIEIntegrationService.class).stream().findFirst().orElse(null);
+        } catch (Exception e) {
+            log.debug("NHIEIntegrationService not available: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openmrs.module.ghanaemr.api.fhir.FhirPatientMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the FHIR PATCH (JSON Patch, RFC 6902) that brings the copy of a Patient held by NHIE up
+ * to date. Elements are compared by the fingerprints of {@link FhirPatientMapper#fingerprintElements}
+ * recorded at the last successful sync, and only changed top-level elements are sent: add when
+ * the element is new, remove when it is gone, replace otherwise.
+ */
+public final class NHIEPatientDelta {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private NHIEPatientDelta() {
+    }
+
+    /**
+     * @return names of the elements whose fingerprints differ, in {@link FhirPatientMapper#ELEMENTS} order
+     */
+    public static List<String> changedElements(long[] previous, long[] current) {
+        List<String> changed = new ArrayList<String>();
+        for (int i = 0; i < FhirPatientMapper.ELEMENTS.size(); i++) {
+            if (previous[i] != current[i]) {
+                changed.add(FhirPatientMapper.ELEMENTS.get(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param previous element fingerprints at the last sync
+     * @param current element fingerprints now
+     * @param fhirPatientJson the patient as FHIR JSON now
+     * @return the JSON Patch document, or null if nothing changed
+     */
+    public static String jsonPatch(long[] previous, long[] current, String fhirPatientJson) throws IOException {
+        JsonNode resource = MAPPER.readTree(fhirPatientJson);
+        ArrayNode ops = MAPPER.createArrayNode();
+        for (int i = 0; i < FhirPatientMapper.ELEMENTS.size(); i++) {
+            if (previous[i] == current[i]) {
+                continue;
+            }
+            String element = FhirPatientMapper.ELEMENTS.get(i);
+            JsonNode value = current[i] == FhirPatientMapper.ABSENT ? null : resource.get(element);
+            boolean existed = previous[i] != FhirPatientMapper.ABSENT;
+            if (value == null && !existed) {
+                continue;
+            }
+            ObjectNode op = ops.addObject();
+            op.put("op", value == null ? "remove" : existed ? "replace" : "add");
+            op.put("path", "/" + element);
+            if (value != null) {
+                op.set("value", value);
+            }
+        }
+        return ops.size() == 0 ? null : MAPPER.writeValueAsString(ops);
+    }
+}
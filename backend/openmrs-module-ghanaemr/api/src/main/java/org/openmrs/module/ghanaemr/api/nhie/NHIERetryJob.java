@@ -9,6 +9,12 @@ import org.springframework.stereotype.Component;
 /**
  * NHIE retry scheduler scaffold.
  *
+ * Also drains the outbox: QUEUED rows written by the bulk patient import and by patient edits are
+ * submitted here instead of during the import or save. ghana.nhie.retry.batchSize sets the rows
+ * handled per tick. Each submission is logged against the row being drained (its transaction_id),
+ * so a retry never leaves a second row to be submitted again. Rows it marks SUCCESS or DLQ are
+ * counted by {@link NHIEMetrics}.
+ *
  * Aligns with AGENTS.md retry policy. This scaffold intentionally logs intent without
  * implementing full DB polling logic to avoid unintended load; follow-up will add:
  * - Query ghanaemr_nhie_transaction_log for FAILED retryable rows whose next_retry_at <= now
@@ -27,7 +33,7 @@ public class NHIERetryJob {
     public void tick() {
         if (!isEnabled()) return;
         try {
-            processBatch(10);
+            processBatch(getBatchSize());
         } catch (Exception e) {
             log.error("NHIERetryJob tick failed", e);
         }
@@ -35,8 +41,9 @@ public class NHIERetryJob {
 
     private void processBatch(int limit) {
         try {
-            String sql = "SELECT id, patient_id, retry_count FROM ghanaemr_nhie_transaction_log " +
-                    "WHERE status='FAILED' AND (next_retry_at IS NULL OR next_retry_at <= NOW()) " +
+            String sql = "SELECT id, patient_id, retry_count, status, resource_type, response_status, created_at, transaction_id " +
+                    "FROM ghanaemr_nhie_transaction_log " +
+                    "WHERE status IN ('FAILED','QUEUED') AND (next_retry_at IS NULL OR next_retry_at <= NOW()) " +
                     "AND (response_status IN (401,429,500,502,503) OR response_status IS NULL) " +
                     "AND retry_count < " + getMaxAttempts() + " ORDER BY created_at LIMIT " + limit;
             @SuppressWarnings("unchecked")
@@ -45,37 +52,105 @@ public class NHIERetryJob {
 
             org.openmrs.api.PatientService ps = Context.getPatientService();
             org.openmrs.module.ghanaemr.api.nhie.NHIEIntegrationService svc = getNhieService();
+            // several rows for one patient (e.g. import outbox + failed registration sync) need one submission
+            java.util.Map<Integer, String> synced = new java.util.HashMap<>();
+            NHIEMetrics metrics = metrics();
 
             for (java.util.List<Object> r : rows) {
                 Long id = toLong(r.get(0));
                 Integer pid = toInt(r.get(1));
                 Integer attempt = toInt(r.get(2));
                 if (id == null || pid == null) continue;
+                NHIEMetrics.State before = toState(r.subList(3, 7));
+                if (synced.containsKey(pid)) {
+                    markSuccess(id, synced.get(pid));
+                    record(metrics, before, "SUCCESS");
+                    continue;
+                }
                 org.openmrs.Patient p = ps.getPatient(pid);
                 if (p == null) {
                     markDlq(id, "Patient not found");
+                    record(metrics, before, "DLQ");
                     continue;
                 }
+                String transactionId = (String) r.get(7);
                 try {
-                    String nhieId = svc.syncPatientToNHIE(p);
+                    String nhieId = transactionId != null ? svc.syncPatientToNHIE(p, transactionId) : svc.syncPatientToNHIE(p);
+                    synced.put(pid, nhieId);
+                    // the sync may have logged against this row already, and that write was counted
+                    before = currentState(metrics, id, before);
                     markSuccess(id, nhieId);
+                    record(metrics, before, "SUCCESS");
                 } catch (org.openmrs.module.ghanaemr.exception.NHIEIntegrationException ex) {
                     // Check if exception is retryable (isRetryable() returns Boolean, can be null)
                     Boolean retryable = ex.isRetryable();
                     if (retryable != null && retryable && attempt + 1 < getMaxAttempts()) {
                         scheduleRetry(id, attempt + 1);
                     } else {
+                        before = currentState(metrics, id, before);
                         markDlq(id, ex.getMessage());
+                        record(metrics, before, "DLQ");
                     }
                 } catch (Exception ex) {
                     scheduleRetry(id, attempt + 1);
                 }
             }
+            invalidateMetrics();
         } catch (Exception e) {
             log.error("Retry batch failed", e);
         }
     }
 
+    private static NHIEMetrics.State toState(java.util.List<Object> r) {
+        return new NHIEMetrics.State((String) r.get(0), (String) r.get(1), toInt(r.get(2)),
+                r.get(3) instanceof java.util.Date ? ((java.util.Date) r.get(3)).getTime() : null);
+    }
+
+    /**
+     * The row's state as it is now, or the given one when metrics are not counted or the row cannot
+     * be read.
+     */
+    private NHIEMetrics.State currentState(NHIEMetrics metrics, Long id, NHIEMetrics.State fallback) {
+        if (metrics == null) {
+            return fallback;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            java.util.List<java.util.List<Object>> rows = Context.getAdministrationService().executeSQL(
+                    "SELECT status, resource_type, response_status, created_at FROM ghanaemr_nhie_transaction_log WHERE id=" + id,
+                    true);
+            return rows == null || rows.isEmpty() ? fallback : toState(rows.get(0));
+        } catch (Exception e) {
+            log.debug("Could not read NHIE log row {}: {}", id, e.getMessage());
+            return fallback;
+        }
+    }
+
+    private static void record(NHIEMetrics metrics, NHIEMetrics.State before, String status) {
+        if (metrics != null) {
+            metrics.record(before, new NHIEMetrics.State(status, before.getResourceType(), before.getResponseStatus(),
+                    before.getCreatedAt()));
+        }
+    }
+
+    private NHIEMetrics metrics() {
+        try {
+            return Context.getRegisteredComponents(NHIEMetrics.class).stream().findFirst().orElse(null);
+        } catch (Exception e) {
+            log.debug("NHIE metrics not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void invalidateMetrics() {
+        try {
+            Context.getRegisteredComponents(org.openmrs.module.ghanaemr.api.reports.ReportCache.class).stream().findFirst()
+                    .ifPresent(c -> c.invalidate(org.openmrs.module.ghanaemr.api.reports.ReportCache.Topic.NHIE_LOG));
+        } catch (Exception e) {
+            log.debug("Report cache not available: {}", e.getMessage());
+        }
+    }
+
     private org.openmrs.module.ghanaemr.api.nhie.NHIEIntegrationService getNhieService() {
         try {
             return Context.getRegisteredComponents(org.openmrs.module.ghanaemr.api.nhie.NHIEIntegrationService.class)
@@ -126,6 +201,11 @@ public class NHIERetryJob {
         catch (Exception ignored) { return 8; }
     }
 
+    private int getBatchSize() {
+        try { return Math.max(1, Integer.parseInt(Context.getAdministrationService().getGlobalProperty("ghana.nhie.retry.batchSize", "10"))); }
+        catch (Exception ignored) { return 10; }
+    }
+
     private long getLongProp(String key, long def) {
         try { return Long.parseLong(Context.getAdministrationService().getGlobalProperty(key, Long.toString(def))); }
         catch (Exception ignored) { return def; }
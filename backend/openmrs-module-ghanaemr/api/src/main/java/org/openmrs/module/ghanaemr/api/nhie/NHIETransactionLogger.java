@@ -6,6 +6,10 @@ package org.openmrs.module.ghanaemr.api.nhie;
  * Note: PII should be masked before calling this logger.
  */
 public interface NHIETransactionLogger {
+    /**
+     * Write a transaction log entry. Logging again under an existing transaction ID (e.g. an
+     * outbox row being drained) updates that entry with the request actually sent and its outcome.
+     */
     void log(String transactionId,
              Integer patientId,
              String resourceType,
@@ -0,0 +1,18 @@
+package org.openmrs.module.ghanaemr.api.nhie.db;
+
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The grouped count of ghanaemr_nhie_transaction_log that {@link NHIEMetrics} reconciles from.
+ */
+public interface NHIEMetricsDAO {
+
+    /**
+     * Counts log rows by status, resource type and response status in one query; SUCCESS rows
+     * created in the windowHours before now are further split by whole hours since creation.
+     */
+    List<NHIEMetrics.Count> countByState(Date now, int windowHours);
+}
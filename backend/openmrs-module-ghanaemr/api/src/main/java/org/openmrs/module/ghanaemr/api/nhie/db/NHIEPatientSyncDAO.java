@@ -0,0 +1,35 @@
+package org.openmrs.module.ghanaemr.api.nhie.db;
+
+/**
+ * What was last sent to NHIE for each synced patient, as element fingerprints from
+ * FhirPatientMapper, and the outbox rows that schedule an update.
+ */
+public interface NHIEPatientSyncDAO {
+
+    /**
+     * @return element fingerprints recorded at the last successful sync, or null if none
+     */
+    long[] getElementFingerprints(int patientId);
+
+    /**
+     * @return combined fingerprint recorded at the last successful sync, or null if none
+     */
+    Long getFingerprint(int patientId);
+
+    /**
+     * Records a successful sync, replacing any earlier record.
+     */
+    void save(int patientId, String nhiePatientId, long fingerprint, long[] elementFingerprints);
+
+    /**
+     * Forgets the last recorded sync, so the next sync sends the whole resource.
+     */
+    void clear(int patientId);
+
+    /**
+     * Adds a QUEUED update row for NHIERetryJob unless the patient already has one waiting.
+     *
+     * @return true once an update is waiting, whether added now or already queued
+     */
+    boolean enqueueUpdate(int patientId, int creatorId);
+}
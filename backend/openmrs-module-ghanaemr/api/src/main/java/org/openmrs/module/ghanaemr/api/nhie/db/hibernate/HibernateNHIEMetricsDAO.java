@@ -0,0 +1,63 @@
+package org.openmrs.module.ghanaemr.api.nhie.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+import org.openmrs.module.ghanaemr.api.nhie.db.NHIEMetricsDAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs on its own session: reconciliation happens on the metrics thread, outside any request.
+ */
+public class HibernateNHIEMetricsDAO implements NHIEMetricsDAO {
+
+    /** A few dozen groups however large the log grows; the hour split only applies to recent successes. */
+    static final String COUNT_BY_STATE =
+            "SELECT status, resource_type, response_status, " +
+            "CASE WHEN status = 'SUCCESS' AND created_at >= ? " +
+            "THEN FLOOR(TIMESTAMPDIFF(SECOND, created_at, ?) / 3600) END AS success_hours_ago, " +
+            "COUNT(*), MAX(updated_at) " +
+            "FROM ghanaemr_nhie_transaction_log " +
+            "GROUP BY status, resource_type, response_status, success_hours_ago";
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<NHIEMetrics.Count> countByState(final Date now, final int windowHours) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.doReturningWork(connection -> {
+                List<NHIEMetrics.Count> counts = new ArrayList<NHIEMetrics.Count>();
+                try (PreparedStatement ps = connection.prepareStatement(COUNT_BY_STATE)) {
+                    ps.setTimestamp(1, new Timestamp(now.getTime() - windowHours * 3600000L));
+                    ps.setTimestamp(2, new Timestamp(now.getTime()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            int responseStatus = rs.getInt(3);
+                            Integer response = rs.wasNull() ? null : responseStatus;
+                            int hoursAgo = rs.getInt(4);
+                            Integer successHoursAgo = rs.wasNull() ? null : hoursAgo;
+                            Timestamp updated = rs.getTimestamp(6);
+                            counts.add(new NHIEMetrics.Count(
+                                    new NHIEMetrics.State(rs.getString(1), rs.getString(2), response),
+                                    successHoursAgo, rs.getLong(5), updated != null ? updated.getTime() : null));
+                        }
+                    }
+                }
+                return counts;
+            });
+        } finally {
+            session.close();
+        }
+    }
+}
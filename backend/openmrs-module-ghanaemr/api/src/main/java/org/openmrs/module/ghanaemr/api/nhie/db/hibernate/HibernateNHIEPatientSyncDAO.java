@@ -0,0 +1,140 @@
+package org.openmrs.module.ghanaemr.api.nhie.db.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+import org.openmrs.module.ghanaemr.api.nhie.db.NHIEPatientSyncDAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Native SQL on the current session's connection, so sync records and outbox rows commit with
+ * the patient change that caused them.
+ */
+public class HibernateNHIEPatientSyncDAO implements NHIEPatientSyncDAO {
+
+    private static final String SELECT =
+            "SELECT fingerprint, identifier_fp, name_fp, gender_fp, birth_date_fp, telecom_fp, address_fp " +
+            "FROM ghanaemr_nhie_patient_sync WHERE patient_id = ?";
+
+    private static final String UPSERT =
+            "INSERT INTO ghanaemr_nhie_patient_sync (patient_id, nhie_patient_id, fingerprint, identifier_fp, name_fp, " +
+            "gender_fp, birth_date_fp, telecom_fp, address_fp, date_synced) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE nhie_patient_id = VALUES(nhie_patient_id), fingerprint = VALUES(fingerprint), " +
+            "identifier_fp = VALUES(identifier_fp), name_fp = VALUES(name_fp), gender_fp = VALUES(gender_fp), " +
+            "birth_date_fp = VALUES(birth_date_fp), telecom_fp = VALUES(telecom_fp), " +
+            "address_fp = VALUES(address_fp), date_synced = VALUES(date_synced)";
+
+    /**
+     * uk_nhie_log_queued_patient allows one QUEUED Patient row per patient, so however often and
+     * from however many sessions a patient is saved, a single update waits; the duplicate insert
+     * leaves the waiting row as it is.
+     */
+    private static final String ENQUEUE_UPDATE =
+            "INSERT INTO ghanaemr_nhie_transaction_log (transaction_id, patient_id, resource_type, http_method, " +
+            "endpoint, retry_count, status, created_at, updated_at, creator) " +
+            "VALUES (?, ?, 'Patient', 'PATCH', '/Patient', 0, 'QUEUED', ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE retry_count = retry_count";
+
+    private static final String CLEAR = "DELETE FROM ghanaemr_nhie_patient_sync WHERE patient_id = ?";
+
+    private static final int ELEMENTS = 6;
+
+    private SessionFactory sessionFactory;
+
+    private NHIEMetrics metrics;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public void setMetrics(NHIEMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long[] getElementFingerprints(final int patientId) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SELECT)) {
+                ps.setInt(1, patientId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    long[] elements = new long[ELEMENTS];
+                    for (int i = 0; i < ELEMENTS; i++) {
+                        elements[i] = rs.getLong(i + 2);
+                    }
+                    return elements;
+                }
+            }
+        });
+    }
+
+    @Override
+    public Long getFingerprint(final int patientId) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SELECT)) {
+                ps.setInt(1, patientId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void save(final int patientId, final String nhiePatientId, final long fingerprint,
+                     final long[] elementFingerprints) {
+        if (elementFingerprints.length != ELEMENTS) {
+            throw new IllegalArgumentException("Expected " + ELEMENTS + " element fingerprints");
+        }
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(UPSERT)) {
+                ps.setInt(1, patientId);
+                ps.setString(2, nhiePatientId);
+                ps.setLong(3, fingerprint);
+                for (int i = 0; i < ELEMENTS; i++) {
+                    ps.setLong(4 + i, elementFingerprints[i]);
+                }
+                ps.setTimestamp(10, new Timestamp(System.currentTimeMillis()));
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void clear(final int patientId) {
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(CLEAR)) {
+                ps.setInt(1, patientId);
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * The driver reports a found duplicate like an insert, so the metrics are reconciled after
+     * commit rather than told about a new row.
+     */
+    @Override
+    public boolean enqueueUpdate(final int patientId, final int creatorId) {
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        boolean queued = sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(ENQUEUE_UPDATE)) {
+                ps.setString(1, UUID.randomUUID().toString());
+                ps.setInt(2, patientId);
+                ps.setTimestamp(3, now);
+                ps.setTimestamp(4, now);
+                ps.setInt(5, creatorId);
+                return ps.executeUpdate() > 0;
+            }
+        });
+        if (queued && metrics != null) {
+            metrics.requestReconcileAfterCommit();
+        }
+        return queued;
+    }
+}
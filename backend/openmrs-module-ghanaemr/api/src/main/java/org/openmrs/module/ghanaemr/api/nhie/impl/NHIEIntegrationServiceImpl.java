@@ -9,11 +9,16 @@ import org.openmrs.api.PatientService;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Resolver;
 import org.openmrs.module.ghanaemr.api.fhir.FhirPatientMapper;
 import org.openmrs.module.ghanaemr.api.fhir.FhirEncounterMapper;
+import org.openmrs.module.ghanaemr.api.fhir.FhirResourceCache;
+import org.openmrs.module.ghanaemr.api.nhie.NHIECallMetrics;
 import org.openmrs.module.ghanaemr.api.nhie.NHIEHttpClient;
 import org.openmrs.module.ghanaemr.api.nhie.NHIEIntegrationService;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEPatientDelta;
 import org.openmrs.module.ghanaemr.api.nhie.NHIEResponse;
+import org.openmrs.module.ghanaemr.api.nhie.db.NHIEPatientSyncDAO;
 import org.openmrs.module.ghanaemr.exception.NHIEIntegrationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +29,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -45,6 +51,9 @@ import java.util.UUID;
  * - 409 Conflict: Extracts existing NHIE patient ID, reconciles
  * - 422 Unprocessable: Logs FAILED (not retryable), manual intervention needed
  * 
+ * FHIR mapping and PII masking are timed as phases in {@link NHIECallMetrics}, next to the
+ * NHIE call timings recorded by NHIEHttpClient.
+ * 
  * @see NHIEIntegrationService
  */
 @Transactional
@@ -60,6 +69,8 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
     private final NHIEHttpClient nhieHttpClient;
     private final org.openmrs.module.ghanaemr.api.nhie.NHIETransactionLogger transactionLogger;
     private final ObjectMapper objectMapper;
+    private FhirResourceCache fhirResourceCache;
+    private NHIEPatientSyncDAO patientSyncDAO;
     
     public NHIEIntegrationServiceImpl() {
         this.fhirPatientMapper = new FhirPatientMapper();
@@ -91,6 +102,30 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
                 : transactionLogger;
     }
 
+    /**
+     * Reuse serialized Patient resources across syncs, retries and 409 handling while the
+     * patient's FHIR-relevant fields are unchanged. Optional; without it every sync maps afresh.
+     */
+    public void setFhirResourceCache(FhirResourceCache fhirResourceCache) {
+        this.fhirResourceCache = fhirResourceCache;
+    }
+
+    /**
+     * Resolve the ICD-10 codes of all diagnoses of a submitted encounter in one lookup.
+     */
+    public void setConceptIcd10Resolver(ConceptIcd10Resolver conceptIcd10Resolver) {
+        fhirEncounterMapper.setIcd10Resolver(conceptIcd10Resolver);
+    }
+
+    /**
+     * Enables change tracking: what was sent is recorded per patient, later edits are sent as
+     * FHIR PATCH and unchanged patients are not sent again. Without it a synced patient is
+     * never updated in NHIE.
+     */
+    public void setPatientSyncDAO(NHIEPatientSyncDAO patientSyncDAO) {
+        this.patientSyncDAO = patientSyncDAO;
+    }
+
     @Override
     public String submitEncounter(org.openmrs.Encounter encounter) throws NHIEIntegrationException {
         if (encounter == null) {
@@ -98,8 +133,10 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
         }
         try {
             String transactionId = java.util.UUID.randomUUID().toString();
+            long mappingStart = System.nanoTime();
             org.hl7.fhir.r4.model.Encounter fhirEncounter = fhirEncounterMapper.toFhirEncounter(encounter);
             String fhirJson = ca.uhn.fhir.context.FhirContext.forR4().newJsonParser().encodeResourceToString(fhirEncounter);
+            NHIECallMetrics.get().recordPhase(NHIECallMetrics.PHASE_ENCOUNTER_MAPPING, System.nanoTime() - mappingStart);
 
             transactionLogger.log(transactionId,
                     encounter.getPatient() != null ? encounter.getPatient().getPatientId() : null,
@@ -124,6 +161,11 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
     
     @Override
     public String syncPatientToNHIE(org.openmrs.Patient patient) throws NHIEIntegrationException {
+        return syncPatientToNHIE(patient, UUID.randomUUID().toString());
+    }
+    
+    @Override
+    public String syncPatientToNHIE(org.openmrs.Patient patient, String transactionId) throws NHIEIntegrationException {
         if (patient == null) {
             throw new IllegalArgumentException("Patient cannot be null");
         }
@@ -136,28 +178,33 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
             throw new IllegalArgumentException("Patient must have Ghana Card identifier for NHIE sync");
         }
         
-        // 2. Check if patient already synced
+        // 2. Check if patient already synced; if so send only what changed
         String existingNHIEPatientId = getNHIEPatientId(patient);
         if (existingNHIEPatientId != null) {
+            if (patientSyncDAO != null) {
+                return syncChanges(patient, existingNHIEPatientId, transactionId);
+            }
             logger.info("Patient already synced to NHIE with ID: {} (masked in logs)", maskIdentifier(existingNHIEPatientId));
             return existingNHIEPatientId;
         }
         
-        String transactionId = UUID.randomUUID().toString();
         String fhirJson = null;
+        String maskedJson = null;
         NHIEResponse response = null;
         
         try {
-            // 3. Convert OpenMRS Patient to FHIR R4 JSON
-            org.hl7.fhir.r4.model.Patient fhirPatient = fhirPatientMapper.toFhirPatient(patient);
-            fhirJson = serializeFhirPatient(fhirPatient);
+            // 3. Convert OpenMRS Patient to FHIR R4 JSON (cached while the patient is unchanged)
+            long mappingStart = System.nanoTime();
+            fhirJson = toFhirJson(patient);
+            NHIECallMetrics.get().recordPhase(NHIECallMetrics.PHASE_PATIENT_MAPPING, System.nanoTime() - mappingStart);
+            maskedJson = maskPII(fhirJson);
             
             logger.debug("Converted patient to FHIR R4 (Ghana Card: {})", maskIdentifier(ghanaCard));
             
             // 4. Log transaction as PENDING (masked)
             transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                     "POST", "/Patient",
-                    maskPII(fhirJson), null, null, 0, "PENDING");
+                    maskedJson, null, null, 0, "PENDING");
             
             // 5. Submit to NHIE (with If-None-Exist header for idempotency)
             response = nhieHttpClient.submitPatient(fhirJson, ghanaCard);
@@ -173,16 +220,20 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
                 }
                 
                 if (nhiePatientId == null) {
+                    transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
+                            "POST", "/Patient",
+                            maskedJson, maskPII(response.getResponseBody()), response.getStatusCode(), 0, "FAILED");
                     throw new NHIEIntegrationException("NHIE returned success but no patient ID found");
                 }
                 
-                // 7. Store NHIE patient ID
+                // 7. Store NHIE patient ID (after recording what was sent, so the save is not seen as a change)
+                recordSync(patient, nhiePatientId);
                 storeNHIEPatientId(patient, nhiePatientId);
                 
                 // 8. Log transaction as SUCCESS (masked)
                 transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                         "POST", "/Patient",
-                        maskPII(fhirJson), maskPII(response.getResponseBody()), response.getStatusCode(), 0, "SUCCESS");
+                        maskedJson, maskPII(response.getResponseBody()), response.getStatusCode(), 0, "SUCCESS");
                 
                 logger.info("Successfully synced patient to NHIE (Ghana Card: {}, NHIE ID: {})", 
                            maskIdentifier(ghanaCard), maskIdentifier(nhiePatientId));
@@ -193,12 +244,16 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
                 // Conflict - duplicate Ghana Card
                 logger.warn("NHIE returned 409 Conflict for Ghana Card: {}", maskIdentifier(ghanaCard));
                 
+                // NHIE's copy is not known here, so no baseline is kept and the next sync sends a full PUT
+                if (patientSyncDAO != null && patient.getPatientId() != null) {
+                    patientSyncDAO.clear(patient.getPatientId());
+                }
                 String existingId = handleDuplicatePatient(patient, response);
                 
                 // Log as SUCCESS (duplicate is expected, not error)
                 transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                         "POST", "/Patient",
-                        maskPII(fhirJson), maskPII(response.getResponseBody()), response.getStatusCode(), 0, "SUCCESS");
+                        maskedJson, maskPII(response.getResponseBody()), response.getStatusCode(), 0, "SUCCESS");
                 
                 return existingId;
                 
@@ -210,7 +265,7 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
                 // Log transaction as FAILED (masked)
                 transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                         "POST", "/Patient",
-                        maskPII(fhirJson), maskPII(response.getResponseBody()), response.getStatusCode(), 0, "FAILED");
+                        maskedJson, maskPII(response.getResponseBody()), response.getStatusCode(), 0, "FAILED");
                 
                 logger.error("NHIE sync failed for patient ID {} (Ghana Card: {}): {}", 
                             patient.getPatientId(), maskIdentifier(ghanaCard), errorMessage);
@@ -228,13 +283,17 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
             try {
                 transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                         "POST", "/Patient",
-                        maskPII(fhirJson), null, null, 0, "FAILED");
+                        maskedJson, null, null, 0, "FAILED");
             } catch (Exception logError) {
                 logger.error("Failed to log transaction error", logError);
             }
             
             throw new NHIEIntegrationException(errorMessage, e, null, true); // Network errors are retryable
             
+        } catch (NHIEIntegrationException e) {
+            // Already logged against this transaction; keep its status code and retryable flag
+            throw e;
+            
         } catch (Exception e) {
             // Unexpected error
             String errorMessage = "NHIE sync failed due to unexpected error: " + e.getMessage();
@@ -245,7 +304,7 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
             try {
                 transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
                         "POST", "/Patient",
-                        maskPII(fhirJson), null, null, 0, "FAILED");
+                        maskedJson, null, null, 0, "FAILED");
             } catch (Exception logError) {
                 logger.error("Failed to log transaction error", logError);
             }
@@ -254,6 +313,105 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
         }
     }
     
+    @Override
+    public boolean queueSyncIfChanged(org.openmrs.Patient patient) {
+        if (patientSyncDAO == null || patient == null || patient.getPatientId() == null
+                || Boolean.TRUE.equals(patient.getVoided()) || getNHIEPatientId(patient) == null) {
+            return false;
+        }
+        Long synced = patientSyncDAO.getFingerprint(patient.getPatientId());
+        if (synced != null && synced == fhirPatientMapper.fingerprint(patient)) {
+            return false;
+        }
+        boolean queued = patientSyncDAO.enqueueUpdate(patient.getPatientId(), currentUserId());
+        if (queued) {
+            logger.debug("Queued NHIE update for patient {}", patient.getPatientId());
+        }
+        return queued;
+    }
+    
+    /**
+     * Sends the elements changed since the last recorded sync as FHIR PATCH, or the whole resource
+     * as PUT if there is no record or NHIE does not accept PATCH. Nothing is sent if nothing changed.
+     */
+    private String syncChanges(org.openmrs.Patient patient, String nhiePatientId, String transactionId)
+            throws NHIEIntegrationException {
+        long[] current = fhirPatientMapper.fingerprintElements(patient);
+        long[] previous = patientSyncDAO.getElementFingerprints(patient.getPatientId());
+        if (previous != null && Arrays.equals(previous, current)) {
+            logger.debug("Patient {} unchanged since last NHIE sync", patient.getPatientId());
+            return nhiePatientId;
+        }
+        
+        String endpoint = "/Patient/" + nhiePatientId;
+        String method = null;
+        String requestBody = null;
+        try {
+            long mappingStart = System.nanoTime();
+            org.hl7.fhir.r4.model.Patient fhirPatient = fhirPatientMapper.toFhirPatient(patient);
+            fhirPatient.setId(nhiePatientId);
+            String fhirJson = fhirPatientMapper.toJson(fhirPatient);
+            NHIECallMetrics.get().recordPhase(NHIECallMetrics.PHASE_PATIENT_MAPPING, System.nanoTime() - mappingStart);
+            
+            NHIEResponse response = null;
+            if (previous != null) {
+                method = "PATCH";
+                requestBody = NHIEPatientDelta.jsonPatch(previous, current, fhirJson);
+                response = nhieHttpClient.patchPatient(nhiePatientId, requestBody);
+            }
+            if (response == null || response.getStatusCode() == 405 || response.getStatusCode() == 415) {
+                method = "PUT";
+                requestBody = fhirJson;
+                response = nhieHttpClient.updatePatient(nhiePatientId, fhirJson);
+            }
+            
+            if (response.isSuccess()) {
+                patientSyncDAO.save(patient.getPatientId(), nhiePatientId, FhirPatientMapper.fingerprint(current), current);
+                transactionLogger.log(transactionId, patient.getPatientId(), "Patient", method, endpoint,
+                        maskPII(requestBody), maskPII(response.getResponseBody()), response.getStatusCode(), 0, "SUCCESS");
+                logger.info("Updated patient {} in NHIE with {} ({})", patient.getPatientId(), method,
+                        previous == null ? "full resource" : NHIEPatientDelta.changedElements(previous, current));
+                return nhiePatientId;
+            }
+            
+            transactionLogger.log(transactionId, patient.getPatientId(), "Patient", method, endpoint,
+                    maskPII(requestBody), maskPII(response.getResponseBody()), response.getStatusCode(), 0, "FAILED");
+            String errorMessage = String.format("NHIE update failed with status %d: %s",
+                                               response.getStatusCode(), response.getErrorMessage());
+            logger.error("NHIE update failed for patient ID {}: {}", patient.getPatientId(), errorMessage);
+            throw new NHIEIntegrationException(errorMessage, response.getStatusCode(), response.isRetryable());
+            
+        } catch (IOException e) {
+            String errorMessage = "NHIE update failed due to network/IO error: " + e.getMessage();
+            logger.error(errorMessage, e);
+            try {
+                transactionLogger.log(transactionId, patient.getPatientId(), "Patient",
+                        method == null ? "PATCH" : method, endpoint, maskPII(requestBody), null, null, 0, "FAILED");
+            } catch (Exception logError) {
+                logger.error("Failed to log transaction error", logError);
+            }
+            throw new NHIEIntegrationException(errorMessage, e, null, true);
+        }
+    }
+    
+    private void recordSync(org.openmrs.Patient patient, String nhiePatientId) {
+        if (patientSyncDAO == null || nhiePatientId == null || patient.getPatientId() == null) {
+            return;
+        }
+        long[] elements = fhirPatientMapper.fingerprintElements(patient);
+        patientSyncDAO.save(patient.getPatientId(), nhiePatientId, FhirPatientMapper.fingerprint(elements), elements);
+    }
+    
+    private static int currentUserId() {
+        try {
+            if (Context.getAuthenticatedUser() != null) {
+                return Context.getAuthenticatedUser().getUserId();
+            }
+        } catch (Exception ignored) {
+        }
+        return 1;
+    }
+    
     @Override
     public String handleDuplicatePatient(org.openmrs.Patient patient, NHIEResponse conflictResponse) {
         // Extract existing NHIE patient ID from 409 Conflict response
@@ -363,6 +521,20 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
         return personService.getPersonAttributeTypeByName(NHIE_PATIENT_ID_ATTRIBUTE_NAME);
     }
     
+    private String toFhirJson(org.openmrs.Patient patient) throws IOException {
+        if (fhirResourceCache == null || patient.getUuid() == null) {
+            return serializeFhirPatient(fhirPatientMapper.toFhirPatient(patient));
+        }
+        String key = "Patient/" + patient.getUuid();
+        long version = fhirPatientMapper.fingerprint(patient);
+        String json = fhirResourceCache.get(key, version);
+        if (json == null) {
+            json = serializeFhirPatient(fhirPatientMapper.toFhirPatient(patient));
+            fhirResourceCache.put(key, version, json);
+        }
+        return json;
+    }
+
     private String serializeFhirPatient(org.hl7.fhir.r4.model.Patient fhirPatient) throws IOException {
         // Use HAPI FHIR's built-in JSON parser for proper FHIR serialization
         // For now, use Jackson (simple implementation)
@@ -406,6 +578,7 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
             return null;
         }
         
+        long start = System.nanoTime();
         String masked = json;
         
         // Mask Ghana Card (GHA-XXXXXXXXX-X → GHA-1234****-*)
@@ -418,6 +591,7 @@ public class NHIEIntegrationServiceImpl implements NHIEIntegrationService {
         // Simple implementation - mask middle characters of words
         masked = masked.replaceAll("\"(\\w)(\\w+)(\\w)\"", "\"$1***$3\"");
         
+        NHIECallMetrics.get().recordPhase(NHIECallMetrics.PHASE_MASKING, System.nanoTime() - start);
         return masked;
     }
     
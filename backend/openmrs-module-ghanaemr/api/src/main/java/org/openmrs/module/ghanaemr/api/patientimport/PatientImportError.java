@@ -0,0 +1,80 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+/**
+ * A rejected import row, as stored in ghanaemr_patient_import_error. The Ghana Card is masked.
+ */
+public class PatientImportError {
+
+    public static final String INVALID_ROW = "INVALID_ROW";
+    public static final String VALIDATION_ERROR = "VALIDATION_ERROR";
+    public static final String DUPLICATE_IN_FILE = "DUPLICATE_IN_FILE";
+    public static final String DUPLICATE_PATIENT = "DUPLICATE_PATIENT";
+    public static final String SAVE_FAILED = "SAVE_FAILED";
+
+    private int rowNumber;
+    private String ghanaCard;
+    private String code;
+    private String message;
+
+    public PatientImportError() {
+    }
+
+    public PatientImportError(int rowNumber, String ghanaCard, String code, String message) {
+        this.rowNumber = rowNumber;
+        this.ghanaCard = ghanaCard;
+        this.code = code;
+        this.message = message;
+    }
+
+    public static PatientImportError of(PatientImportRow row) {
+        String card = row.getGhanaCard();
+        if (card == null && row.getDto() != null) {
+            card = row.getDto().getGhanaCard();
+        }
+        return new PatientImportError(row.getRowNumber(), mask(card), row.getErrorCode(), row.getErrorMessage());
+    }
+
+    /** Same masking as the registration responses: GHA-*******89-7. */
+    static String mask(String ghanaCard) {
+        if (ghanaCard == null || ghanaCard.trim().isEmpty()) {
+            return null;
+        }
+        String digits = ghanaCard.replaceAll("[^0-9]", "");
+        if (digits.length() != 10) {
+            return "GHA-*********-*";
+        }
+        return "GHA-*******" + digits.substring(7, 9) + "-" + digits.substring(9);
+    }
+
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    public void setRowNumber(int rowNumber) {
+        this.rowNumber = rowNumber;
+    }
+
+    public String getGhanaCard() {
+        return ghanaCard;
+    }
+
+    public void setGhanaCard(String ghanaCard) {
+        this.ghanaCard = ghanaCard;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,46 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import java.util.Locale;
+
+/**
+ * Upload formats for the bulk patient import: CSV with a header row, or one JSON object per line.
+ * Column and property names are the {@link org.openmrs.module.ghanaemr.dto.GhanaPatientDTO} fields.
+ */
+public enum PatientImportFormat {
+    CSV,
+    NDJSON;
+
+    /**
+     * @param format explicit format parameter, may be null
+     * @param contentType request Content-Type, may be null
+     * @return the format, or null when neither names a supported one
+     */
+    public static PatientImportFormat resolve(String format, String contentType) {
+        if (format != null && !format.trim().isEmpty()) {
+            String f = format.trim().toUpperCase(Locale.ENGLISH);
+            if ("JSONL".equals(f)) {
+                return NDJSON;
+            }
+            try {
+                return valueOf(f);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if (contentType == null) {
+            return null;
+        }
+        String ct = contentType.toLowerCase(Locale.ENGLISH);
+        if (ct.startsWith("text/csv") || ct.startsWith("application/csv")) {
+            return CSV;
+        }
+        if (ct.contains("ndjson") || ct.contains("jsonl") || ct.contains("json-seq")) {
+            return NDJSON;
+        }
+        return null;
+    }
+
+    public String fileExtension() {
+        return this == CSV ? ".csv" : ".ndjson";
+    }
+}
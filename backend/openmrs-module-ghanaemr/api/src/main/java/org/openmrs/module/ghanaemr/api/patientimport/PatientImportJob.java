@@ -0,0 +1,117 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import java.util.Date;
+
+/**
+ * A bulk import, as stored in ghanaemr_patient_import_job. checkpointRow is the last data row whose
+ * outcome (imported or rejected) is committed; a resumed import continues after it.
+ */
+public class PatientImportJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private Long id;
+    private String uuid;
+    private Status status;
+    private PatientImportFormat format;
+    private String filePath;
+    private int checkpointRow;
+    private int imported;
+    private int failed;
+    private String errorMessage;
+    private Date dateCreated;
+    private Date dateChanged;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public PatientImportFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(PatientImportFormat format) {
+        this.format = format;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public int getCheckpointRow() {
+        return checkpointRow;
+    }
+
+    public void setCheckpointRow(int checkpointRow) {
+        this.checkpointRow = checkpointRow;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDateChanged() {
+        return dateChanged;
+    }
+
+    public void setDateChanged(Date dateChanged) {
+        this.dateChanged = dateChanged;
+    }
+}
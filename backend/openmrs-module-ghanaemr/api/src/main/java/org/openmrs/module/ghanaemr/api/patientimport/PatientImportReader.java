@@ -0,0 +1,243 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams {@link PatientImportRow}s out of a CSV or NDJSON upload one record at a time, so an import
+ * never holds the whole file in memory. Field names are matched case-insensitively ignoring
+ * separators, so ghanaCard, ghana_card and "Ghana Card" are the same column. Blank lines are
+ * skipped and not counted; a record that cannot be parsed becomes an invalid row instead of
+ * failing the import.
+ */
+public class PatientImportReader implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader in;
+    private final PatientImportFormat format;
+    private List<String> header;
+    private int rowNumber;
+    private boolean started;
+
+    public PatientImportReader(Reader in, PatientImportFormat format) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 64 * 1024);
+        this.format = format;
+    }
+
+    /**
+     * @return the next data row, or null at the end of the file
+     * @throws IOException if reading fails or the CSV header has no Ghana Card column
+     */
+    public PatientImportRow next() throws IOException {
+        if (!started) {
+            started = true;
+            skipByteOrderMark();
+            if (format == PatientImportFormat.CSV) {
+                readHeader();
+            }
+        }
+        return format == PatientImportFormat.CSV ? nextCsv() : nextJson();
+    }
+
+    /**
+     * Reads past the first rows, e.g. up to a checkpoint.
+     *
+     * @return the number of rows skipped, less than rows only at the end of the file
+     */
+    public int skip(int rows) throws IOException {
+        int skipped = 0;
+        while (skipped < rows && next() != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readHeader() throws IOException {
+        List<String> names = readCsvRecord();
+        if (names == null) {
+            header = new ArrayList<String>();
+            return;
+        }
+        header = new ArrayList<String>(names.size());
+        for (String name : names) {
+            header.add(key(name));
+        }
+        if (!header.contains("ghanacard")) {
+            throw new IOException("CSV header must include a ghanaCard column");
+        }
+    }
+
+    private PatientImportRow nextCsv() throws IOException {
+        List<String> values;
+        do {
+            values = readCsvRecord();
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).trim().isEmpty());
+
+        int row = ++rowNumber;
+        if (values.size() != header.size()) {
+            return PatientImportRow.invalid(row, "Expected " + header.size() + " columns but found " + values.size());
+        }
+        Map<String, String> fields = new HashMap<String, String>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return toRow(row, fields);
+    }
+
+    private PatientImportRow nextJson() throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        int row = ++rowNumber;
+        Map<?, ?> object;
+        try {
+            object = MAPPER.readValue(line, Map.class);
+        } catch (IOException e) {
+            return PatientImportRow.invalid(row, "Malformed JSON");
+        }
+        if (object == null) {
+            return PatientImportRow.invalid(row, "Malformed JSON");
+        }
+        Map<String, String> fields = new HashMap<String, String>();
+        for (Map.Entry<?, ?> e : object.entrySet()) {
+            if (e.getValue() != null) {
+                fields.put(key(String.valueOf(e.getKey())), String.valueOf(e.getValue()));
+            }
+        }
+        return toRow(row, fields);
+    }
+
+    private static PatientImportRow toRow(int row, Map<String, String> fields) {
+        GhanaPatientDTO dto = new GhanaPatientDTO();
+        dto.setGhanaCard(value(fields, "ghanacard"));
+        dto.setNhisNumber(value(fields, "nhisnumber"));
+        dto.setGivenName(value(fields, "givenname"));
+        dto.setMiddleName(value(fields, "middlename"));
+        dto.setFamilyName(value(fields, "familyname"));
+        dto.setGender(value(fields, "gender"));
+        dto.setPhone(value(fields, "phone"));
+        dto.setRegionCode(value(fields, "regioncode"));
+        dto.setFacilityCode(value(fields, "facilitycode"));
+        String dob = value(fields, "dateofbirth");
+        if (dob != null) {
+            try {
+                // yyyy-MM-dd, also accepting an ISO timestamp of which only the date is used
+                LocalDate date = LocalDate.parse(dob.length() > 10 ? dob.substring(0, 10) : dob);
+                dto.setDateOfBirth(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+            } catch (DateTimeParseException e) {
+                return PatientImportRow.invalid(row, "dateOfBirth must be yyyy-MM-dd");
+            }
+        }
+        return new PatientImportRow(row, dto);
+    }
+
+    private static String value(Map<String, String> fields, String key) {
+        String v = fields.get(key);
+        if (v == null) {
+            return null;
+        }
+        v = v.trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    private static String key(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * RFC 4180 record: comma separated, fields optionally quoted, "" for a quote inside quotes,
+     * and line breaks allowed inside quoted fields.
+     *
+     * @return the fields, or null at the end of the file
+     */
+    private List<String> readCsvRecord() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (c == '"') {
+                    in.mark(1);
+                    int n = in.read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (n != -1) {
+                            in.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == -1 || c == '\n') {
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') {
+                    in.reset();
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        in.mark(1);
+        if (in.read() != '\uFEFF') {
+            in.reset();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
+
+/**
+ * One data row of an import file. Validation fills in the normalized Ghana Card or an error; the
+ * import fills in the folder number and patient id.
+ */
+public class PatientImportRow {
+
+    private final int rowNumber;
+    private final GhanaPatientDTO dto;
+    private String ghanaCard;
+    private String folderNumber;
+    private Integer patientId;
+    private String errorCode;
+    private String errorMessage;
+
+    public PatientImportRow(int rowNumber, GhanaPatientDTO dto) {
+        this.rowNumber = rowNumber;
+        this.dto = dto;
+    }
+
+    public static PatientImportRow invalid(int rowNumber, String message) {
+        PatientImportRow row = new PatientImportRow(rowNumber, null);
+        row.fail(PatientImportError.INVALID_ROW, message);
+        return row;
+    }
+
+    /** 1-based position among the data rows of the file (the CSV header is not counted). */
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    public GhanaPatientDTO getDto() {
+        return dto;
+    }
+
+    /** Normalized Ghana Card, set once the row passes validation. */
+    public String getGhanaCard() {
+        return ghanaCard;
+    }
+
+    public void setGhanaCard(String ghanaCard) {
+        this.ghanaCard = ghanaCard;
+    }
+
+    public String getFolderNumber() {
+        return folderNumber;
+    }
+
+    public void setFolderNumber(String folderNumber) {
+        this.folderNumber = folderNumber;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public boolean isValid() {
+        return errorCode == null;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void fail(String code, String message) {
+        this.errorCode = code;
+        this.errorMessage = message;
+    }
+}
@@ -0,0 +1,194 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.util.OpenmrsUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs bulk imports on a single background thread, one job at a time. The upload is first copied
+ * to the application data directory so a job can be resumed from its checkpoint after a failure or
+ * restart; rows up to the checkpoint are read past without being imported again.
+ *
+ * Each chunk is validated in parallel and then imported in one transaction. If the chunk fails
+ * (e.g. one patient is rejected by an OpenMRS validator) it is retried row by row so only the
+ * offending rows are reported as SAVE_FAILED.
+ */
+public class PatientImportRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientImportRunner.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private PatientImportService service;
+
+    private File directory;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final Set<String> running = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ghanaemr-patient-import");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void setService(PatientImportService service) {
+        this.service = service;
+    }
+
+    /**
+     * Where uploads are kept; defaults to ghanaemr/imports in the application data directory.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Stores the upload and starts importing it in the background.
+     */
+    public PatientImportJob submit(PatientImportFormat format, InputStream upload) throws IOException {
+        File dir = getDirectory();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, UUID.randomUUID().toString() + format.fileExtension());
+        Files.copy(upload, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        PatientImportJob job = service.createJob(format, file.getAbsolutePath());
+        start(job);
+        return job;
+    }
+
+    /**
+     * Continues a job after its checkpoint.
+     *
+     * @return false if the job is already running on this node or has completed
+     */
+    public boolean resume(PatientImportJob job) {
+        if (job.getStatus() == PatientImportJob.Status.COMPLETED) {
+            return false;
+        }
+        return start(job);
+    }
+
+    public boolean isRunning(String jobUuid) {
+        return running.contains(jobUuid);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean start(final PatientImportJob job) {
+        if (!running.add(job.getUuid())) {
+            return false;
+        }
+        final UserContext userContext = Context.getUserContext();
+        executor.submit(() -> {
+            Context.openSession();
+            try {
+                Context.setUserContext(userContext);
+                run(job);
+            } finally {
+                running.remove(job.getUuid());
+                Context.closeSession();
+            }
+        });
+        return true;
+    }
+
+    void run(PatientImportJob job) {
+        long start = System.currentTimeMillis();
+        try {
+            service.setStatus(job, PatientImportJob.Status.RUNNING, null);
+            try (PatientImportReader reader = new PatientImportReader(
+                    new InputStreamReader(new FileInputStream(job.getFilePath()), StandardCharsets.UTF_8), job.getFormat())) {
+                reader.skip(job.getCheckpointRow());
+                List<PatientImportRow> chunk = new ArrayList<PatientImportRow>(chunkSize);
+                PatientImportRow row;
+                while ((row = reader.next()) != null) {
+                    chunk.add(row);
+                    if (chunk.size() == chunkSize) {
+                        importChunk(job, chunk);
+                        chunk = new ArrayList<PatientImportRow>(chunkSize);
+                    }
+                }
+                importChunk(job, chunk);
+            }
+            service.setStatus(job, PatientImportJob.Status.COMPLETED, null);
+            log.info("Patient import {} completed in {} ms: {} imported, {} rejected", job.getUuid(),
+                    System.currentTimeMillis() - start, job.getImported(), job.getFailed());
+        } catch (Exception e) {
+            log.error("Patient import {} stopped at row {}", job.getUuid(), job.getCheckpointRow(), e);
+            try {
+                service.setStatus(job, PatientImportJob.Status.FAILED, e.getMessage());
+            } catch (Exception ex) {
+                log.error("Could not mark patient import {} as failed", job.getUuid(), ex);
+            }
+        }
+    }
+
+    private void importChunk(PatientImportJob job, List<PatientImportRow> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        PatientImportValidator.validate(chunk);
+        try {
+            record(job, chunk, service.importChunk(job, chunk));
+        } catch (RuntimeException e) {
+            log.warn("Patient import {} chunk ending at row {} failed, retrying row by row: {}", job.getUuid(),
+                    chunk.get(chunk.size() - 1).getRowNumber(), e.getMessage());
+            Context.clearSession();
+            for (PatientImportRow row : chunk) {
+                List<PatientImportRow> single = Collections.singletonList(row);
+                int imported;
+                try {
+                    imported = service.importChunk(job, single);
+                } catch (RuntimeException ex) {
+                    Context.clearSession();
+                    row.fail(PatientImportError.SAVE_FAILED, ex.getMessage());
+                    imported = service.importChunk(job, single);
+                }
+                record(job, single, imported);
+            }
+        }
+        // the session of this thread outlives the chunk transactions
+        Context.clearSession();
+    }
+
+    private static void record(PatientImportJob job, List<PatientImportRow> rows, int imported) {
+        job.setCheckpointRow(rows.get(rows.size() - 1).getRowNumber());
+        job.setImported(job.getImported() + imported);
+        job.setFailed(job.getFailed() + rows.size() - imported);
+    }
+
+    private File getDirectory() {
+        if (directory == null) {
+            directory = new File(OpenmrsUtil.getApplicationDataDirectory(), "ghanaemr" + File.separator + "imports");
+        }
+        return directory;
+    }
+}
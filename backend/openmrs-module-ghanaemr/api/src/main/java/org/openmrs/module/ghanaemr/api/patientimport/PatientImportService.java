@@ -0,0 +1,28 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import java.util.List;
+
+/**
+ * Bulk patient registration. {@link PatientImportRunner} drives a job chunk by chunk; each
+ * {@link #importChunk} call is one transaction that also moves the job's checkpoint, so a job
+ * stopped at any point resumes after the last committed chunk.
+ */
+public interface PatientImportService {
+
+    PatientImportJob createJob(PatientImportFormat format, String filePath);
+
+    PatientImportJob getJob(String uuid);
+
+    List<PatientImportError> getErrors(PatientImportJob job, int offset, int limit);
+
+    void setStatus(PatientImportJob job, PatientImportJob.Status status, String errorMessage);
+
+    /**
+     * Registers the valid rows of a validated chunk and records the rejected ones, then moves the
+     * checkpoint to the chunk's last row. Rows whose Ghana Card is already registered are rejected
+     * as DUPLICATE_PATIENT. Any exception rolls back the whole chunk.
+     *
+     * @return number of patients registered
+     */
+    int importChunk(PatientImportJob job, List<PatientImportRow> rows);
+}
@@ -0,0 +1,78 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
+import org.openmrs.module.ghanaemr.util.LongIntHashMap;
+import org.openmrs.module.ghanaemr.validation.GhanaCardValidator;
+import org.openmrs.module.ghanaemr.validation.NHISValidator;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Validates a chunk of import rows with the same rules as single registration. Ghana Cards are
+ * parsed in one pass into packed keys, the remaining checks run per row in parallel, and duplicates
+ * within the chunk are then resolved on the keys in file order so the first occurrence wins.
+ * Duplicates against existing patients are checked by the import itself, in one query per chunk.
+ */
+public final class PatientImportValidator {
+
+    private PatientImportValidator() {
+    }
+
+    public static void validate(List<PatientImportRow> rows) {
+        int n = rows.size();
+        String[] cards = new String[n];
+        for (int i = 0; i < n; i++) {
+            PatientImportRow row = rows.get(i);
+            cards[i] = row.isValid() ? row.getDto().getGhanaCard() : null;
+        }
+        final long[] keys = new long[n];
+        GhanaCardValidator.parseAll(cards, keys);
+
+        IntStream.range(0, n).parallel().forEach(i -> validate(rows.get(i), keys[i]));
+
+        LongIntHashMap firstRow = new LongIntHashMap(n);
+        for (int i = 0; i < n; i++) {
+            PatientImportRow row = rows.get(i);
+            if (!row.isValid()) {
+                continue;
+            }
+            int first = firstRow.get(keys[i]);
+            if (first != LongIntHashMap.NO_VALUE) {
+                row.fail(PatientImportError.DUPLICATE_IN_FILE, "Same Ghana Card as row " + first);
+            } else {
+                firstRow.put(keys[i], row.getRowNumber());
+            }
+        }
+    }
+
+    static void validate(PatientImportRow row, long ghanaCardKey) {
+        if (!row.isValid()) {
+            return;
+        }
+        GhanaPatientDTO dto = row.getDto();
+        if (ghanaCardKey == GhanaCardValidator.INVALID) {
+            row.fail(PatientImportError.VALIDATION_ERROR, "Invalid Ghana Card format or checksum");
+            return;
+        }
+        if (!NHISValidator.isValid(dto.getNhisNumber())) {
+            row.fail(PatientImportError.VALIDATION_ERROR, "NHIS number must be 10 digits");
+            return;
+        }
+        if (dto.getGivenName() == null || dto.getFamilyName() == null) {
+            row.fail(PatientImportError.VALIDATION_ERROR, "givenName and familyName are required");
+            return;
+        }
+        if (dto.getGender() == null || !dto.getGender().matches("[MFOmfo]")) {
+            row.fail(PatientImportError.VALIDATION_ERROR, "gender must be M, F or O");
+            return;
+        }
+        if (dto.getDateOfBirth() != null && dto.getDateOfBirth().after(new Date())) {
+            row.fail(PatientImportError.VALIDATION_ERROR, "dateOfBirth cannot be in the future");
+            return;
+        }
+        dto.setGender(dto.getGender().toUpperCase());
+        row.setGhanaCard(GhanaCardValidator.format(ghanaCardKey));
+    }
+}
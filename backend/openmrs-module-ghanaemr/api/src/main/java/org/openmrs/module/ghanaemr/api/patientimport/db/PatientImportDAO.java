@@ -0,0 +1,43 @@
+package org.openmrs.module.ghanaemr.api.patientimport.db;
+
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportError;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportJob;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persistence for bulk import jobs, their rejected rows, and the per-chunk lookups and outbox
+ * writes of the import itself.
+ */
+public interface PatientImportDAO {
+
+    /**
+     * Inserts the job and sets its id.
+     */
+    void createJob(PatientImportJob job, int creatorId);
+
+    PatientImportJob getJobByUuid(String uuid);
+
+    void updateStatus(Long jobId, PatientImportJob.Status status, String errorMessage);
+
+    /**
+     * Moves the checkpoint to the given row and adds to the imported/failed counters.
+     */
+    void recordProgress(Long jobId, int checkpointRow, int imported, int failed);
+
+    void saveErrors(Long jobId, List<PatientImportError> errors);
+
+    List<PatientImportError> getErrors(Long jobId, int offset, int limit);
+
+    /**
+     * @return those of the given Ghana Cards that already belong to a non-voided identifier
+     */
+    Set<String> findExistingGhanaCards(Collection<String> ghanaCards);
+
+    /**
+     * Adds QUEUED Patient rows to ghanaemr_nhie_transaction_log for NHIERetryJob to submit.
+     */
+    void enqueueNhieSync(List<Integer> patientIds, int creatorId);
+}
@@ -0,0 +1,222 @@
+package org.openmrs.module.ghanaemr.api.patientimport.db.hibernate;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportError;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportFormat;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportJob;
+import org.openmrs.module.ghanaemr.api.patientimport.db.PatientImportDAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Native SQL against the import tables; errors and outbox rows are written as JDBC batches on the
+ * current session's connection so they commit with the chunk they belong to.
+ */
+public class HibernatePatientImportDAO implements PatientImportDAO {
+
+    private static final String INSERT_JOB =
+            "INSERT INTO ghanaemr_patient_import_job (uuid, status, format, file_path, checkpoint_row, imported, failed, " +
+            "creator, date_created, date_changed) VALUES (?, ?, ?, ?, 0, 0, 0, ?, ?, ?)";
+
+    private static final String SELECT_JOB =
+            "SELECT id, uuid, status, format, file_path, checkpoint_row, imported, failed, error_message, " +
+            "date_created, date_changed FROM ghanaemr_patient_import_job WHERE uuid = :uuid";
+
+    private static final String INSERT_ERROR =
+            "INSERT INTO ghanaemr_patient_import_error (job_id, row_num, ghana_card, code, message) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String EXISTING_GHANA_CARDS =
+            "SELECT pi.identifier FROM patient_identifier pi " +
+            "JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "WHERE pit.name = 'Ghana Card' AND pi.voided = 0 AND pi.identifier IN (:cards)";
+
+    private static final String ENQUEUE_NHIE =
+            "INSERT INTO ghanaemr_nhie_transaction_log (transaction_id, patient_id, resource_type, http_method, " +
+            "endpoint, retry_count, status, created_at, updated_at, creator) " +
+            "VALUES (?, ?, 'Patient', 'POST', '/Patient', 0, 'QUEUED', ?, ?, ?)";
+
+    private static final int MAX_ERROR_MESSAGE = 500;
+
+    private SessionFactory sessionFactory;
+
+    private NHIEMetrics metrics;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public void setMetrics(NHIEMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void createJob(final PatientImportJob job, final int creatorId) {
+        final Date now = new Date();
+        if (job.getUuid() == null) {
+            job.setUuid(UUID.randomUUID().toString());
+        }
+        Long id = sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_JOB, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, job.getUuid());
+                ps.setString(2, job.getStatus().name());
+                ps.setString(3, job.getFormat().name());
+                ps.setString(4, job.getFilePath());
+                ps.setInt(5, creatorId);
+                ps.setTimestamp(6, new Timestamp(now.getTime()));
+                ps.setTimestamp(7, new Timestamp(now.getTime()));
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    return keys.next() ? keys.getLong(1) : null;
+                }
+            }
+        });
+        job.setId(id);
+        job.setDateCreated(now);
+        job.setDateChanged(now);
+    }
+
+    @Override
+    public PatientImportJob getJobByUuid(String uuid) {
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(SELECT_JOB);
+        query.setParameter("uuid", uuid);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] r = rows.get(0);
+        PatientImportJob job = new PatientImportJob();
+        job.setId(((Number) r[0]).longValue());
+        job.setUuid((String) r[1]);
+        job.setStatus(PatientImportJob.Status.valueOf((String) r[2]));
+        job.setFormat(PatientImportFormat.valueOf((String) r[3]));
+        job.setFilePath((String) r[4]);
+        job.setCheckpointRow(((Number) r[5]).intValue());
+        job.setImported(((Number) r[6]).intValue());
+        job.setFailed(((Number) r[7]).intValue());
+        job.setErrorMessage((String) r[8]);
+        job.setDateCreated((Date) r[9]);
+        job.setDateChanged((Date) r[10]);
+        return job;
+    }
+
+    @Override
+    public void updateStatus(Long jobId, PatientImportJob.Status status, String errorMessage) {
+        sessionFactory.getCurrentSession().createSQLQuery(
+                "UPDATE ghanaemr_patient_import_job SET status = :status, error_message = :message, " +
+                "date_changed = :now WHERE id = :id")
+                .setParameter("status", status.name())
+                .setParameter("message", truncate(errorMessage))
+                .setParameter("now", new Date())
+                .setParameter("id", jobId)
+                .executeUpdate();
+    }
+
+    @Override
+    public void recordProgress(Long jobId, int checkpointRow, int imported, int failed) {
+        sessionFactory.getCurrentSession().createSQLQuery(
+                "UPDATE ghanaemr_patient_import_job SET checkpoint_row = :checkpoint, imported = imported + :imported, " +
+                "failed = failed + :failed, date_changed = :now WHERE id = :id")
+                .setParameter("checkpoint", checkpointRow)
+                .setParameter("imported", imported)
+                .setParameter("failed", failed)
+                .setParameter("now", new Date())
+                .setParameter("id", jobId)
+                .executeUpdate();
+    }
+
+    @Override
+    public void saveErrors(final Long jobId, final List<PatientImportError> errors) {
+        if (errors.isEmpty()) {
+            return;
+        }
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_ERROR)) {
+                for (PatientImportError e : errors) {
+                    ps.setLong(1, jobId);
+                    ps.setInt(2, e.getRowNumber());
+                    ps.setString(3, e.getGhanaCard());
+                    ps.setString(4, e.getCode());
+                    ps.setString(5, truncate(e.getMessage()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public List<PatientImportError> getErrors(Long jobId, int offset, int limit) {
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(
+                "SELECT row_num, ghana_card, code, message FROM ghanaemr_patient_import_error " +
+                "WHERE job_id = :id ORDER BY row_num LIMIT :limit OFFSET :offset");
+        query.setParameter("id", jobId);
+        query.setParameter("limit", limit);
+        query.setParameter("offset", offset);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        List<PatientImportError> errors = new ArrayList<PatientImportError>(rows.size());
+        for (Object[] r : rows) {
+            errors.add(new PatientImportError(((Number) r[0]).intValue(), (String) r[1], (String) r[2], (String) r[3]));
+        }
+        return errors;
+    }
+
+    @Override
+    public Set<String> findExistingGhanaCards(Collection<String> ghanaCards) {
+        Set<String> existing = new HashSet<String>();
+        if (ghanaCards.isEmpty()) {
+            return existing;
+        }
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(EXISTING_GHANA_CARDS);
+        query.setParameterList("cards", ghanaCards);
+        @SuppressWarnings("unchecked")
+        List<Object> rows = query.list();
+        for (Object r : rows) {
+            existing.add((String) r);
+        }
+        return existing;
+    }
+
+    @Override
+    public void enqueueNhieSync(final List<Integer> patientIds, final int creatorId) {
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(ENQUEUE_NHIE)) {
+                for (Integer patientId : patientIds) {
+                    ps.setString(1, UUID.randomUUID().toString());
+                    ps.setInt(2, patientId);
+                    ps.setTimestamp(3, now);
+                    ps.setTimestamp(4, now);
+                    ps.setInt(5, creatorId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+        if (metrics != null) {
+            metrics.recordNewAfterCommit(new NHIEMetrics.State("QUEUED", "Patient", null, now.getTime()),
+                    patientIds.size());
+        }
+    }
+
+    private static String truncate(String message) {
+        return message == null || message.length() <= MAX_ERROR_MESSAGE ? message : message.substring(0, MAX_ERROR_MESSAGE);
+    }
+}
@@ -0,0 +1,233 @@
+package org.openmrs.module.ghanaemr.api.patientimport.impl;
+
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportError;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportFormat;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportJob;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportRow;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportService;
+import org.openmrs.module.ghanaemr.api.patientimport.db.PatientImportDAO;
+import org.openmrs.module.ghanaemr.api.search.GhanaCardBloomFilter;
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.service.impl.GhanaPatientFactory;
+import org.openmrs.module.ghanaemr.util.FolderNumberGenerator;
+import org.openmrs.module.ghanaemr.util.SequenceProvider;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves a chunk of patients through PatientService (so validators and AOP advice still run),
+ * flushing and clearing the session every flushInterval patients to keep the first-level cache
+ * small and let Hibernate batch the inserts. Folder numbers are reserved per facility in one block,
+ * and NHIE syncs are queued as outbox rows in the same transaction instead of being sent inline.
+ */
+@Transactional
+public class PatientImportServiceImpl implements PatientImportService {
+
+    private final FolderNumberGenerator folderNumberGenerator;
+
+    private PatientImportDAO dao;
+
+    private PatientIdentifierIndex identifierIndex;
+
+    private GhanaCardBloomFilter ghanaCardFilter;
+
+    private int flushInterval = 50;
+
+    public PatientImportServiceImpl(SequenceProvider sequenceProvider) {
+        this.folderNumberGenerator = new FolderNumberGenerator(sequenceProvider);
+    }
+
+    public void setDao(PatientImportDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setIdentifierIndex(PatientIdentifierIndex identifierIndex) {
+        this.identifierIndex = identifierIndex;
+    }
+
+    public void setGhanaCardFilter(GhanaCardBloomFilter ghanaCardFilter) {
+        this.ghanaCardFilter = ghanaCardFilter;
+    }
+
+    /**
+     * Patients saved between session flush/clear; match hibernate.jdbc.batch_size where set.
+     */
+    public void setFlushInterval(int flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    @Override
+    public PatientImportJob createJob(PatientImportFormat format, String filePath) {
+        PatientImportJob job = new PatientImportJob();
+        job.setStatus(PatientImportJob.Status.QUEUED);
+        job.setFormat(format);
+        job.setFilePath(filePath);
+        dao.createJob(job, currentUserId());
+        return job;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PatientImportJob getJob(String uuid) {
+        return dao.getJobByUuid(uuid);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientImportError> getErrors(PatientImportJob job, int offset, int limit) {
+        return dao.getErrors(job.getId(), offset, limit);
+    }
+
+    @Override
+    public void setStatus(PatientImportJob job, PatientImportJob.Status status, String errorMessage) {
+        dao.updateStatus(job.getId(), status, errorMessage);
+        job.setStatus(status);
+        job.setErrorMessage(errorMessage);
+    }
+
+    @Override
+    public int importChunk(PatientImportJob job, List<PatientImportRow> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<PatientImportRow> valid = new ArrayList<PatientImportRow>(rows.size());
+        for (PatientImportRow row : rows) {
+            row.setPatientId(null); // a retried chunk starts over
+            if (row.isValid()) {
+                valid.add(row);
+            }
+        }
+
+        // one duplicate query for the whole chunk
+        List<String> cards = new ArrayList<String>(valid.size());
+        for (PatientImportRow row : valid) {
+            cards.add(row.getGhanaCard());
+        }
+        Set<String> existing = dao.findExistingGhanaCards(cards);
+        if (!existing.isEmpty()) {
+            List<PatientImportRow> fresh = new ArrayList<PatientImportRow>(valid.size());
+            for (PatientImportRow row : valid) {
+                if (existing.contains(row.getGhanaCard())) {
+                    row.fail(PatientImportError.DUPLICATE_PATIENT, "Patient already exists with Ghana Card");
+                } else {
+                    fresh.add(row);
+                }
+            }
+            valid = fresh;
+        }
+
+        allocateFolderNumbers(valid);
+
+        PatientService patientService = Context.getPatientService();
+        GhanaPatientFactory factory = GhanaPatientFactory.fromContext();
+        List<Integer> patientIds = new ArrayList<Integer>(valid.size());
+        int pending = 0;
+        for (PatientImportRow row : valid) {
+            Patient saved = patientService.savePatient(factory.create(row.getDto(), row.getGhanaCard(), row.getFolderNumber()));
+            row.setPatientId(saved.getPatientId());
+            patientIds.add(saved.getPatientId());
+            if (++pending == flushInterval) {
+                Context.flushSession();
+                Context.clearSession();
+                pending = 0;
+            }
+        }
+        Context.flushSession();
+
+        if (isNhieSyncEnabled()) {
+            dao.enqueueNhieSync(patientIds, currentUserId());
+        }
+
+        List<PatientImportError> errors = new ArrayList<PatientImportError>();
+        for (PatientImportRow row : rows) {
+            if (!row.isValid()) {
+                errors.add(PatientImportError.of(row));
+            }
+        }
+        dao.saveErrors(job.getId(), errors);
+        dao.recordProgress(job.getId(), rows.get(rows.size() - 1).getRowNumber(), valid.size(), errors.size());
+        indexAfterCommit(valid);
+        return valid.size();
+    }
+
+    /**
+     * Reserves one block of folder numbers per region/facility for rows that don't have one yet
+     * (a retried chunk keeps the numbers it was given).
+     */
+    private void allocateFolderNumbers(List<PatientImportRow> rows) {
+        Map<String, List<PatientImportRow>> byPrefix = new LinkedHashMap<String, List<PatientImportRow>>();
+        for (PatientImportRow row : rows) {
+            if (row.getFolderNumber() != null) {
+                continue;
+            }
+            String key = row.getDto().getRegionCode() + "|" + row.getDto().getFacilityCode();
+            List<PatientImportRow> group = byPrefix.get(key);
+            if (group == null) {
+                group = new ArrayList<PatientImportRow>();
+                byPrefix.put(key, group);
+            }
+            group.add(row);
+        }
+        for (List<PatientImportRow> group : byPrefix.values()) {
+            PatientImportRow first = group.get(0);
+            List<String> numbers = folderNumberGenerator.generate(first.getDto().getFacilityCode(),
+                    first.getDto().getRegionCode(), group.size());
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).setFolderNumber(numbers.get(i));
+            }
+        }
+    }
+
+    private void indexAfterCommit(final List<PatientImportRow> imported) {
+        if (imported.isEmpty() || (identifierIndex == null && ghanaCardFilter == null)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    index(imported);
+                }
+            });
+        } else {
+            index(imported);
+        }
+    }
+
+    private void index(List<PatientImportRow> imported) {
+        for (PatientImportRow row : imported) {
+            if (identifierIndex != null) {
+                identifierIndex.put(row.getPatientId(), row.getGhanaCard(), row.getDto().getNhisNumber(),
+                        row.getFolderNumber());
+            }
+            if (ghanaCardFilter != null) {
+                ghanaCardFilter.put(row.getGhanaCard());
+            }
+        }
+    }
+
+    private static boolean isNhieSyncEnabled() {
+        return "true".equalsIgnoreCase(Context.getAdministrationService()
+                .getGlobalProperty("ghana.feature.nhie.sync.enabled", "false"));
+    }
+
+    private static int currentUserId() {
+        try {
+            if (Context.getAuthenticatedUser() != null) {
+                return Context.getAuthenticatedUser().getUserId();
+            }
+        } catch (Exception ignored) {
+        }
+        return 1;
+    }
+}
@@ -29,6 +29,16 @@ public interface PatientQueueService extends OpenmrsService {
     @Transactional
     PatientQueue moveToNextStation(PatientQueue currentQueue, Location nextLocation);
 
+    /**
+     * Dequeues the next PENDING entry at the location according to the configured scheduling
+     * policy and marks it IN_PROGRESS.
+     *
+     * @return the entry now being served, or null when nobody is waiting
+     */
+    @Authorized({"Update Patient Queue"})
+    @Transactional
+    PatientQueue callNext(Location location);
+
     @Transactional(readOnly = true)
     PatientQueue getActiveQueueEntry(Patient patient, Location location);
 
@@ -0,0 +1,93 @@
+package org.openmrs.module.ghanaemr.api.queue;
+
+import org.openmrs.module.ghanaemr.api.metrics.MetricsCollector;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+import org.openmrs.module.ghanaemr.api.queue.db.PatientQueueDAO;
+import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Queue depth per location for the metrics endpoint, from one grouped query over the active
+ * (PENDING and IN_PROGRESS) entries on each scrape. The database rather than the scheduler's
+ * in-memory run queues is counted, since each node only holds the entries it has seen.
+ */
+public class QueueMetrics implements MetricsCollector {
+
+    private PatientQueueDAO dao;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    public void setDao(PatientQueueDAO dao) {
+        this.dao = dao;
+    }
+
+    /** For tests. */
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Writes ghanaemr_queue_depth by location and status, and the age of the oldest PENDING entry
+     * per location as ghanaemr_queue_oldest_wait_seconds.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        List<Depth> depths = dao.getActiveDepths();
+        long now = clock.millis();
+        out.family("ghanaemr_queue_depth", "gauge", "Active queue entries by location and status");
+        for (Depth d : depths) {
+            out.sample("ghanaemr_queue_depth", d.getCount(), "location_id", String.valueOf(d.getLocationId()),
+                    "location", d.getLocationName(), "status", d.getStatus().name());
+        }
+        out.family("ghanaemr_queue_oldest_wait_seconds", "gauge", "How long the longest waiting PENDING entry at a location has waited");
+        for (Depth d : depths) {
+            if (d.getStatus() == QueueStatus.PENDING && d.getOldestCreated() != null) {
+                out.sample("ghanaemr_queue_oldest_wait_seconds", Math.max(0, now - d.getOldestCreated().getTime()) / 1000.0,
+                        "location_id", String.valueOf(d.getLocationId()), "location", d.getLocationName());
+            }
+        }
+    }
+
+    /**
+     * Active entries at one location in one status.
+     */
+    public static final class Depth {
+        private final Integer locationId;
+        private final String locationName;
+        private final QueueStatus status;
+        private final long count;
+        private final Date oldestCreated;
+
+        public Depth(Integer locationId, String locationName, QueueStatus status, long count, Date oldestCreated) {
+            this.locationId = locationId;
+            this.locationName = locationName;
+            this.status = status;
+            this.count = count;
+            this.oldestCreated = oldestCreated;
+        }
+
+        public Integer getLocationId() {
+            return locationId;
+        }
+
+        public String getLocationName() {
+            return locationName;
+        }
+
+        public QueueStatus getStatus() {
+            return status;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Date getOldestCreated() {
+            return oldestCreated;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.openmrs.module.ghanaemr.api.queue.db;
 
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.User;
+import org.openmrs.module.ghanaemr.api.queue.QueueMetrics;
 import org.openmrs.module.ghanaemr.api.queue.model.PatientQueue;
 import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
 
@@ -14,9 +16,23 @@ public interface PatientQueueDAO {
 
     List<PatientQueue> getQueueByLocationAndStatus(Location location, QueueStatus status);
 
+    /**
+     * Moves the entry from PENDING to IN_PROGRESS with a conditional update, so of several callers
+     * holding the same stale PENDING read only one succeeds.
+     *
+     * @return true if this call claimed the entry, false if it was no longer PENDING
+     */
+    boolean claim(PatientQueue queue, User changedBy);
+
     int getNextQueueNumber(Location toLocation, Date day);
 
     PatientQueue getActiveQueueEntry(Patient patient, Location location);
 
     PatientQueue getByUuid(String uuid);
+
+    /**
+     * Non-voided PENDING and IN_PROGRESS entries grouped by destination location and status, with
+     * the oldest date_created of each group.
+     */
+    List<QueueMetrics.Depth> getActiveDepths();
 }
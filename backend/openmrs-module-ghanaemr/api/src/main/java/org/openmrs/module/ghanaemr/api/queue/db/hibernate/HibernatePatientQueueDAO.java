@@ -1,13 +1,18 @@
 package org.openmrs.module.ghanaemr.api.queue.db.hibernate;
 
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.User;
+import org.openmrs.module.ghanaemr.api.queue.QueueMetrics;
 import org.openmrs.module.ghanaemr.api.queue.db.PatientQueueDAO;
 import org.openmrs.module.ghanaemr.api.queue.model.PatientQueue;
 import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -38,6 +43,24 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
                 .list();
     }
 
+    @Override
+    @Transactional
+    public boolean claim(PatientQueue queue, User changedBy) {
+        Session session = sessionFactory.getCurrentSession();
+        int updated = session
+                .createQuery("update PatientQueue q set q.status = :prog, q.dateChanged = :now, q.changedBy = :user where q.queueId = :id and q.status = :pnd and q.voided = false")
+                .setParameter("prog", QueueStatus.IN_PROGRESS)
+                .setParameter("now", new Date())
+                .setParameter("user", changedBy)
+                .setParameter("id", queue.getQueueId())
+                .setParameter("pnd", QueueStatus.PENDING)
+                .executeUpdate();
+        if (session.contains(queue)) {
+            session.refresh(queue);
+        }
+        return updated == 1;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public int getNextQueueNumber(Location toLocation, Date day) {
@@ -88,4 +111,20 @@ public class HibernatePatientQueueDAO implements PatientQueueDAO {
                 .list();
         return list.isEmpty() ? null : (PatientQueue) list.get(0);
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<QueueMetrics.Depth> getActiveDepths() {
+        List rows = sessionFactory.getCurrentSession()
+                .createQuery("select l.locationId, l.name, q.status, count(q.queueId), min(q.dateCreated) from PatientQueue q join q.locationTo l where q.voided = false and q.status in (:statuses) group by l.locationId, l.name, q.status")
+                .setParameterList("statuses", Arrays.asList(QueueStatus.PENDING, QueueStatus.IN_PROGRESS))
+                .list();
+        List<QueueMetrics.Depth> depths = new ArrayList<QueueMetrics.Depth>(rows.size());
+        for (Object row : rows) {
+            Object[] r = (Object[]) row;
+            depths.add(new QueueMetrics.Depth((Integer) r[0], (String) r[1], (QueueStatus) r[2],
+                    ((Number) r[3]).longValue(), (Date) r[4]));
+        }
+        return depths;
+    }
 }
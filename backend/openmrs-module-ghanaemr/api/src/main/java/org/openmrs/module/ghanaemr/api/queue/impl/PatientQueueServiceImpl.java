@@ -9,10 +9,16 @@ import org.openmrs.module.ghanaemr.api.queue.PatientQueueService;
 import org.openmrs.module.ghanaemr.api.queue.db.PatientQueueDAO;
 import org.openmrs.module.ghanaemr.api.queue.model.PatientQueue;
 import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
+import org.openmrs.module.ghanaemr.api.queue.scheduling.QueueScheduler;
+import org.openmrs.module.ghanaemr.api.queue.scheduling.QueueSchedulingPolicies;
+import org.openmrs.module.ghanaemr.api.queue.scheduling.QueueTicket;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Transactional
@@ -20,10 +26,20 @@ public class PatientQueueServiceImpl extends BaseOpenmrsService implements Patie
 
     private PatientQueueDAO dao;
 
+    private volatile QueueScheduler scheduler;
+
     public void setDao(PatientQueueDAO dao) {
         this.dao = dao;
     }
 
+    /**
+     * Optional; when not injected the scheduler is built from ghana.queue.scheduling.* global
+     * properties on first use.
+     */
+    public void setScheduler(QueueScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     @Override
     public PatientQueue addToQueue(Patient patient, Visit visit, Location toLocation, Integer priority) {
         PatientQueue queue = new PatientQueue();
@@ -40,13 +56,39 @@ public class PatientQueueServiceImpl extends BaseOpenmrsService implements Patie
         int nextNumber = dao.getNextQueueNumber(toLocation, new Date());
         queue.setQueueNumber(String.format("%s%03d", prefix, nextNumber));
 
-        return dao.save(queue);
+        PatientQueue saved = dao.save(queue);
+        getScheduler().enqueue(locationKey(toLocation), toTicket(saved));
+        return saved;
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<PatientQueue> getQueueByLocationAndStatus(Location location, QueueStatus status) {
-        return dao.getQueueByLocationAndStatus(location, status);
+        List<PatientQueue> entries = dao.getQueueByLocationAndStatus(location, status);
+        if (status != QueueStatus.PENDING || location == null || entries.size() < 2) {
+            return entries;
+        }
+        return scheduledOrder(location, entries);
+    }
+
+    @Override
+    public PatientQueue callNext(Location location) {
+        List<PatientQueue> pending = dao.getQueueByLocationAndStatus(location, QueueStatus.PENDING);
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Map<String, PatientQueue> byUuid = reconcile(location, pending);
+        Object key = locationKey(location);
+        String uuid;
+        // the PENDING read may be stale, so an entry is only handed out once the database
+        // confirms this call moved it out of PENDING; entries claimed elsewhere are skipped
+        while ((uuid = getScheduler().next(key, System.currentTimeMillis())) != null) {
+            PatientQueue next = byUuid.get(uuid);
+            if (next != null && dao.claim(next, Context.getAuthenticatedUser())) {
+                return next;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -54,7 +96,14 @@ public class PatientQueueServiceImpl extends BaseOpenmrsService implements Patie
         queueEntry.setStatus(newStatus);
         queueEntry.setDateChanged(new Date());
         queueEntry.setChangedBy(Context.getAuthenticatedUser());
-        return dao.save(queueEntry);
+        PatientQueue saved = dao.save(queueEntry);
+        Object key = locationKey(saved.getLocationTo());
+        if (newStatus == QueueStatus.PENDING) {
+            getScheduler().enqueue(key, toTicket(saved));
+        } else {
+            getScheduler().remove(key, saved.getUuid());
+        }
+        return saved;
     }
 
     @Override
@@ -75,6 +124,62 @@ public class PatientQueueServiceImpl extends BaseOpenmrsService implements Patie
         queueEntry.setDateChanged(new Date());
         queueEntry.setChangedBy(Context.getAuthenticatedUser());
         dao.save(queueEntry);
+        getScheduler().remove(locationKey(queueEntry.getLocationTo()), queueEntry.getUuid());
+    }
+
+    private List<PatientQueue> scheduledOrder(Location location, List<PatientQueue> pending) {
+        Map<String, PatientQueue> byUuid = reconcile(location, pending);
+        List<String> order = getScheduler().order(locationKey(location), System.currentTimeMillis());
+        List<PatientQueue> ordered = new ArrayList<PatientQueue>(pending.size());
+        for (String uuid : order) {
+            PatientQueue q = byUuid.remove(uuid);
+            if (q != null) {
+                ordered.add(q);
+            }
+        }
+        ordered.addAll(byUuid.values());
+        return ordered;
+    }
+
+    /**
+     * Aligns the in-memory location queue with the persisted PENDING rows, which stay the source
+     * of truth (restarts, other nodes, rolled back transactions).
+     */
+    private Map<String, PatientQueue> reconcile(Location location, List<PatientQueue> pending) {
+        Map<String, PatientQueue> byUuid = new HashMap<String, PatientQueue>();
+        List<QueueTicket> tickets = new ArrayList<QueueTicket>(pending.size());
+        for (PatientQueue q : pending) {
+            byUuid.put(q.getUuid(), q);
+            tickets.add(toTicket(q));
+        }
+        getScheduler().reconcile(locationKey(location), tickets, System.currentTimeMillis());
+        return byUuid;
+    }
+
+    private QueueScheduler getScheduler() {
+        QueueScheduler s = scheduler;
+        if (s == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = QueueSchedulingPolicies.fromGlobalProperties();
+                }
+                s = scheduler;
+            }
+        }
+        return s;
+    }
+
+    private static Object locationKey(Location location) {
+        if (location == null) {
+            return "";
+        }
+        return location.getUuid() != null ? location.getUuid() : String.valueOf(location.getLocationId());
+    }
+
+    private static QueueTicket toTicket(PatientQueue q) {
+        int priority = q.getPriority() != null ? q.getPriority() : 5;
+        long arrival = q.getDateCreated() != null ? q.getDateCreated().getTime() : System.currentTimeMillis();
+        return new QueueTicket(q.getUuid(), priority, arrival);
     }
 
     private String generateQueuePrefix(Location location) {
@@ -0,0 +1,55 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import java.util.Comparator;
+
+/**
+ * Priority with linear aging: a waiting entry gains one priority level per aging interval.
+ *
+ * The effective priority at time t is {@code priority - (t - arrival) / interval}. Comparing two
+ * entries at the same instant, t cancels out, so ordering by the static key
+ * {@code priority * interval + arrival} is equivalent and a plain heap stays valid without
+ * re-keying while entries wait.
+ */
+public class AgingPriorityPolicy implements QueueSchedulingPolicy {
+
+    public static final String NAME = "aging";
+
+    public static final long DEFAULT_AGING_INTERVAL_MILLIS = 30L * 60L * 1000L;
+
+    private final long agingIntervalMillis;
+
+    private final Comparator<QueueTicket> order;
+
+    public AgingPriorityPolicy() {
+        this(DEFAULT_AGING_INTERVAL_MILLIS);
+    }
+
+    public AgingPriorityPolicy(long agingIntervalMillis) {
+        if (agingIntervalMillis <= 0) {
+            throw new IllegalArgumentException("agingIntervalMillis must be positive");
+        }
+        this.agingIntervalMillis = agingIntervalMillis;
+        this.order = Comparator
+                .comparingLong(this::agingKey)
+                .thenComparingInt(QueueTicket::getPriority)
+                .thenComparingLong(t -> t.sequence);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public long getAgingIntervalMillis() {
+        return agingIntervalMillis;
+    }
+
+    @Override
+    public RunQueue newRunQueue() {
+        return new StrictPriorityPolicy.HeapRunQueue(order);
+    }
+
+    long agingKey(QueueTicket ticket) {
+        return ticket.getPriority() * agingIntervalMillis + ticket.getArrivalMillis();
+    }
+}
@@ -0,0 +1,325 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory scheduler holding one priority structure per location.
+ *
+ * Service order for a location is:
+ * 1. Emergency lane: entries with priority &lt;= emergencyPriority, FIFO.
+ * 2. SLA preemption: the entry that has overrun its per-priority wait target the most.
+ * 3. The configured {@link QueueSchedulingPolicy}.
+ *
+ * The database stays the source of truth; {@link #reconcile} brings a location back in line with
+ * the persisted PENDING entries (e.g. after a restart or writes from another node).
+ */
+public class QueueScheduler {
+
+    public static final int DEFAULT_EMERGENCY_PRIORITY = 1;
+
+    private final QueueSchedulingPolicy policy;
+    private final int emergencyPriority;
+    private final Map<Integer, Long> slaMillisByPriority;
+    private final ConcurrentHashMap<Object, LocationQueue> locations = new ConcurrentHashMap<Object, LocationQueue>();
+
+    public QueueScheduler(QueueSchedulingPolicy policy) {
+        this(policy, DEFAULT_EMERGENCY_PRIORITY, Collections.<Integer, Long>emptyMap());
+    }
+
+    /**
+     * @param policy ordering for regular entries
+     * @param emergencyPriority entries at or below this priority bypass the policy; 0 disables the lane
+     * @param slaMillisByPriority maximum target wait per priority; priorities without a target are never preempted
+     */
+    public QueueScheduler(QueueSchedulingPolicy policy, int emergencyPriority, Map<Integer, Long> slaMillisByPriority) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy is required");
+        }
+        this.policy = policy;
+        this.emergencyPriority = emergencyPriority;
+        this.slaMillisByPriority = new HashMap<Integer, Long>(slaMillisByPriority);
+    }
+
+    public QueueSchedulingPolicy getPolicy() {
+        return policy;
+    }
+
+    public void enqueue(Object locationKey, QueueTicket ticket) {
+        LocationQueue q = queueFor(locationKey);
+        synchronized (q) {
+            q.offer(ticket);
+        }
+    }
+
+    /**
+     * Dequeues the next entry to be served.
+     *
+     * @return the uuid of the entry, or null when the location has no pending entries
+     */
+    public String next(Object locationKey, long nowMillis) {
+        LocationQueue q = locations.get(locationKey);
+        if (q == null) {
+            return null;
+        }
+        synchronized (q) {
+            QueueTicket t = q.poll(nowMillis);
+            return t != null ? t.getUuid() : null;
+        }
+    }
+
+    public boolean remove(Object locationKey, String uuid) {
+        LocationQueue q = locations.get(locationKey);
+        if (q == null) {
+            return false;
+        }
+        synchronized (q) {
+            return q.remove(uuid);
+        }
+    }
+
+    /**
+     * @return the uuids of the pending entries in the order they would be served at nowMillis
+     */
+    public List<String> order(Object locationKey, long nowMillis) {
+        LocationQueue q = locations.get(locationKey);
+        if (q == null) {
+            return Collections.emptyList();
+        }
+        synchronized (q) {
+            return q.preview(nowMillis);
+        }
+    }
+
+    /**
+     * Replaces the in-memory state of a location with the given persisted PENDING entries, keeping
+     * fairness state for entries that are already known, and returns the resulting service order.
+     */
+    public List<String> reconcile(Object locationKey, Collection<QueueTicket> pending, long nowMillis) {
+        LocationQueue q = queueFor(locationKey);
+        synchronized (q) {
+            Set<String> persisted = new HashSet<String>();
+            List<QueueTicket> added = new ArrayList<QueueTicket>();
+            for (QueueTicket t : pending) {
+                persisted.add(t.getUuid());
+                QueueTicket known = q.live.get(t.getUuid());
+                if (known == null || known.getPriority() != t.getPriority()) {
+                    added.add(t);
+                }
+            }
+            for (String uuid : new ArrayList<String>(q.live.keySet())) {
+                if (!persisted.contains(uuid)) {
+                    q.remove(uuid);
+                }
+            }
+            // arrival order keeps the per-priority lists sorted for SLA checks
+            added.sort(Comparator.comparingLong(QueueTicket::getArrivalMillis));
+            for (QueueTicket t : added) {
+                q.offer(t);
+            }
+            return q.preview(nowMillis);
+        }
+    }
+
+    public int depth(Object locationKey) {
+        LocationQueue q = locations.get(locationKey);
+        if (q == null) {
+            return 0;
+        }
+        synchronized (q) {
+            return q.live.size();
+        }
+    }
+
+    /**
+     * @return pending depth per location key
+     */
+    public Map<Object, Integer> depths() {
+        Map<Object, Integer> out = new HashMap<Object, Integer>();
+        for (Map.Entry<Object, LocationQueue> e : locations.entrySet()) {
+            synchronized (e.getValue()) {
+                out.put(e.getKey(), e.getValue().live.size());
+            }
+        }
+        return out;
+    }
+
+    private LocationQueue queueFor(Object locationKey) {
+        LocationQueue q = locations.get(locationKey);
+        if (q == null) {
+            LocationQueue created = new LocationQueue(policy.newRunQueue());
+            q = locations.putIfAbsent(locationKey, created);
+            if (q == null) {
+                q = created;
+            }
+        }
+        return q;
+    }
+
+    private final class LocationQueue {
+
+        private final Map<String, QueueTicket> live;
+        private final ArrayDeque<QueueTicket> emergency;
+        private final TreeMap<Integer, ArrayDeque<QueueTicket>> arrivalsByPriority;
+        private final boolean preview;
+        private RunQueue run;
+        private long sequence;
+
+        LocationQueue(RunQueue run) {
+            this.preview = false;
+            this.live = new HashMap<String, QueueTicket>();
+            this.emergency = new ArrayDeque<QueueTicket>();
+            this.arrivalsByPriority = new TreeMap<Integer, ArrayDeque<QueueTicket>>();
+            this.run = run;
+        }
+
+        /**
+         * Preview copy. Tickets are copied too, so polling the copy never flags the tickets the
+         * real queue holds, even while another structure still references them.
+         */
+        private LocationQueue(LocationQueue source) {
+            Map<QueueTicket, QueueTicket> copies = new IdentityHashMap<QueueTicket, QueueTicket>();
+            Function<QueueTicket, QueueTicket> copyOf = t -> copies.computeIfAbsent(t, QueueTicket::copy);
+            this.preview = true;
+            this.live = new HashMap<String, QueueTicket>();
+            for (Map.Entry<String, QueueTicket> e : source.live.entrySet()) {
+                this.live.put(e.getKey(), copyOf.apply(e.getValue()));
+            }
+            this.emergency = new ArrayDeque<QueueTicket>();
+            for (QueueTicket t : source.emergency) {
+                this.emergency.addLast(copyOf.apply(t));
+            }
+            this.arrivalsByPriority = new TreeMap<Integer, ArrayDeque<QueueTicket>>();
+            for (Map.Entry<Integer, ArrayDeque<QueueTicket>> e : source.arrivalsByPriority.entrySet()) {
+                ArrayDeque<QueueTicket> arrivals = new ArrayDeque<QueueTicket>();
+                for (QueueTicket t : e.getValue()) {
+                    arrivals.addLast(copyOf.apply(t));
+                }
+                this.arrivalsByPriority.put(e.getKey(), arrivals);
+            }
+            this.run = source.run.copy(copyOf);
+            this.sequence = source.sequence;
+        }
+
+        void offer(QueueTicket ticket) {
+            QueueTicket existing = live.get(ticket.getUuid());
+            if (existing != null) {
+                existing.dequeued = true;
+            }
+            ticket.dequeued = false;
+            ticket.sequence = sequence++;
+            live.put(ticket.getUuid(), ticket);
+            if (ticket.getPriority() <= emergencyPriority) {
+                emergency.addLast(ticket);
+                return;
+            }
+            run.offer(ticket);
+            if (slaMillisByPriority.containsKey(ticket.getPriority())) {
+                ArrayDeque<QueueTicket> arrivals = arrivalsByPriority.get(ticket.getPriority());
+                if (arrivals == null) {
+                    arrivals = new ArrayDeque<QueueTicket>();
+                    arrivalsByPriority.put(ticket.getPriority(), arrivals);
+                }
+                arrivals.addLast(ticket);
+            }
+        }
+
+        QueueTicket poll(long nowMillis) {
+            QueueTicket t = firstLive(emergency);
+            if (t == null) {
+                t = mostOverdue(nowMillis);
+            }
+            if (t == null) {
+                t = run.poll();
+            }
+            if (t != null) {
+                t.dequeued = true;
+                live.remove(t.getUuid());
+                compactIfNeeded();
+            }
+            return t;
+        }
+
+        boolean remove(String uuid) {
+            QueueTicket t = live.remove(uuid);
+            if (t == null) {
+                return false;
+            }
+            t.dequeued = true;
+            compactIfNeeded();
+            return true;
+        }
+
+        List<String> preview(long nowMillis) {
+            LocationQueue copy = new LocationQueue(this);
+            List<String> order = new ArrayList<String>(live.size());
+            QueueTicket t;
+            while ((t = copy.poll(nowMillis)) != null) {
+                order.add(t.getUuid());
+            }
+            return order;
+        }
+
+        private QueueTicket mostOverdue(long nowMillis) {
+            QueueTicket worst = null;
+            long worstOverrun = 0;
+            for (Map.Entry<Integer, ArrayDeque<QueueTicket>> e : arrivalsByPriority.entrySet()) {
+                QueueTicket head = firstLive(e.getValue());
+                if (head == null) {
+                    continue;
+                }
+                long overrun = head.waitedMillis(nowMillis) - slaMillisByPriority.get(e.getKey());
+                if (overrun > worstOverrun) {
+                    worst = head;
+                    worstOverrun = overrun;
+                }
+            }
+            return worst;
+        }
+
+        private QueueTicket firstLive(ArrayDeque<QueueTicket> deque) {
+            while (!deque.isEmpty()) {
+                QueueTicket head = deque.peekFirst();
+                if (!head.dequeued) {
+                    return head;
+                }
+                deque.pollFirst();
+            }
+            return null;
+        }
+
+        /**
+         * Lazily removed tickets stay in the structures until they reach a head; rebuild once
+         * they outnumber the live ones so memory stays proportional to the queue depth.
+         */
+        private void compactIfNeeded() {
+            int held = run.size() + emergency.size();
+            if (preview || held < 64 || held <= 2 * live.size()) {
+                return;
+            }
+            List<QueueTicket> tickets = new ArrayList<QueueTicket>(live.values());
+            tickets.sort(Comparator.comparingLong(x -> x.sequence));
+            emergency.clear();
+            arrivalsByPriority.clear();
+            run = policy.newRunQueue();
+            live.clear();
+            for (QueueTicket ticket : tickets) {
+                long seq = ticket.sequence;
+                offer(ticket);
+                ticket.sequence = seq;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the {@link QueueScheduler} from global properties:
+ * - ghana.queue.scheduling.policy=strict | aging | weighted-fair (default strict)
+ * - ghana.queue.scheduling.agingMinutes=30 (aging policy: minutes per priority level)
+ * - ghana.queue.scheduling.weights=1:16,2:8,3:4 (weighted-fair policy, priority:weight)
+ * - ghana.queue.scheduling.emergencyPriority=1 (0 disables the emergency lane)
+ * - ghana.queue.scheduling.slaMinutes=2:15,3:45 (priority:max wait before preemption)
+ */
+public final class QueueSchedulingPolicies {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueSchedulingPolicies.class);
+
+    private QueueSchedulingPolicies() {
+    }
+
+    public static QueueScheduler fromGlobalProperties() {
+        AdministrationService as = Context.getAdministrationService();
+        String name = as.getGlobalProperty("ghana.queue.scheduling.policy", StrictPriorityPolicy.NAME);
+        long agingMinutes = parseLong(as.getGlobalProperty("ghana.queue.scheduling.agingMinutes", "30"), 30L);
+        Map<Integer, Long> weights = parsePairs(as.getGlobalProperty("ghana.queue.scheduling.weights", ""));
+        int emergency = (int) parseLong(as.getGlobalProperty("ghana.queue.scheduling.emergencyPriority",
+                String.valueOf(QueueScheduler.DEFAULT_EMERGENCY_PRIORITY)), QueueScheduler.DEFAULT_EMERGENCY_PRIORITY);
+        Map<Integer, Long> slaMinutes = parsePairs(as.getGlobalProperty("ghana.queue.scheduling.slaMinutes", ""));
+
+        Map<Integer, Long> slaMillis = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, Long> e : slaMinutes.entrySet()) {
+            slaMillis.put(e.getKey(), e.getValue() * 60_000L);
+        }
+        QueueSchedulingPolicy policy = byName(name, agingMinutes * 60_000L, toIntValues(weights));
+        log.info("Queue scheduling policy: {} (emergency<={}, sla={})", policy.getName(), emergency, slaMinutes);
+        return new QueueScheduler(policy, emergency, slaMillis);
+    }
+
+    public static QueueSchedulingPolicy byName(String name, long agingIntervalMillis, Map<Integer, Integer> weights) {
+        String n = name == null ? "" : name.trim().toLowerCase();
+        if (AgingPriorityPolicy.NAME.equals(n)) {
+            return new AgingPriorityPolicy(agingIntervalMillis > 0 ? agingIntervalMillis
+                    : AgingPriorityPolicy.DEFAULT_AGING_INTERVAL_MILLIS);
+        }
+        if (WeightedFairPolicy.NAME.equals(n) || "weighted".equals(n) || "wfq".equals(n)) {
+            return new WeightedFairPolicy(weights);
+        }
+        if (!n.isEmpty() && !StrictPriorityPolicy.NAME.equals(n)) {
+            log.warn("Unknown queue scheduling policy '{}', falling back to strict", name);
+        }
+        return new StrictPriorityPolicy();
+    }
+
+    static Map<Integer, Long> parsePairs(String value) {
+        Map<Integer, Long> out = new HashMap<Integer, Long>();
+        if (value == null || value.trim().isEmpty()) {
+            return out;
+        }
+        for (String pair : value.split(",")) {
+            String[] kv = pair.split(":");
+            if (kv.length != 2) {
+                continue;
+            }
+            try {
+                out.put(Integer.valueOf(kv[0].trim()), Long.valueOf(kv[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed queue scheduling entry '{}'", pair);
+            }
+        }
+        return out;
+    }
+
+    private static Map<Integer, Integer> toIntValues(Map<Integer, Long> in) {
+        Map<Integer, Integer> out = new HashMap<Integer, Integer>();
+        for (Map.Entry<Integer, Long> e : in.entrySet()) {
+            out.put(e.getKey(), e.getValue().intValue());
+        }
+        return out;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        try {
+            return value == null ? fallback : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
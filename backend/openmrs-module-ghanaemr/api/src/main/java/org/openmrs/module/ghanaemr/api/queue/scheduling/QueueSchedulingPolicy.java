@@ -0,0 +1,17 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+/**
+ * Pluggable ordering policy for PENDING queue entries at a single location.
+ *
+ * The emergency lane and SLA preemption are applied by {@link QueueScheduler} on top of every
+ * policy, so a policy only decides the order of regular entries.
+ */
+public interface QueueSchedulingPolicy {
+
+    /**
+     * @return the name used in the ghana.queue.scheduling.policy global property
+     */
+    String getName();
+
+    RunQueue newRunQueue();
+}
@@ -0,0 +1,51 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+/**
+ * Lightweight in-memory handle for a PENDING queue entry.
+ *
+ * Tickets are shared between the structures of a location queue (emergency lane, per-priority
+ * arrival lists and the policy run queue). Removal is lazy: a served or cancelled ticket is only
+ * flagged and is skipped when it reaches the head of any structure.
+ */
+public final class QueueTicket {
+
+    private final String uuid;
+    private final int priority;
+    private final long arrivalMillis;
+
+    long sequence;
+    boolean dequeued;
+
+    public QueueTicket(String uuid, int priority, long arrivalMillis) {
+        this.uuid = uuid;
+        this.priority = priority;
+        this.arrivalMillis = arrivalMillis;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /** Lower value means more urgent, matching PatientQueue.priority. */
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getArrivalMillis() {
+        return arrivalMillis;
+    }
+
+    /**
+     * @return a ticket with the same state, for previews that must not flag the shared one
+     */
+    QueueTicket copy() {
+        QueueTicket copy = new QueueTicket(uuid, priority, arrivalMillis);
+        copy.sequence = sequence;
+        copy.dequeued = dequeued;
+        return copy;
+    }
+
+    long waitedMillis(long nowMillis) {
+        return nowMillis - arrivalMillis;
+    }
+}
@@ -0,0 +1,30 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import java.util.function.Function;
+
+/**
+ * Per-location ordering structure created by a {@link QueueSchedulingPolicy}.
+ *
+ * Implementations are not thread-safe; {@link QueueScheduler} guards each location queue.
+ * Tickets flagged as dequeued must be skipped by {@link #poll()}.
+ */
+public interface RunQueue {
+
+    void offer(QueueTicket ticket);
+
+    /**
+     * @return the next live ticket according to the policy, or null when empty
+     */
+    QueueTicket poll();
+
+    /**
+     * @return number of physically held tickets, including lazily removed ones
+     */
+    int size();
+
+    /**
+     * @param tickets maps each held ticket to its counterpart in the copy
+     * @return an independent copy (including any fairness state) used to preview service order
+     */
+    RunQueue copy(Function<QueueTicket, QueueTicket> tickets);
+}
@@ -0,0 +1,75 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Orders by priority, then arrival time. This is the historical behaviour of
+ * HibernatePatientQueueDAO ("order by priority asc, dateCreated asc") and can starve
+ * low-priority patients on busy days.
+ */
+public class StrictPriorityPolicy implements QueueSchedulingPolicy {
+
+    public static final String NAME = "strict";
+
+    static final Comparator<QueueTicket> ORDER = Comparator
+            .comparingInt(QueueTicket::getPriority)
+            .thenComparingLong(QueueTicket::getArrivalMillis)
+            .thenComparingLong(t -> t.sequence);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RunQueue newRunQueue() {
+        return new HeapRunQueue(ORDER);
+    }
+
+    /**
+     * Binary heap with lazy removal, shared by the policies whose ordering key does not change
+     * while a ticket waits.
+     */
+    static class HeapRunQueue implements RunQueue {
+
+        private final Comparator<QueueTicket> order;
+        private final PriorityQueue<QueueTicket> heap;
+
+        HeapRunQueue(Comparator<QueueTicket> order) {
+            this.order = order;
+            this.heap = new PriorityQueue<QueueTicket>(64, order);
+        }
+
+        @Override
+        public void offer(QueueTicket ticket) {
+            heap.offer(ticket);
+        }
+
+        @Override
+        public QueueTicket poll() {
+            QueueTicket t;
+            while ((t = heap.poll()) != null) {
+                if (!t.dequeued) {
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return heap.size();
+        }
+
+        @Override
+        public RunQueue copy(Function<QueueTicket, QueueTicket> tickets) {
+            HeapRunQueue copy = new HeapRunQueue(order);
+            for (QueueTicket t : heap) {
+                copy.heap.offer(tickets.apply(t));
+            }
+            return copy;
+        }
+    }
+}
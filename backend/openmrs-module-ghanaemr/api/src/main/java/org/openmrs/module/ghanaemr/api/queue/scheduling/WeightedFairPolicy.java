@@ -0,0 +1,148 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Weighted fair sharing between priority bands.
+ *
+ * Each priority value is a FIFO band; bands are served by smooth weighted round-robin so that,
+ * under sustained load, band p receives weight(p) / sum(weights of non-empty bands) of the
+ * service slots. Urgent bands still dominate, but routine patients keep moving.
+ */
+public class WeightedFairPolicy implements QueueSchedulingPolicy {
+
+    public static final String NAME = "weighted-fair";
+
+    private final Map<Integer, Integer> weights;
+
+    public WeightedFairPolicy() {
+        this(Collections.<Integer, Integer>emptyMap());
+    }
+
+    /**
+     * @param weights weight per priority value; missing priorities use {@link #defaultWeight(int)}
+     */
+    public WeightedFairPolicy(Map<Integer, Integer> weights) {
+        this.weights = new HashMap<Integer, Integer>(weights);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RunQueue newRunQueue() {
+        return new FairRunQueue(this);
+    }
+
+    int weightOf(int priority) {
+        Integer w = weights.get(priority);
+        return w != null && w > 0 ? w : defaultWeight(priority);
+    }
+
+    /**
+     * Halves the share for every level below priority 1: 1 -> 16, 2 -> 8, 3 -> 4, 4 -> 2, 5+ -> 1.
+     */
+    static int defaultWeight(int priority) {
+        int shift = Math.max(0, Math.min(4, 5 - priority));
+        return 1 << shift;
+    }
+
+    private static final class Band {
+        final int weight;
+        final ArrayDeque<QueueTicket> tickets = new ArrayDeque<QueueTicket>();
+        long current;
+
+        Band(int weight) {
+            this.weight = weight;
+        }
+
+        boolean purge() {
+            while (!tickets.isEmpty() && tickets.peekFirst().dequeued) {
+                tickets.pollFirst();
+            }
+            return !tickets.isEmpty();
+        }
+    }
+
+    static final class FairRunQueue implements RunQueue {
+
+        private final WeightedFairPolicy policy;
+        private final TreeMap<Integer, Band> bands = new TreeMap<Integer, Band>();
+        private int size;
+
+        FairRunQueue(WeightedFairPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void offer(QueueTicket ticket) {
+            Band band = bands.get(ticket.getPriority());
+            if (band == null) {
+                band = new Band(policy.weightOf(ticket.getPriority()));
+                bands.put(ticket.getPriority(), band);
+            }
+            band.tickets.addLast(ticket);
+            size++;
+        }
+
+        @Override
+        public QueueTicket poll() {
+            Band selected = null;
+            long total = 0;
+            for (Band band : bands.values()) {
+                if (!band.purge()) {
+                    band.current = 0;
+                    continue;
+                }
+                band.current += band.weight;
+                total += band.weight;
+                if (selected == null || band.current > selected.current) {
+                    selected = band;
+                }
+            }
+            if (selected == null) {
+                size = 0;
+                return null;
+            }
+            selected.current -= total;
+            QueueTicket t = selected.tickets.pollFirst();
+            size = countTickets();
+            return t;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public RunQueue copy(Function<QueueTicket, QueueTicket> tickets) {
+            FairRunQueue copy = new FairRunQueue(policy);
+            for (Map.Entry<Integer, Band> e : bands.entrySet()) {
+                Band b = new Band(e.getValue().weight);
+                b.current = e.getValue().current;
+                for (QueueTicket t : e.getValue().tickets) {
+                    b.tickets.addLast(tickets.apply(t));
+                }
+                copy.bands.put(e.getKey(), b);
+            }
+            copy.size = size;
+            return copy;
+        }
+
+        private int countTickets() {
+            int n = 0;
+            for (Band band : bands.values()) {
+                n += band.tickets.size();
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * The DHIMS2 OPD age bands, by age on the day of the visit. Stored by name in the daily
+ * attendance and morbidity tables.
+ */
+public enum AgeBand {
+
+    DAYS_0_28("0-28d"),
+    MONTHS_1_11("1-11m"),
+    YEARS_1_4("1-4"),
+    YEARS_5_9("5-9"),
+    YEARS_10_14("10-14"),
+    YEARS_15_17("15-17"),
+    YEARS_18_19("18-19"),
+    YEARS_20_34("20-34"),
+    YEARS_35_49("35-49"),
+    YEARS_50_59("50-59"),
+    YEARS_60_69("60-69"),
+    YEARS_70_PLUS("70+"),
+    UNKNOWN("unknown");
+
+    private final String label;
+
+    AgeBand(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return UNKNOWN when the birthdate is missing or after the visit
+     */
+    public static AgeBand of(LocalDate birthdate, LocalDate visitDay) {
+        if (birthdate == null || visitDay == null || birthdate.isAfter(visitDay)) {
+            return UNKNOWN;
+        }
+        if (ChronoUnit.DAYS.between(birthdate, visitDay) <= 28) {
+            return DAYS_0_28;
+        }
+        int years = Period.between(birthdate, visitDay).getYears();
+        if (years < 1) return MONTHS_1_11;
+        if (years <= 4) return YEARS_1_4;
+        if (years <= 9) return YEARS_5_9;
+        if (years <= 14) return YEARS_10_14;
+        if (years <= 17) return YEARS_15_17;
+        if (years <= 19) return YEARS_18_19;
+        if (years <= 34) return YEARS_20_34;
+        if (years <= 49) return YEARS_35_49;
+        if (years <= 59) return YEARS_50_59;
+        if (years <= 69) return YEARS_60_69;
+        return YEARS_70_PLUS;
+    }
+
+    /**
+     * @return UNKNOWN for a name that is not a band (e.g. written by a later version)
+     */
+    public static AgeBand resolve(String name) {
+        if (name != null) {
+            for (AgeBand band : values()) {
+                if (band.name().equals(name)) {
+                    return band;
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+}
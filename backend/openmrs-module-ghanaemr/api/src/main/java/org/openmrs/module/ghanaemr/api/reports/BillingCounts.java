@@ -0,0 +1,20 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+public class BillingCounts {
+
+    private final long nhis;
+    private final long cash;
+
+    public BillingCounts(long nhis, long cash) {
+        this.nhis = nhis;
+        this.cash = cash;
+    }
+
+    public long getNhis() {
+        return nhis;
+    }
+
+    public long getCash() {
+        return cash;
+    }
+}
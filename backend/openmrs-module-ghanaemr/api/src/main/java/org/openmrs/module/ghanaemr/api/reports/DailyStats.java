@@ -0,0 +1,290 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.openmrs.module.ghanaemr.api.reports.db.DailyStatsDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains ghanaemr_daily_stats: per day, location and encounter type counts of encounters, NHIS
+ * and cash visits and new patients, plus per-day diagnosis counts and the DHIMS2 age band / sex
+ * counters ({@link Dhims2Counters}), so reports over a month sum about 30 days of rows instead of
+ * counting raw obs and encounters.
+ *
+ * A day is the unit of maintenance. Saving an encounter, obs, patient or condition marks its day
+ * dirty (see {@link DailyStatsAdvice}); dirty days are re-aggregated from the raw tables by a
+ * background flush, and a report touching a dirty day flushes it first. The dirty set is held per
+ * node, so a save handled by another node only shows here once that node has flushed (within
+ * FLUSH_INTERVAL_SECONDS), or at the nightly reconciliation if it stopped before flushing. To
+ * bound that for the day that matters most, a report covering today re-aggregates today whenever
+ * this node last did so more than TODAY_MAX_AGE_SECONDS ago. The nightly reconciliation also
+ * re-aggregates the last few days to catch edits that moved a row to another day. Reports only
+ * use the table when every day of the range has been aggregated.
+ */
+public class DailyStats {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyStats.class);
+
+    public static final int DEFAULT_RECONCILE_DAYS = 7;
+    public static final int DEFAULT_BACKFILL_DAYS = 366;
+
+    static final long FLUSH_INTERVAL_SECONDS = 60;
+    static final long TODAY_MAX_AGE_SECONDS = 60;
+    static final LocalTime RECONCILE_AT = LocalTime.of(2, 0);
+
+    private final Set<LocalDate> dirty = ConcurrentHashMap.newKeySet();
+
+    /** Serializes re-aggregation so the flush, reads and reconciliation never rebuild a day twice at once. */
+    private final Object aggregateLock = new Object();
+
+    private DailyStatsDAO dao;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    /** Last day this node aggregated as today, and when; guarded by aggregateLock. */
+    private LocalDate freshDay;
+    private long freshAt;
+
+    private volatile boolean enabled;
+    private ScheduledExecutorService scheduler;
+
+    private long daysAggregated;
+    private long aggregateMillis;
+    private long lastReconciledAt;
+
+    public void setDao(DailyStatsDAO dao) {
+        this.dao = dao;
+    }
+
+    /** For tests. */
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the periodic flush and nightly reconciliation, then backfills any of the last
+     * backfillDays days that have never been aggregated. Called by GhanaEMRActivator.
+     */
+    public synchronized void start(final int reconcileDays, final int backfillDays) {
+        if (scheduler != null) {
+            return;
+        }
+        enabled = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ghanaemr-daily-stats");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    backfill(LocalDate.now(), backfillDays);
+                } catch (Exception e) {
+                    log.warn("Could not backfill daily stats", e);
+                }
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    log.warn("Could not flush daily stats", e);
+                }
+            }
+        }, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    reconcile(LocalDate.now(), reconcileDays);
+                } catch (Exception e) {
+                    log.warn("Could not reconcile daily stats", e);
+                }
+            }
+        }, millisUntil(LocalDateTime.now(), RECONCILE_AT), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        enabled = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Records that rows dated on this day changed; cheap, called after each relevant commit.
+     */
+    public void markDirty(LocalDate day) {
+        if (enabled && day != null) {
+            dirty.add(day);
+        }
+    }
+
+    /**
+     * Re-aggregates every dirty day.
+     */
+    public void flush() {
+        for (LocalDate day : new ArrayList<LocalDate>(dirty)) {
+            aggregate(day);
+        }
+    }
+
+    /**
+     * Flushes dirty days inside the range, and today when this node's aggregate of it is older
+     * than TODAY_MAX_AGE_SECONDS, then reports whether every day in it has been aggregated. Call
+     * before any read on the caller's own transaction, so that transaction's snapshot includes the
+     * flush.
+     */
+    public boolean prepare(ReportRange range) {
+        if (!enabled) {
+            return false;
+        }
+        for (LocalDate day : new ArrayList<LocalDate>(dirty)) {
+            if (range.contains(day)) {
+                aggregate(day);
+            }
+        }
+        LocalDate today = LocalDate.now(clock);
+        if (range.contains(today) && !isFresh(today)) {
+            aggregate(today);
+        }
+        return dao.countAggregatedDays(range) == range.getDays();
+    }
+
+    /**
+     * Re-aggregates the last days days up to and including today.
+     */
+    public void reconcile(LocalDate today, int days) {
+        long start = System.currentTimeMillis();
+        for (int i = days - 1; i >= 0; i--) {
+            aggregate(today.minusDays(i));
+        }
+        synchronized (this) {
+            lastReconciledAt = System.currentTimeMillis();
+        }
+        log.info("Daily stats reconciled for the last {} days in {} ms", days, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Aggregates days in the last days days that have never been aggregated.
+     */
+    public void backfill(LocalDate today, int days) {
+        if (days <= 0) {
+            return;
+        }
+        ReportRange range = ReportRange.of(today.minusDays(days - 1), today);
+        List<LocalDate> missing = new ArrayList<LocalDate>();
+        Set<LocalDate> done = dao.getAggregatedDays(range);
+        for (LocalDate day = range.getFrom(); !day.isAfter(today); day = day.plusDays(1)) {
+            if (!done.contains(day)) {
+                missing.add(day);
+            }
+        }
+        long start = System.currentTimeMillis();
+        for (LocalDate day : missing) {
+            aggregate(day);
+        }
+        if (!missing.isEmpty()) {
+            log.info("Daily stats backfilled {} days in {} ms", missing.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    public BillingCounts sumBilling(ReportRange range, Integer locationId) {
+        return dao.sumBilling(range, locationId);
+    }
+
+    public long sumEncounters(ReportRange range, int encounterTypeId, Integer locationId) {
+        return dao.sumEncounters(range, encounterTypeId, locationId);
+    }
+
+    public long sumNewPatients(ReportRange range) {
+        return dao.sumNewPatients(range);
+    }
+
+    public List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit) {
+        return dao.getTopDiagnoses(range, limit);
+    }
+
+    public Dhims2Counters getDhims2Counters(ReportRange range, Integer locationId) {
+        return dao.getDhims2Counters(range, locationId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("enabled", enabled);
+        stats.put("dirtyDays", dirty.size());
+        synchronized (this) {
+            stats.put("daysAggregated", daysAggregated);
+            stats.put("aggregateMillis", aggregateMillis);
+            stats.put("lastReconciledAt", lastReconciledAt);
+        }
+        return stats;
+    }
+
+    private boolean isFresh(LocalDate today) {
+        synchronized (aggregateLock) {
+            return today.equals(freshDay) && clock.millis() - freshAt < TimeUnit.SECONDS.toMillis(TODAY_MAX_AGE_SECONDS);
+        }
+    }
+
+    private void aggregate(LocalDate day) {
+        synchronized (aggregateLock) {
+            // cleared first: a save committing during the rebuild marks the day dirty again
+            dirty.remove(day);
+            long startedAt = clock.millis();
+            long start = System.currentTimeMillis();
+            try {
+                dao.aggregateDay(day);
+            } catch (RuntimeException e) {
+                dirty.add(day);
+                throw e;
+            }
+            if (day.equals(LocalDate.now(clock))) {
+                freshDay = day;
+                freshAt = startedAt;
+            }
+            synchronized (this) {
+                daysAggregated++;
+                aggregateMillis += System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    static long millisUntil(LocalDateTime now, LocalTime at) {
+        LocalDateTime next = now.toLocalDate().atTime(at);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return Duration.between(now, next).toMillis();
+    }
+}
@@ -0,0 +1,144 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.openmrs.Condition;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Marks {@link DailyStats} days dirty, and drops the {@link ReportCache} entries that cover them,
+ * when consultations, billing obs, registrations or conditions are saved anywhere in the system.
+ * Declared as advice on EncounterService, ObsService, PatientService and ConditionService in
+ * config.xml; both happen after the surrounding transaction commits, so the re-aggregation and
+ * the next report load read the committed rows.
+ */
+public class DailyStatsAdvice implements AfterReturningAdvice {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyStatsAdvice.class);
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) {
+        String name = method.getName();
+        if (!(name.startsWith("save") || name.startsWith("void") || name.startsWith("unvoid")
+                || name.startsWith("purge"))) {
+            return;
+        }
+        final Set<Change> changes = new LinkedHashSet<Change>();
+        collect(returnValue, changes);
+        if (args != null && args.length > 0) {
+            collect(args[0], changes);
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        final DailyStats stats = getComponent(DailyStats.class);
+        final ReportCache cache = getComponent(ReportCache.class);
+        if ((stats == null || !stats.isEnabled()) && (cache == null || !cache.isEnabled())) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    apply(stats, cache, changes);
+                }
+            });
+        } else {
+            apply(stats, cache, changes);
+        }
+    }
+
+    private static void collect(Object value, Set<Change> changes) {
+        if (value instanceof Encounter) {
+            Encounter encounter = (Encounter) value;
+            Integer locationId = locationId(encounter.getLocation());
+            add(ReportCache.Topic.ENCOUNTERS, encounter.getEncounterDatetime(), locationId, changes);
+            if (encounter.getAllObs(true) != null) {
+                for (Obs obs : encounter.getAllObs(true)) {
+                    add(ReportCache.Topic.BILLING, obs.getObsDatetime(), locationId(obs.getLocation()), changes);
+                }
+            }
+        } else if (value instanceof Obs) {
+            Obs obs = (Obs) value;
+            add(ReportCache.Topic.BILLING, obs.getObsDatetime(), locationId(obs.getLocation()), changes);
+        } else if (value instanceof Patient) {
+            add(ReportCache.Topic.PATIENTS, ((Patient) value).getDateCreated(), null, changes);
+        } else if (value instanceof Condition) {
+            add(ReportCache.Topic.DIAGNOSES, ((Condition) value).getDateCreated(), null, changes);
+        }
+    }
+
+    private static void add(ReportCache.Topic topic, Date date, Integer locationId, Set<Change> changes) {
+        if (date != null) {
+            // getTime() rather than toInstant(): Hibernate may hand back a java.sql.Date
+            LocalDate day = Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+            changes.add(new Change(topic, day, locationId));
+        }
+    }
+
+    private static Integer locationId(Location location) {
+        return location != null ? location.getLocationId() : null;
+    }
+
+    private static void apply(DailyStats stats, ReportCache cache, Set<Change> changes) {
+        for (Change change : changes) {
+            if (stats != null && stats.isEnabled()) {
+                stats.markDirty(change.day);
+            }
+            if (cache != null) {
+                cache.invalidate(change.topic, change.day, change.locationId);
+            }
+        }
+    }
+
+    private static <T> T getComponent(Class<T> type) {
+        try {
+            return Context.getRegisteredComponents(type).stream().findFirst().orElse(null);
+        } catch (Exception e) {
+            log.debug("{} not available: {}", type.getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Change {
+        final ReportCache.Topic topic;
+        final LocalDate day;
+        final Integer locationId;
+
+        Change(ReportCache.Topic topic, LocalDate day, Integer locationId) {
+            this.topic = topic;
+            this.day = day;
+            this.locationId = locationId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Change)) {
+                return false;
+            }
+            Change c = (Change) o;
+            return topic == c.topic && day.equals(c.day) && Objects.equals(locationId, c.locationId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(topic, day, locationId);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Counts OPD consultations into {@link Dhims2Counters} in one pass over the joined
+ * encounter/person/obs result, grouped by encounter: {@link #encounter} for every result row,
+ * {@link #obs} when the row carries an obs, then {@link #finish()}. The same assembler builds a
+ * day's counters during daily aggregation and a whole month when recounting from the raw tables,
+ * so both apply identical rules.
+ *
+ * Payment follows {@link OpdRegisterAssembler}: the coded billing obs when ghana.billing.* is
+ * configured, otherwise the "Billing:" marker in the encounter's notes. Diagnoses are the ICD-10
+ * mapped concepts resolved by the query, counted once per encounter.
+ */
+public class Dhims2Assembler {
+
+    /** The encounter type ConsultationService records consultations under. */
+    public static final String CONSULTATION_ENCOUNTER_TYPE = "OPD Consultation";
+
+    private final Dhims2Counters counters;
+    private final Integer billingConceptId;
+    private final Integer nhisAnswerId;
+    private final Integer cashAnswerId;
+
+    private boolean open;
+    private int encounterId;
+    private int locationId;
+    private AgeBand band;
+    private String sex;
+    private Dhims2Counters.Payment payment;
+    private final Set<Integer> diagnoses = new LinkedHashSet<Integer>();
+    private final StringBuilder notes = new StringBuilder();
+
+    private long encounters;
+
+    /**
+     * @param billingConceptId null when coded billing is not configured
+     */
+    public Dhims2Assembler(Dhims2Counters counters, Integer billingConceptId, Integer nhisAnswerId, Integer cashAnswerId) {
+        this.counters = counters;
+        this.billingConceptId = billingConceptId;
+        this.nhisAnswerId = nhisAnswerId;
+        this.cashAnswerId = cashAnswerId;
+    }
+
+    /**
+     * Starts counting a new visit unless this is the current encounter's id.
+     *
+     * @param locationId 0 when the encounter has no location
+     */
+    public void encounter(int encounterId, int locationId, LocalDate birthdate, String gender, LocalDate visitDay) {
+        if (open && encounterId == this.encounterId) {
+            return;
+        }
+        emit();
+        open = true;
+        this.encounterId = encounterId;
+        this.locationId = locationId;
+        this.band = AgeBand.of(birthdate, visitDay);
+        this.sex = Dhims2Counters.sex(gender);
+    }
+
+    /**
+     * One non-voided obs of the current encounter.
+     *
+     * @param diagnosisConceptId the ICD-10 mapped coded answer, or for a concept-as-diagnosis obs
+     *            its concept; null when the obs is not a diagnosis
+     */
+    public void obs(int conceptId, Integer valueCoded, String valueText, Integer diagnosisConceptId) {
+        if (billingConceptId != null && conceptId == billingConceptId) {
+            if (valueCoded != null && valueCoded.equals(nhisAnswerId)) {
+                payment = Dhims2Counters.Payment.NHIS;
+            } else if (valueCoded != null && valueCoded.equals(cashAnswerId)) {
+                payment = Dhims2Counters.Payment.CASH;
+            }
+            return;
+        }
+        if (valueText != null) {
+            notes.append(valueText).append(" | ");
+        }
+        if (diagnosisConceptId != null) {
+            diagnoses.add(diagnosisConceptId);
+        }
+    }
+
+    public void finish() {
+        emit();
+    }
+
+    /** Visits counted so far. */
+    public long getEncounters() {
+        return encounters;
+    }
+
+    private void emit() {
+        if (!open) {
+            return;
+        }
+        Dhims2Counters.Payment visitPayment = payment;
+        if (visitPayment == null && notes.length() > 0) {
+            String billing = OpdRegisterAssembler.billingFromNotes(notes.toString());
+            if ("NHIS".equals(billing)) {
+                visitPayment = Dhims2Counters.Payment.NHIS;
+            } else if ("Cash".equals(billing)) {
+                visitPayment = Dhims2Counters.Payment.CASH;
+            }
+        }
+        counters.visit(locationId, band, sex, visitPayment != null ? visitPayment : Dhims2Counters.Payment.UNKNOWN,
+                diagnoses);
+        encounters++;
+        open = false;
+        payment = null;
+        diagnoses.clear();
+        notes.setLength(0);
+    }
+}
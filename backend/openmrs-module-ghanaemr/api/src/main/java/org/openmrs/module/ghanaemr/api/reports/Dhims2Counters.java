@@ -0,0 +1,211 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * OPD attendance by location, age band, sex and payment, and diagnosed cases by location,
+ * concept, age band and sex: the counters behind the DHIMS2 monthly dataset. One instance holds a
+ * day (as written to ghanaemr_daily_attendance / ghanaemr_daily_morbidity) or the sum of many
+ * days; summing daily counters gives exactly the counters of one pass over the whole period.
+ * Not thread-safe.
+ */
+public class Dhims2Counters {
+
+    public enum Payment {
+        NHIS, CASH, UNKNOWN;
+
+        /**
+         * @return UNKNOWN for a name that is not a payment
+         */
+        public static Payment resolve(String name) {
+            if (name != null) {
+                for (Payment payment : values()) {
+                    if (payment.name().equals(name)) {
+                        return payment;
+                    }
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    private final Map<Attendance, Long> attendance = new HashMap<Attendance, Long>();
+    private final Map<Morbidity, Long> morbidity = new HashMap<Morbidity, Long>();
+
+    /**
+     * Counts one OPD visit and one case of each of its distinct diagnoses.
+     */
+    public void visit(int locationId, AgeBand band, String sex, Payment payment, Collection<Integer> diagnosisConceptIds) {
+        addAttendance(locationId, band, sex, payment, 1);
+        for (Integer conceptId : diagnosisConceptIds) {
+            addMorbidity(locationId, conceptId, band, sex, 1);
+        }
+    }
+
+    public void addAttendance(int locationId, AgeBand band, String sex, Payment payment, long visits) {
+        if (visits != 0) {
+            attendance.merge(new Attendance(locationId, band, sex(sex), payment), visits, Long::sum);
+        }
+    }
+
+    public void addMorbidity(int locationId, int conceptId, AgeBand band, String sex, long cases) {
+        if (cases != 0) {
+            morbidity.merge(new Morbidity(locationId, conceptId, band, sex(sex)), cases, Long::sum);
+        }
+    }
+
+    public void merge(Dhims2Counters other) {
+        for (Map.Entry<Attendance, Long> e : other.attendance.entrySet()) {
+            attendance.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+        for (Map.Entry<Morbidity, Long> e : other.morbidity.entrySet()) {
+            morbidity.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+    }
+
+    public Map<Attendance, Long> getAttendance() {
+        return Collections.unmodifiableMap(attendance);
+    }
+
+    public Map<Morbidity, Long> getMorbidity() {
+        return Collections.unmodifiableMap(morbidity);
+    }
+
+    public boolean isEmpty() {
+        return attendance.isEmpty() && morbidity.isEmpty();
+    }
+
+    /**
+     * "M", "F", or "U" for anything else, as person.gender may hold other values.
+     */
+    public static String sex(String gender) {
+        if (gender != null) {
+            String g = gender.trim().toUpperCase();
+            if (g.equals("M") || g.equals("F")) {
+                return g;
+            }
+        }
+        return "U";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Dhims2Counters)) {
+            return false;
+        }
+        Dhims2Counters c = (Dhims2Counters) o;
+        return attendance.equals(c.attendance) && morbidity.equals(c.morbidity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(attendance, morbidity);
+    }
+
+    @Override
+    public String toString() {
+        return "Dhims2Counters{attendance=" + attendance + ", morbidity=" + morbidity + "}";
+    }
+
+    public static final class Attendance {
+        private final int locationId;
+        private final AgeBand band;
+        private final String sex;
+        private final Payment payment;
+
+        Attendance(int locationId, AgeBand band, String sex, Payment payment) {
+            this.locationId = locationId;
+            this.band = band;
+            this.sex = sex;
+            this.payment = payment;
+        }
+
+        public int getLocationId() {
+            return locationId;
+        }
+
+        public AgeBand getBand() {
+            return band;
+        }
+
+        public String getSex() {
+            return sex;
+        }
+
+        public Payment getPayment() {
+            return payment;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Attendance)) {
+                return false;
+            }
+            Attendance a = (Attendance) o;
+            return locationId == a.locationId && band == a.band && sex.equals(a.sex) && payment == a.payment;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(locationId, band, sex, payment);
+        }
+
+        @Override
+        public String toString() {
+            return locationId + "/" + band.getLabel() + "/" + sex + "/" + payment;
+        }
+    }
+
+    public static final class Morbidity {
+        private final int locationId;
+        private final int conceptId;
+        private final AgeBand band;
+        private final String sex;
+
+        Morbidity(int locationId, int conceptId, AgeBand band, String sex) {
+            this.locationId = locationId;
+            this.conceptId = conceptId;
+            this.band = band;
+            this.sex = sex;
+        }
+
+        public int getLocationId() {
+            return locationId;
+        }
+
+        public int getConceptId() {
+            return conceptId;
+        }
+
+        public AgeBand getBand() {
+            return band;
+        }
+
+        public String getSex() {
+            return sex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Morbidity)) {
+                return false;
+            }
+            Morbidity m = (Morbidity) o;
+            return locationId == m.locationId && conceptId == m.conceptId && band == m.band && sex.equals(m.sex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(locationId, conceptId, band, sex);
+        }
+
+        @Override
+        public String toString() {
+            return locationId + "/" + conceptId + "/" + band.getLabel() + "/" + sex;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DHIMS2 monthly OPD dataset for the district submission: attendance by age band and sex,
+ * insured (NHIS) against non-insured (cash) visits, and the top morbidities by age band and sex.
+ * Built from {@link Dhims2Counters} summed over the month; locations are added together.
+ */
+public class Dhims2MonthlyReport {
+
+    private static final String[] SEXES = {"M", "F", "U"};
+
+    private final YearMonth month;
+    private final Map<AgeBand, long[]> attendance = new EnumMap<AgeBand, long[]>(AgeBand.class);
+    private final Map<Dhims2Counters.Payment, Long> payments =
+            new EnumMap<Dhims2Counters.Payment, Long>(Dhims2Counters.Payment.class);
+    private final List<Morbidity> morbidities = new ArrayList<Morbidity>();
+    private long totalAttendance;
+
+    /**
+     * @param topConceptIds the morbidities to report, in rank order (see {@link #topMorbidities})
+     * @param names preferred names by concept id; may be missing some
+     * @param icd10 ICD-10 codes by concept id; may be missing some
+     */
+    public Dhims2MonthlyReport(YearMonth month, Dhims2Counters counters, List<Integer> topConceptIds,
+                               Map<Integer, String> names, Map<Integer, String> icd10) {
+        this.month = month;
+        for (AgeBand band : AgeBand.values()) {
+            attendance.put(band, new long[SEXES.length]);
+        }
+        for (Dhims2Counters.Payment payment : Dhims2Counters.Payment.values()) {
+            payments.put(payment, 0L);
+        }
+        for (Map.Entry<Dhims2Counters.Attendance, Long> e : counters.getAttendance().entrySet()) {
+            Dhims2Counters.Attendance key = e.getKey();
+            attendance.get(key.getBand())[sexIndex(key.getSex())] += e.getValue();
+            payments.merge(key.getPayment(), e.getValue(), Long::sum);
+            totalAttendance += e.getValue();
+        }
+        Map<Integer, Morbidity> byConcept = new HashMap<Integer, Morbidity>();
+        for (Integer conceptId : topConceptIds) {
+            Morbidity m = new Morbidity(conceptId, names.get(conceptId), icd10.get(conceptId));
+            byConcept.put(conceptId, m);
+            morbidities.add(m);
+        }
+        for (Map.Entry<Dhims2Counters.Morbidity, Long> e : counters.getMorbidity().entrySet()) {
+            Morbidity m = byConcept.get(e.getKey().getConceptId());
+            if (m != null) {
+                m.cases.get(e.getKey().getBand())[sexIndex(e.getKey().getSex())] += e.getValue();
+                m.total += e.getValue();
+            }
+        }
+    }
+
+    /**
+     * The concept ids with the most cases, most first and by concept id on ties.
+     */
+    public static List<Integer> topMorbidities(Dhims2Counters counters, int limit) {
+        final Map<Integer, Long> totals = new HashMap<Integer, Long>();
+        for (Map.Entry<Dhims2Counters.Morbidity, Long> e : counters.getMorbidity().entrySet()) {
+            totals.merge(e.getKey().getConceptId(), e.getValue(), Long::sum);
+        }
+        List<Integer> ids = new ArrayList<Integer>(totals.keySet());
+        ids.sort((a, b) -> {
+            int c = Long.compare(totals.get(b), totals.get(a));
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        return ids.size() > limit ? new ArrayList<Integer>(ids.subList(0, limit)) : ids;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public long getTotalAttendance() {
+        return totalAttendance;
+    }
+
+    /**
+     * Visits in the band by sex, as {M, F, U}.
+     */
+    public long[] getAttendance(AgeBand band) {
+        return attendance.get(band).clone();
+    }
+
+    public long getVisits(Dhims2Counters.Payment payment) {
+        return payments.get(payment);
+    }
+
+    public List<Morbidity> getMorbidities() {
+        return Collections.unmodifiableList(morbidities);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("month", month.toString());
+        m.put("totalAttendance", totalAttendance);
+        List<Map<String, Object>> bands = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<AgeBand, long[]> e : attendance.entrySet()) {
+            bands.add(bandMap(e.getKey(), e.getValue()));
+        }
+        m.put("attendance", bands);
+        Map<String, Object> payment = new LinkedHashMap<String, Object>();
+        payment.put("insured", payments.get(Dhims2Counters.Payment.NHIS));
+        payment.put("nonInsured", payments.get(Dhims2Counters.Payment.CASH));
+        payment.put("unknown", payments.get(Dhims2Counters.Payment.UNKNOWN));
+        m.put("payment", payment);
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (Morbidity morbidity : morbidities) {
+            Map<String, Object> item = new LinkedHashMap<String, Object>();
+            item.put("conceptId", morbidity.conceptId);
+            item.put("name", morbidity.name);
+            item.put("icd10", morbidity.icd10);
+            item.put("cases", morbidity.total);
+            List<Map<String, Object>> byBand = new ArrayList<Map<String, Object>>();
+            for (Map.Entry<AgeBand, long[]> e : morbidity.cases.entrySet()) {
+                if (sum(e.getValue()) > 0) {
+                    byBand.add(bandMap(e.getKey(), e.getValue()));
+                }
+            }
+            item.put("byAgeBand", byBand);
+            items.add(item);
+        }
+        m.put("morbidity", items);
+        return m;
+    }
+
+    /**
+     * One row per attendance band, payment type and morbidity band with cases:
+     * section,item,icd10,ageBand,male,female,unknown,total.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("section,item,icd10,ageBand,male,female,unknown,total\n");
+        for (Map.Entry<AgeBand, long[]> e : attendance.entrySet()) {
+            row(out, "attendance", "OPD attendance", null, e.getKey().getLabel(), e.getValue());
+        }
+        row(out, "payment", "Insured (NHIS)", null, null, payments.get(Dhims2Counters.Payment.NHIS));
+        row(out, "payment", "Non-insured (cash)", null, null, payments.get(Dhims2Counters.Payment.CASH));
+        row(out, "payment", "Unknown", null, null, payments.get(Dhims2Counters.Payment.UNKNOWN));
+        for (Morbidity morbidity : morbidities) {
+            String item = morbidity.name != null ? morbidity.name : String.valueOf(morbidity.conceptId);
+            for (Map.Entry<AgeBand, long[]> e : morbidity.cases.entrySet()) {
+                if (sum(e.getValue()) > 0) {
+                    row(out, "morbidity", item, morbidity.icd10, e.getKey().getLabel(), e.getValue());
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static void row(Writer out, String section, String item, String icd10, String band, long[] bySex)
+            throws IOException {
+        out.write(section + "," + OpdRegisterWriter.csv(item) + "," + OpdRegisterWriter.csv(icd10) + ","
+                + OpdRegisterWriter.csv(band) + "," + bySex[0] + "," + bySex[1] + "," + bySex[2] + "," + sum(bySex) + "\n");
+    }
+
+    private static void row(Writer out, String section, String item, String icd10, String band, long total)
+            throws IOException {
+        out.write(section + "," + OpdRegisterWriter.csv(item) + "," + OpdRegisterWriter.csv(icd10) + ","
+                + OpdRegisterWriter.csv(band) + ",,,," + total + "\n");
+    }
+
+    private static Map<String, Object> bandMap(AgeBand band, long[] bySex) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("ageBand", band.getLabel());
+        m.put("male", bySex[0]);
+        m.put("female", bySex[1]);
+        m.put("unknown", bySex[2]);
+        m.put("total", sum(bySex));
+        return m;
+    }
+
+    private static int sexIndex(String sex) {
+        return "M".equals(sex) ? 0 : "F".equals(sex) ? 1 : 2;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long v : values) {
+            total += v;
+        }
+        return total;
+    }
+
+    public static final class Morbidity {
+        private final int conceptId;
+        private final String name;
+        private final String icd10;
+        private final Map<AgeBand, long[]> cases = new EnumMap<AgeBand, long[]>(AgeBand.class);
+        private long total;
+
+        Morbidity(int conceptId, String name, String icd10) {
+            this.conceptId = conceptId;
+            this.name = name;
+            this.icd10 = icd10;
+            for (AgeBand band : AgeBand.values()) {
+                cases.put(band, new long[SEXES.length]);
+            }
+        }
+
+        public int getConceptId() {
+            return conceptId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getIcd10() {
+            return icd10;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Cases in the band by sex, as {M, F, U}.
+         */
+        public long[] getCases(AgeBand band) {
+            return cases.get(band).clone();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+public class DiagnosisCount {
+
+    private final int conceptId;
+    private final String name;
+    private final long count;
+
+    public DiagnosisCount(int conceptId, String name, long count) {
+        this.conceptId = conceptId;
+        this.name = name;
+        this.count = count;
+    }
+
+    public int getConceptId() {
+        return conceptId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
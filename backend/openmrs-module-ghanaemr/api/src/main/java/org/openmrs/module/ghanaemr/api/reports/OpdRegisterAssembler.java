@@ -0,0 +1,178 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Builds OPD register rows in one pass over the joined encounter/obs result, which arrives grouped
+ * by encounter: {@link #encounter} for every result row, {@link #obs} when the row carries an obs,
+ * then {@link #finish()}. Only the current encounter is held, so memory does not grow with the
+ * range.
+ *
+ * Billing comes from the coded billing obs when ghana.billing.* is configured. Diagnoses are obs
+ * whose answer (or, for the concept-as-diagnosis obs recorded by ConsultationService, whose
+ * concept) has an ICD-10 mapping. Only when an encounter has neither are the "Billing:" and
+ * "Diagnoses:" markers parsed out of its free-text obs.
+ */
+public class OpdRegisterAssembler {
+
+    private static final String DIAGNOSES_MARKER = "Diagnoses:";
+
+    private final ReportsService.OpdRegisterSink sink;
+    private final Integer billingConceptId;
+    private final Integer nhisAnswerId;
+    private final Integer cashAnswerId;
+    private final ConceptIcd10Map icd10;
+
+    private boolean open;
+    private int encounterId;
+    private String encounterUuid;
+    private Date encounterDatetime;
+    private String patientUuid;
+    private String givenName;
+    private String familyName;
+    private String billing;
+    private final Set<String> diagnoses = new LinkedHashSet<String>();
+    private final Set<String> texts = new LinkedHashSet<String>();
+
+    private long encounters;
+    private long codedBilling;
+    private long codedDiagnoses;
+
+    /**
+     * @param billingConceptId null when coded billing is not configured
+     * @param icd10 null, or not yet ready, to rely on the free-text markers for diagnoses
+     */
+    public OpdRegisterAssembler(ReportsService.OpdRegisterSink sink, Integer billingConceptId, Integer nhisAnswerId,
+                                Integer cashAnswerId, ConceptIcd10Map icd10) {
+        this.sink = sink;
+        this.billingConceptId = billingConceptId;
+        this.nhisAnswerId = nhisAnswerId;
+        this.cashAnswerId = cashAnswerId;
+        this.icd10 = icd10 != null && icd10.isReady() ? icd10 : null;
+    }
+
+    /**
+     * Starts a new register row unless this is the current encounter's id.
+     */
+    public void encounter(int encounterId, String encounterUuid, Date encounterDatetime, String patientUuid,
+                          String givenName, String familyName) {
+        if (open && encounterId == this.encounterId) {
+            return;
+        }
+        emit();
+        open = true;
+        this.encounterId = encounterId;
+        this.encounterUuid = encounterUuid;
+        this.encounterDatetime = encounterDatetime;
+        this.patientUuid = patientUuid;
+        this.givenName = givenName;
+        this.familyName = familyName;
+    }
+
+    /**
+     * One non-voided obs of the current encounter, with the preferred English names of its
+     * concept and coded answer.
+     */
+    public void obs(int conceptId, Integer valueCoded, String valueText, String conceptName, String answerName) {
+        if (billingConceptId != null && conceptId == billingConceptId) {
+            if (valueCoded != null && valueCoded.equals(nhisAnswerId)) {
+                billing = "NHIS";
+            } else if (valueCoded != null && valueCoded.equals(cashAnswerId)) {
+                billing = "Cash";
+            }
+            return;
+        }
+        if (valueText != null) {
+            texts.add(valueText);
+        }
+        if (icd10 == null) {
+            return;
+        }
+        if (valueCoded != null) {
+            if (icd10.get(valueCoded) != null) {
+                diagnoses.add(answerName != null ? answerName : String.valueOf(valueCoded));
+            }
+        } else if (valueText == null && icd10.get(conceptId) != null) {
+            diagnoses.add(conceptName != null ? conceptName : String.valueOf(conceptId));
+        }
+    }
+
+    public void finish() {
+        emit();
+    }
+
+    /** Register rows emitted so far. */
+    public long getEncounters() {
+        return encounters;
+    }
+
+    /** Rows whose billing came from a coded obs rather than the notes. */
+    public long getCodedBilling() {
+        return codedBilling;
+    }
+
+    /** Rows whose diagnoses came from ICD-10 mapped obs rather than the notes. */
+    public long getCodedDiagnoses() {
+        return codedDiagnoses;
+    }
+
+    private void emit() {
+        if (!open) {
+            return;
+        }
+        String rowBilling = billing;
+        String rowDiagnoses = diagnoses.isEmpty() ? null : String.join(", ", diagnoses);
+        if (rowBilling != null) {
+            codedBilling++;
+        }
+        if (rowDiagnoses != null) {
+            codedDiagnoses++;
+        }
+        if ((rowBilling == null || rowDiagnoses == null) && !texts.isEmpty()) {
+            String notes = String.join(" | ", texts);
+            if (rowBilling == null) {
+                rowBilling = billingFromNotes(notes);
+            }
+            if (rowDiagnoses == null) {
+                rowDiagnoses = diagnosesFromNotes(notes);
+            }
+        }
+        sink.entry(new OpdRegisterEntry(encounterUuid, encounterDatetime, patientUuid, givenName, familyName,
+                rowBilling, rowDiagnoses));
+        encounters++;
+        open = false;
+        billing = null;
+        diagnoses.clear();
+        texts.clear();
+    }
+
+    /**
+     * "NHIS" or "Cash" from a "Billing: ..." marker in the notes, or null.
+     */
+    static String billingFromNotes(String notes) {
+        if (notes.contains(ReportsService.NHIS_MARKER)) {
+            return "NHIS";
+        }
+        if (notes.contains(ReportsService.CASH_MARKER)) {
+            return "Cash";
+        }
+        return null;
+    }
+
+    /**
+     * The rest of the "Diagnoses:" line in the notes, or null.
+     */
+    static String diagnosesFromNotes(String notes) {
+        int idx = notes.indexOf(DIAGNOSES_MARKER);
+        if (idx < 0) {
+            return null;
+        }
+        String tail = notes.substring(idx + DIAGNOSES_MARKER.length()).trim();
+        int nl = tail.indexOf('\n');
+        return nl >= 0 ? tail.substring(0, nl) : tail;
+    }
+}
@@ -0,0 +1,60 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.util.Date;
+
+/**
+ * One encounter row of the OPD register, unmasked; names are masked for output by
+ * {@link OpdRegisterWriter}. Billing and diagnoses are already resolved by
+ * {@link OpdRegisterAssembler}.
+ */
+public class OpdRegisterEntry {
+
+    private final String encounterUuid;
+    private final Date encounterDatetime;
+    private final String patientUuid;
+    private final String givenName;
+    private final String familyName;
+    private final String billing;
+    private final String diagnoses;
+
+    public OpdRegisterEntry(String encounterUuid, Date encounterDatetime, String patientUuid, String givenName,
+                            String familyName, String billing, String diagnoses) {
+        this.encounterUuid = encounterUuid;
+        this.encounterDatetime = encounterDatetime;
+        this.patientUuid = patientUuid;
+        this.givenName = givenName;
+        this.familyName = familyName;
+        this.billing = billing;
+        this.diagnoses = diagnoses;
+    }
+
+    public String getEncounterUuid() {
+        return encounterUuid;
+    }
+
+    public Date getEncounterDatetime() {
+        return encounterDatetime;
+    }
+
+    public String getPatientUuid() {
+        return patientUuid;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    /** "NHIS", "Cash" or null. */
+    public String getBilling() {
+        return billing;
+    }
+
+    /** Diagnosis names joined with ", ", or null. */
+    public String getDiagnoses() {
+        return diagnoses;
+    }
+}
@@ -0,0 +1,154 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes OPD register rows as CSV or NDJSON as they are read, so an export holds one row at a
+ * time whatever the date range. Names are masked as in the JSON register.
+ */
+public class OpdRegisterWriter implements ReportsService.OpdRegisterSink {
+
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        /**
+         * @return the streaming format named by the parameter, or null for anything else
+         */
+        public static Format resolve(String format) {
+            if (format == null) {
+                return null;
+            }
+            String f = format.trim().toUpperCase(Locale.ENGLISH);
+            if ("JSONL".equals(f)) {
+                return NDJSON;
+            }
+            try {
+                return valueOf(f);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        public String contentType() {
+            return this == CSV ? "text/csv; charset=UTF-8" : "application/x-ndjson; charset=UTF-8";
+        }
+    }
+
+    static final String CSV_HEADER = "encounterUuid,datetime,patientUuid,givenName,familyName,billing,diagnoses\n";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Writer out;
+    private final Format format;
+    private JsonGenerator json;
+    private long rows;
+
+    public OpdRegisterWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Writes the CSV header; call once before the first row.
+     */
+    public void start() throws IOException {
+        if (format == Format.CSV) {
+            out.write(CSV_HEADER);
+        } else {
+            json = JSON.createGenerator(out);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if the client has gone away
+     */
+    @Override
+    public void entry(OpdRegisterEntry entry) {
+        try {
+            if (format == Format.CSV) {
+                writeCsv(entry);
+            } else {
+                writeJson(entry);
+            }
+            rows++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        if (json != null) {
+            json.flush();
+        }
+        out.flush();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    private void writeCsv(OpdRegisterEntry e) throws IOException {
+        out.write(csv(e.getEncounterUuid()));
+        out.write(',');
+        out.write(String.valueOf(e.getEncounterDatetime()));
+        out.write(',');
+        out.write(csv(e.getPatientUuid()));
+        out.write(',');
+        out.write(csv(maskName(e.getGivenName())));
+        out.write(',');
+        out.write(csv(maskName(e.getFamilyName())));
+        out.write(',');
+        out.write(csv(e.getBilling()));
+        out.write(',');
+        out.write(csv(e.getDiagnoses()));
+        out.write('\n');
+    }
+
+    private void writeJson(OpdRegisterEntry e) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("encounterUuid", e.getEncounterUuid());
+        if (e.getEncounterDatetime() != null) {
+            json.writeNumberField("datetime", e.getEncounterDatetime().getTime());
+        } else {
+            json.writeNullField("datetime");
+        }
+        json.writeStringField("patientUuid", e.getPatientUuid());
+        json.writeStringField("givenName", maskName(e.getGivenName()));
+        json.writeStringField("familyName", maskName(e.getFamilyName()));
+        if (e.getBilling() != null) {
+            json.writeStringField("billing", e.getBilling());
+        }
+        if (e.getDiagnoses() != null) {
+            json.writeStringField("diagnoses", e.getDiagnoses());
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    public static String maskName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        return name.substring(0, 1) + "***";
+    }
+
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value.replace("\"", "\"\"");
+        if (s.contains(",") || s.contains("\n") || s.contains("\"")) {
+            return "\"" + s + "\"";
+        }
+        return s;
+    }
+}
@@ -0,0 +1,363 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.openmrs.module.ghanaemr.api.metrics.MetricsCollector;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Report and dashboard results shared by every caller, keyed by endpoint and normalized
+ * parameters (resolved ids and the date range, not the response format).
+ *
+ * Each entry records which data it was computed from ({@link Topic}), over which days and for which
+ * location, so a saved consultation, registration or NHIE log row drops only the entries that
+ * could include it. Entries whose range reaches today, or that have no range (rolling windows),
+ * expire after todayTtlSeconds; closed past periods are kept for pastTtlSeconds and rely on
+ * invalidation for back-dated changes.
+ *
+ * Concurrent misses for the same key share one load. A load overlapped by an invalidation of its
+ * key is returned to its callers but not cached, since it may have read the data from before the
+ * change.
+ *
+ * The cache and its invalidation are node-local: a change saved through another node does not
+ * drop entries here. Such a change shows on this node once the entry expires, which for a past
+ * period is only after pastTtlSeconds (an hour by default). Deployments running more than one
+ * node should lower pastTtlSeconds on the reportCache bean to the lag they accept.
+ */
+public class ReportCache implements MetricsCollector {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_TODAY_TTL_SECONDS = 30;
+    public static final long DEFAULT_PAST_TTL_SECONDS = 3600;
+
+    /** What a cached result was computed from. */
+    public enum Topic {
+        /** encounter rows (visit counts, OPD register) */
+        ENCOUNTERS,
+        /** billing obs and consultation notes */
+        BILLING,
+        /** conditions */
+        DIAGNOSES,
+        /** patient registrations */
+        PATIENTS,
+        /** ghanaemr_nhie_transaction_log */
+        NHIE_LOG
+    }
+
+    /**
+     * @param <T> result type
+     */
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+
+    private final Map<Key, Flight> flights = new HashMap<Key, Flight>();
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private boolean enabled = true;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long todayTtlMillis = DEFAULT_TODAY_TTL_SECONDS * 1000;
+
+    private long pastTtlMillis = DEFAULT_PAST_TTL_SECONDS * 1000;
+
+    private long hits;
+
+    private long misses;
+
+    private long sharedLoads;
+
+    private long invalidations;
+
+    private long expirations;
+
+    private long evictions;
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            entries.clear();
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+        evict();
+    }
+
+    public synchronized void setTodayTtlSeconds(long seconds) {
+        this.todayTtlMillis = Math.max(0, seconds) * 1000;
+    }
+
+    public synchronized void setPastTtlSeconds(long seconds) {
+        this.pastTtlMillis = Math.max(0, seconds) * 1000;
+    }
+
+    synchronized void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param range null for results over a rolling window (e.g. the last 24 hours)
+     * @param locationId null for all locations
+     */
+    public static Key key(String endpoint, ReportRange range, Integer locationId, Topic first, Topic... rest) {
+        return new Key(endpoint, range, locationId, EnumSet.of(first, rest));
+    }
+
+    /**
+     * @return the cached result for key, or the result of loader, which runs at most once at a time
+     *         per key however many callers miss together
+     * @throws Exception whatever loader threw; failures are not cached
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, final Loader<T> loader) throws Exception {
+        Flight flight;
+        boolean owner = false;
+        synchronized (this) {
+            if (!enabled) {
+                return loader.load();
+            }
+            Entry e = entries.get(key);
+            if (e != null && e.expiresAt > clock.millis()) {
+                hits++;
+                return (T) e.value;
+            }
+            if (e != null) {
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(loader);
+                flights.put(key, flight);
+                owner = true;
+            } else {
+                sharedLoads++;
+            }
+        }
+        if (owner) {
+            flight.task.run();
+            synchronized (this) {
+                flights.remove(key);
+                if (!flight.stale && enabled && !flight.failed()) {
+                    entries.put(key, new Entry(flight.task.get(), clock.millis() + ttl(key)));
+                    evict();
+                }
+            }
+        }
+        try {
+            return (T) flight.task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Drops the entries, and marks the in-flight loads, that include data of this topic for day
+     * at locationId.
+     *
+     * @param locationId null when the change is not tied to a location; matches every entry
+     */
+    public synchronized void invalidate(Topic topic, LocalDate day, Integer locationId) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().affectedBy(topic, day, locationId)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+        for (Map.Entry<Key, Flight> f : flights.entrySet()) {
+            if (f.getKey().affectedBy(topic, day, locationId)) {
+                f.getValue().stale = true;
+            }
+        }
+    }
+
+    /**
+     * A change of this topic today, e.g. an NHIE log write.
+     */
+    public void invalidate(Topic topic) {
+        invalidate(topic, LocalDate.now(clock), null);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        for (Flight f : flights.values()) {
+            f.stale = true;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("todayTtlSeconds", todayTtlMillis / 1000);
+        stats.put("pastTtlSeconds", pastTtlMillis / 1000);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("sharedLoads", sharedLoads);
+        stats.put("inFlight", flights.size());
+        stats.put("invalidations", invalidations);
+        stats.put("expirations", expirations);
+        stats.put("evictions", evictions);
+        long lookups = hits + misses;
+        stats.put("hitRate", lookups == 0 ? 0.0 : hits / (double) lookups);
+        return stats;
+    }
+
+    /**
+     * Writes the ghanaemr_report_cache_* families; the hit rate is hits over hits plus misses.
+     */
+    @Override
+    public void writePrometheus(PrometheusWriter out) throws IOException {
+        long h;
+        long m;
+        long shared;
+        long invalidated;
+        long expired;
+        long evicted;
+        int size;
+        synchronized (this) {
+            h = hits;
+            m = misses;
+            shared = sharedLoads;
+            invalidated = invalidations;
+            expired = expirations;
+            evicted = evictions;
+            size = entries.size();
+        }
+        out.family("ghanaemr_report_cache_hits_total", "counter", "Report and dashboard lookups served from the cache");
+        out.sample("ghanaemr_report_cache_hits_total", h);
+        out.family("ghanaemr_report_cache_misses_total", "counter", "Report and dashboard lookups that ran or joined a load");
+        out.sample("ghanaemr_report_cache_misses_total", m);
+        out.family("ghanaemr_report_cache_shared_loads_total", "counter", "Misses that waited on a load already running for the same key");
+        out.sample("ghanaemr_report_cache_shared_loads_total", shared);
+        out.family("ghanaemr_report_cache_removals_total", "counter", "Report cache entries dropped, by cause");
+        out.sample("ghanaemr_report_cache_removals_total", invalidated, "cause", "invalidation");
+        out.sample("ghanaemr_report_cache_removals_total", expired, "cause", "expiration");
+        out.sample("ghanaemr_report_cache_removals_total", evicted, "cause", "eviction");
+        out.family("ghanaemr_report_cache_entries", "gauge", "Results held by the report cache");
+        out.sample("ghanaemr_report_cache_entries", size);
+    }
+
+    private long ttl(Key key) {
+        if (key.range == null || !key.range.getTo().isBefore(LocalDate.now(clock))) {
+            return todayTtlMillis;
+        }
+        return pastTtlMillis;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Endpoint plus normalized parameters; also says which changes affect the result.
+     */
+    public static final class Key {
+        private final String endpoint;
+        private final ReportRange range;
+        private final Integer locationId;
+        private final EnumSet<Topic> topics;
+
+        Key(String endpoint, ReportRange range, Integer locationId, EnumSet<Topic> topics) {
+            this.endpoint = endpoint;
+            this.range = range;
+            this.locationId = locationId;
+            this.topics = topics;
+        }
+
+        boolean affectedBy(Topic topic, LocalDate day, Integer changedLocationId) {
+            return topics.contains(topic)
+                    && (range == null || day == null || range.contains(day))
+                    && (locationId == null || changedLocationId == null || locationId.equals(changedLocationId));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return endpoint.equals(k.endpoint) && Objects.equals(range, k.range)
+                    && Objects.equals(locationId, k.locationId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, range, locationId);
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + (range != null ? " " + range : "") + (locationId != null ? " @" + locationId : "");
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Flight {
+        final FutureTask<Object> task;
+        boolean stale;
+
+        Flight(final Loader<?> loader) {
+            this.task = new FutureTask<Object>(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return loader.load();
+                }
+            });
+        }
+
+        boolean failed() {
+            try {
+                task.get();
+                return false;
+            } catch (Exception e) {
+                return true;
+            }
+        }
+    }
+}
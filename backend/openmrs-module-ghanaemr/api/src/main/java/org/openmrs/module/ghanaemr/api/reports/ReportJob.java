@@ -0,0 +1,240 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * A report run in the background, as stored in ghanaemr_report_job. The result is written to
+ * filePath once; durationMs is the time from start to the result being written.
+ */
+public class ReportJob {
+
+    public enum Type {
+        REVENUE,
+        TOP_DIAGNOSES,
+        OPD_REGISTER;
+
+        /**
+         * @return the type named by the parameter (e.g. top-diagnoses), or null for anything else
+         */
+        public static Type resolve(String type) {
+            if (type == null) {
+                return null;
+            }
+            try {
+                return valueOf(type.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    /** JSON is written as NDJSON for the OPD register. */
+    public enum Format {
+        JSON,
+        CSV;
+
+        public static Format resolve(String format) {
+            if (format == null || format.trim().isEmpty()) {
+                return JSON;
+            }
+            try {
+                return valueOf(format.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private Long id;
+    private String uuid;
+    private Type type;
+    private Format format;
+    private LocalDate from;
+    private LocalDate to;
+    private Integer locationId;
+    private Integer encounterTypeId;
+    private Integer limit;
+    private Status status;
+    private String filePath;
+    private long rows;
+    private Long durationMs;
+    private String errorMessage;
+    private Date dateCreated;
+    private Date startedAt;
+    private Date finishedAt;
+
+    /**
+     * Jobs with the same key produce the same result; a submit matching a queued or running job
+     * joins it instead of starting another.
+     */
+    public String getKey() {
+        return type + "|" + format + "|" + from + "|" + to + "|" + locationId + "|" + encounterTypeId + "|" + limit;
+    }
+
+    public ReportRange getRange() {
+        return ReportRange.of(from, to);
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String fileExtension() {
+        if (format == Format.CSV) {
+            return ".csv";
+        }
+        return type == Type.OPD_REGISTER ? ".ndjson" : ".json";
+    }
+
+    public String contentType() {
+        if (format == Format.CSV) {
+            return "text/csv; charset=UTF-8";
+        }
+        return type == Type.OPD_REGISTER ? "application/x-ndjson; charset=UTF-8" : "application/json; charset=UTF-8";
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public Integer getLocationId() {
+        return locationId;
+    }
+
+    public void setLocationId(Integer locationId) {
+        this.locationId = locationId;
+    }
+
+    public Integer getEncounterTypeId() {
+        return encounterTypeId;
+    }
+
+    public void setEncounterTypeId(Integer encounterTypeId) {
+        this.encounterTypeId = encounterTypeId;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public Long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(Long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -0,0 +1,370 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.reports.db.ReportJobDAO;
+import org.openmrs.util.OpenmrsUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long report requests (revenue, top diagnoses, OPD register over weeks or months) off the
+ * HTTP thread. A submitted job is stored in ghanaemr_report_job, run on a small pool of low
+ * priority threads and its result written to a file under ghanaemr/reports in the application
+ * data directory, from where it can be downloaded until it expires.
+ *
+ * At most maxConcurrent jobs run at once, so reports hold at most that many database connections,
+ * and at most maxQueued wait; further submits are rejected rather than queued without bound. A
+ * submit identical to a queued or running job (same {@link ReportJob#getKey()}) returns that job.
+ */
+public class ReportJobRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJobRunner.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    public static final int DEFAULT_MAX_QUEUED = 20;
+    public static final int DEFAULT_RETENTION_DAYS = 7;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private ReportJobDAO dao;
+
+    private ReportsService reportsService;
+
+    private ConceptIcd10Map conceptIcd10Map;
+
+    private File directory;
+
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+
+    private int retentionDays = DEFAULT_RETENTION_DAYS;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, ReportJob> inFlight = new ConcurrentHashMap<String, ReportJob>();
+
+    private long submitted;
+
+    private long deduplicated;
+
+    private long rejected;
+
+    private long completed;
+
+    private long failed;
+
+    private long totalDurationMs;
+
+    private long maxDurationMs;
+
+    public void setDao(ReportJobDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setReportsService(ReportsService reportsService) {
+        this.reportsService = reportsService;
+    }
+
+    public void setConceptIcd10Map(ConceptIcd10Map conceptIcd10Map) {
+        this.conceptIcd10Map = conceptIcd10Map;
+    }
+
+    /**
+     * Where results are kept; defaults to ghanaemr/reports in the application data directory.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = Math.max(1, maxQueued);
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = Math.max(1, retentionDays);
+    }
+
+    /**
+     * Fails jobs a restart left unfinished and deletes jobs, and their files, past retentionDays.
+     */
+    public void start() {
+        int interrupted = dao.failUnfinished("Interrupted by restart");
+        if (interrupted > 0) {
+            log.info("Marked {} unfinished report jobs as failed", interrupted);
+        }
+        purgeExpired();
+    }
+
+    /**
+     * Stores the job and queues it, or returns the queued or running job with the same key.
+     *
+     * @throws RejectedExecutionException if maxConcurrent jobs are running and maxQueued waiting
+     */
+    public synchronized ReportJob submit(ReportJob job, int creatorId) {
+        ReportJob existing = inFlight.get(job.getKey());
+        if (existing != null) {
+            deduplicated++;
+            return existing;
+        }
+        if (inFlight.size() >= maxConcurrent + maxQueued) {
+            rejected++;
+            throw new RejectedExecutionException(inFlight.size() + " report jobs already queued or running");
+        }
+        dao.createJob(job, creatorId);
+        inFlight.put(job.getKey(), job);
+        try {
+            getExecutor().execute(bind(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(job.getKey());
+            rejected++;
+            dao.markFailed(job.getId(), "Rejected: report job queue is full", null, new Date());
+            throw e;
+        }
+        submitted++;
+        return job;
+    }
+
+    public ReportJob getJob(String uuid) {
+        return dao.getJobByUuid(uuid);
+    }
+
+    /**
+     * @return the result of a completed job, or null if there is none (yet)
+     */
+    public File getResultFile(ReportJob job) {
+        if (job.getStatus() != ReportJob.Status.COMPLETED || job.getFilePath() == null) {
+            return null;
+        }
+        File file = new File(job.getFilePath());
+        return file.isFile() ? file : null;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("maxQueued", maxQueued);
+        stats.put("running", executor != null ? executor.getActiveCount() : 0);
+        stats.put("queued", executor != null ? executor.getQueue().size() : 0);
+        stats.put("submitted", submitted);
+        stats.put("deduplicated", deduplicated);
+        stats.put("rejected", rejected);
+        stats.put("completed", completed);
+        stats.put("failed", failed);
+        long finished = completed + failed;
+        stats.put("avgDurationMs", finished == 0 ? 0 : totalDurationMs / finished);
+        stats.put("maxDurationMs", maxDurationMs);
+        return stats;
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the task with an OpenMRS session as the submitting user.
+     */
+    protected Runnable bind(final Runnable task) {
+        final UserContext userContext = Context.getUserContext();
+        return () -> {
+            Context.openSession();
+            try {
+                Context.setUserContext(userContext);
+                task.run();
+            } finally {
+                Context.closeSession();
+            }
+        };
+    }
+
+    void run(ReportJob job) {
+        long start = System.currentTimeMillis();
+        File file = new File(getDirectory(), job.getUuid() + job.fileExtension());
+        try {
+            job.setStartedAt(new Date(start));
+            dao.markRunning(job.getId(), job.getStartedAt());
+            job.setStatus(ReportJob.Status.RUNNING);
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            long rows;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                rows = write(job, out);
+            }
+            long duration = System.currentTimeMillis() - start;
+            job.setFinishedAt(new Date());
+            dao.markCompleted(job.getId(), file.getAbsolutePath(), rows, duration, job.getFinishedAt());
+            job.setFilePath(file.getAbsolutePath());
+            job.setRows(rows);
+            job.setDurationMs(duration);
+            job.setStatus(ReportJob.Status.COMPLETED);
+            finished(duration, true);
+            log.info("Report job {} ({} {}) completed in {} ms: {} rows", job.getUuid(), job.getType(),
+                    job.getRange(), duration, rows);
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - start;
+            log.error("Report job {} ({} {}) failed after {} ms", job.getUuid(), job.getType(), job.getRange(),
+                    duration, e);
+            if (file.exists() && !file.delete()) {
+                log.warn("Could not delete partial report {}", file);
+            }
+            job.setErrorMessage(e.getMessage());
+            job.setDurationMs(duration);
+            job.setStatus(ReportJob.Status.FAILED);
+            finished(duration, false);
+            try {
+                dao.markFailed(job.getId(), e.getMessage(), duration, new Date());
+            } catch (Exception ex) {
+                log.error("Could not mark report job {} as failed", job.getUuid(), ex);
+            }
+        } finally {
+            inFlight.remove(job.getKey());
+        }
+    }
+
+    private long write(ReportJob job, Writer out) throws IOException {
+        ReportRange range = job.getRange();
+        boolean csv = job.getFormat() == ReportJob.Format.CSV;
+        switch (job.getType()) {
+            case REVENUE: {
+                BillingCounts counts = reportsService.countBilling(range, job.getLocationId());
+                if (csv) {
+                    out.write("from,to,nhis,cash\n" + range.getFrom() + "," + range.getTo() + "," + counts.getNhis()
+                            + "," + counts.getCash() + "\n");
+                } else {
+                    JsonGenerator json = generator(out);
+                    json.writeStartObject();
+                    json.writeStringField("from", range.getFrom().toString());
+                    json.writeStringField("to", range.getTo().toString());
+                    json.writeNumberField("nhis", counts.getNhis());
+                    json.writeNumberField("cash", counts.getCash());
+                    json.writeEndObject();
+                    json.flush();
+                }
+                return 1;
+            }
+            case TOP_DIAGNOSES: {
+                int limit = job.getLimit() != null ? job.getLimit() : 10;
+                List<DiagnosisCount> top = reportsService.getTopDiagnoses(range, limit);
+                ConceptIcd10Map icd10 = conceptIcd10Map != null && conceptIcd10Map.isReady() ? conceptIcd10Map : null;
+                if (csv) {
+                    out.write("conceptId,name,count,icd10\n");
+                    for (DiagnosisCount d : top) {
+                        out.write(d.getConceptId() + "," + OpdRegisterWriter.csv(d.getName()) + "," + d.getCount()
+                                + "," + OpdRegisterWriter.csv(icd10 != null ? icd10.get(d.getConceptId()) : null) + "\n");
+                    }
+                } else {
+                    JsonGenerator json = generator(out);
+                    json.writeStartObject();
+                    json.writeArrayFieldStart("items");
+                    for (DiagnosisCount d : top) {
+                        json.writeStartObject();
+                        json.writeNumberField("conceptId", d.getConceptId());
+                        json.writeStringField("name", d.getName());
+                        json.writeNumberField("count", d.getCount());
+                        json.writeStringField("icd10", icd10 != null ? icd10.get(d.getConceptId()) : null);
+                        json.writeEndObject();
+                    }
+                    json.writeEndArray();
+                    json.writeEndObject();
+                    json.flush();
+                }
+                return top.size();
+            }
+            case OPD_REGISTER: {
+                if (job.getEncounterTypeId() == null) {
+                    throw new IllegalArgumentException("OPD register job without an encounter type");
+                }
+                OpdRegisterWriter writer = new OpdRegisterWriter(out,
+                        csv ? OpdRegisterWriter.Format.CSV : OpdRegisterWriter.Format.NDJSON);
+                writer.start();
+                reportsService.streamOpdRegister(range, job.getEncounterTypeId(), job.getLocationId(), writer);
+                writer.finish();
+                return writer.getRows();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown report type " + job.getType());
+        }
+    }
+
+    private synchronized void finished(long durationMs, boolean success) {
+        if (success) {
+            completed++;
+        } else {
+            failed++;
+        }
+        totalDurationMs += durationMs;
+        maxDurationMs = Math.max(maxDurationMs, durationMs);
+    }
+
+    private void purgeExpired() {
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        List<String> files = dao.deleteFinishedBefore(cutoff);
+        for (String path : files) {
+            File file = new File(path);
+            if (file.exists() && !file.delete()) {
+                log.warn("Could not delete expired report {}", file);
+            }
+        }
+        if (!files.isEmpty()) {
+            log.info("Deleted {} expired report results", files.size());
+        }
+    }
+
+    private static JsonGenerator generator(Writer out) throws IOException {
+        JsonGenerator json = JSON.createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return json;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(maxQueued), r -> {
+                        Thread t = new Thread(r, "ghanaemr-report-job-" + threads.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private File getDirectory() {
+        if (directory == null) {
+            directory = new File(OpenmrsUtil.getApplicationDataDirectory(), "ghanaemr" + File.separator + "reports");
+        }
+        return directory;
+    }
+}
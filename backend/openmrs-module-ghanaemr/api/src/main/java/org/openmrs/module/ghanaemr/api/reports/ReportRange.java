@@ -0,0 +1,107 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Whole days from..to (inclusive) as the half-open datetime range [start, end), so report queries
+ * compare the indexed datetime column directly (col &gt;= start AND col &lt; end) instead of
+ * wrapping it in DATE().
+ */
+public final class ReportRange {
+
+    private final LocalDate from;
+    private final LocalDate to;
+
+    private ReportRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public static ReportRange ofDay(LocalDate day) {
+        return of(day, day);
+    }
+
+    /**
+     * @throws IllegalArgumentException if either day is missing or to is before from
+     */
+    public static ReportRange of(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from and to are required");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to must not be before from");
+        }
+        return new ReportRange(from, to);
+    }
+
+    /**
+     * @param from yyyy-MM-dd
+     * @param to yyyy-MM-dd
+     * @throws IllegalArgumentException if a date is malformed or the range is reversed
+     */
+    public static ReportRange parse(String from, String to) {
+        return of(parseDay(from), parseDay(to));
+    }
+
+    public static LocalDate parseDay(String day) {
+        if (day == null) {
+            throw new IllegalArgumentException("Date is required (yyyy-MM-dd)");
+        }
+        try {
+            return LocalDate.parse(day.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date (expected yyyy-MM-dd): " + day);
+        }
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /** Inclusive lower bound: midnight at the start of from. */
+    public Timestamp getStart() {
+        return Timestamp.valueOf(from.atStartOfDay());
+    }
+
+    /** Exclusive upper bound: midnight after to. */
+    public Timestamp getEnd() {
+        return Timestamp.valueOf(to.plusDays(1).atStartOfDay());
+    }
+
+    public long getDays() {
+        return ChronoUnit.DAYS.between(from, to) + 1;
+    }
+
+    public boolean contains(LocalDate day) {
+        return !day.isBefore(from) && !day.isAfter(to);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReportRange)) {
+            return false;
+        }
+        ReportRange other = (ReportRange) o;
+        return from.equals(other.from) && to.equals(other.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * from.hashCode() + to.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return from + ".." + to;
+    }
+}
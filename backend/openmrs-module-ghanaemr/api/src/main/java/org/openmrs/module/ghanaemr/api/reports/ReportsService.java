@@ -0,0 +1,74 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Facility reports (OPD register, NHIS vs cash, top diagnoses) and dashboard counts. Every query
+ * is a parameterized statement over a half-open datetime range so it can use the report indexes.
+ * Counts come from the pre-aggregated {@link DailyStats} table when it covers the whole range.
+ */
+public interface ReportsService {
+
+    String GP_BILLING_CONCEPT = "ghana.billing.concept.uuid";
+    String GP_BILLING_NHIS = "ghana.billing.nhis.uuid";
+    String GP_BILLING_CASH = "ghana.billing.cash.uuid";
+
+    String NHIS_MARKER = "Billing: NHIS";
+    String CASH_MARKER = "Billing: Cash";
+
+    /** Receives OPD register rows, in encounter datetime order, as they are assembled. */
+    interface OpdRegisterSink {
+        void entry(OpdRegisterEntry entry);
+    }
+
+    /**
+     * @return the encounter_type_id, or null if the uuid is unknown
+     */
+    Integer getEncounterTypeId(String uuid);
+
+    /**
+     * @return the location_id, or null if the uuid is unknown
+     */
+    Integer getLocationId(String uuid);
+
+    /**
+     * @param locationId null for all locations
+     */
+    List<OpdRegisterEntry> getOpdRegister(ReportRange range, int encounterTypeId, Integer locationId);
+
+    /**
+     * Streams the register to the sink row by row over a forward-only cursor, for exports of any
+     * length.
+     *
+     * @param locationId null for all locations
+     */
+    void streamOpdRegister(ReportRange range, int encounterTypeId, Integer locationId, OpdRegisterSink sink);
+
+    /**
+     * NHIS and cash visits: coded billing obs when ghana.billing.concept.uuid and
+     * ghana.billing.nhis.uuid / ghana.billing.cash.uuid are configured, otherwise the
+     * "Billing: NHIS" / "Billing: Cash" markers in consultation notes.
+     *
+     * @param locationId null for all locations
+     */
+    BillingCounts countBilling(ReportRange range, Integer locationId);
+
+    List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit);
+
+    /**
+     * @param locationId null for all locations
+     */
+    long countEncounters(ReportRange range, int encounterTypeId, Integer locationId);
+
+    long countNewPatients(ReportRange range);
+
+    /**
+     * The DHIMS2 monthly OPD dataset. Summed from the daily counters when every day of the month
+     * (up to today) has been aggregated, otherwise recounted from the consultations in one pass.
+     *
+     * @param locationId null for all locations
+     * @param topMorbidities how many diagnoses to report, by number of cases
+     */
+    Dhims2MonthlyReport getDhims2Monthly(YearMonth month, Integer locationId, int topMorbidities);
+}
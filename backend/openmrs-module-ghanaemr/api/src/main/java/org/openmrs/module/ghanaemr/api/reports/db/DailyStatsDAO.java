@@ -0,0 +1,42 @@
+package org.openmrs.module.ghanaemr.api.reports.db;
+
+import org.openmrs.module.ghanaemr.api.reports.BillingCounts;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Counters;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ghanaemr_daily_stats, ghanaemr_daily_diagnosis, the DHIMS2 ghanaemr_daily_attendance and
+ * ghanaemr_daily_morbidity counters, and ghanaemr_daily_stats_day. A null locationId means all
+ * locations.
+ */
+public interface DailyStatsDAO {
+
+    /**
+     * Replaces the day's rows with fresh aggregates of encounter, obs, patient and conditions, and
+     * the DHIMS2 counters of its OPD consultations, and records the day as aggregated, in its own
+     * transaction.
+     */
+    void aggregateDay(LocalDate day);
+
+    long countAggregatedDays(ReportRange range);
+
+    Set<LocalDate> getAggregatedDays(ReportRange range);
+
+    BillingCounts sumBilling(ReportRange range, Integer locationId);
+
+    long sumEncounters(ReportRange range, int encounterTypeId, Integer locationId);
+
+    long sumNewPatients(ReportRange range);
+
+    List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit);
+
+    /**
+     * DHIMS2 attendance and morbidity counters summed over the range.
+     */
+    Dhims2Counters getDhims2Counters(ReportRange range, Integer locationId);
+}
@@ -0,0 +1,40 @@
+package org.openmrs.module.ghanaemr.api.reports.db;
+
+import org.openmrs.module.ghanaemr.api.reports.ReportJob;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Persistence for background report jobs. Every write commits on its own, since jobs are created
+ * on request threads and run on the report job executor.
+ */
+public interface ReportJobDAO {
+
+    /**
+     * Inserts the job as QUEUED and sets its id, uuid and dateCreated.
+     */
+    void createJob(ReportJob job, int creatorId);
+
+    ReportJob getJobByUuid(String uuid);
+
+    void markRunning(Long jobId, Date startedAt);
+
+    void markCompleted(Long jobId, String filePath, long rows, long durationMs, Date finishedAt);
+
+    void markFailed(Long jobId, String errorMessage, Long durationMs, Date finishedAt);
+
+    /**
+     * Fails jobs left QUEUED or RUNNING, e.g. by a restart.
+     *
+     * @return number of jobs failed
+     */
+    int failUnfinished(String errorMessage);
+
+    /**
+     * Deletes finished jobs created before the cutoff.
+     *
+     * @return the result files of the deleted jobs
+     */
+    List<String> deleteFinishedBefore(Date cutoff);
+}
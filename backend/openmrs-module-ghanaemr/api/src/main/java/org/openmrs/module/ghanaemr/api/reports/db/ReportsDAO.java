@@ -0,0 +1,56 @@
+package org.openmrs.module.ghanaemr.api.reports.db;
+
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Assembler;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterAssembler;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report queries. A null locationId means all locations.
+ */
+public interface ReportsDAO {
+
+    Integer getEncounterTypeId(String uuid);
+
+    Integer getLocationId(String uuid);
+
+    Integer getConceptId(String uuid);
+
+    /**
+     * Feeds the register's encounters and their obs to the assembler in one pass and finishes it.
+     */
+    void getOpdRegister(ReportRange range, int encounterTypeId, Integer locationId, OpdRegisterAssembler assembler);
+
+    /**
+     * As {@link #getOpdRegister}, over a streaming cursor on a separate connection.
+     */
+    void streamOpdRegister(ReportRange range, int encounterTypeId, Integer locationId, OpdRegisterAssembler assembler);
+
+    /**
+     * Feeds every OPD consultation in the range, with its obs, to the assembler in one pass over a
+     * streaming cursor and finishes it: the full recount behind the DHIMS2 daily counters.
+     */
+    void scanDhims2(ReportRange range, Integer locationId, Dhims2Assembler assembler);
+
+    /**
+     * Preferred English names; concepts without one are left out.
+     */
+    Map<Integer, String> getConceptNames(Collection<Integer> conceptIds);
+
+    long countCodedObs(ReportRange range, int conceptId, int valueCodedId, Integer locationId);
+
+    /**
+     * Obs whose value_text contains the marker; cannot use an index beyond the date range.
+     */
+    long countTextObs(ReportRange range, String marker, Integer locationId);
+
+    List<DiagnosisCount> getTopConditions(ReportRange range, int limit);
+
+    long countEncounters(ReportRange range, int encounterTypeId, Integer locationId);
+
+    long countNewPatients(ReportRange range);
+}
@@ -0,0 +1,400 @@
+package org.openmrs.module.ghanaemr.api.reports.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.openmrs.module.ghanaemr.api.reports.AgeBand;
+import org.openmrs.module.ghanaemr.api.reports.BillingCounts;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Assembler;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Counters;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.ReportsService;
+import org.openmrs.module.ghanaemr.api.reports.db.DailyStatsDAO;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aggregation runs server-side as INSERT ... SELECT over one day's half-open range, in its own
+ * session so it can be called from the background flush and before a report's own reads. Billing
+ * uses the same rule as {@link ReportsService#countBilling}: coded obs when the billing concepts are
+ * configured, otherwise the "Billing: NHIS" / "Billing: Cash" text markers. Rows with no location
+ * or encounter use 0 for that key. The DHIMS2 attendance and morbidity counters are counted in
+ * Java by {@link Dhims2Assembler} over the day's consultations and written in batches.
+ */
+public class HibernateDailyStatsDAO implements DailyStatsDAO {
+
+    /** Never a concept_id; stands in for an unconfigured billing answer. */
+    private static final int NO_CONCEPT = -1;
+
+    private static final String COLUMNS =
+            "INSERT INTO ghanaemr_daily_stats (stat_date, location_id, encounter_type_id, encounters, nhis, cash, new_patients) ";
+
+    private static final String DELETE_STATS = "DELETE FROM ghanaemr_daily_stats WHERE stat_date = ?";
+
+    private static final String DELETE_DIAGNOSES = "DELETE FROM ghanaemr_daily_diagnosis WHERE stat_date = ?";
+
+    private static final String INSERT_ENCOUNTERS = COLUMNS +
+            "SELECT ?, COALESCE(e.location_id, 0), e.encounter_type, COUNT(*), 0, 0, 0 FROM encounter e " +
+            "WHERE e.encounter_datetime >= ? AND e.encounter_datetime < ? AND e.voided = 0 " +
+            "GROUP BY COALESCE(e.location_id, 0), e.encounter_type";
+
+    private static final String MERGE_CODED_BILLING = COLUMNS +
+            "SELECT ?, COALESCE(o.location_id, 0), COALESCE(e.encounter_type, 0), 0, " +
+            "SUM(o.value_coded = ?), SUM(o.value_coded = ?), 0 FROM obs o " +
+            "LEFT JOIN encounter e ON e.encounter_id = o.encounter_id " +
+            "WHERE o.concept_id = ? AND o.value_coded IN (?, ?) " +
+            "AND o.obs_datetime >= ? AND o.obs_datetime < ? AND o.voided = 0 " +
+            "GROUP BY COALESCE(o.location_id, 0), COALESCE(e.encounter_type, 0) " +
+            "ON DUPLICATE KEY UPDATE nhis = VALUES(nhis), cash = VALUES(cash)";
+
+    private static final String MERGE_TEXT_BILLING = COLUMNS +
+            "SELECT ?, COALESCE(o.location_id, 0), COALESCE(e.encounter_type, 0), 0, " +
+            "SUM(o.value_text LIKE ?), SUM(o.value_text LIKE ?), 0 FROM obs o " +
+            "LEFT JOIN encounter e ON e.encounter_id = o.encounter_id " +
+            "WHERE o.obs_datetime >= ? AND o.obs_datetime < ? AND o.voided = 0 " +
+            "AND (o.value_text LIKE ? OR o.value_text LIKE ?) " +
+            "GROUP BY COALESCE(o.location_id, 0), COALESCE(e.encounter_type, 0) " +
+            "ON DUPLICATE KEY UPDATE nhis = VALUES(nhis), cash = VALUES(cash)";
+
+    private static final String MERGE_NEW_PATIENTS = COLUMNS +
+            "SELECT ?, 0, 0, 0, 0, 0, COUNT(*) FROM patient p " +
+            "WHERE p.date_created >= ? AND p.date_created < ? AND p.voided = 0 HAVING COUNT(*) > 0 " +
+            "ON DUPLICATE KEY UPDATE new_patients = VALUES(new_patients)";
+
+    private static final String INSERT_DIAGNOSES =
+            "INSERT INTO ghanaemr_daily_diagnosis (stat_date, concept_id, diagnoses) " +
+            "SELECT ?, c.condition_coded, COUNT(*) FROM conditions c " +
+            "WHERE c.date_created >= ? AND c.date_created < ? AND c.voided = 0 AND c.condition_coded IS NOT NULL " +
+            "GROUP BY c.condition_coded";
+
+    private static final String DELETE_ATTENDANCE = "DELETE FROM ghanaemr_daily_attendance WHERE stat_date = ?";
+
+    private static final String DELETE_MORBIDITY = "DELETE FROM ghanaemr_daily_morbidity WHERE stat_date = ?";
+
+    private static final String INSERT_ATTENDANCE =
+            "INSERT INTO ghanaemr_daily_attendance (stat_date, location_id, age_band, sex, payment, attendances) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_MORBIDITY =
+            "INSERT INTO ghanaemr_daily_morbidity (stat_date, location_id, concept_id, age_band, sex, cases) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String MARK_DAY =
+            "INSERT INTO ghanaemr_daily_stats_day (stat_date, aggregated_at) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE aggregated_at = VALUES(aggregated_at)";
+
+    private static final String BILLING_CONFIG =
+            "SELECT gp.property, c.concept_id FROM global_property gp " +
+            "LEFT JOIN concept c ON c.uuid = TRIM(gp.property_value) " +
+            "WHERE gp.property IN (?, ?, ?) AND gp.property_value IS NOT NULL AND TRIM(gp.property_value) <> ''";
+
+    private static final String COUNT_DAYS =
+            "SELECT COUNT(*) FROM ghanaemr_daily_stats_day WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String AGGREGATED_DAYS =
+            "SELECT stat_date FROM ghanaemr_daily_stats_day WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String SUM_BILLING =
+            "SELECT COALESCE(SUM(nhis), 0), COALESCE(SUM(cash), 0) FROM ghanaemr_daily_stats " +
+            "WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String SUM_ENCOUNTERS =
+            "SELECT COALESCE(SUM(encounters), 0) FROM ghanaemr_daily_stats " +
+            "WHERE stat_date >= ? AND stat_date < ? AND encounter_type_id = ?";
+
+    private static final String SUM_NEW_PATIENTS =
+            "SELECT COALESCE(SUM(new_patients), 0) FROM ghanaemr_daily_stats WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String TOP_DIAGNOSES =
+            "SELECT t.concept_id, cn.name, t.cnt FROM (" +
+            "  SELECT d.concept_id, SUM(d.diagnoses) AS cnt FROM ghanaemr_daily_diagnosis d " +
+            "  WHERE d.stat_date >= ? AND d.stat_date < ? " +
+            "  GROUP BY d.concept_id ORDER BY cnt DESC, d.concept_id LIMIT ?) t " +
+            "LEFT JOIN concept_name cn ON cn.concept_id = t.concept_id AND cn.locale = 'en' " +
+            "AND cn.locale_preferred = 1 AND cn.voided = 0 " +
+            "ORDER BY t.cnt DESC, t.concept_id";
+
+    private static final String SUM_ATTENDANCE =
+            "SELECT location_id, age_band, sex, payment, SUM(attendances) FROM ghanaemr_daily_attendance " +
+            "WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String SUM_ATTENDANCE_GROUP = " GROUP BY location_id, age_band, sex, payment";
+
+    private static final String SUM_MORBIDITY =
+            "SELECT location_id, concept_id, age_band, sex, SUM(cases) FROM ghanaemr_daily_morbidity " +
+            "WHERE stat_date >= ? AND stat_date < ?";
+
+    private static final String SUM_MORBIDITY_GROUP = " GROUP BY location_id, concept_id, age_band, sex";
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void aggregateDay(final LocalDate day) {
+        final Date statDate = Date.valueOf(day);
+        final ReportRange range = ReportRange.ofDay(day);
+        Session session = sessionFactory.openSession();
+        Transaction tx = session.beginTransaction();
+        try {
+            session.doWork(connection -> {
+                update(connection, DELETE_STATS, statDate);
+                update(connection, DELETE_DIAGNOSES, statDate);
+                update(connection, INSERT_ENCOUNTERS, statDate, range.getStart(), range.getEnd());
+                Map<String, Integer> billing = billingConfig(connection);
+                Integer billingConcept = billing.get(ReportsService.GP_BILLING_CONCEPT);
+                if (billing.containsKey(ReportsService.GP_BILLING_CONCEPT)
+                        && (billing.containsKey(ReportsService.GP_BILLING_NHIS) || billing.containsKey(ReportsService.GP_BILLING_CASH))) {
+                    if (billingConcept != null) {
+                        int nhis = orNone(billing.get(ReportsService.GP_BILLING_NHIS));
+                        int cash = orNone(billing.get(ReportsService.GP_BILLING_CASH));
+                        update(connection, MERGE_CODED_BILLING, statDate, nhis, cash, billingConcept, nhis, cash,
+                                range.getStart(), range.getEnd());
+                    }
+                } else {
+                    String nhis = "%" + ReportsService.NHIS_MARKER + "%";
+                    String cash = "%" + ReportsService.CASH_MARKER + "%";
+                    update(connection, MERGE_TEXT_BILLING, statDate, nhis, cash, range.getStart(), range.getEnd(),
+                            nhis, cash);
+                }
+                update(connection, MERGE_NEW_PATIENTS, statDate, range.getStart(), range.getEnd());
+                update(connection, INSERT_DIAGNOSES, statDate, range.getStart(), range.getEnd());
+                update(connection, DELETE_ATTENDANCE, statDate);
+                update(connection, DELETE_MORBIDITY, statDate);
+                Dhims2Counters counters = new Dhims2Counters();
+                try (PreparedStatement ps = connection.prepareStatement(
+                        HibernateReportsDAO.DHIMS2_VISITS + HibernateReportsDAO.DHIMS2_VISITS_ORDER)) {
+                    HibernateReportsDAO.readDhims2Visits(ps, range, null, new Dhims2Assembler(counters,
+                            billingConcept, billing.get(ReportsService.GP_BILLING_NHIS),
+                            billing.get(ReportsService.GP_BILLING_CASH)));
+                }
+                insertDhims2(connection, statDate, counters);
+                update(connection, MARK_DAY, statDate, new Timestamp(System.currentTimeMillis()));
+            });
+            tx.commit();
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public long countAggregatedDays(final ReportRange range) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(COUNT_DAYS)) {
+                bindDays(ps, range);
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public Set<LocalDate> getAggregatedDays(final ReportRange range) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.doReturningWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(AGGREGATED_DAYS)) {
+                    bindDays(ps, range);
+                    Set<LocalDate> days = new HashSet<LocalDate>();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            days.add(rs.getDate(1).toLocalDate());
+                        }
+                    }
+                    return days;
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public BillingCounts sumBilling(final ReportRange range, final Integer locationId) {
+        final String sql = SUM_BILLING + locationClause(locationId);
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                bindDays(ps, range);
+                if (locationId != null) {
+                    ps.setInt(3, locationId);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? new BillingCounts(rs.getLong(1), rs.getLong(2)) : new BillingCounts(0, 0);
+                }
+            }
+        });
+    }
+
+    @Override
+    public long sumEncounters(final ReportRange range, final int encounterTypeId, final Integer locationId) {
+        final String sql = SUM_ENCOUNTERS + locationClause(locationId);
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                bindDays(ps, range);
+                ps.setInt(3, encounterTypeId);
+                if (locationId != null) {
+                    ps.setInt(4, locationId);
+                }
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public long sumNewPatients(final ReportRange range) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SUM_NEW_PATIENTS)) {
+                bindDays(ps, range);
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public List<DiagnosisCount> getTopDiagnoses(final ReportRange range, final int limit) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(TOP_DIAGNOSES)) {
+                bindDays(ps, range);
+                ps.setInt(3, limit);
+                List<DiagnosisCount> counts = new ArrayList<DiagnosisCount>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        counts.add(new DiagnosisCount(rs.getInt(1), rs.getString(2), rs.getLong(3)));
+                    }
+                }
+                return counts;
+            }
+        });
+    }
+
+    @Override
+    public Dhims2Counters getDhims2Counters(final ReportRange range, final Integer locationId) {
+        final String attendanceSql = SUM_ATTENDANCE + locationClause(locationId) + SUM_ATTENDANCE_GROUP;
+        final String morbiditySql = SUM_MORBIDITY + locationClause(locationId) + SUM_MORBIDITY_GROUP;
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            Dhims2Counters counters = new Dhims2Counters();
+            try (PreparedStatement ps = connection.prepareStatement(attendanceSql)) {
+                bindDays(ps, range);
+                if (locationId != null) {
+                    ps.setInt(3, locationId);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        counters.addAttendance(rs.getInt(1), AgeBand.resolve(rs.getString(2)), rs.getString(3),
+                                Dhims2Counters.Payment.resolve(rs.getString(4)), rs.getLong(5));
+                    }
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(morbiditySql)) {
+                bindDays(ps, range);
+                if (locationId != null) {
+                    ps.setInt(3, locationId);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        counters.addMorbidity(rs.getInt(1), rs.getInt(2), AgeBand.resolve(rs.getString(3)),
+                                rs.getString(4), rs.getLong(5));
+                    }
+                }
+            }
+            return counters;
+        });
+    }
+
+    private static void insertDhims2(Connection connection, Date statDate, Dhims2Counters counters) throws SQLException {
+        if (!counters.getAttendance().isEmpty()) {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_ATTENDANCE)) {
+                for (Map.Entry<Dhims2Counters.Attendance, Long> e : counters.getAttendance().entrySet()) {
+                    ps.setDate(1, statDate);
+                    ps.setInt(2, e.getKey().getLocationId());
+                    ps.setString(3, e.getKey().getBand().name());
+                    ps.setString(4, e.getKey().getSex());
+                    ps.setString(5, e.getKey().getPayment().name());
+                    ps.setLong(6, e.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        if (!counters.getMorbidity().isEmpty()) {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_MORBIDITY)) {
+                for (Map.Entry<Dhims2Counters.Morbidity, Long> e : counters.getMorbidity().entrySet()) {
+                    ps.setDate(1, statDate);
+                    ps.setInt(2, e.getKey().getLocationId());
+                    ps.setInt(3, e.getKey().getConceptId());
+                    ps.setString(4, e.getKey().getBand().name());
+                    ps.setString(5, e.getKey().getSex());
+                    ps.setLong(6, e.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Configured billing properties mapped to their concept_id; the value is null when the
+     * property is set but names no concept.
+     */
+    private static Map<String, Integer> billingConfig(Connection connection) throws SQLException {
+        Map<String, Integer> config = new HashMap<String, Integer>();
+        try (PreparedStatement ps = connection.prepareStatement(BILLING_CONFIG)) {
+            ps.setString(1, ReportsService.GP_BILLING_CONCEPT);
+            ps.setString(2, ReportsService.GP_BILLING_NHIS);
+            ps.setString(3, ReportsService.GP_BILLING_CASH);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int conceptId = rs.getInt(2);
+                    config.put(rs.getString(1), rs.wasNull() ? null : conceptId);
+                }
+            }
+        }
+        return config;
+    }
+
+    private static int orNone(Integer conceptId) {
+        return conceptId == null ? NO_CONCEPT : conceptId;
+    }
+
+    private static void update(Connection connection, String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /** stat_date is a DATE, so the half-open range is [from, to + 1 day). */
+    private static void bindDays(PreparedStatement ps, ReportRange range) throws SQLException {
+        ps.setDate(1, Date.valueOf(range.getFrom()));
+        ps.setDate(2, Date.valueOf(range.getTo().plusDays(1)));
+    }
+
+    private static String locationClause(Integer locationId) {
+        return locationId == null ? "" : " AND location_id = ?";
+    }
+
+    private static long count(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
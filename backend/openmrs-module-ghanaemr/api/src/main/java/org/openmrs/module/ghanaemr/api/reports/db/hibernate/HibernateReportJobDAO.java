@@ -0,0 +1,232 @@
+package org.openmrs.module.ghanaemr.api.reports.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.openmrs.module.ghanaemr.api.reports.ReportJob;
+import org.openmrs.module.ghanaemr.api.reports.db.ReportJobDAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Native SQL against ghanaemr_report_job, each call in its own session and transaction so the
+ * job row is visible to pollers as soon as it changes.
+ */
+public class HibernateReportJobDAO implements ReportJobDAO {
+
+    private static final String INSERT_JOB =
+            "INSERT INTO ghanaemr_report_job (uuid, report_type, format, date_from, date_to, location_id, " +
+            "encounter_type_id, result_limit, status, result_rows, creator, date_created) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'QUEUED', 0, ?, ?)";
+
+    private static final String SELECT_JOB =
+            "SELECT id, uuid, report_type, format, date_from, date_to, location_id, encounter_type_id, result_limit, " +
+            "status, file_path, result_rows, duration_ms, error_message, date_created, started_at, finished_at " +
+            "FROM ghanaemr_report_job WHERE uuid = ?";
+
+    private static final String MARK_RUNNING =
+            "UPDATE ghanaemr_report_job SET status = 'RUNNING', started_at = ? WHERE id = ?";
+
+    private static final String MARK_COMPLETED =
+            "UPDATE ghanaemr_report_job SET status = 'COMPLETED', file_path = ?, result_rows = ?, duration_ms = ?, " +
+            "finished_at = ? WHERE id = ?";
+
+    private static final String MARK_FAILED =
+            "UPDATE ghanaemr_report_job SET status = 'FAILED', error_message = ?, duration_ms = ?, finished_at = ? " +
+            "WHERE id = ?";
+
+    private static final String FAIL_UNFINISHED =
+            "UPDATE ghanaemr_report_job SET status = 'FAILED', error_message = ?, finished_at = ? " +
+            "WHERE status IN ('QUEUED', 'RUNNING')";
+
+    private static final String EXPIRED =
+            "SELECT id, file_path FROM ghanaemr_report_job WHERE status IN ('COMPLETED', 'FAILED') AND date_created < ?";
+
+    private static final String DELETE_JOB = "DELETE FROM ghanaemr_report_job WHERE id = ?";
+
+    private static final int MAX_ERROR_MESSAGE = 500;
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void createJob(final ReportJob job, final int creatorId) {
+        final Date now = new Date();
+        if (job.getUuid() == null) {
+            job.setUuid(UUID.randomUUID().toString());
+        }
+        Long id = write(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_JOB, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, job.getUuid());
+                ps.setString(2, job.getType().name());
+                ps.setString(3, job.getFormat().name());
+                ps.setDate(4, java.sql.Date.valueOf(job.getFrom()));
+                ps.setDate(5, java.sql.Date.valueOf(job.getTo()));
+                setInt(ps, 6, job.getLocationId());
+                setInt(ps, 7, job.getEncounterTypeId());
+                setInt(ps, 8, job.getLimit());
+                ps.setInt(9, creatorId);
+                ps.setTimestamp(10, new Timestamp(now.getTime()));
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    return keys.next() ? keys.getLong(1) : null;
+                }
+            }
+        });
+        job.setId(id);
+        job.setStatus(ReportJob.Status.QUEUED);
+        job.setDateCreated(now);
+    }
+
+    @Override
+    public ReportJob getJobByUuid(final String uuid) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.doReturningWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(SELECT_JOB)) {
+                    ps.setString(1, uuid);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return rs.next() ? toJob(rs) : null;
+                    }
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void markRunning(final Long jobId, final Date startedAt) {
+        update(MARK_RUNNING, new Timestamp(startedAt.getTime()), jobId);
+    }
+
+    @Override
+    public void markCompleted(Long jobId, String filePath, long rows, long durationMs, Date finishedAt) {
+        update(MARK_COMPLETED, filePath, rows, durationMs, new Timestamp(finishedAt.getTime()), jobId);
+    }
+
+    @Override
+    public void markFailed(Long jobId, String errorMessage, Long durationMs, Date finishedAt) {
+        update(MARK_FAILED, truncate(errorMessage), durationMs, new Timestamp(finishedAt.getTime()), jobId);
+    }
+
+    @Override
+    public int failUnfinished(String errorMessage) {
+        return update(FAIL_UNFINISHED, truncate(errorMessage), new Timestamp(System.currentTimeMillis()));
+    }
+
+    @Override
+    public List<String> deleteFinishedBefore(final Date cutoff) {
+        return write(connection -> {
+            List<Long> ids = new ArrayList<Long>();
+            List<String> files = new ArrayList<String>();
+            try (PreparedStatement ps = connection.prepareStatement(EXPIRED)) {
+                ps.setTimestamp(1, new Timestamp(cutoff.getTime()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                        if (rs.getString(2) != null) {
+                            files.add(rs.getString(2));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_JOB)) {
+                for (Long id : ids) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
+                }
+                if (!ids.isEmpty()) {
+                    ps.executeBatch();
+                }
+            }
+            return files;
+        });
+    }
+
+    private int update(final String sql, final Object... params) {
+        return write(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    if (params[i] == null) {
+                        ps.setNull(i + 1, Types.NULL);
+                    } else {
+                        ps.setObject(i + 1, params[i]);
+                    }
+                }
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    private <T> T write(ReturningWork<T> work) {
+        Session session = sessionFactory.openSession();
+        Transaction tx = session.beginTransaction();
+        try {
+            T result = session.doReturningWork(work);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static ReportJob toJob(ResultSet rs) throws SQLException {
+        ReportJob job = new ReportJob();
+        job.setId(rs.getLong(1));
+        job.setUuid(rs.getString(2));
+        job.setType(ReportJob.Type.valueOf(rs.getString(3)));
+        job.setFormat(ReportJob.Format.valueOf(rs.getString(4)));
+        job.setFrom(rs.getDate(5).toLocalDate());
+        job.setTo(rs.getDate(6).toLocalDate());
+        job.setLocationId(getInt(rs, 7));
+        job.setEncounterTypeId(getInt(rs, 8));
+        job.setLimit(getInt(rs, 9));
+        job.setStatus(ReportJob.Status.valueOf(rs.getString(10)));
+        job.setFilePath(rs.getString(11));
+        job.setRows(rs.getLong(12));
+        long duration = rs.getLong(13);
+        job.setDurationMs(rs.wasNull() ? null : duration);
+        job.setErrorMessage(rs.getString(14));
+        job.setDateCreated(rs.getTimestamp(15));
+        job.setStartedAt(rs.getTimestamp(16));
+        job.setFinishedAt(rs.getTimestamp(17));
+        return job;
+    }
+
+    private static Integer getInt(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void setInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_MESSAGE) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_MESSAGE);
+    }
+}
@@ -0,0 +1,384 @@
+package org.openmrs.module.ghanaemr.api.reports.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Assembler;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterAssembler;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.db.ReportsDAO;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native SQL with bind parameters only. Datetime filters are half-open ranges on the raw column
+ * (never DATE(col)) so they match the ghanaemr report indexes in liquibase.xml; the statement
+ * text is constant per query shape so the driver's statement cache can reuse it.
+ */
+public class HibernateReportsDAO implements ReportsDAO {
+
+    private static final String ENCOUNTER_TYPE_ID =
+            "SELECT encounter_type_id FROM encounter_type WHERE uuid = ?";
+
+    private static final String LOCATION_ID = "SELECT location_id FROM location WHERE uuid = ?";
+
+    private static final String CONCEPT_ID = "SELECT concept_id FROM concept WHERE uuid = ?";
+
+    /**
+     * Each encounter joined to its non-voided obs (one row per obs, or one row with null obs
+     * columns) and the preferred English names of the obs concept and coded answer. Ordered by
+     * encounter only, so the encounter index drives the join and rows arrive grouped without a
+     * sort; obs follow the obs.encounter_id index order.
+     */
+    private static final String OPD_REGISTER =
+            "SELECT e.encounter_id, e.uuid, e.encounter_datetime, p.uuid, pn.given_name, pn.family_name, " +
+            "o.obs_id, o.concept_id, o.value_coded, o.value_text, cnc.name, cnv.name " +
+            "FROM encounter e JOIN person p ON p.person_id = e.patient_id " +
+            "LEFT JOIN person_name pn ON pn.person_id = e.patient_id AND pn.preferred = 1 AND pn.voided = 0 " +
+            "LEFT JOIN obs o ON o.encounter_id = e.encounter_id AND o.voided = 0 " +
+            "LEFT JOIN concept_name cnc ON cnc.concept_id = o.concept_id AND cnc.locale = 'en' " +
+            "AND cnc.locale_preferred = 1 AND cnc.voided = 0 " +
+            "LEFT JOIN concept_name cnv ON cnv.concept_id = o.value_coded AND cnv.locale = 'en' " +
+            "AND cnv.locale_preferred = 1 AND cnv.voided = 0 " +
+            "WHERE e.encounter_type = ? AND e.encounter_datetime >= ? AND e.encounter_datetime < ? AND e.voided = 0";
+
+    private static final String OPD_REGISTER_ORDER = " ORDER BY e.encounter_datetime, e.encounter_id";
+
+    /** Concepts with an ICD-10 mapping, by the same source rule as ConceptIcd10Map. */
+    private static final String ICD10_CONCEPTS =
+            "SELECT DISTINCT m.concept_id FROM concept_reference_map m " +
+            "JOIN concept_reference_term t ON t.concept_reference_term_id = m.concept_reference_term_id " +
+            "JOIN concept_reference_source s ON s.concept_source_id = t.concept_source_id " +
+            "WHERE (UPPER(s.name) LIKE '%ICD%' OR UPPER(s.hl7_code) LIKE '%ICD%')";
+
+    /**
+     * OPD consultations joined to the patient's birthdate and gender and their non-voided obs, with
+     * the diagnosis each obs carries for {@link Dhims2Assembler#obs}: the coded answer when it is
+     * ICD-10 mapped, else the concept of a value-less obs when that is. Shared with the daily
+     * aggregation in HibernateDailyStatsDAO so both count alike.
+     */
+    static final String DHIMS2_VISITS =
+            "SELECT e.encounter_id, COALESCE(e.location_id, 0), p.birthdate, p.gender, e.encounter_datetime, " +
+            "o.obs_id, o.concept_id, o.value_coded, o.value_text, " +
+            "CASE WHEN o.value_coded IS NOT NULL THEN dxa.concept_id WHEN o.value_text IS NULL THEN dxc.concept_id END " +
+            "FROM encounter e " +
+            "JOIN encounter_type et ON et.encounter_type_id = e.encounter_type AND et.name = ? " +
+            "JOIN person p ON p.person_id = e.patient_id " +
+            "LEFT JOIN obs o ON o.encounter_id = e.encounter_id AND o.voided = 0 " +
+            "LEFT JOIN (" + ICD10_CONCEPTS + ") dxc ON dxc.concept_id = o.concept_id " +
+            "LEFT JOIN (" + ICD10_CONCEPTS + ") dxa ON dxa.concept_id = o.value_coded " +
+            "WHERE e.encounter_datetime >= ? AND e.encounter_datetime < ? AND e.voided = 0";
+
+    static final String DHIMS2_VISITS_ORDER = " ORDER BY e.encounter_id";
+
+    private static final String CONCEPT_NAMES =
+            "SELECT concept_id, name FROM concept_name WHERE locale = 'en' AND locale_preferred = 1 AND voided = 0 " +
+            "AND concept_id IN (";
+
+    private static final String COUNT_CODED_OBS =
+            "SELECT COUNT(*) FROM obs o WHERE o.concept_id = ? AND o.value_coded = ? " +
+            "AND o.obs_datetime >= ? AND o.obs_datetime < ? AND o.voided = 0";
+
+    private static final String COUNT_TEXT_OBS =
+            "SELECT COUNT(*) FROM obs o WHERE o.obs_datetime >= ? AND o.obs_datetime < ? AND o.voided = 0 " +
+            "AND o.value_text LIKE ?";
+
+    /** Aggregate first, then look up names for the top rows only. */
+    private static final String TOP_CONDITIONS =
+            "SELECT t.concept_id, cn.name, t.cnt FROM (" +
+            "  SELECT c.condition_coded AS concept_id, COUNT(*) AS cnt FROM conditions c " +
+            "  WHERE c.date_created >= ? AND c.date_created < ? AND c.voided = 0 AND c.condition_coded IS NOT NULL " +
+            "  GROUP BY c.condition_coded ORDER BY cnt DESC, c.condition_coded LIMIT ?) t " +
+            "LEFT JOIN concept_name cn ON cn.concept_id = t.concept_id AND cn.locale = 'en' " +
+            "AND cn.locale_preferred = 1 AND cn.voided = 0 " +
+            "ORDER BY t.cnt DESC, t.concept_id";
+
+    private static final String COUNT_ENCOUNTERS =
+            "SELECT COUNT(*) FROM encounter e WHERE e.encounter_type = ? " +
+            "AND e.encounter_datetime >= ? AND e.encounter_datetime < ? AND e.voided = 0";
+
+    private static final String COUNT_NEW_PATIENTS =
+            "SELECT COUNT(*) FROM patient p WHERE p.date_created >= ? AND p.date_created < ? AND p.voided = 0";
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Integer getEncounterTypeId(String uuid) {
+        return idByUuid(ENCOUNTER_TYPE_ID, uuid);
+    }
+
+    @Override
+    public Integer getLocationId(String uuid) {
+        return idByUuid(LOCATION_ID, uuid);
+    }
+
+    @Override
+    public Integer getConceptId(String uuid) {
+        return idByUuid(CONCEPT_ID, uuid);
+    }
+
+    @Override
+    public void getOpdRegister(final ReportRange range, final int encounterTypeId, final Integer locationId,
+                               final OpdRegisterAssembler assembler) {
+        final String sql = OPD_REGISTER + locationClause("e", locationId) + OPD_REGISTER_ORDER;
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                readOpdRegister(ps, range, encounterTypeId, locationId, assembler);
+            }
+        });
+    }
+
+    /**
+     * Forward-only, read-only statement with fetch size Integer.MIN_VALUE on its own session, so
+     * MySQL Connector/J streams the rows instead of buffering the result set.
+     */
+    @Override
+    public void streamOpdRegister(final ReportRange range, final int encounterTypeId, final Integer locationId,
+                                  final OpdRegisterAssembler assembler) {
+        final String sql = OPD_REGISTER + locationClause("e", locationId) + OPD_REGISTER_ORDER;
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    readOpdRegister(ps, range, encounterTypeId, locationId, assembler);
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Streams over its own session like {@link #streamOpdRegister}, as a month of consultations
+     * with their obs is too many rows to buffer.
+     */
+    @Override
+    public void scanDhims2(final ReportRange range, final Integer locationId, final Dhims2Assembler assembler) {
+        final String sql = DHIMS2_VISITS + locationClause("e", locationId) + DHIMS2_VISITS_ORDER;
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    readDhims2Visits(ps, range, locationId, assembler);
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public Map<Integer, String> getConceptNames(final Collection<Integer> conceptIds) {
+        final Map<Integer, String> names = new HashMap<Integer, String>();
+        if (conceptIds.isEmpty()) {
+            return names;
+        }
+        StringBuilder sql = new StringBuilder(CONCEPT_NAMES);
+        for (int i = 0; i < conceptIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        final String query = sql.append(')').toString();
+        sessionFactory.getCurrentSession().doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                int i = 1;
+                for (Integer conceptId : conceptIds) {
+                    ps.setInt(i++, conceptId);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        names.put(rs.getInt(1), rs.getString(2));
+                    }
+                }
+            }
+        });
+        return names;
+    }
+
+    @Override
+    public long countCodedObs(final ReportRange range, final int conceptId, final int valueCodedId,
+                              final Integer locationId) {
+        final String sql = COUNT_CODED_OBS + locationClause("o", locationId);
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int i = 1;
+                ps.setInt(i++, conceptId);
+                ps.setInt(i++, valueCodedId);
+                ps.setTimestamp(i++, range.getStart());
+                ps.setTimestamp(i++, range.getEnd());
+                if (locationId != null) {
+                    ps.setInt(i, locationId);
+                }
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public long countTextObs(final ReportRange range, final String marker, final Integer locationId) {
+        final String sql = COUNT_TEXT_OBS + locationClause("o", locationId);
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int i = 1;
+                ps.setTimestamp(i++, range.getStart());
+                ps.setTimestamp(i++, range.getEnd());
+                ps.setString(i++, "%" + escapeLike(marker) + "%");
+                if (locationId != null) {
+                    ps.setInt(i, locationId);
+                }
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public List<DiagnosisCount> getTopConditions(final ReportRange range, final int limit) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(TOP_CONDITIONS)) {
+                ps.setTimestamp(1, range.getStart());
+                ps.setTimestamp(2, range.getEnd());
+                ps.setInt(3, limit);
+                List<DiagnosisCount> counts = new ArrayList<DiagnosisCount>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        counts.add(new DiagnosisCount(rs.getInt(1), rs.getString(2), rs.getLong(3)));
+                    }
+                }
+                return counts;
+            }
+        });
+    }
+
+    @Override
+    public long countEncounters(final ReportRange range, final int encounterTypeId, final Integer locationId) {
+        final String sql = COUNT_ENCOUNTERS + locationClause("e", locationId);
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int i = 1;
+                ps.setInt(i++, encounterTypeId);
+                ps.setTimestamp(i++, range.getStart());
+                ps.setTimestamp(i++, range.getEnd());
+                if (locationId != null) {
+                    ps.setInt(i, locationId);
+                }
+                return count(ps);
+            }
+        });
+    }
+
+    @Override
+    public long countNewPatients(final ReportRange range) {
+        return sessionFactory.getCurrentSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(COUNT_NEW_PATIENTS)) {
+                ps.setTimestamp(1, range.getStart());
+                ps.setTimestamp(2, range.getEnd());
+                return count(ps);
+            }
+        });
+    }
+
+    /**
+     * Binds OPD_REGISTER (plus an optional location clause) and feeds every row to the assembler,
+     * then finishes it.
+     */
+    static void readOpdRegister(PreparedStatement ps, ReportRange range, int encounterTypeId,
+                                        Integer locationId, OpdRegisterAssembler assembler) throws SQLException {
+        int i = 1;
+        ps.setInt(i++, encounterTypeId);
+        ps.setTimestamp(i++, range.getStart());
+        ps.setTimestamp(i++, range.getEnd());
+        if (locationId != null) {
+            ps.setInt(i, locationId);
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                assembler.encounter(rs.getInt(1), rs.getString(2), rs.getTimestamp(3), rs.getString(4),
+                        rs.getString(5), rs.getString(6));
+                rs.getInt(7);
+                if (!rs.wasNull()) {
+                    int value = rs.getInt(9);
+                    Integer valueCoded = rs.wasNull() ? null : value;
+                    assembler.obs(rs.getInt(8), valueCoded, rs.getString(10), rs.getString(11), rs.getString(12));
+                }
+            }
+        }
+        assembler.finish();
+    }
+
+    /**
+     * Binds DHIMS2_VISITS (plus an optional location clause) and feeds every row to the assembler,
+     * then finishes it.
+     */
+    static void readDhims2Visits(PreparedStatement ps, ReportRange range, Integer locationId,
+                                 Dhims2Assembler assembler) throws SQLException {
+        int i = 1;
+        ps.setString(i++, Dhims2Assembler.CONSULTATION_ENCOUNTER_TYPE);
+        ps.setTimestamp(i++, range.getStart());
+        ps.setTimestamp(i++, range.getEnd());
+        if (locationId != null) {
+            ps.setInt(i, locationId);
+        }
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Date birthdate = rs.getDate(3);
+                Timestamp datetime = rs.getTimestamp(5);
+                assembler.encounter(rs.getInt(1), rs.getInt(2), birthdate != null ? birthdate.toLocalDate() : null,
+                        rs.getString(4), datetime.toLocalDateTime().toLocalDate());
+                rs.getInt(6);
+                if (!rs.wasNull()) {
+                    int valueCoded = rs.getInt(8);
+                    Integer coded = rs.wasNull() ? null : valueCoded;
+                    int diagnosis = rs.getInt(10);
+                    Integer diagnosisConceptId = rs.wasNull() ? null : diagnosis;
+                    assembler.obs(rs.getInt(7), coded, rs.getString(9), diagnosisConceptId);
+                }
+            }
+        }
+        assembler.finish();
+    }
+
+    private Integer idByUuid(final String sql, final String uuid) {
+        if (uuid == null || uuid.trim().isEmpty()) {
+            return null;
+        }
+        return sessionFactory.getCurrentSession().doReturningWork((Connection connection) -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, uuid.trim());
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : null;
+                }
+            }
+        });
+    }
+
+    private static String locationClause(String alias, Integer locationId) {
+        return locationId == null ? "" : " AND " + alias + ".location_id = ?";
+    }
+
+    private static long count(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
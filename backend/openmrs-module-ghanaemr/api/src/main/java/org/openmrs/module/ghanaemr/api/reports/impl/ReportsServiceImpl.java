@@ -0,0 +1,200 @@
+package org.openmrs.module.ghanaemr.api.reports.impl;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.reports.BillingCounts;
+import org.openmrs.module.ghanaemr.api.reports.DailyStats;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Assembler;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Counters;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2MonthlyReport;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterAssembler;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterEntry;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.ReportsService;
+import org.openmrs.module.ghanaemr.api.reports.db.ReportsDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Transactional(readOnly = true)
+public class ReportsServiceImpl implements ReportsService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportsServiceImpl.class);
+
+    static final int MAX_TOP_DIAGNOSES = 100;
+
+    private ReportsDAO dao;
+
+    private DailyStats dailyStats;
+
+    private ConceptIcd10Map conceptIcd10Map;
+
+    public void setDao(ReportsDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setDailyStats(DailyStats dailyStats) {
+        this.dailyStats = dailyStats;
+    }
+
+    public void setConceptIcd10Map(ConceptIcd10Map conceptIcd10Map) {
+        this.conceptIcd10Map = conceptIcd10Map;
+    }
+
+    @Override
+    public Integer getEncounterTypeId(String uuid) {
+        return dao.getEncounterTypeId(uuid);
+    }
+
+    @Override
+    public Integer getLocationId(String uuid) {
+        return dao.getLocationId(uuid);
+    }
+
+    @Override
+    public List<OpdRegisterEntry> getOpdRegister(ReportRange range, int encounterTypeId, Integer locationId) {
+        final List<OpdRegisterEntry> entries = new ArrayList<OpdRegisterEntry>();
+        dao.getOpdRegister(range, encounterTypeId, locationId, assembler(new OpdRegisterSink() {
+
+            @Override
+            public void entry(OpdRegisterEntry entry) {
+                entries.add(entry);
+            }
+        }));
+        return entries;
+    }
+
+    @Override
+    public void streamOpdRegister(ReportRange range, int encounterTypeId, Integer locationId, OpdRegisterSink sink) {
+        OpdRegisterAssembler assembler = assembler(sink);
+        long start = System.currentTimeMillis();
+        dao.streamOpdRegister(range, encounterTypeId, locationId, assembler);
+        log.debug("OPD register {}: {} encounters ({} coded billing, {} coded diagnoses) in {} ms", range,
+                assembler.getEncounters(), assembler.getCodedBilling(), assembler.getCodedDiagnoses(),
+                System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public BillingCounts countBilling(ReportRange range, Integer locationId) {
+        if (useDailyStats(range)) {
+            return dailyStats.sumBilling(range, locationId);
+        }
+        String billingConcept = globalProperty(GP_BILLING_CONCEPT);
+        String nhisConcept = globalProperty(GP_BILLING_NHIS);
+        String cashConcept = globalProperty(GP_BILLING_CASH);
+        if (!billingConcept.isEmpty() && (!nhisConcept.isEmpty() || !cashConcept.isEmpty())) {
+            Integer billingId = dao.getConceptId(billingConcept);
+            return new BillingCounts(
+                    countCoded(range, billingId, nhisConcept, locationId),
+                    countCoded(range, billingId, cashConcept, locationId));
+        }
+        return new BillingCounts(
+                dao.countTextObs(range, NHIS_MARKER, locationId),
+                dao.countTextObs(range, CASH_MARKER, locationId));
+    }
+
+    @Override
+    public List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit) {
+        int max = Math.max(1, Math.min(MAX_TOP_DIAGNOSES, limit));
+        if (useDailyStats(range)) {
+            return dailyStats.getTopDiagnoses(range, max);
+        }
+        return dao.getTopConditions(range, max);
+    }
+
+    @Override
+    public long countEncounters(ReportRange range, int encounterTypeId, Integer locationId) {
+        if (useDailyStats(range)) {
+            return dailyStats.sumEncounters(range, encounterTypeId, locationId);
+        }
+        return dao.countEncounters(range, encounterTypeId, locationId);
+    }
+
+    @Override
+    public long countNewPatients(ReportRange range) {
+        if (useDailyStats(range)) {
+            return dailyStats.sumNewPatients(range);
+        }
+        return dao.countNewPatients(range);
+    }
+
+    @Override
+    public Dhims2MonthlyReport getDhims2Monthly(YearMonth month, Integer locationId, int topMorbidities) {
+        LocalDate today = LocalDate.now();
+        LocalDate last = month.atEndOfMonth();
+        // the current month only has counters up to today
+        ReportRange range = ReportRange.of(month.atDay(1), last.isAfter(today) ? today : last);
+        long start = System.currentTimeMillis();
+        Dhims2Counters counters;
+        boolean fromDailyStats = useDailyStats(range);
+        if (fromDailyStats) {
+            counters = dailyStats.getDhims2Counters(range, locationId);
+        } else {
+            counters = new Dhims2Counters();
+            Integer billingId = null;
+            Integer nhisId = null;
+            Integer cashId = null;
+            String billingConcept = globalProperty(GP_BILLING_CONCEPT);
+            if (!billingConcept.isEmpty()) {
+                billingId = dao.getConceptId(billingConcept);
+                nhisId = dao.getConceptId(globalProperty(GP_BILLING_NHIS));
+                cashId = dao.getConceptId(globalProperty(GP_BILLING_CASH));
+            }
+            dao.scanDhims2(range, locationId, new Dhims2Assembler(counters, billingId, nhisId, cashId));
+        }
+        List<Integer> top = Dhims2MonthlyReport.topMorbidities(counters, Math.max(1, Math.min(MAX_TOP_DIAGNOSES,
+                topMorbidities)));
+        Map<Integer, String> names = dao.getConceptNames(top);
+        Map<Integer, String> codes = conceptIcd10Map != null ? conceptIcd10Map.resolve(top)
+                : Collections.<Integer, String>emptyMap();
+        log.debug("DHIMS2 {} from {} in {} ms", month, fromDailyStats ? "daily counters" : "full scan",
+                System.currentTimeMillis() - start);
+        return new Dhims2MonthlyReport(month, counters, top, names, codes);
+    }
+
+    /**
+     * Coded billing when ghana.billing.concept.uuid is configured; ICD-10 mapped diagnoses once the
+     * concept map is built.
+     */
+    private OpdRegisterAssembler assembler(OpdRegisterSink sink) {
+        Integer billingId = null;
+        Integer nhisId = null;
+        Integer cashId = null;
+        String billingConcept = globalProperty(GP_BILLING_CONCEPT);
+        if (!billingConcept.isEmpty()) {
+            billingId = dao.getConceptId(billingConcept);
+            nhisId = dao.getConceptId(globalProperty(GP_BILLING_NHIS));
+            cashId = dao.getConceptId(globalProperty(GP_BILLING_CASH));
+        }
+        return new OpdRegisterAssembler(sink, billingId, nhisId, cashId, conceptIcd10Map);
+    }
+
+    /**
+     * Must run before this transaction's first read: prepare() may re-aggregate dirty days in its
+     * own transaction, and the sums below have to see that commit.
+     */
+    private boolean useDailyStats(ReportRange range) {
+        return dailyStats != null && dailyStats.prepare(range);
+    }
+
+    private long countCoded(ReportRange range, Integer billingId, String answerUuid, Integer locationId) {
+        if (billingId == null || answerUuid.isEmpty()) {
+            return 0;
+        }
+        Integer answerId = dao.getConceptId(answerUuid);
+        return answerId == null ? 0 : dao.countCodedObs(range, billingId, answerId, locationId);
+    }
+
+    private static String globalProperty(String name) {
+        String value = Context.getAdministrationService().getGlobalProperty(name, "");
+        return value == null ? "" : value.trim();
+    }
+}
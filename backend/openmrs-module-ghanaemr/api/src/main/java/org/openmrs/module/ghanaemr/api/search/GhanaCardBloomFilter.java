@@ -0,0 +1,261 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+import org.openmrs.module.ghanaemr.util.LongBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registration duplicate pre-check: a Bloom filter over every registered Ghana Card. A definite
+ * miss lets registration skip the duplicate query; a possible hit runs it.
+ *
+ * The filter is saved to a local file together with a watermark (the highest patient_identifier_id
+ * it has seen) and the time it was saved. A warm start loads the file and only scans identifiers
+ * above the watermark or changed since the save; a cold start, a missing/corrupt file or changed
+ * sizing rebuilds it from patient_identifier. While running, {@link PatientIndexAdvice} adds every
+ * Ghana Card saved through PatientService, so negatives hold as long as this node sees every write:
+ * it is only loaded when ghana.search.singleNode is true (see GhanaEMRActivator). Identifiers
+ * written by SQL while the module runs are not seen. Voided cards stay in the filter and only
+ * cost a false positive.
+ */
+public class GhanaCardBloomFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(GhanaCardBloomFilter.class);
+
+    public static final long DEFAULT_EXPECTED_INSERTIONS = 2000000L;
+    public static final double DEFAULT_FPP = 0.001;
+
+    /** First long of the file; files from before the save time was recorded start with the watermark. */
+    private static final long FILE_FORMAT = -2L;
+
+    private PatientSearchDAO dao;
+    private File file;
+
+    private volatile LongBloomFilter filter;
+    /** Keys put while a load is scanning, replayed onto the loaded filter before it is published. */
+    private List<Long> pending;
+    private volatile long watermark;
+    private volatile String loadedFrom = "none";
+    private long loadMillis;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong possibleHits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public void setDao(PatientSearchDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    /**
+     * Loads the saved filter and catches up from its watermark and save time, or rebuilds when the
+     * file is missing, unreadable, in the old format or sized differently from the requested
+     * configuration.
+     */
+    public void load(long expectedInsertions, double fpp) {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            pending = new ArrayList<Long>();
+        }
+        LongBloomFilter loaded = null;
+        long mark = 0;
+        Date savedAt = null;
+        if (file != null && file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readLong() != FILE_FORMAT) {
+                    throw new IOException("old file format");
+                }
+                mark = in.readLong();
+                savedAt = new Date(in.readLong());
+                loaded = LongBloomFilter.readFrom(in);
+                if (loaded.getExpectedInsertions() != expectedInsertions || loaded.getTargetFpp() != fpp) {
+                    log.info("Ghana Card filter sizing changed, rebuilding");
+                    loaded = null;
+                } else if (loaded.getInsertions() > expectedInsertions) {
+                    log.info("Ghana Card filter over capacity ({} > {}), rebuilding", loaded.getInsertions(), expectedInsertions);
+                    loaded = null;
+                }
+            } catch (IOException e) {
+                log.warn("Could not read Ghana Card filter from {}, rebuilding", file, e);
+                loaded = null;
+            }
+        }
+        boolean warm = loaded != null;
+        if (!warm) {
+            loaded = new LongBloomFilter(expectedInsertions, fpp);
+            mark = 0;
+            savedAt = null;
+        }
+
+        final LongBloomFilter target = loaded;
+        long newMark;
+        try {
+            newMark = scan(target, mark, savedAt);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            for (Long key : pending) {
+                target.put(key);
+            }
+            pending = null;
+            filter = target;
+        }
+        watermark = Math.max(mark, newMark);
+        loadedFrom = warm ? "file" : "database";
+        loadMillis = System.currentTimeMillis() - start;
+        log.info("Ghana Card filter ready from {} in {} ms: {} cards, ~{} KB", loadedFrom, loadMillis,
+                target.getInsertions(), target.footprintBytes() / 1024);
+        save();
+    }
+
+    private long scan(final LongBloomFilter target, long mark, Date savedAt) {
+        return dao.scanGhanaCards(mark, savedAt, new PatientIdentifierIndex.Sink() {
+            @Override
+            public void ghanaCard(String value, int patientId) {
+                long key = PatientIdentifierIndex.ghanaCardKey(value);
+                if (key >= 0) {
+                    target.put(key);
+                }
+            }
+
+            @Override
+            public void nhisNumber(String value, int patientId) {
+            }
+
+            @Override
+            public void folderNumber(String value, int patientId) {
+            }
+        });
+    }
+
+    /**
+     * @return false when the card has definitely never been registered on this database
+     */
+    public boolean mightContain(String ghanaCard) {
+        LongBloomFilter f = filter;
+        long key = PatientIdentifierIndex.ghanaCardKey(ghanaCard);
+        checks.incrementAndGet();
+        if (f == null || key < 0 || f.mightContain(key)) {
+            possibleHits.incrementAndGet();
+            return true;
+        }
+        definiteMisses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Called when a possible hit turned out not to be a duplicate, for the reported rate.
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    /**
+     * Adds a saved Ghana Card. Cards put while a load is scanning are kept for the loaded filter,
+     * as the scan may not see rows committed after it started.
+     */
+    public void put(String ghanaCard) {
+        long key = PatientIdentifierIndex.ghanaCardKey(ghanaCard);
+        if (key < 0) {
+            return;
+        }
+        LongBloomFilter f;
+        synchronized (this) {
+            if (pending != null) {
+                pending.add(key);
+            }
+            f = filter;
+        }
+        if (f != null) {
+            f.put(key);
+        }
+    }
+
+    /**
+     * Writes the filter, watermark and save time to a temporary file and renames it into place.
+     * Cards put after the last watermark scan are in the bits, and any missing ones are rescanned
+     * on load.
+     */
+    public synchronized void save() {
+        LongBloomFilter f = filter;
+        if (f == null || file == null) {
+            return;
+        }
+        long savedAt = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeLong(FILE_FORMAT);
+                out.writeLong(watermark);
+                out.writeLong(savedAt);
+                f.writeTo(out);
+            }
+            if (!tmp.renameTo(file)) {
+                if (!file.delete() || !tmp.renameTo(file)) {
+                    throw new IOException("Cannot replace " + file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not save Ghana Card filter to {}", file, e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        LongBloomFilter f = filter;
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("ready", f != null);
+        stats.put("loadedFrom", loadedFrom);
+        stats.put("loadMillis", loadMillis);
+        stats.put("file", file != null ? file.getPath() : null);
+        if (f != null) {
+            stats.put("cards", f.getInsertions());
+            stats.put("expectedInsertions", f.getExpectedInsertions());
+            stats.put("targetFpp", f.getTargetFpp());
+            stats.put("expectedFpp", f.expectedFpp());
+            stats.put("hashFunctions", f.getHashCount());
+            stats.put("footprintBytes", f.footprintBytes());
+        }
+        stats.put("checks", checks.get());
+        stats.put("definiteMisses", definiteMisses.get());
+        stats.put("possibleHits", possibleHits.get());
+        stats.put("falsePositives", falsePositives.get());
+        stats.put("observedFpp", checks.get() == 0 ? 0.0 : falsePositives.get() / (double) checks.get());
+        stats.put("watermark", watermark);
+        return stats;
+    }
+}
@@ -0,0 +1,104 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Name normalisation and phonetic keys tuned for Ghanaian names.
+ *
+ * Normalisation folds Akan/Ewe/Ga letters (ɛ, ɔ, ŋ, ƒ, ʋ, ɖ, ɣ) and diacritics to ASCII. The
+ * phonetic key keeps the first letter (any vowel becomes 'a') and the consonant skeleton after
+ * rewriting spellings that sound alike:
+ * - Akan/Ga: dw, dj, gy, dz = j; ky, tw, ts = ch; hy = sh (Adwoa/Adjoa/Ajoa, Kyei/Chei)
+ * - English transliteration: ph = f, ck/c/q = k, x = ks
+ * - w/y only count before a vowel (Yaw/Yao), h is silent after the first letter
+ *   (Mensah/Mensa, Mohammed/Muhamad), doubled letters and a trailing ng collapse
+ *   (Appiah/Apiah, Agyemang/Agyeman)
+ * Vowels are dropped entirely, so Kwame/Kwami and Akosua/Akosuah share a key.
+ */
+public final class GhanaianNamePhonetics {
+
+    private GhanaianNamePhonetics() {
+    }
+
+    /**
+     * Lower-case ASCII letters only; null or empty when nothing is left.
+     */
+    public static String normalize(String token) {
+        if (token == null) {
+            return null;
+        }
+        String s = token.toLowerCase(Locale.ROOT)
+                .replace('ɛ', 'e').replace('ɔ', 'o').replace("ŋ", "ng")
+                .replace('ƒ', 'f').replace('ʋ', 'v').replace('ɖ', 'd').replace('ɣ', 'g');
+        s = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Splits a full name or query into normalised tokens (hyphenated names become two tokens).
+     */
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String part : text.split("[\\s,.'\\-]+")) {
+            String n = normalize(part);
+            if (n != null && !n.isEmpty()) {
+                tokens.add(n);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param normalized output of {@link #normalize(String)}
+     */
+    public static String phoneticKey(String normalized) {
+        if (normalized == null || normalized.isEmpty()) {
+            return "";
+        }
+        String s = normalized
+                .replace("ph", "f").replace("ck", "k").replace("qu", "kw").replace('q', 'k').replace("x", "ks")
+                .replace("dw", "j").replace("dj", "j").replace("gy", "j").replace("dz", "j")
+                .replace("ky", "C").replace("tw", "C").replace("ts", "C").replace("ch", "C")
+                .replace("hy", "S").replace("sh", "S")
+                .replace('c', 'k');
+        if (s.endsWith("ng") && s.length() > 3) {
+            s = s.substring(0, s.length() - 1);
+        }
+
+        StringBuilder key = new StringBuilder(s.length());
+        char first = s.charAt(0);
+        key.append(isVowel(first) ? 'a' : first);
+        char last = key.charAt(0);
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isVowel(c) || c == 'h') {
+                continue;
+            }
+            if ((c == 'w' || c == 'y') && (i + 1 >= s.length() || !isVowel(s.charAt(i + 1)))) {
+                continue;
+            }
+            if (c != last) {
+                key.append(c);
+                last = c;
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+}
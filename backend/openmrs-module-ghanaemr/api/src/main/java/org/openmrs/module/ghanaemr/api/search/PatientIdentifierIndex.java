@@ -0,0 +1,358 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+import org.openmrs.module.ghanaemr.util.LongIntHashMap;
+import org.openmrs.module.ghanaemr.validation.GhanaCardValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory exact-match index from Ghana Card, NHIS number and folder number to patient_id.
+ *
+ * Keys are packed into primitive longs (Ghana Card and NHIS are 10 digits; folder numbers are
+ * packed as region/facility/year/sequence) so a million patients cost tens of megabytes rather
+ * than hundreds for boxed HashMap entries. Folder numbers that do not fit the packing fall back to
+ * a small String map.
+ *
+ * Built by streaming patient_identifier and person_attribute once at startup, then kept current by
+ * {@link PatientIndexAdvice} for every patient saved through PatientService or PersonService.
+ * Writes that arrive while a rebuild is running are replayed onto the new maps before they are
+ * published. Entries are only added, never removed, so a hit may be stale (voided or edited away)
+ * and is confirmed against the database; a miss is trusted on a single node. Identifiers written by
+ * SQL or by another node are only picked up by the next rebuild.
+ */
+public class PatientIdentifierIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientIdentifierIndex.class);
+
+    /** Receives identifier rows while the index is being built. */
+    public interface Sink {
+        void ghanaCard(String value, int patientId);
+
+        void nhisNumber(String value, int patientId);
+
+        void folderNumber(String value, int patientId);
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private PatientSearchDAO dao;
+
+    private Maps maps = new Maps(16);
+    private volatile boolean ready;
+    private List<Object[]> pending;
+
+    private long buildMillis;
+    private long rowsScanned;
+    private long builtAt;
+
+    public void setDao(PatientSearchDAO dao) {
+        this.dao = dao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Streams every active identifier into fresh maps and swaps them in. Safe to call again to
+     * resynchronise; lookups keep using the previous maps until the swap.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<Object[]>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        final Maps fresh = new Maps(1 << 16);
+        final long[] rows = new long[1];
+        try {
+            dao.scanIdentifiers(new Sink() {
+                @Override
+                public void ghanaCard(String value, int patientId) {
+                    rows[0]++;
+                    fresh.putGhanaCard(value, patientId);
+                }
+
+                @Override
+                public void nhisNumber(String value, int patientId) {
+                    rows[0]++;
+                    fresh.putNhisNumber(value, patientId);
+                }
+
+                @Override
+                public void folderNumber(String value, int patientId) {
+                    rows[0]++;
+                    fresh.putFolderNumber(value, patientId);
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Object[] p : pending) {
+                fresh.put((Integer) p[0], (String) p[1], (String) p[2], (String) p[3]);
+            }
+            pending = null;
+            maps = fresh;
+            ready = true;
+            rowsScanned = rows[0];
+            buildMillis = System.currentTimeMillis() - start;
+            builtAt = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Patient identifier index built: {} rows in {} ms, ~{} KB", rows[0], buildMillis,
+                footprintBytes() / 1024);
+    }
+
+    /**
+     * Records identifiers of a saved patient. Null values are skipped.
+     */
+    public void put(int patientId, String ghanaCard, String nhisNumber, String folderNumber) {
+        lock.writeLock().lock();
+        try {
+            maps.put(patientId, ghanaCard, nhisNumber, folderNumber);
+            if (pending != null) {
+                pending.add(new Object[] { patientId, ghanaCard, nhisNumber, folderNumber });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the patient_id holding this Ghana Card, or null
+     */
+    public Integer findByGhanaCard(String ghanaCard) {
+        long key = ghanaCardKey(ghanaCard);
+        if (key < 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return boxed(maps.ghanaCards.get(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer findByNhisNumber(String nhisNumber) {
+        long key = nhisKey(nhisNumber);
+        if (key < 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return boxed(maps.nhisNumbers.get(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer findByFolderNumber(String folderNumber) {
+        if (folderNumber == null) {
+            return null;
+        }
+        String normalized = folderNumber.trim().toUpperCase(Locale.ROOT);
+        long key = folderKey(normalized);
+        lock.readLock().lock();
+        try {
+            return key >= 0 ? boxed(maps.folderNumbers.get(key)) : maps.folderOverflow.get(normalized);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate bytes held by the index: primitive table arrays plus a per-entry estimate for the
+     * String fallback map.
+     */
+    public long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            return maps.footprintBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            stats.put("ready", ready);
+            stats.put("ghanaCards", maps.ghanaCards.size());
+            stats.put("nhisNumbers", maps.nhisNumbers.size());
+            stats.put("folderNumbers", maps.folderNumbers.size() + maps.folderOverflow.size());
+            stats.put("folderNumbersUnpacked", maps.folderOverflow.size());
+            stats.put("footprintBytes", maps.footprintBytes());
+            stats.put("rowsScanned", rowsScanned);
+            stats.put("buildMillis", buildMillis);
+            stats.put("builtAt", builtAt);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Integer boxed(int value) {
+        return value == LongIntHashMap.NO_VALUE ? null : Integer.valueOf(value);
+    }
+
+    /**
+     * GHA-123456789-7 (any separators) to 1234567897; -1 if it is not a Ghana Card.
+     *
+     * @see GhanaCardValidator#pack(CharSequence)
+     */
+    public static long ghanaCardKey(String ghanaCard) {
+        return GhanaCardValidator.pack(ghanaCard);
+    }
+
+    /**
+     * 10-digit NHIS number (spaces/hyphens ignored) to its numeric value; -1 otherwise.
+     */
+    public static long nhisKey(String nhisNumber) {
+        return nhisNumber == null ? -1 : digitsKey(nhisNumber.trim(), 0, 10);
+    }
+
+    private static long digitsKey(String s, int from, int expected) {
+        long value = 0;
+        int digits = 0;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > expected) {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c != '-' && c != ' ') {
+                return -1;
+            }
+        }
+        return digits == expected ? value : -1;
+    }
+
+    /**
+     * Packs REGION-FACILITY-YYYY-SEQ (upper case) into 58 bits: region 2 letters (10 bits), facility
+     * up to 4 base-37 characters (21 bits), year 2000-2127 (7 bits), sequence below 2^20 (20 bits).
+     * Returns -1 when the value does not fit, in which case the String fallback map is used.
+     */
+    public static long folderKey(String folderNumber) {
+        if (folderNumber == null) {
+            return -1;
+        }
+        String[] parts = folderNumber.split("-");
+        if (parts.length != 4 || parts[0].length() != 2 || parts[1].isEmpty() || parts[1].length() > 4
+                || parts[2].length() != 4 || parts[3].isEmpty() || parts[3].length() > 7) {
+            return -1;
+        }
+        char r0 = parts[0].charAt(0);
+        char r1 = parts[0].charAt(1);
+        if (r0 < 'A' || r0 > 'Z' || r1 < 'A' || r1 > 'Z') {
+            return -1;
+        }
+        long region = (r0 - 'A') * 26 + (r1 - 'A');
+
+        long facility = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = i < parts[1].length() ? base37(parts[1].charAt(i)) : 0;
+            if (c < 0) {
+                return -1;
+            }
+            facility = facility * 37 + c;
+        }
+
+        long year = digitsKey(parts[2], 0, 4);
+        long seq = digitsKey(parts[3], 0, parts[3].length());
+        if (year < 2000 || year > 2127 || seq < 0 || seq >= (1 << 20)) {
+            return -1;
+        }
+        // zero-padding is part of the printed value, so only the canonical 6-digit form is packable
+        if (seq < 1000000 && parts[3].length() != 6) {
+            return -1;
+        }
+        return region << 48 | facility << 27 | (year - 2000) << 20 | seq;
+    }
+
+    private static int base37(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return -1;
+    }
+
+    private static final class Maps {
+        final LongIntHashMap ghanaCards;
+        final LongIntHashMap nhisNumbers;
+        final LongIntHashMap folderNumbers;
+        final Map<String, Integer> folderOverflow = new HashMap<String, Integer>();
+
+        Maps(int expected) {
+            ghanaCards = new LongIntHashMap(expected);
+            nhisNumbers = new LongIntHashMap(expected);
+            folderNumbers = new LongIntHashMap(expected);
+        }
+
+        void put(int patientId, String ghanaCard, String nhisNumber, String folderNumber) {
+            putGhanaCard(ghanaCard, patientId);
+            putNhisNumber(nhisNumber, patientId);
+            putFolderNumber(folderNumber, patientId);
+        }
+
+        void putGhanaCard(String value, int patientId) {
+            long key = ghanaCardKey(value);
+            if (key >= 0) {
+                ghanaCards.put(key, patientId);
+            }
+        }
+
+        void putNhisNumber(String value, int patientId) {
+            long key = nhisKey(value);
+            if (key >= 0) {
+                nhisNumbers.put(key, patientId);
+            }
+        }
+
+        void putFolderNumber(String value, int patientId) {
+            if (value == null || value.trim().isEmpty()) {
+                return;
+            }
+            String normalized = value.trim().toUpperCase(Locale.ROOT);
+            long key = folderKey(normalized);
+            if (key >= 0) {
+                folderNumbers.put(key, patientId);
+            } else {
+                folderOverflow.put(normalized, patientId);
+            }
+        }
+
+        long footprintBytes() {
+            // ~96 bytes per HashMap entry: node, String, char/byte array and boxed Integer
+            return ghanaCards.footprintBytes() + nhisNumbers.footprintBytes() + folderNumbers.footprintBytes()
+                    + folderOverflow.size() * 96L;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps {@link PatientNameIndex}, {@link PatientIdentifierIndex} and {@link GhanaCardBloomFilter}
+ * current for registrations, name and identifier edits made anywhere in the system (this module,
+ * the core UI, REST). Declared as advice on PatientService and PersonService in config.xml; name
+ * index updates are applied after the surrounding transaction commits, identifiers are added
+ * straight away (an identifier from a rolled-back save only costs a confirming query).
+ */
+public class PatientIndexAdvice implements AfterReturningAdvice {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientIndexAdvice.class);
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) {
+        String name = method.getName();
+        if (!(name.startsWith("save") || name.startsWith("void") || name.startsWith("unvoid")
+                || name.startsWith("purge") || name.startsWith("merge"))) {
+            return;
+        }
+        List<Person> persons = new ArrayList<Person>();
+        collect(returnValue, persons);
+        if (args != null) {
+            for (Object arg : args) {
+                collect(arg, persons);
+            }
+        }
+        if (persons.isEmpty()) {
+            return;
+        }
+        PatientNameIndex index = getComponent(PatientNameIndex.class);
+        PatientIdentifierIndex identifiers = getComponent(PatientIdentifierIndex.class);
+        GhanaCardBloomFilter filter = getComponent(GhanaCardBloomFilter.class);
+        if (index == null && identifiers == null && filter == null) {
+            return;
+        }
+        boolean purge = name.startsWith("purgePatient") || name.startsWith("purgePerson") && !name.startsWith("purgePersonName");
+        for (Person person : persons) {
+            if (!purge && isPatient(person)) {
+                putIdentifiers(identifiers, filter, person);
+            }
+            if (index == null || person.getPersonId() == null) {
+                continue;
+            }
+            final int personId = person.getPersonId();
+            final List<String> parts = new ArrayList<String>();
+            if (!purge && !Boolean.TRUE.equals(person.getVoided()) && isPatient(person)) {
+                for (PersonName n : person.getNames()) {
+                    if (!Boolean.TRUE.equals(n.getVoided())) {
+                        parts.add(n.getGivenName());
+                        parts.add(n.getMiddleName());
+                        parts.add(n.getFamilyName());
+                    }
+                }
+            }
+            afterCommit(index, personId, parts);
+        }
+    }
+
+    private static void collect(Object value, List<Person> persons) {
+        Person person = null;
+        if (value instanceof Person) {
+            person = (Person) value;
+        } else if (value instanceof PersonName) {
+            person = ((PersonName) value).getPerson();
+        } else if (value instanceof PatientIdentifier) {
+            person = ((PatientIdentifier) value).getPatient();
+        } else if (value instanceof PersonAttribute) {
+            person = ((PersonAttribute) value).getPerson();
+        }
+        if (person != null && !persons.contains(person)) {
+            persons.add(person);
+        }
+    }
+
+    /**
+     * Adds the active Ghana Card, NHIS number and folder number identifiers, and the NHIS attribute.
+     * Voided ones are left in place; they only cost a confirming query.
+     */
+    private static void putIdentifiers(PatientIdentifierIndex identifiers, GhanaCardBloomFilter filter, Person person) {
+        Integer patientId = person.getPersonId();
+        if (person instanceof Patient) {
+            for (PatientIdentifier identifier : ((Patient) person).getIdentifiers()) {
+                if (Boolean.TRUE.equals(identifier.getVoided()) || identifier.getIdentifierType() == null) {
+                    continue;
+                }
+                String type = identifier.getIdentifierType().getName();
+                String value = identifier.getIdentifier();
+                if (filter != null && PatientSummaryBuilder.GHANA_CARD.equals(type)) {
+                    filter.put(value);
+                }
+                if (identifiers == null || patientId == null) {
+                    continue;
+                }
+                if (PatientSummaryBuilder.GHANA_CARD.equals(type)) {
+                    identifiers.put(patientId, value, null, null);
+                } else if (PatientSummaryBuilder.NHIS_NUMBER.equals(type)) {
+                    identifiers.put(patientId, null, value, null);
+                } else if (PatientSummaryBuilder.FOLDER_NUMBER.equals(type)) {
+                    identifiers.put(patientId, null, null, value);
+                }
+            }
+        }
+        if (identifiers == null || patientId == null) {
+            return;
+        }
+        for (PersonAttribute attribute : person.getAttributes()) {
+            if (!Boolean.TRUE.equals(attribute.getVoided()) && attribute.getAttributeType() != null
+                    && PatientSummaryBuilder.NHIS_NUMBER.equals(attribute.getAttributeType().getName())) {
+                identifiers.put(patientId, null, attribute.getValue(), null);
+            }
+        }
+    }
+
+    private static boolean isPatient(Person person) {
+        return person instanceof Patient || person.getIsPatient();
+    }
+
+    private static void afterCommit(final PatientNameIndex index, final int personId, final List<String> parts) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    index.update(personId, parts);
+                }
+            });
+        } else {
+            index.update(personId, parts);
+        }
+    }
+
+    private static <T> T getComponent(Class<T> type) {
+        try {
+            return Context.getRegisteredComponents(type).stream().findFirst().orElse(null);
+        } catch (Exception e) {
+            log.debug("{} not available: {}", type.getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A patient as the queue list shows it: uuid, the full preferred name and every identifier with
+ * its type name, read without loading the Patient.
+ */
+public class PatientListing {
+
+    /** One identifier and the name of its type. */
+    public static final class Identifier {
+        private final String identifier;
+        private final String typeName;
+
+        public Identifier(String identifier, String typeName) {
+            this.identifier = identifier;
+            this.typeName = typeName;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+    }
+
+    private final Integer patientId;
+    private final String uuid;
+    private String fullName;
+    private final List<Identifier> identifiers = new ArrayList<Identifier>();
+
+    public PatientListing(Integer patientId, String uuid) {
+        this.patientId = patientId;
+        this.uuid = uuid;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return the preferred name as PersonName.getFullName() renders it, or null without a name
+     */
+    public String getFullName() {
+        return fullName;
+    }
+
+    public void setFullName(String fullName) {
+        this.fullName = fullName;
+    }
+
+    public List<Identifier> getIdentifiers() {
+        return identifiers;
+    }
+}
@@ -0,0 +1,504 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process, typo-tolerant name index. Every name token of a patient is normalised
+ * ({@link GhanaianNamePhonetics}) into a term; terms carry a posting list of patient ids and are
+ * grouped by phonetic key. A query token matches terms by, in falling score: exact term, prefix,
+ * same phonetic key, or a phonetic key one deletion away. Term matching works on the (small)
+ * vocabulary, so only the postings of the chosen terms are touched.
+ *
+ * The rarest query token drives candidate generation; each of its postings is checked against the
+ * other tokens through the per-patient term list, so only full matches count towards the
+ * {@link #MAX_CANDIDATES} cap. Results are ranked by summed score, then patient id.
+ *
+ * Built at startup by streaming person_name; kept current by {@link PatientIndexAdvice} on patient
+ * and person-name saves. Updates during a rebuild are replayed before the new index is published.
+ */
+public class PatientNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientNameIndex.class);
+
+    static final int MAX_TERMS_PER_TOKEN = 64;
+    static final int MAX_CANDIDATES = 5000;
+    static final int MAX_SCANNED = 250000;
+
+    static final float EXACT = 1.0f;
+    static final float PREFIX = 0.8f;
+    static final float PHONETIC = 0.6f;
+    static final float PHONETIC_NEAR = 0.35f;
+
+    /** Receives one name row per call while the index is being built. */
+    public interface Sink {
+        void name(int patientId, String givenName, String middleName, String familyName);
+    }
+
+    /** A ranked match. */
+    public static final class Match {
+        private final int patientId;
+        private final float score;
+
+        Match(int patientId, float score) {
+            this.patientId = patientId;
+            this.score = score;
+        }
+
+        public int getPatientId() {
+            return patientId;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private PatientSearchDAO dao;
+
+    private Data data = new Data();
+    private volatile boolean ready;
+    private List<Object[]> pending;
+
+    private long buildMillis;
+    private long builtAt;
+
+    public void setDao(PatientSearchDAO dao) {
+        this.dao = dao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Streams all non-voided names into a fresh index and swaps it in; lookups keep using the
+     * previous index until then.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<Object[]>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        final Data fresh = new Data();
+        final int[] current = { -1 };
+        final List<String> names = new ArrayList<String>();
+        try {
+            dao.scanNames(new Sink() {
+                @Override
+                public void name(int patientId, String givenName, String middleName, String familyName) {
+                    // rows arrive ordered by patient, so a change of id closes the previous patient
+                    if (patientId != current[0] && current[0] >= 0) {
+                        fresh.index(current[0], names);
+                        names.clear();
+                    }
+                    current[0] = patientId;
+                    names.add(givenName);
+                    names.add(middleName);
+                    names.add(familyName);
+                }
+            });
+            if (current[0] >= 0) {
+                fresh.index(current[0], names);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Object[] p : pending) {
+                @SuppressWarnings("unchecked")
+                Collection<String> n = (Collection<String>) p[1];
+                fresh.index((Integer) p[0], n);
+            }
+            pending = null;
+            data = fresh;
+            ready = true;
+            buildMillis = System.currentTimeMillis() - start;
+            builtAt = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Patient name index built: {} patients, {} terms in {} ms, ~{} KB", fresh.patients,
+                fresh.terms.size(), buildMillis, footprintBytes() / 1024);
+    }
+
+    /**
+     * Replaces the indexed names of a patient (registration or name edit). An empty collection
+     * removes the patient.
+     */
+    public void update(int patientId, Collection<String> nameParts) {
+        Collection<String> copy = nameParts == null ? Collections.<String>emptyList() : new ArrayList<String>(nameParts);
+        lock.writeLock().lock();
+        try {
+            data.index(patientId, copy);
+            if (pending != null) {
+                pending.add(new Object[] { patientId, copy });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int patientId) {
+        update(patientId, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param query free text; every token must match some name token of the patient
+     * @return ranked matches, at most {@link #MAX_CANDIDATES}
+     */
+    public List<Match> search(String query) {
+        List<String> tokens = GhanaianNamePhonetics.tokens(query);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            return data.search(tokens);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            return data.footprintBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            stats.put("ready", ready);
+            stats.put("patients", data.patients);
+            stats.put("terms", data.terms.size());
+            stats.put("phoneticKeys", data.keyTerms.size());
+            stats.put("footprintBytes", data.footprintBytes());
+            stats.put("buildMillis", buildMillis);
+            stats.put("builtAt", builtAt);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Single-deletion variants of a phonetic key (SymSpell style): two keys within one
+     * insert/delete/substitution after the first letter share at least one variant.
+     */
+    static List<String> deletions(String key) {
+        List<String> out = new ArrayList<String>(key.length() + 1);
+        out.add(key);
+        if (key.length() >= 2) {
+            for (int i = 1; i < key.length(); i++) {
+                out.add(key.substring(0, i) + key.substring(i + 1));
+            }
+        }
+        return out;
+    }
+
+    /** Growable int list used for posting lists. */
+    private static final class IntList {
+        int[] items = new int[2];
+        int size;
+
+        void add(int v) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size << 1);
+            }
+            items[size++] = v;
+        }
+
+        void removeValue(int v) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == v) {
+                    System.arraycopy(items, i + 1, items, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Data {
+        final TreeMap<String, Integer> vocabulary = new TreeMap<String, Integer>();
+        final List<String> terms = new ArrayList<String>();
+        final List<String> termKeys = new ArrayList<String>();
+        final List<IntList> postings = new ArrayList<IntList>();
+        final Map<String, IntList> keyTerms = new HashMap<String, IntList>();
+        final Map<String, List<String>> keyDeletions = new HashMap<String, List<String>>();
+        int[][] patientTerms = new int[1024][];
+        int patients;
+        long postingCount;
+
+        void index(int patientId, Collection<String> nameParts) {
+            if (patientId >= patientTerms.length) {
+                patientTerms = Arrays.copyOf(patientTerms, Math.max(patientId + 1, patientTerms.length << 1));
+            }
+            int[] old = patientTerms[patientId];
+            if (old != null) {
+                for (int t : old) {
+                    postings.get(t).removeValue(patientId);
+                }
+                postingCount -= old.length;
+                patients--;
+                patientTerms[patientId] = null;
+            }
+
+            int[] ids = new int[8];
+            int n = 0;
+            for (String part : nameParts) {
+                for (String token : GhanaianNamePhonetics.tokens(part)) {
+                    int termId = termId(token);
+                    boolean seen = false;
+                    for (int i = 0; i < n; i++) {
+                        seen |= ids[i] == termId;
+                    }
+                    if (!seen) {
+                        if (n == ids.length) {
+                            ids = Arrays.copyOf(ids, n << 1);
+                        }
+                        ids[n++] = termId;
+                    }
+                }
+            }
+            if (n == 0) {
+                return;
+            }
+            ids = Arrays.copyOf(ids, n);
+            for (int t : ids) {
+                postings.get(t).add(patientId);
+            }
+            patientTerms[patientId] = ids;
+            postingCount += n;
+            patients++;
+        }
+
+        private int termId(String term) {
+            Integer id = vocabulary.get(term);
+            if (id != null) {
+                return id;
+            }
+            int termId = terms.size();
+            String key = GhanaianNamePhonetics.phoneticKey(term);
+            vocabulary.put(term, termId);
+            terms.add(term);
+            termKeys.add(key);
+            postings.add(new IntList());
+            IntList sameKey = keyTerms.get(key);
+            if (sameKey == null) {
+                sameKey = new IntList();
+                keyTerms.put(key, sameKey);
+                for (String d : deletions(key)) {
+                    List<String> keys = keyDeletions.get(d);
+                    if (keys == null) {
+                        keys = new ArrayList<String>(1);
+                        keyDeletions.put(d, keys);
+                    }
+                    keys.add(key);
+                }
+            }
+            sameKey.add(termId);
+            return termId;
+        }
+
+        /**
+         * Scores vocabulary terms for one query token, keeping the best {@link #MAX_TERMS_PER_TOKEN}.
+         */
+        Map<Integer, Float> matchTerms(String token) {
+            Map<Integer, Float> scores = new HashMap<Integer, Float>();
+            Integer exact = vocabulary.get(token);
+            if (exact != null) {
+                scores.put(exact, EXACT);
+            }
+            if (token.length() >= 2) {
+                int added = 0;
+                for (Integer id : vocabulary.subMap(token, false, token + Character.MAX_VALUE, false).values()) {
+                    if (++added > MAX_TERMS_PER_TOKEN) {
+                        break;
+                    }
+                    scores.put(id, PREFIX);
+                }
+            }
+            String key = GhanaianNamePhonetics.phoneticKey(token);
+            addKeyTerms(scores, token, key, PHONETIC, Integer.MAX_VALUE);
+            for (String d : deletions(key)) {
+                List<String> near = keyDeletions.get(d);
+                if (near != null) {
+                    for (String k : near) {
+                        if (!k.equals(key)) {
+                            addKeyTerms(scores, token, k, PHONETIC_NEAR, Math.max(1, token.length() / 3));
+                        }
+                    }
+                }
+            }
+            if (scores.size() > MAX_TERMS_PER_TOKEN) {
+                List<Map.Entry<Integer, Float>> entries = new ArrayList<Map.Entry<Integer, Float>>(scores.entrySet());
+                Collections.sort(entries, (a, b) -> Float.compare(b.getValue(), a.getValue()));
+                scores = new HashMap<Integer, Float>();
+                for (Map.Entry<Integer, Float> e : entries.subList(0, MAX_TERMS_PER_TOKEN)) {
+                    scores.put(e.getKey(), e.getValue());
+                }
+            }
+            return scores;
+        }
+
+        /**
+         * Terms sharing a phonetic key are ranked by spelling distance so Kwami beats Kwaame for
+         * the query "kwame"; near keys must also be within maxDistance edits of the query token
+         * (short keys alone are too coarse: Owusu and Akosua differ by one consonant).
+         */
+        private void addKeyTerms(Map<Integer, Float> scores, String token, String key, float base, int maxDistance) {
+            IntList ids = keyTerms.get(key);
+            if (ids == null) {
+                return;
+            }
+            for (int i = 0; i < ids.size; i++) {
+                int id = ids.items[i];
+                int distance = editDistance(token, terms.get(id));
+                if (distance > maxDistance) {
+                    continue;
+                }
+                float s = base - 0.05f * Math.min(4, distance);
+                Float existing = scores.get(id);
+                if (existing == null || existing < s) {
+                    scores.put(id, s);
+                }
+            }
+        }
+
+        List<Match> search(List<String> tokens) {
+            List<Map<Integer, Float>> perToken = new ArrayList<Map<Integer, Float>>(tokens.size());
+            int driver = -1;
+            long driverCost = Long.MAX_VALUE;
+            for (String token : tokens) {
+                Map<Integer, Float> m = matchTerms(token);
+                if (m.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                long cost = 0;
+                for (Integer t : m.keySet()) {
+                    cost += postings.get(t).size;
+                }
+                if (cost < driverCost) {
+                    driverCost = cost;
+                    driver = perToken.size();
+                }
+                perToken.add(m);
+            }
+
+            // walk the driver's postings, best-scoring terms first, and keep patients that also
+            // match every other token; the cap applies to matches, the scan bound to work done
+            List<Map.Entry<Integer, Float>> driverTerms = new ArrayList<Map.Entry<Integer, Float>>(perToken.get(driver).entrySet());
+            Collections.sort(driverTerms, (a, b) -> Float.compare(b.getValue(), a.getValue()));
+            BitSet seen = new BitSet(patientTerms.length);
+            List<Match> matches = new ArrayList<Match>();
+            int scanned = 0;
+            outer:
+            for (Map.Entry<Integer, Float> e : driverTerms) {
+                IntList p = postings.get(e.getKey());
+                for (int i = 0; i < p.size; i++) {
+                    int patientId = p.items[i];
+                    if (seen.get(patientId)) {
+                        continue;
+                    }
+                    seen.set(patientId);
+                    if (++scanned > MAX_SCANNED || matches.size() >= MAX_CANDIDATES) {
+                        break outer;
+                    }
+                    float total = score(patientTerms[patientId], perToken, driver);
+                    if (total >= 0) {
+                        matches.add(new Match(patientId, total + e.getValue()));
+                    }
+                }
+            }
+            Collections.sort(matches, (a, b) -> a.score != b.score ? Float.compare(b.score, a.score)
+                    : Integer.compare(a.patientId, b.patientId));
+            return matches;
+        }
+
+        /**
+         * @return summed best score of every non-driver token, or -1 if one of them has no match
+         */
+        private static float score(int[] own, List<Map<Integer, Float>> perToken, int driver) {
+            float total = 0;
+            for (int t = 0; t < perToken.size(); t++) {
+                if (t == driver) {
+                    continue;
+                }
+                float best = 0;
+                for (int term : own) {
+                    Float s = perToken.get(t).get(term);
+                    if (s != null && s > best) {
+                        best = s;
+                    }
+                }
+                if (best == 0) {
+                    return -1;
+                }
+                total += best;
+            }
+            return total;
+        }
+
+        long footprintBytes() {
+            long bytes = postingCount * 4L + (long) patientTerms.length * 4L + patients * 16L;
+            for (IntList p : postings) {
+                bytes += 24 + (p.items.length - p.size) * 4L;
+            }
+            // vocabulary: TreeMap entry, two Strings and list slots per term
+            bytes += terms.size() * 160L + keyTerms.size() * 96L + keyDeletions.size() * 96L;
+            return bytes;
+        }
+
+        private static int editDistance(String a, String b) {
+            int[] prev = new int[b.length() + 1];
+            int[] cur = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) {
+                prev[j] = j;
+            }
+            for (int i = 1; i <= a.length(); i++) {
+                cur[0] = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                }
+                int[] tmp = prev;
+                prev = cur;
+                cur = tmp;
+            }
+            return prev[b.length()];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies a free-text search query once so that exactly one indexed lookup is needed.
+ *
+ * - GHANA_CARD: GHA-123456789-7 (hyphens/spaces optional, any case)
+ * - NHIS: 10 digits, spaces or hyphens ignored
+ * - FOLDER_NUMBER: GA-KBTH-2025-000123
+ * - NAME: anything else with at least 2 letters; split into tokens
+ */
+public final class PatientQueryClassifier {
+
+    public enum QueryType {
+        GHANA_CARD, NHIS, FOLDER_NUMBER, NAME, EMPTY
+    }
+
+    private static final Pattern GHANA_CARD = Pattern.compile("^GHA[-\\s]*(\\d{9})[-\\s]*(\\d)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NHIS = Pattern.compile("^\\d{10}$");
+    private static final Pattern NHIS_SEPARATORS = Pattern.compile("[\\s-]");
+    private static final Pattern FOLDER_NUMBER = Pattern.compile("^[A-Z]{2}-[A-Z0-9]{2,6}-\\d{4}-\\d{1,9}$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NAME_SEPARATORS = Pattern.compile("[\\s,]+");
+    private static final Pattern NAME_TOKEN = Pattern.compile("^[\\p{L}][\\p{L}'.-]*$");
+
+    private PatientQueryClassifier() {
+    }
+
+    public static Classification classify(String query) {
+        String q = query == null ? "" : query.trim();
+        if (q.isEmpty()) {
+            return new Classification(QueryType.EMPTY, "", Collections.<String>emptyList());
+        }
+        Matcher gc = GHANA_CARD.matcher(q);
+        if (gc.matches()) {
+            return new Classification(QueryType.GHANA_CARD, "GHA-" + gc.group(1) + "-" + gc.group(2),
+                    Collections.<String>emptyList());
+        }
+        String digits = NHIS_SEPARATORS.matcher(q).replaceAll("");
+        if (NHIS.matcher(digits).matches()) {
+            return new Classification(QueryType.NHIS, digits, Collections.<String>emptyList());
+        }
+        if (FOLDER_NUMBER.matcher(q).matches()) {
+            return new Classification(QueryType.FOLDER_NUMBER, q.toUpperCase(Locale.ROOT),
+                    Collections.<String>emptyList());
+        }
+        List<String> tokens = new ArrayList<String>();
+        for (String t : NAME_SEPARATORS.split(q)) {
+            if (NAME_TOKEN.matcher(t).matches()) {
+                tokens.add(t.toLowerCase(Locale.ROOT));
+            }
+        }
+        if (tokens.isEmpty() || (tokens.size() == 1 && tokens.get(0).length() < 2)) {
+            return new Classification(QueryType.EMPTY, q, Collections.<String>emptyList());
+        }
+        return new Classification(QueryType.NAME, q, Collections.unmodifiableList(tokens));
+    }
+
+    public static final class Classification {
+        private final QueryType type;
+        private final String value;
+        private final List<String> nameTokens;
+
+        Classification(QueryType type, String value, List<String> nameTokens) {
+            this.type = type;
+            this.value = value;
+            this.nameTokens = nameTokens;
+        }
+
+        public QueryType getType() {
+            return type;
+        }
+
+        /**
+         * @return the normalised identifier for identifier classes, the trimmed query otherwise
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return lower-cased name tokens for NAME queries
+         */
+        public List<String> getNameTokens() {
+            return nameTokens;
+        }
+    }
+}
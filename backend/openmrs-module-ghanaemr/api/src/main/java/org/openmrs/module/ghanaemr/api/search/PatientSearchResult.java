@@ -0,0 +1,44 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import java.util.List;
+
+/**
+ * One page of patient search results.
+ */
+public class PatientSearchResult {
+
+    private final PatientQueryClassifier.QueryType queryType;
+    private final List<PatientSummary> items;
+    private final long total;
+    private final int page;
+    private final int pageSize;
+
+    public PatientSearchResult(PatientQueryClassifier.QueryType queryType, List<PatientSummary> items,
+                               long total, int page, int pageSize) {
+        this.queryType = queryType;
+        this.items = items;
+        this.total = total;
+        this.page = page;
+        this.pageSize = pageSize;
+    }
+
+    public PatientQueryClassifier.QueryType getQueryType() {
+        return queryType;
+    }
+
+    public List<PatientSummary> getItems() {
+        return items;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+}
@@ -0,0 +1,17 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+/**
+ * Patient search for the registration desk: one classified, indexed query per request with
+ * paging done in SQL.
+ */
+public interface PatientSearchService {
+
+    int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * @param query Ghana Card, NHIS number, folder number or name fragment(s)
+     * @param page 1-based page number
+     * @param pageSize maximum items per page
+     */
+    PatientSearchResult search(String query, int page, int pageSize);
+}
@@ -0,0 +1,72 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+/**
+ * Read-only projection of the fields shown in patient search results; avoids loading full
+ * Patient graphs (names, identifiers, attributes, addresses) just to render a list.
+ */
+public class PatientSummary {
+
+    private Integer patientId;
+    private String uuid;
+    private String givenName;
+    private String familyName;
+    private String ghanaCard;
+    private String nhisNumber;
+    private String folderNumber;
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public void setGivenName(String givenName) {
+        this.givenName = givenName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public void setFamilyName(String familyName) {
+        this.familyName = familyName;
+    }
+
+    public String getGhanaCard() {
+        return ghanaCard;
+    }
+
+    public void setGhanaCard(String ghanaCard) {
+        this.ghanaCard = ghanaCard;
+    }
+
+    public String getNhisNumber() {
+        return nhisNumber;
+    }
+
+    public void setNhisNumber(String nhisNumber) {
+        this.nhisNumber = nhisNumber;
+    }
+
+    public String getFolderNumber() {
+        return folderNumber;
+    }
+
+    public void setFolderNumber(String folderNumber) {
+        this.folderNumber = folderNumber;
+    }
+}
@@ -0,0 +1,211 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link PatientSummary} rows for a page of patients with a fixed number of queries: one for
+ * uuid and preferred name, one for the Ghana Card / folder number identifiers and NHIS number.
+ * Identifier and attribute type ids are resolved on first use and then cached, so rendering never
+ * looks a type up by name per patient. {@link #buildListings} does the same for the queue list,
+ * which shows the full name and every identifier.
+ */
+public class PatientSummaryBuilder {
+
+    static final String GHANA_CARD = "Ghana Card";
+    static final String FOLDER_NUMBER = "Folder Number";
+    static final String NHIS_NUMBER = "NHIS Number";
+
+    /** Type ids used by summaries; any of them may be null when the metadata is missing. */
+    public static final class TypeIds {
+        private final Integer ghanaCard;
+        private final Integer folderNumber;
+        private final Integer nhisIdentifier;
+        private final Integer nhisAttribute;
+
+        public TypeIds(Integer ghanaCard, Integer folderNumber, Integer nhisIdentifier, Integer nhisAttribute) {
+            this.ghanaCard = ghanaCard;
+            this.folderNumber = folderNumber;
+            this.nhisIdentifier = nhisIdentifier;
+            this.nhisAttribute = nhisAttribute;
+        }
+
+        public Integer getGhanaCard() {
+            return ghanaCard;
+        }
+
+        public Integer getFolderNumber() {
+            return folderNumber;
+        }
+
+        public Integer getNhisIdentifier() {
+            return nhisIdentifier;
+        }
+
+        public Integer getNhisAttribute() {
+            return nhisAttribute;
+        }
+
+        /**
+         * @return the identifier type ids that are present
+         */
+        public List<Integer> identifierTypeIds() {
+            List<Integer> ids = new ArrayList<Integer>(3);
+            for (Integer id : new Integer[] { ghanaCard, folderNumber, nhisIdentifier }) {
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+    }
+
+    private PatientSearchDAO dao;
+
+    private volatile TypeIds typeIds;
+
+    public void setDao(PatientSearchDAO dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * @param patientIds page of patient ids; duplicates are ignored
+     * @return summaries of non-voided patients, in the order of patientIds
+     */
+    public List<PatientSummary> build(Collection<Integer> patientIds) {
+        List<Integer> ids = new ArrayList<Integer>(new LinkedHashSet<Integer>(patientIds));
+        if (ids.isEmpty()) {
+            return new ArrayList<PatientSummary>();
+        }
+        TypeIds types = types();
+
+        Map<Integer, PatientSummary> byId = new LinkedHashMap<Integer, PatientSummary>();
+        for (PatientSummary s : dao.findSummaryNames(ids)) {
+            byId.put(s.getPatientId(), s);
+        }
+        if (byId.isEmpty()) {
+            return new ArrayList<PatientSummary>();
+        }
+
+        for (Object[] row : dao.findSummaryIdentifiers(new ArrayList<Integer>(byId.keySet()), types)) {
+            PatientSummary s = byId.get(((Number) row[0]).intValue());
+            if (s == null) {
+                continue;
+            }
+            int typeId = ((Number) row[1]).intValue();
+            String value = (String) row[2];
+            if (types.ghanaCard != null && typeId == types.ghanaCard) {
+                if (s.getGhanaCard() == null) {
+                    s.setGhanaCard(value);
+                }
+            } else if (types.folderNumber != null && typeId == types.folderNumber) {
+                if (s.getFolderNumber() == null) {
+                    s.setFolderNumber(value);
+                }
+            } else if (s.getNhisNumber() == null) {
+                s.setNhisNumber(value);
+            }
+        }
+
+        List<PatientSummary> out = new ArrayList<PatientSummary>(byId.size());
+        for (Integer id : ids) {
+            PatientSummary s = byId.get(id);
+            if (s != null) {
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Listings for a page of patients in two queries, voided patients included: uuid, the preferred
+     * non-voided name rendered by PersonName.getFullName() and every identifier, in the order
+     * Patient.getIdentifiers() returns them.
+     *
+     * @return listings by patient id; ids without a person row are left out
+     */
+    public Map<Integer, PatientListing> buildListings(Collection<Integer> patientIds) {
+        List<Integer> ids = new ArrayList<Integer>(new LinkedHashSet<Integer>(patientIds));
+        Map<Integer, PatientListing> byId = new LinkedHashMap<Integer, PatientListing>();
+        if (ids.isEmpty()) {
+            return byId;
+        }
+        for (Object[] r : dao.findListingNames(ids)) {
+            Integer patientId = ((Number) r[0]).intValue();
+            if (byId.containsKey(patientId)) {
+                continue;
+            }
+            PatientListing listing = new PatientListing(patientId, (String) r[1]);
+            if (r[2] != null) {
+                PersonName name = new PersonName();
+                name.setPrefix((String) r[3]);
+                name.setGivenName((String) r[4]);
+                name.setMiddleName((String) r[5]);
+                name.setFamilyNamePrefix((String) r[6]);
+                name.setFamilyName((String) r[7]);
+                name.setFamilyName2((String) r[8]);
+                name.setFamilyNameSuffix((String) r[9]);
+                name.setDegree((String) r[10]);
+                listing.setFullName(name.getFullName());
+            }
+            byId.put(patientId, listing);
+        }
+        for (Object[] r : dao.findListingIdentifiers(ids)) {
+            PatientListing listing = byId.get(((Number) r[0]).intValue());
+            if (listing != null) {
+                listing.getIdentifiers().add(new PatientListing.Identifier((String) r[1], (String) r[2]));
+            }
+        }
+        return byId;
+    }
+
+    /**
+     * Summary of a patient that is already loaded (e.g. just registered), matching identifier types
+     * by name without any lookups.
+     */
+    public static PatientSummary fromPatient(Patient patient) {
+        PatientSummary s = new PatientSummary();
+        s.setPatientId(patient.getPatientId());
+        s.setUuid(patient.getUuid());
+        PersonName name = patient.getPersonName();
+        if (name != null) {
+            s.setGivenName(name.getGivenName());
+            s.setFamilyName(name.getFamilyName());
+        }
+        for (PatientIdentifier id : patient.getActiveIdentifiers()) {
+            String type = id.getIdentifierType() != null ? id.getIdentifierType().getName() : null;
+            if (GHANA_CARD.equalsIgnoreCase(type) && s.getGhanaCard() == null) {
+                s.setGhanaCard(id.getIdentifier());
+            } else if (FOLDER_NUMBER.equalsIgnoreCase(type) && s.getFolderNumber() == null) {
+                s.setFolderNumber(id.getIdentifier());
+            } else if (NHIS_NUMBER.equalsIgnoreCase(type) && s.getNhisNumber() == null) {
+                s.setNhisNumber(id.getIdentifier());
+            }
+        }
+        PersonAttribute nhis = patient.getAttribute(NHIS_NUMBER);
+        if (nhis != null && nhis.getValue() != null) {
+            s.setNhisNumber(nhis.getValue());
+        }
+        return s;
+    }
+
+    private TypeIds types() {
+        TypeIds t = typeIds;
+        // re-resolve while the core Ghana Card type is missing (metadata may be installed later)
+        if (t == null || t.ghanaCard == null) {
+            t = dao.findSummaryTypeIds();
+            typeIds = t;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,88 @@
+package org.openmrs.module.ghanaemr.api.search.db;
+
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientNameIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientSummary;
+import org.openmrs.module.ghanaemr.api.search.PatientSummaryBuilder;
+
+import java.util.Date;
+import java.util.List;
+
+public interface PatientSearchDAO {
+
+    /**
+     * Exact match on an active identifier of the named type.
+     */
+    List<PatientSummary> findByIdentifier(String identifierTypeName, String identifier, int offset, int limit);
+
+    long countByIdentifier(String identifierTypeName, String identifier);
+
+    /**
+     * Exact match on the NHIS Number person attribute, or the legacy NHIS Number identifier.
+     */
+    List<PatientSummary> findByNhisNumber(String nhisNumber, int offset, int limit);
+
+    long countByNhisNumber(String nhisNumber);
+
+    /**
+     * Every token must prefix-match the given, middle or family name of the same name record, or an
+     * active identifier of any type must start with identifierPrefix. Either may be empty, not both.
+     */
+    List<PatientSummary> findByNameOrIdentifier(List<String> tokens, String identifierPrefix, int offset, int limit);
+
+    long countByNameOrIdentifier(List<String> tokens, String identifierPrefix);
+
+    /**
+     * Resolves the Ghana Card, Folder Number and NHIS identifier types and the NHIS Number person
+     * attribute type in one query.
+     */
+    PatientSummaryBuilder.TypeIds findSummaryTypeIds();
+
+    /**
+     * One summary per non-voided patient with uuid and preferred name only (one query).
+     */
+    List<PatientSummary> findSummaryNames(List<Integer> patientIds);
+
+    /**
+     * Active identifiers of the summary types plus NHIS attribute values (one query), as rows of
+     * {patientId, typeId, value} ordered by patient with preferred values first. NHIS attribute rows
+     * carry typeId -1.
+     */
+    List<Object[]> findSummaryIdentifiers(List<Integer> patientIds, PatientSummaryBuilder.TypeIds types);
+
+    /**
+     * Uuid and non-voided names of each person (one query), as rows of {patientId, uuid,
+     * personNameId, prefix, givenName, middleName, familyNamePrefix, familyName, familyName2,
+     * familyNameSuffix, degree} ordered by patient with the preferred name first. The name columns
+     * are null for a person without a non-voided name.
+     */
+    List<Object[]> findListingNames(List<Integer> patientIds);
+
+    /**
+     * Every identifier of each patient, voided ones included (one query), as rows of {patientId,
+     * identifier, typeName} in the order of Patient.getIdentifiers().
+     */
+    List<Object[]> findListingIdentifiers(List<Integer> patientIds);
+
+    /**
+     * Streams every active Ghana Card, NHIS number and folder number of non-voided patients into
+     * the sink. Runs in its own session so it can be called outside a request.
+     */
+    void scanIdentifiers(PatientIdentifierIndex.Sink sink);
+
+    /**
+     * Streams active Ghana Card identifiers with patient_identifier_id above the given watermark,
+     * or changed since the given time, into {@link PatientIdentifierIndex.Sink#ghanaCard}. Runs in
+     * its own session.
+     *
+     * @param changedSince null to only scan above the watermark
+     * @return the highest patient_identifier_id seen, or afterIdentifierId when there were none
+     */
+    long scanGhanaCards(long afterIdentifierId, Date changedSince, PatientIdentifierIndex.Sink sink);
+
+    /**
+     * Streams every non-voided name of non-voided patients into the sink, ordered by patient. Runs
+     * in its own session.
+     */
+    void scanNames(PatientNameIndex.Sink sink);
+}
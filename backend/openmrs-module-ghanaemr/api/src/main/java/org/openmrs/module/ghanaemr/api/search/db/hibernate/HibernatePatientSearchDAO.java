@@ -0,0 +1,462 @@
+package org.openmrs.module.ghanaemr.api.search.db.hibernate;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientNameIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientSummary;
+import org.openmrs.module.ghanaemr.api.search.PatientSummaryBuilder;
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native SQL so each search is one statement: the inner "hit" query uses the identifier, attribute
+ * or name indexes and applies LIMIT/OFFSET; the outer query only projects the summary columns for
+ * that page.
+ */
+public class HibernatePatientSearchDAO implements PatientSearchDAO {
+
+    private static final String SUMMARY_SQL =
+            "SELECT hit.patient_id, per.uuid, " +
+            "(SELECT n.given_name FROM person_name n WHERE n.person_id = hit.patient_id AND n.voided = 0 " +
+            "  ORDER BY n.preferred DESC, n.person_name_id LIMIT 1), " +
+            "(SELECT n.family_name FROM person_name n WHERE n.person_id = hit.patient_id AND n.voided = 0 " +
+            "  ORDER BY n.preferred DESC, n.person_name_id LIMIT 1), " +
+            "(SELECT i.identifier FROM patient_identifier i JOIN patient_identifier_type it " +
+            "  ON it.patient_identifier_type_id = i.identifier_type " +
+            "  WHERE i.patient_id = hit.patient_id AND i.voided = 0 AND it.name = 'Ghana Card' " +
+            "  ORDER BY i.preferred DESC LIMIT 1), " +
+            "(SELECT a.value FROM person_attribute a JOIN person_attribute_type at " +
+            "  ON at.person_attribute_type_id = a.person_attribute_type_id " +
+            "  WHERE a.person_id = hit.patient_id AND a.voided = 0 AND at.name = 'NHIS Number' LIMIT 1), " +
+            "(SELECT i.identifier FROM patient_identifier i JOIN patient_identifier_type it " +
+            "  ON it.patient_identifier_type_id = i.identifier_type " +
+            "  WHERE i.patient_id = hit.patient_id AND i.voided = 0 AND it.name = 'Folder Number' " +
+            "  ORDER BY i.preferred DESC LIMIT 1) " +
+            "FROM (%s) hit JOIN person per ON per.person_id = hit.patient_id " +
+            "ORDER BY hit.sort_key, hit.patient_id";
+
+    private static final String IDENTIFIER_HITS =
+            "SELECT DISTINCT pi.patient_id AS patient_id, pi.patient_id AS sort_key FROM patient_identifier pi " +
+            "JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "JOIN patient p ON p.patient_id = pi.patient_id AND p.voided = 0 " +
+            "WHERE pi.identifier = :value AND pi.voided = 0 AND pit.name = :typeName";
+
+    private static final String NHIS_HITS =
+            "SELECT u.patient_id AS patient_id, u.patient_id AS sort_key FROM (" +
+            "  SELECT pa.person_id AS patient_id FROM person_attribute pa " +
+            "  JOIN person_attribute_type pat ON pat.person_attribute_type_id = pa.person_attribute_type_id " +
+            "  WHERE pat.name = 'NHIS Number' AND pa.value = :value AND pa.voided = 0 " +
+            "  UNION " +
+            "  SELECT pi.patient_id FROM patient_identifier pi " +
+            "  JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "  WHERE pit.name = 'NHIS Number' AND pi.identifier = :value AND pi.voided = 0" +
+            ") u JOIN patient p ON p.patient_id = u.patient_id AND p.voided = 0";
+
+    /** Grouped over the union of the name and identifier hits only. */
+    private static final String NAME_OR_IDENTIFIER_HITS =
+            "SELECT h.patient_id AS patient_id, MIN(h.sort_key) AS sort_key FROM (%s) h " +
+            "JOIN patient p ON p.patient_id = h.patient_id AND p.voided = 0 GROUP BY h.patient_id";
+
+    /** Name records whose given, middle or family name starts with the first token, one index each. */
+    private static final String FIRST_TOKEN_NAMES =
+            "SELECT pn.person_name_id FROM person_name pn WHERE pn.given_name LIKE :t0 AND pn.voided = 0 " +
+            "UNION SELECT pn.person_name_id FROM person_name pn WHERE pn.middle_name LIKE :t0 AND pn.voided = 0 " +
+            "UNION SELECT pn.person_name_id FROM person_name pn WHERE pn.family_name LIKE :t0 AND pn.voided = 0";
+
+    private static final String NAME_HITS =
+            "SELECT pn.person_id AS patient_id, " +
+            "CONCAT(COALESCE(pn.family_name, ''), ' ', COALESCE(pn.given_name, '')) AS sort_key " +
+            "FROM (" + FIRST_TOKEN_NAMES + ") m JOIN person_name pn ON pn.person_name_id = m.person_name_id%s";
+
+    private static final String IDENTIFIER_PREFIX_HITS =
+            "SELECT pi.patient_id AS patient_id, pi.identifier AS sort_key FROM patient_identifier pi " +
+            "WHERE pi.identifier LIKE :identifier AND pi.voided = 0";
+
+    private static final String SUMMARY_TYPES =
+            "SELECT 'I', pit.patient_identifier_type_id, pit.name FROM patient_identifier_type pit " +
+            "WHERE pit.retired = 0 AND pit.name IN ('Ghana Card', 'Folder Number', 'NHIS Number') " +
+            "UNION ALL " +
+            "SELECT 'A', pat.person_attribute_type_id, pat.name FROM person_attribute_type pat " +
+            "WHERE pat.retired = 0 AND pat.name = 'NHIS Number'";
+
+    private static final String SUMMARY_NAMES =
+            "SELECT per.person_id, per.uuid, n.given_name, n.family_name FROM person per " +
+            "JOIN patient p ON p.patient_id = per.person_id AND p.voided = 0 " +
+            "LEFT JOIN person_name n ON n.person_id = per.person_id AND n.voided = 0 " +
+            "WHERE per.person_id IN (:ids) " +
+            "ORDER BY per.person_id, n.preferred DESC, n.person_name_id";
+
+    private static final String SUMMARY_IDENTIFIERS =
+            "SELECT pi.patient_id, pi.identifier_type, pi.identifier, pi.preferred FROM patient_identifier pi " +
+            "WHERE pi.patient_id IN (:ids) AND pi.voided = 0 AND pi.identifier_type IN (:types)";
+
+    private static final String SUMMARY_NHIS_ATTRIBUTES =
+            "SELECT pa.person_id, -1, pa.value, 1 FROM person_attribute pa " +
+            "WHERE pa.person_id IN (:ids) AND pa.voided = 0 AND pa.person_attribute_type_id = :nhisAttribute";
+
+    private static final String LISTING_NAMES =
+            "SELECT per.person_id, per.uuid, n.person_name_id, n.prefix, n.given_name, n.middle_name, " +
+            "n.family_name_prefix, n.family_name, n.family_name2, n.family_name_suffix, n.degree FROM person per " +
+            "LEFT JOIN person_name n ON n.person_id = per.person_id AND n.voided = 0 " +
+            "WHERE per.person_id IN (:ids) " +
+            "ORDER BY per.person_id, n.preferred DESC, n.person_name_id";
+
+    /** Same order as the Patient.identifiers mapping. */
+    private static final String LISTING_IDENTIFIERS =
+            "SELECT pi.patient_id, pi.identifier, pit.name FROM patient_identifier pi " +
+            "JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "WHERE pi.patient_id IN (:ids) " +
+            "ORDER BY pi.patient_id, pi.voided, pi.preferred DESC, pi.date_created DESC";
+
+    private static final String SCAN_IDENTIFIERS =
+            "SELECT pit.name, pi.identifier, pi.patient_id FROM patient_identifier pi " +
+            "JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "JOIN patient p ON p.patient_id = pi.patient_id AND p.voided = 0 " +
+            "WHERE pi.voided = 0 AND pit.name IN ('Ghana Card', 'NHIS Number', 'Folder Number')";
+
+    private static final String SCAN_GHANA_CARDS =
+            "SELECT pi.patient_identifier_id, pi.identifier, pi.patient_id FROM patient_identifier pi " +
+            "JOIN patient_identifier_type pit ON pit.patient_identifier_type_id = pi.identifier_type " +
+            "WHERE pit.name = 'Ghana Card' AND pi.voided = 0 " +
+            "AND (pi.patient_identifier_id > ? OR pi.date_changed >= ?)";
+
+    private static final String SCAN_NHIS_ATTRIBUTES =
+            "SELECT pa.value, pa.person_id FROM person_attribute pa " +
+            "JOIN person_attribute_type pat ON pat.person_attribute_type_id = pa.person_attribute_type_id " +
+            "JOIN patient p ON p.patient_id = pa.person_id AND p.voided = 0 " +
+            "WHERE pa.voided = 0 AND pat.name = 'NHIS Number'";
+
+    private static final String SCAN_NAMES =
+            "SELECT pn.person_id, pn.given_name, pn.middle_name, pn.family_name FROM person_name pn " +
+            "JOIN patient p ON p.patient_id = pn.person_id AND p.voided = 0 " +
+            "WHERE pn.voided = 0 ORDER BY pn.person_id";
+
+    private static final String PAGE = " ORDER BY sort_key, patient_id LIMIT :limit OFFSET :offset";
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> findByIdentifier(String identifierTypeName, String identifier, int offset, int limit) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("value", identifier);
+        params.put("typeName", identifierTypeName);
+        return page(IDENTIFIER_HITS, params, offset, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByIdentifier(String identifierTypeName, String identifier) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("value", identifier);
+        params.put("typeName", identifierTypeName);
+        return count(IDENTIFIER_HITS, params);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> findByNhisNumber(String nhisNumber, int offset, int limit) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("value", nhisNumber);
+        return page(NHIS_HITS, params, offset, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByNhisNumber(String nhisNumber) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("value", nhisNumber);
+        return count(NHIS_HITS, params);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> findByNameOrIdentifier(List<String> tokens, String identifierPrefix, int offset,
+                                                       int limit) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        return page(nameOrIdentifierHits(tokens, identifierPrefix, params), params, offset, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByNameOrIdentifier(List<String> tokens, String identifierPrefix) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        return count(nameOrIdentifierHits(tokens, identifierPrefix, params), params);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PatientSummaryBuilder.TypeIds findSummaryTypeIds() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = sessionFactory.getCurrentSession().createSQLQuery(SUMMARY_TYPES).list();
+        Integer ghanaCard = null;
+        Integer folderNumber = null;
+        Integer nhisIdentifier = null;
+        Integer nhisAttribute = null;
+        for (Object[] r : rows) {
+            Integer id = ((Number) r[1]).intValue();
+            String name = (String) r[2];
+            if ("A".equals(String.valueOf(r[0]))) {
+                nhisAttribute = id;
+            } else if ("Ghana Card".equals(name)) {
+                ghanaCard = id;
+            } else if ("Folder Number".equals(name)) {
+                folderNumber = id;
+            } else {
+                nhisIdentifier = id;
+            }
+        }
+        return new PatientSummaryBuilder.TypeIds(ghanaCard, folderNumber, nhisIdentifier, nhisAttribute);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> findSummaryNames(List<Integer> patientIds) {
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(SUMMARY_NAMES);
+        query.setParameterList("ids", patientIds);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        List<PatientSummary> out = new ArrayList<PatientSummary>();
+        Integer last = null;
+        for (Object[] r : rows) {
+            Integer patientId = ((Number) r[0]).intValue();
+            if (patientId.equals(last)) {
+                continue;
+            }
+            last = patientId;
+            PatientSummary s = new PatientSummary();
+            s.setPatientId(patientId);
+            s.setUuid((String) r[1]);
+            s.setGivenName((String) r[2]);
+            s.setFamilyName((String) r[3]);
+            out.add(s);
+        }
+        return out;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> findSummaryIdentifiers(List<Integer> patientIds, PatientSummaryBuilder.TypeIds types) {
+        List<Integer> typeIds = types.identifierTypeIds();
+        List<String> parts = new ArrayList<String>(2);
+        if (!typeIds.isEmpty()) {
+            parts.add(SUMMARY_IDENTIFIERS);
+        }
+        if (types.getNhisAttribute() != null) {
+            parts.add(SUMMARY_NHIS_ATTRIBUTES);
+        }
+        if (parts.isEmpty()) {
+            return new ArrayList<Object[]>();
+        }
+        String sql = "SELECT r.* FROM (" + String.join(" UNION ALL ", parts) + ") r ORDER BY 1, 4 DESC";
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+        query.setParameterList("ids", patientIds);
+        if (!typeIds.isEmpty()) {
+            query.setParameterList("types", typeIds);
+        }
+        if (types.getNhisAttribute() != null) {
+            query.setParameter("nhisAttribute", types.getNhisAttribute());
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        return rows;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> findListingNames(List<Integer> patientIds) {
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(LISTING_NAMES);
+        query.setParameterList("ids", patientIds);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        return rows;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> findListingIdentifiers(List<Integer> patientIds) {
+        SQLQuery query = sessionFactory.getCurrentSession().createSQLQuery(LISTING_IDENTIFIERS);
+        query.setParameterList("ids", patientIds);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        return rows;
+    }
+
+    /**
+     * Forward-only, read-only statements with fetch size Integer.MIN_VALUE make MySQL Connector/J
+     * stream rows instead of buffering the whole result set.
+     */
+    @Override
+    public void scanIdentifiers(final PatientIdentifierIndex.Sink sink) {
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    try (PreparedStatement ps = streaming(connection, SCAN_IDENTIFIERS);
+                         ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String type = rs.getString(1);
+                            if ("Ghana Card".equals(type)) {
+                                sink.ghanaCard(rs.getString(2), rs.getInt(3));
+                            } else if ("Folder Number".equals(type)) {
+                                sink.folderNumber(rs.getString(2), rs.getInt(3));
+                            } else {
+                                sink.nhisNumber(rs.getString(2), rs.getInt(3));
+                            }
+                        }
+                    }
+                    try (PreparedStatement ps = streaming(connection, SCAN_NHIS_ATTRIBUTES);
+                         ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            sink.nhisNumber(rs.getString(1), rs.getInt(2));
+                        }
+                    }
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public long scanGhanaCards(final long afterIdentifierId, final Date changedSince,
+                               final PatientIdentifierIndex.Sink sink) {
+        final long[] max = { afterIdentifierId };
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    try (PreparedStatement ps = streaming(connection, SCAN_GHANA_CARDS)) {
+                        ps.setLong(1, afterIdentifierId);
+                        ps.setTimestamp(2, changedSince != null ? new Timestamp(changedSince.getTime()) : null);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                max[0] = Math.max(max[0], rs.getLong(1));
+                                sink.ghanaCard(rs.getString(2), rs.getInt(3));
+                            }
+                        }
+                    }
+                }
+            });
+        } finally {
+            session.close();
+        }
+        return max[0];
+    }
+
+    @Override
+    public void scanNames(final PatientNameIndex.Sink sink) {
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    try (PreparedStatement ps = streaming(connection, SCAN_NAMES);
+                         ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            sink.name(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4));
+                        }
+                    }
+                }
+            });
+        } finally {
+            session.close();
+        }
+    }
+
+    private static PreparedStatement streaming(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(Integer.MIN_VALUE);
+        return ps;
+    }
+
+    /**
+     * The first token finds its name records through one prefix LIKE per indexed name column; the
+     * other tokens only filter those records. Tokens only contain letters, apostrophes, dots and
+     * hyphens so no wildcard escaping is needed; the identifier prefix is escaped.
+     */
+    private static String nameOrIdentifierHits(List<String> tokens, String identifierPrefix, Map<String, Object> params) {
+        List<String> branches = new ArrayList<String>(2);
+        if (!tokens.isEmpty()) {
+            StringBuilder where = new StringBuilder();
+            for (int i = 0; i < tokens.size(); i++) {
+                String p = "t" + i;
+                if (i > 0) {
+                    where.append(i == 1 ? " WHERE " : " AND ")
+                            .append("(pn.given_name LIKE :").append(p)
+                            .append(" OR pn.middle_name LIKE :").append(p)
+                            .append(" OR pn.family_name LIKE :").append(p).append(")");
+                }
+                params.put(p, tokens.get(i) + "%");
+            }
+            branches.add(String.format(NAME_HITS, where));
+        }
+        if (identifierPrefix != null && !identifierPrefix.isEmpty()) {
+            branches.add(IDENTIFIER_PREFIX_HITS);
+            params.put("identifier", identifierPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        if (branches.isEmpty()) {
+            throw new IllegalArgumentException("name tokens or an identifier prefix are required");
+        }
+        return String.format(NAME_OR_IDENTIFIER_HITS, String.join(" UNION ALL ", branches));
+    }
+
+    private List<PatientSummary> page(String hits, Map<String, Object> params, int offset, int limit) {
+        SQLQuery query = sessionFactory.getCurrentSession()
+                .createSQLQuery(String.format(SUMMARY_SQL, hits + PAGE));
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            query.setParameter(e.getKey(), e.getValue());
+        }
+        query.setParameter("limit", limit);
+        query.setParameter("offset", offset);
+        return toSummaries(query);
+    }
+
+    private static List<PatientSummary> toSummaries(SQLQuery query) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        List<PatientSummary> out = new ArrayList<PatientSummary>(rows.size());
+        for (Object[] r : rows) {
+            PatientSummary s = new PatientSummary();
+            s.setPatientId(r[0] != null ? ((Number) r[0]).intValue() : null);
+            s.setUuid((String) r[1]);
+            s.setGivenName((String) r[2]);
+            s.setFamilyName((String) r[3]);
+            s.setGhanaCard((String) r[4]);
+            s.setNhisNumber((String) r[5]);
+            s.setFolderNumber((String) r[6]);
+            out.add(s);
+        }
+        return out;
+    }
+
+    private long count(String hits, Map<String, Object> params) {
+        SQLQuery query = sessionFactory.getCurrentSession()
+                .createSQLQuery("SELECT COUNT(*) FROM (" + hits + ") c");
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            query.setParameter(e.getKey(), e.getValue());
+        }
+        Object result = query.uniqueResult();
+        return result == null ? 0L : ((Number) result).longValue();
+    }
+}
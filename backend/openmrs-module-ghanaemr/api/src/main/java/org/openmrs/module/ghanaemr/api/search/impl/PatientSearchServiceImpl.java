@@ -0,0 +1,157 @@
+package org.openmrs.module.ghanaemr.api.search.impl;
+
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientNameIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientQueryClassifier;
+import org.openmrs.module.ghanaemr.api.search.PatientQueryClassifier.Classification;
+import org.openmrs.module.ghanaemr.api.search.PatientQueryClassifier.QueryType;
+import org.openmrs.module.ghanaemr.api.search.PatientSearchResult;
+import org.openmrs.module.ghanaemr.api.search.PatientSearchService;
+import org.openmrs.module.ghanaemr.api.search.PatientSummary;
+import org.openmrs.module.ghanaemr.api.search.PatientSummaryBuilder;
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Transactional(readOnly = true)
+public class PatientSearchServiceImpl implements PatientSearchService {
+
+    static final int MAX_PAGE_SIZE = 100;
+    static final int MAX_NAME_TOKENS = 4;
+    /** Shorter unclassified queries would prefix-match too many identifiers to be useful. */
+    static final int MIN_IDENTIFIER_PREFIX = 2;
+
+    private PatientSearchDAO dao;
+
+    private PatientIdentifierIndex identifierIndex;
+
+    private PatientNameIndex nameIndex;
+
+    private PatientSummaryBuilder summaryBuilder;
+
+    public void setDao(PatientSearchDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setIdentifierIndex(PatientIdentifierIndex identifierIndex) {
+        this.identifierIndex = identifierIndex;
+    }
+
+    public void setNameIndex(PatientNameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    public void setSummaryBuilder(PatientSummaryBuilder summaryBuilder) {
+        this.summaryBuilder = summaryBuilder;
+    }
+
+    @Override
+    public PatientSearchResult search(String query, int page, int pageSize) {
+        Classification c = PatientQueryClassifier.classify(query);
+        int size = Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+        int p = Math.max(1, page);
+        int offset = (p - 1) * size;
+
+        if (c.getType() == QueryType.NAME && nameIndex != null && nameIndex.isReady()) {
+            return searchNameIndex(c, p, size, offset);
+        }
+        if (identifierIndex != null && identifierIndex.isReady() && isKnownMiss(c)) {
+            return new PatientSearchResult(c.getType(), Collections.<PatientSummary>emptyList(), 0, p, size);
+        }
+
+        List<PatientSummary> items;
+        switch (c.getType()) {
+            case GHANA_CARD:
+                items = dao.findByIdentifier("Ghana Card", c.getValue(), offset, size);
+                break;
+            case NHIS:
+                items = dao.findByNhisNumber(c.getValue(), offset, size);
+                break;
+            case FOLDER_NUMBER:
+                items = dao.findByIdentifier("Folder Number", c.getValue(), offset, size);
+                break;
+            case NAME:
+                items = dao.findByNameOrIdentifier(nameTokens(c), c.getValue(), offset, size);
+                break;
+            default:
+                items = isIdentifierPrefix(c)
+                        ? dao.findByNameOrIdentifier(Collections.<String>emptyList(), c.getValue(), offset, size)
+                        : Collections.<PatientSummary>emptyList();
+        }
+        return new PatientSearchResult(c.getType(), items, total(c, items.size(), offset, size), p, size);
+    }
+
+    /**
+     * A definite miss for an exact identifier lookup: the index holds every active Ghana Card, NHIS
+     * number and folder number, and {@link org.openmrs.module.ghanaemr.api.search.PatientIndexAdvice}
+     * adds the ones saved through PatientService or PersonService. It is only built on a single-node
+     * deployment (see GhanaEMRActivator). A hit may be stale (voided or edited away), so it still runs
+     * the SQL lookup.
+     */
+    private boolean isKnownMiss(Classification c) {
+        switch (c.getType()) {
+            case GHANA_CARD:
+                return identifierIndex.findByGhanaCard(c.getValue()) == null;
+            case NHIS:
+                return identifierIndex.findByNhisNumber(c.getValue()) == null;
+            case FOLDER_NUMBER:
+                return identifierIndex.findByFolderNumber(c.getValue()) == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Ranked, spelling-tolerant name search: the index returns ranked patient ids (capped) and the
+     * page is rendered in rank order by {@link PatientSummaryBuilder}.
+     */
+    private PatientSearchResult searchNameIndex(Classification c, int page, int size, int offset) {
+        List<PatientNameIndex.Match> matches = nameIndex.search(c.getValue());
+        if (offset >= matches.size()) {
+            return new PatientSearchResult(c.getType(), Collections.<PatientSummary>emptyList(), matches.size(), page, size);
+        }
+        List<Integer> ids = new ArrayList<Integer>(size);
+        for (PatientNameIndex.Match m : matches.subList(offset, Math.min(matches.size(), offset + size))) {
+            ids.add(m.getPatientId());
+        }
+        return new PatientSearchResult(c.getType(), summaryBuilder.build(ids), matches.size(), page, size);
+    }
+
+    /**
+     * A short page already tells us the total, so the COUNT query only runs when the page is full
+     * (or a page past the end was requested).
+     */
+    private long total(Classification c, int returned, int offset, int size) {
+        if (returned > 0 && returned < size || returned == 0 && offset == 0) {
+            return offset + returned;
+        }
+        switch (c.getType()) {
+            case GHANA_CARD:
+                return dao.countByIdentifier("Ghana Card", c.getValue());
+            case NHIS:
+                return dao.countByNhisNumber(c.getValue());
+            case FOLDER_NUMBER:
+                return dao.countByIdentifier("Folder Number", c.getValue());
+            case NAME:
+                return dao.countByNameOrIdentifier(nameTokens(c), c.getValue());
+            default:
+                return isIdentifierPrefix(c) ? dao.countByNameOrIdentifier(Collections.<String>emptyList(), c.getValue()) : 0;
+        }
+    }
+
+    /**
+     * Queries that are neither a known identifier format nor a name, e.g. part of a folder number,
+     * are still matched against the start of any identifier.
+     */
+    private static boolean isIdentifierPrefix(Classification c) {
+        return c.getType() == QueryType.EMPTY && c.getValue().length() >= MIN_IDENTIFIER_PREFIX;
+    }
+
+    private static List<String> nameTokens(Classification c) {
+        List<String> tokens = c.getNameTokens();
+        return tokens.size() > MAX_NAME_TOKENS ? tokens.subList(0, MAX_NAME_TOKENS) : tokens;
+    }
+}
@@ -0,0 +1,104 @@
+package org.openmrs.module.ghanaemr.service.impl;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
+
+/**
+ * Builds unsaved Patients from a validated {@link GhanaPatientDTO}. Identifier and attribute types
+ * are looked up once per factory, so a bulk import resolves them once per batch rather than once
+ * per patient. The NHIS attribute type is only looked up once a patient actually has an NHIS number.
+ */
+public class GhanaPatientFactory {
+
+    static final String IDTYPE_GHANA_CARD = "Ghana Card";
+    static final String IDTYPE_FOLDER_NUMBER = "Folder Number";
+    static final String ATTRTYPE_NHIS_NUMBER = "NHIS Number";
+
+    private final PatientIdentifierType ghanaCardType;
+    private final PatientIdentifierType folderNumberType;
+    private PersonAttributeType nhisAttributeType;
+    private boolean nhisAttributeTypeResolved;
+
+    public GhanaPatientFactory(PatientIdentifierType ghanaCardType, PatientIdentifierType folderNumberType,
+                               PersonAttributeType nhisAttributeType) {
+        this(ghanaCardType, folderNumberType);
+        this.nhisAttributeType = nhisAttributeType;
+        this.nhisAttributeTypeResolved = true;
+    }
+
+    private GhanaPatientFactory(PatientIdentifierType ghanaCardType, PatientIdentifierType folderNumberType) {
+        this.ghanaCardType = ghanaCardType;
+        this.folderNumberType = folderNumberType;
+    }
+
+    public static GhanaPatientFactory fromContext() {
+        return new GhanaPatientFactory(getIdentifierType(IDTYPE_GHANA_CARD), getIdentifierType(IDTYPE_FOLDER_NUMBER));
+    }
+
+    /**
+     * @param normalizedGhanaCard Ghana Card already normalized and validated
+     * @param folderNumber folder number allocated for this patient
+     */
+    public Patient create(GhanaPatientDTO dto, String normalizedGhanaCard, String folderNumber) {
+        Patient patient = new Patient();
+        PersonName name = new PersonName(dto.getGivenName(), dto.getMiddleName(), dto.getFamilyName());
+        patient.addName(name);
+        if (dto.getGender() != null) {
+            patient.setGender(dto.getGender());
+        }
+        if (dto.getDateOfBirth() != null) {
+            patient.setBirthdate(dto.getDateOfBirth());
+        }
+
+        // Ghana Card identifier (preferred)
+        PatientIdentifier ghanaCardId = new PatientIdentifier();
+        ghanaCardId.setIdentifierType(ghanaCardType);
+        ghanaCardId.setIdentifier(normalizedGhanaCard);
+        ghanaCardId.setPreferred(true);
+        patient.addIdentifier(ghanaCardId);
+
+        // Folder number
+        PatientIdentifier folderId = new PatientIdentifier();
+        folderId.setIdentifierType(folderNumberType);
+        folderId.setIdentifier(folderNumber);
+        patient.addIdentifier(folderId);
+
+        // NHIS number (optional) - store as Person Attribute for FHIR mapping
+        if (dto.getNhisNumber() != null && !dto.getNhisNumber().trim().isEmpty()) {
+            if (!nhisAttributeTypeResolved) {
+                nhisAttributeType = getPersonAttributeType(ATTRTYPE_NHIS_NUMBER);
+                nhisAttributeTypeResolved = true;
+            }
+            if (nhisAttributeType != null) {
+                patient.addAttribute(new PersonAttribute(nhisAttributeType, dto.getNhisNumber().trim()));
+            }
+        }
+        return patient;
+    }
+
+    private static PatientIdentifierType getIdentifierType(String name) {
+        PatientIdentifierType type = Context.getPatientService().getPatientIdentifierTypeByName(name);
+        if (type == null) {
+            // Create a transient type placeholder to avoid NPEs in tests; in runtime this should exist via metadata
+            type = new PatientIdentifierType();
+            type.setName(name);
+        }
+        return type;
+    }
+
+    private static PersonAttributeType getPersonAttributeType(String name) {
+        PersonAttributeType type = Context.getPersonService().getPersonAttributeTypeByName(name);
+        if (type == null) {
+            // Transient placeholder (runtime should provide real metadata)
+            type = new PersonAttributeType();
+            type.setName(name);
+        }
+        return type;
+    }
+}
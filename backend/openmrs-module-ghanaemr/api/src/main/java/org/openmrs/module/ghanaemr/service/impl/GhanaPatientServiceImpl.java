@@ -1,14 +1,10 @@
 package org.openmrs.module.ghanaemr.service.impl;
 
 import org.openmrs.Patient;
-import org.openmrs.PatientIdentifier;
-import org.openmrs.PatientIdentifierType;
-import org.openmrs.PersonAttribute;
-import org.openmrs.PersonAttributeType;
-import org.openmrs.PersonName;
 import org.openmrs.api.PatientService;
-import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.search.GhanaCardBloomFilter;
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
 import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
 import org.openmrs.module.ghanaemr.exception.DuplicatePatientException;
 import org.openmrs.module.ghanaemr.exception.ValidationException;
@@ -22,9 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 
 @Transactional
@@ -32,16 +28,24 @@ public class GhanaPatientServiceImpl implements GhanaPatientService {
 
     private static final Logger log = LoggerFactory.getLogger(GhanaPatientServiceImpl.class);
 
-    private static final String IDTYPE_GHANA_CARD = "Ghana Card";
-    private static final String IDTYPE_NHIS_NUMBER = "NHIS Number"; // retained for backward compatibility only
-    private static final String IDTYPE_FOLDER_NUMBER = "Folder Number";
-
     private final FolderNumberGenerator folderNumberGenerator;
 
+    private PatientIdentifierIndex identifierIndex;
+
+    private GhanaCardBloomFilter ghanaCardFilter;
+
     public GhanaPatientServiceImpl(SequenceProvider sequenceProvider) {
         this.folderNumberGenerator = new FolderNumberGenerator(sequenceProvider);
     }
 
+    public void setIdentifierIndex(PatientIdentifierIndex identifierIndex) {
+        this.identifierIndex = identifierIndex;
+    }
+
+    public void setGhanaCardFilter(GhanaCardBloomFilter ghanaCardFilter) {
+        this.ghanaCardFilter = ghanaCardFilter;
+    }
+
     @Override
     public Patient registerPatient(GhanaPatientDTO dto) {
         if (dto == null) {
@@ -49,60 +53,40 @@ public class GhanaPatientServiceImpl implements GhanaPatientService {
         }
 
         // Validate and normalize Ghana Card
-        String normalizedGhanaCard = GhanaCardValidator.normalize(dto.getGhanaCard());
-        if (!GhanaCardValidator.isValid(normalizedGhanaCard)) {
+        long ghanaCardKey = GhanaCardValidator.parse(dto.getGhanaCard());
+        if (ghanaCardKey == GhanaCardValidator.INVALID) {
             throw new ValidationException("Invalid Ghana Card format or checksum");
         }
+        String normalizedGhanaCard = GhanaCardValidator.format(ghanaCardKey);
 
         // NHIS number is optional but if provided must be 10 digits
         if (!NHISValidator.isValid(dto.getNhisNumber())) {
             throw new ValidationException("NHIS number must be 10 digits");
         }
 
-        // Duplicate check by Ghana Card identifier
+        // Duplicate check by Ghana Card identifier; a definite miss in the filter skips the query
         PatientService patientService = Context.getPatientService();
-        List<Patient> existing = getByIdentifier(patientService, normalizedGhanaCard);
-        if (existing != null && !existing.isEmpty()) {
-            throw new DuplicatePatientException("Patient already exists with Ghana Card");
-        }
-
-        // Build Patient
-        Patient patient = new Patient();
-        PersonName name = new PersonName(dto.getGivenName(), dto.getMiddleName(), dto.getFamilyName());
-        patient.addName(name);
-        if (dto.getGender() != null) {
-            patient.setGender(dto.getGender());
-        }
-        Date dob = dto.getDateOfBirth();
-        if (dob != null) {
-            patient.setBirthdate(dob);
+        boolean filtered = usesFilter();
+        if (!filtered || ghanaCardFilter.mightContain(normalizedGhanaCard)) {
+            List<Patient> existing = getByIdentifier(patientService, normalizedGhanaCard);
+            if (existing != null && !existing.isEmpty()) {
+                throw new DuplicatePatientException("Patient already exists with Ghana Card");
+            }
+            if (filtered) {
+                ghanaCardFilter.recordFalsePositive();
+            }
         }
 
-        // Ghana Card identifier (preferred)
-        PatientIdentifier ghanaCardId = new PatientIdentifier();
-        ghanaCardId.setIdentifierType(getIdentifierType(IDTYPE_GHANA_CARD));
-        ghanaCardId.setIdentifier(normalizedGhanaCard);
-        ghanaCardId.setPreferred(true);
-        patient.addIdentifier(ghanaCardId);
-
-        // Folder number
         String folderNumber = folderNumberGenerator.generate(dto.getFacilityCode(), dto.getRegionCode());
-        PatientIdentifier folderId = new PatientIdentifier();
-        folderId.setIdentifierType(getIdentifierType(IDTYPE_FOLDER_NUMBER));
-        folderId.setIdentifier(folderNumber);
-        patient.addIdentifier(folderId);
-
-        // NHIS number (optional) - store as Person Attribute for FHIR mapping
-        if (dto.getNhisNumber() != null && !dto.getNhisNumber().trim().isEmpty()) {
-            PersonAttributeType nhisAttrType = getPersonAttributeType("NHIS Number");
-            if (nhisAttrType != null) {
-                PersonAttribute nhisAttr = new PersonAttribute(nhisAttrType, dto.getNhisNumber().trim());
-                patient.addAttribute(nhisAttr);
-            }
-        }
+        Patient patient = GhanaPatientFactory.fromContext().create(dto, normalizedGhanaCard, folderNumber);
 
         // Save patient to local database first
         Patient savedPatient = patientService.savePatient(patient);
+        if (ghanaCardFilter != null) {
+            // a card added for a registration that later rolls back only costs a false positive
+            ghanaCardFilter.put(normalizedGhanaCard);
+        }
+        indexAfterCommit(savedPatient.getPatientId(), normalizedGhanaCard, dto.getNhisNumber(), folderNumber);
 
         // Trigger NHIE sync asynchronously (non-blocking, fire-and-forget)
         try {
@@ -126,31 +110,39 @@ public class GhanaPatientServiceImpl implements GhanaPatientService {
         return savedPatient;
     }
 
-    private List<Patient> getByIdentifier(PatientService patientService, String identifier) {
-        // OpenMRS 2.6 API: use getPatients method with identifier parameter
-        return patientService.getPatients(null, identifier, null, true);
+    /**
+     * The Ghana Card filter's negatives are trusted: it is only loaded on a single-node deployment,
+     * and PatientIndexAdvice adds every Ghana Card saved through PatientService, not just the ones
+     * registered here.
+     */
+    private boolean usesFilter() {
+        return ghanaCardFilter != null && ghanaCardFilter.isReady();
     }
 
-    private PatientIdentifierType getIdentifierType(String name) {
-        PatientService patientService = Context.getPatientService();
-        PatientIdentifierType type = patientService.getPatientIdentifierTypeByName(name);
-        if (type == null) {
-            // Create a transient type placeholder to avoid NPEs in tests; in runtime this should exist via metadata
-            type = new PatientIdentifierType();
-            type.setName(name);
+    /**
+     * Registration event for the identifier index, deferred to commit so a rolled-back registration
+     * never shows up as a duplicate.
+     */
+    private void indexAfterCommit(final Integer patientId, final String ghanaCard, final String nhisNumber,
+                                  final String folderNumber) {
+        if (identifierIndex == null || patientId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    identifierIndex.put(patientId, ghanaCard, nhisNumber, folderNumber);
+                }
+            });
+        } else {
+            identifierIndex.put(patientId, ghanaCard, nhisNumber, folderNumber);
         }
-        return type;
     }
 
-    private PersonAttributeType getPersonAttributeType(String name) {
-        PersonService personService = Context.getPersonService();
-        PersonAttributeType type = personService.getPersonAttributeTypeByName(name);
-        if (type == null) {
-            // Transient placeholder (runtime should provide real metadata)
-            type = new PersonAttributeType();
-            type.setName(name);
-        }
-        return type;
+    private List<Patient> getByIdentifier(PatientService patientService, String identifier) {
+        // OpenMRS 2.6 API: use getPatients method with identifier parameter
+        return patientService.getPatients(null, identifier, null, true);
     }
 
     /**
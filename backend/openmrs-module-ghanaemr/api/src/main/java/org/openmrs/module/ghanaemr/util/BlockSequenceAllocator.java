@@ -0,0 +1,68 @@
+package org.openmrs.module.ghanaemr.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hi/lo sequence allocation: each node reserves a block of sequences per prefix from a
+ * {@link SequenceBlockSource} and hands them out from memory until the block is used up.
+ *
+ * Values are unique across nodes but not gapless: a block that is not used up before a restart
+ * is abandoned, and numbers from different nodes interleave.
+ */
+public class BlockSequenceAllocator implements SequenceProvider {
+
+    private final SequenceBlockSource source;
+    private final int blockSize;
+    private final ConcurrentHashMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
+
+    public BlockSequenceAllocator(SequenceBlockSource source, int blockSize) {
+        if (source == null) {
+            throw new IllegalArgumentException("source is required");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be at least 1");
+        }
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public int nextSequenceForPrefix(String prefix) {
+        Block block = blocks.get(prefix);
+        if (block == null) {
+            Block created = new Block();
+            block = blocks.putIfAbsent(prefix, created);
+            if (block == null) {
+                block = created;
+            }
+        }
+        synchronized (block) {
+            if (block.next > block.max) {
+                long hi = source.reserveBlock(prefix, blockSize);
+                block.next = hi - blockSize + 1;
+                block.max = hi;
+            }
+            long value = block.next++;
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Sequence exhausted for prefix " + prefix);
+            }
+            return (int) value;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Drops any unused block for the prefix; the next call reserves a fresh one.
+     */
+    public void discard(String prefix) {
+        blocks.remove(prefix);
+    }
+
+    private static final class Block {
+        long next = 1;
+        long max = 0;
+    }
+}
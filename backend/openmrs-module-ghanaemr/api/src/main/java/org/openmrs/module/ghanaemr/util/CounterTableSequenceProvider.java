@@ -0,0 +1,142 @@
+package org.openmrs.module.ghanaemr.util;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * SequenceProvider backed by the gh_folder_number_sequence counter table (shared with the
+ * ghana-foldernumber module) with hi/lo block allocation per node. Counters are seeded from
+ * existing Folder Number identifiers by Liquibase, so allocation never scans patient_identifier.
+ *
+ * A block is reserved with a single atomic statement in its own short transaction, so the row
+ * lock is released immediately instead of being held for the whole registration, and a rolled
+ * back registration only leaves a gap.
+ */
+public class CounterTableSequenceProvider implements SequenceProvider, SequenceBlockSource {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterTableSequenceProvider.class);
+
+    static final String RESERVE_SQL =
+            "INSERT INTO gh_folder_number_sequence (prefix, last_seq) VALUES (?, LAST_INSERT_ID(?)) " +
+            "ON DUPLICATE KEY UPDATE last_seq = LAST_INSERT_ID(last_seq + ?)";
+
+    /**
+     * Creates next-year rows for every region/facility that issued numbers the year before, so the
+     * first registrations after New Year hit the update path instead of racing to insert.
+     */
+    static final String PRECOMPUTE_YEAR_SQL =
+            "INSERT IGNORE INTO gh_folder_number_sequence (prefix, last_seq) " +
+            "SELECT CONCAT(SUBSTRING(prefix, 1, CHAR_LENGTH(prefix) - 4), ?), 0 " +
+            "FROM gh_folder_number_sequence WHERE prefix LIKE ?";
+
+    private SessionFactory sessionFactory;
+
+    private int blockSize = 10;
+
+    private volatile BlockSequenceAllocator allocator;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Sequences reserved per node and prefix in one round trip. 1 gives strictly increasing
+     * numbers across nodes at the cost of one statement per registration.
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public int nextSequenceForPrefix(String prefix) {
+        return getAllocator().nextSequenceForPrefix(prefix);
+    }
+
+    private BlockSequenceAllocator getAllocator() {
+        BlockSequenceAllocator a = allocator;
+        if (a == null) {
+            synchronized (this) {
+                if (allocator == null) {
+                    allocator = new BlockSequenceAllocator(this::reserveBlock, blockSize);
+                }
+                a = allocator;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Seeds zero counters for the given year from the previous year's prefixes. Idempotent.
+     *
+     * @return number of rows created
+     */
+    public int precomputeYear(final int year) {
+        Session session = sessionFactory.openSession();
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            int created = session.doReturningWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(PRECOMPUTE_YEAR_SQL)) {
+                    ps.setString(1, String.valueOf(year));
+                    ps.setString(2, "%-" + (year - 1));
+                    return ps.executeUpdate();
+                }
+            });
+            tx.commit();
+            if (created > 0) {
+                log.info("Precomputed {} folder number counters for {}", created, year);
+            }
+            return created;
+        } catch (RuntimeException e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Also used directly to reserve a whole batch of numbers at once, e.g. for a bulk import.
+     */
+    @Override
+    public long reserveBlock(String prefix, int size) {
+        Session session = sessionFactory.openSession();
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            long hi = session.doReturningWork(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(RESERVE_SQL)) {
+                    ps.setString(1, prefix);
+                    ps.setLong(2, size);
+                    ps.setLong(3, size);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = connection.prepareStatement("SELECT LAST_INSERT_ID()");
+                     ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+            tx.commit();
+            if (hi < size) {
+                throw new IllegalStateException("Could not reserve sequence block for prefix " + prefix);
+            }
+            log.debug("Reserved sequence block ({}, {}] for {}", hi - size, hi, prefix);
+            return hi;
+        } catch (RuntimeException e) {
+            if (tx != null && tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -1,19 +1,117 @@
 package org.openmrs.module.ghanaemr.util;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Builds folder numbers {REGION}-{FACILITY}-{YEAR}-{SEQUENCE}, e.g. GA-KBTH-2025-000123, using the
+ * same normalisation and defaults as the ghana-foldernumber module so both draw from the same
+ * gh_folder_number_sequence rows.
+ *
+ * Prefixes are computed once per region/facility and year; the next year boundary is
+ * precomputed so the hot path is a map lookup plus one clock read. The year, its boundary and its
+ * prefix cache are published together, so a thread racing a roll-over caches into the year it
+ * read rather than the new one.
+ */
 public class FolderNumberGenerator {
+
+    static final String DEFAULT_REGION = "GA";
+    static final String DEFAULT_FACILITY = "KBTH";
+
     private final SequenceProvider sequenceProvider;
+    private final Clock clock;
+    private volatile Year current;
 
     public FolderNumberGenerator(SequenceProvider sequenceProvider) {
+        this(sequenceProvider, Clock.systemDefaultZone());
+    }
+
+    public FolderNumberGenerator(SequenceProvider sequenceProvider, Clock clock) {
         this.sequenceProvider = sequenceProvider;
+        this.clock = clock;
+        rollOver();
     }
 
     public String generate(String facilityCode, String regionCode) {
-        int year = LocalDate.now().getYear();
-        String prefix = regionCode + "-" + facilityCode + "-" + year;
+        String prefix = prefixFor(normalize(regionCode, DEFAULT_REGION), normalize(facilityCode, DEFAULT_FACILITY));
         int seq = sequenceProvider.nextSequenceForPrefix(prefix);
         return String.format("%s-%06d", prefix, seq);
     }
-}
 
+    /**
+     * Folder numbers for a batch of registrations at one facility. When the provider is also a
+     * {@link SequenceBlockSource} the whole batch is reserved in one round trip.
+     */
+    public List<String> generate(String facilityCode, String regionCode, int count) {
+        List<String> numbers = new ArrayList<String>(Math.max(count, 0));
+        if (count <= 0) {
+            return numbers;
+        }
+        if (!(sequenceProvider instanceof SequenceBlockSource)) {
+            for (int i = 0; i < count; i++) {
+                numbers.add(generate(facilityCode, regionCode));
+            }
+            return numbers;
+        }
+        String prefix = prefixFor(normalize(regionCode, DEFAULT_REGION), normalize(facilityCode, DEFAULT_FACILITY));
+        long hi = ((SequenceBlockSource) sequenceProvider).reserveBlock(prefix, count);
+        if (hi > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sequence exhausted for prefix " + prefix);
+        }
+        for (long seq = hi - count + 1; seq <= hi; seq++) {
+            numbers.add(String.format("%s-%06d", prefix, seq));
+        }
+        return numbers;
+    }
+
+    public static String prefix(String regionCode, String facilityCode, int year) {
+        return normalize(regionCode, DEFAULT_REGION) + "-" + normalize(facilityCode, DEFAULT_FACILITY) + "-" + year;
+    }
+
+    private String prefixFor(String region, String facility) {
+        Year y = current;
+        if (clock.millis() >= y.nextYearStartsAt) {
+            y = rollOver();
+        }
+        String key = region + "-" + facility;
+        String prefix = y.prefixes.get(key);
+        if (prefix == null) {
+            prefix = key + "-" + y.year;
+            y.prefixes.put(key, prefix);
+        }
+        return prefix;
+    }
+
+    private synchronized Year rollOver() {
+        Year y = current;
+        if (y != null && clock.millis() < y.nextYearStartsAt) {
+            return y;
+        }
+        ZoneId zone = clock.getZone();
+        LocalDate today = LocalDate.now(clock);
+        Instant boundary = today.withDayOfYear(1).plusYears(1).atStartOfDay(zone).toInstant();
+        y = new Year(today.getYear(), boundary.toEpochMilli());
+        current = y;
+        return y;
+    }
+
+    private static String normalize(String code, String fallback) {
+        return code == null || code.trim().isEmpty() ? fallback : code.trim().toUpperCase();
+    }
+
+    private static final class Year {
+        final int year;
+        final long nextYearStartsAt;
+        final ConcurrentHashMap<String, String> prefixes = new ConcurrentHashMap<String, String>();
+
+        Year(int year, long nextYearStartsAt) {
+            this.year = year;
+            this.nextYearStartsAt = nextYearStartsAt;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.openmrs.module.ghanaemr.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over long keys, sized from the expected insertions and target false-positive
+ * probability. Bit positions use double hashing (Kirsch-Mitzenmacher) over a 64-bit mix of the
+ * key. Thread-safe: bits are set with CAS so concurrent puts never lose each other's bits.
+ */
+public class LongBloomFilter {
+
+    private static final int MAGIC = 0x47424c46; // "GBLF"
+    private static final int VERSION = 1;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final double targetFpp;
+    private final AtomicLong insertions = new AtomicLong();
+
+    public LongBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions must be > 0 and 0 < fpp < 1");
+        }
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = fpp;
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    private LongBloomFilter(long expectedInsertions, double fpp, int hashCount, long[] words, long insertions) {
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = fpp;
+        this.hashCount = hashCount;
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words.length * 64;
+        this.insertions.set(insertions);
+    }
+
+    /**
+     * @return true if the key may have been added; false means it definitely was not
+     */
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+        insertions.incrementAndGet();
+    }
+
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getTargetFpp() {
+        return targetFpp;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public long footprintBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * False-positive probability for the current number of insertions: (1 - e^(-kn/m))^k.
+     */
+    public double expectedFpp() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions.get() / bitCount), hashCount);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(expectedInsertions);
+        out.writeDouble(targetFpp);
+        out.writeInt(hashCount);
+        out.writeLong(insertions.get());
+        out.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    public static LongBloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a bloom filter file or unsupported version");
+        }
+        long expected = in.readLong();
+        double fpp = in.readDouble();
+        int hashCount = in.readInt();
+        long insertions = in.readLong();
+        int words = in.readInt();
+        if (words <= 0 || hashCount <= 0) {
+            throw new IOException("Corrupt bloom filter header");
+        }
+        long[] data = new long[words];
+        for (int i = 0; i < words; i++) {
+            data[i] = in.readLong();
+        }
+        return new LongBloomFilter(expected, fpp, hashCount, data, insertions);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
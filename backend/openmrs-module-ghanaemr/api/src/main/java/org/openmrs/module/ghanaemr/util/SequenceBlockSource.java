@@ -0,0 +1,15 @@
+package org.openmrs.module.ghanaemr.util;
+
+/**
+ * Durable source of sequence blocks for {@link BlockSequenceAllocator}.
+ */
+public interface SequenceBlockSource {
+
+    /**
+     * Atomically advances the counter for the prefix by blockSize and commits the change, so the
+     * block (returned - blockSize, returned] belongs to the caller even if it is never used up.
+     *
+     * @return the new high value of the counter
+     */
+    long reserveBlock(String prefix, int blockSize);
+}
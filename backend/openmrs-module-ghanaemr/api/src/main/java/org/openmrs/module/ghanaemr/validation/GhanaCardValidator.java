@@ -1,44 +1,149 @@
 package org.openmrs.module.ghanaemr.validation;
 
+/**
+ * Ghana Card numbers (GHA-123456789-7). Input is scanned once, char by char, without regexes or
+ * intermediate Strings: "GHA" is optional and case-insensitive, anything that is not an ASCII
+ * letter or digit is ignored as a separator. A card packs into a long holding its 10 digits
+ * (GHA-123456789-7 is 1234567897), which is also the key used by the identifier index and the
+ * Ghana Card Bloom filter.
+ */
 public final class GhanaCardValidator {
     private GhanaCardValidator() {}
 
-    private static final String REGEX = "^GHA-\\d{9}-\\d$";
+    /** Returned by {@link #pack} and {@link #parse} for input that is not a Ghana Card. */
+    public static final long INVALID = -1L;
+
+    private static final int DIGITS = 10;
 
     public static boolean isValid(String ghanaCard) {
-        if (ghanaCard == null) return false;
-        String normalized = normalize(ghanaCard);
-        if (!normalized.matches(REGEX)) return false;
-        return validateChecksum(normalized);
+        return parse(ghanaCard) != INVALID;
     }
 
+    /**
+     * @return the canonical GHA-#########-# form, the input itself if it already is canonical, or
+     *         the trimmed upper-case input if it cannot be read as a Ghana Card
+     */
     public static String normalize(String input) {
         if (input == null) return null;
-        String s = input.trim().toUpperCase();
-        // Auto-insert hyphens if 13-length GHA prefix without hyphens
-        String cleaned = s.replaceAll("[^A-Z0-9]", "");
-        if (cleaned.length() == 13 && cleaned.startsWith("GHA")) {
-            return String.format("%s-%s-%s", cleaned.substring(0,3), cleaned.substring(3,12), cleaned.substring(12));
+        long key = pack(input);
+        if (key == INVALID) {
+            return input.trim().toUpperCase();
         }
-        // Handle 10 digits case (assume missing GHA prefix)
-        if (cleaned.matches("\\d{10}")) {
-            return String.format("GHA-%s-%s", cleaned.substring(0,9), cleaned.substring(9));
+        return isCanonical(input) ? input : format(key);
+    }
+
+    /**
+     * Reads the 10 digits of a Ghana Card without checking the check digit.
+     *
+     * @return the packed card, or {@link #INVALID}
+     */
+    public static long pack(CharSequence input) {
+        if (input == null) return INVALID;
+        long value = 0;
+        int digits = 0;
+        int prefix = 0;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // digits may only follow a complete GHA prefix or none at all
+                if ((prefix != 0 && prefix != 3) || ++digits > DIGITS) return INVALID;
+                value = value * 10 + (c - '0');
+            } else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                if (digits > 0 || prefix == 3 || (c & ~0x20) != "GHA".charAt(prefix)) return INVALID;
+                prefix++;
+            }
         }
-        return s;
+        return digits == DIGITS ? value : INVALID;
     }
 
-    public static boolean validateChecksum(String ghanaCard) {
-        String digits = ghanaCard.replaceAll("[^0-9]", "");
-        if (digits.length() != 10) return false;
+    /**
+     * @return the packed card if it is well formed and its check digit matches, else {@link #INVALID}
+     */
+    public static long parse(CharSequence input) {
+        long key = pack(input);
+        return key != INVALID && isValidChecksum(key) ? key : INVALID;
+    }
+
+    /**
+     * Parses cards in bulk.
+     *
+     * @param keys receives the packed card or {@link #INVALID} for each input; at least as long as inputs
+     * @return the number of valid cards
+     */
+    public static int parseAll(CharSequence[] inputs, long[] keys) {
+        if (keys.length < inputs.length) {
+            throw new IllegalArgumentException("keys must hold " + inputs.length + " values");
+        }
+        int valid = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            keys[i] = parse(inputs[i]);
+            if (keys[i] != INVALID) valid++;
+        }
+        return valid;
+    }
+
+    /**
+     * Luhn-style check: the 1st, 3rd, 5th, 7th and 9th digits are doubled (less 9 above 9) and the
+     * 10th makes the sum a multiple of 10.
+     */
+    public static boolean isValidChecksum(long key) {
+        if (key < 0 || key > 9999999999L) return false;
+        int check = (int) (key % 10);
+        long body = key / 10;
         int sum = 0;
-        for (int i = 0; i < 9; i++) {
-            int digit = Character.getNumericValue(digits.charAt(i));
-            if (i % 2 == 0) digit *= 2;
-            if (digit > 9) digit -= 9;
+        // from the 9th digit back to the 1st
+        for (int j = 0; j < DIGITS - 1; j++) {
+            int digit = (int) (body % 10);
+            body /= 10;
+            if (j % 2 == 0) {
+                digit *= 2;
+                if (digit > 9) digit -= 9;
+            }
             sum += digit;
         }
-        int checkDigit = (10 - (sum % 10)) % 10;
-        return checkDigit == Character.getNumericValue(digits.charAt(9));
+        return check == (10 - (sum % 10)) % 10;
     }
-}
 
+    /**
+     * Checks the check digit of any string holding exactly 10 digits; other characters are ignored.
+     */
+    public static boolean validateChecksum(String ghanaCard) {
+        if (ghanaCard == null) return false;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0, n = ghanaCard.length(); i < n; i++) {
+            char c = ghanaCard.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > DIGITS) return false;
+                value = value * 10 + (c - '0');
+            }
+        }
+        return digits == DIGITS && isValidChecksum(value);
+    }
+
+    /**
+     * @return GHA-#########-# for a packed card
+     */
+    public static String format(long key) {
+        if (key < 0 || key > 9999999999L) {
+            throw new IllegalArgumentException("Not a packed Ghana Card: " + key);
+        }
+        char[] out = {'G', 'H', 'A', '-', '0', '0', '0', '0', '0', '0', '0', '0', '0', '-', '0'};
+        out[14] = (char) ('0' + key % 10);
+        long body = key / 10;
+        for (int i = 12; i >= 4; i--) {
+            out[i] = (char) ('0' + body % 10);
+            body /= 10;
+        }
+        return new String(out);
+    }
+
+    /**
+     * Only called once {@link #pack} succeeded: with 15 chars and GHA-, - in place, the remaining
+     * 10 positions can only be the digits.
+     */
+    private static boolean isCanonical(String s) {
+        return s.length() == 15 && s.charAt(0) == 'G' && s.charAt(1) == 'H' && s.charAt(2) == 'A'
+                && s.charAt(3) == '-' && s.charAt(13) == '-';
+    }
+}
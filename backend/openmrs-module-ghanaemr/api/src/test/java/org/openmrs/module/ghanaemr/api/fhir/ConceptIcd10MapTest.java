@@ -0,0 +1,197 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.ghanaemr.api.fhir.db.ConceptIcd10DAO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConceptIcd10MapTest {
+
+    @Test
+    public void rebuild_loadsFirstCodePerConceptAndSharesEqualCodes() {
+        FakeDAO dao = new FakeDAO();
+        dao.rows(5, "B54", 5, "B50.9", 7, new String("B54"), 9, "J06.9", 11, " ");
+        ConceptIcd10Map map = map(dao);
+
+        map.rebuild();
+
+        assertTrue(map.isReady());
+        assertEquals("B54", map.get(5));
+        assertEquals("J06.9", map.get(9));
+        assertNull(map.get(6));
+        assertNull(map.get(11));
+        assertSame(map.get(5), map.get(7));
+        Map<String, Object> stats = map.getStats();
+        assertEquals(3, stats.get("concepts"));
+        assertEquals(2, stats.get("distinctCodes"));
+        assertEquals(5L, stats.get("rowsScanned"));
+    }
+
+    @Test
+    public void rebuild_unorderedRowsAreSorted() {
+        FakeDAO dao = new FakeDAO();
+        dao.rows(30, "A00", 10, "B00", 20, "C00", 10, "D00");
+        ConceptIcd10Map map = map(dao);
+
+        map.rebuild();
+
+        assertEquals("B00", map.get(10));
+        assertEquals("C00", map.get(20));
+        assertEquals("A00", map.get(30));
+        assertEquals(3, map.getStats().get("concepts"));
+    }
+
+    @Test
+    public void resolve_beforeBuildUsesOneBatchedQuery() {
+        FakeDAO dao = new FakeDAO();
+        dao.rows(1, "B54", 2, "A09");
+        ConceptIcd10Map map = map(dao);
+
+        Map<Integer, String> codes = map.resolve(Arrays.asList(1, 2, 3));
+
+        assertEquals(1, dao.batchQueries);
+        assertEquals("B54", codes.get(1));
+        assertEquals("A09", codes.get(2));
+        assertFalse(codes.containsKey(3));
+
+        map.rebuild();
+        assertEquals(codes, map.resolve(Arrays.asList(1, 2, 3, null)));
+        assertEquals(1, dao.batchQueries);
+    }
+
+    @Test
+    public void update_addsReplacesAndRemoves() {
+        FakeDAO dao = new FakeDAO();
+        dao.rows(10, "B54", 20, "A09");
+        ConceptIcd10Map map = map(dao);
+        map.rebuild();
+
+        map.update(15, "J06.9");
+        map.update(10, "B50.9");
+        map.update(20, null);
+        map.update(99, null);
+
+        assertEquals("J06.9", map.get(15));
+        assertEquals("B50.9", map.get(10));
+        assertNull(map.get(20));
+        assertEquals(2, map.getStats().get("concepts"));
+    }
+
+    @Test
+    public void rebuild_replaysUpdatesMadeDuringTheScan() {
+        final ConceptIcd10Map map = new ConceptIcd10Map();
+        FakeDAO dao = new FakeDAO() {
+            @Override
+            public void scanIcd10Codes(ConceptIcd10Map.Sink sink) {
+                sink.code(1, "B54");
+                map.update(2, "A09");
+                map.update(1, null);
+                sink.code(3, "J06.9");
+            }
+        };
+        map.setDao(dao);
+
+        map.rebuild();
+
+        assertNull(map.get(1));
+        assertEquals("A09", map.get(2));
+        assertEquals("J06.9", map.get(3));
+    }
+
+    /**
+     * A 50k-concept dictionary with CIEL-like code reuse (about 12k distinct ICD-10 codes): every
+     * concept resolves and repeated codes share one string.
+     */
+    @Test
+    public void fiftyThousandConcepts_resolveAndShareRepeatedCodes() {
+        final int concepts = 50000;
+        FakeDAO dao = new FakeDAO();
+        for (int i = 1; i <= concepts; i++) {
+            dao.rows(i * 3, new String("X" + (i % 12000)));
+        }
+        ConceptIcd10Map map = map(dao);
+
+        map.rebuild();
+
+        for (int i = 1; i <= concepts; i++) {
+            assertEquals("X" + (i % 12000), map.get(i * 3));
+        }
+        assertSame(map.get(3), map.get(3 * 12001));
+        assertEquals(12000, map.getStats().get("distinctCodes"));
+    }
+
+    @Test
+    public void icd10Code_lowestConceptMapIdWinsLikeTheScan() {
+        Concept concept = new Concept();
+        concept.setConceptMappings(new ArrayList<ConceptMap>(Arrays.asList(
+                mapping(null, "ICD-10-WHO", "B50.9"),
+                mapping(42, "ICD-10-WHO", "B54"),
+                mapping(7, "SNOMED CT", "61462000"),
+                mapping(12, "ICD-10-WHO", "B53.8"),
+                mapping(3, "ICD-10-WHO", " "))));
+
+        assertEquals("B53.8", ConceptIcd10Map.icd10Code(concept));
+
+        concept.setConceptMappings(new ArrayList<ConceptMap>(Arrays.asList(
+                mapping(null, "ICD-10-WHO", "B50.9"), mapping(7, "SNOMED CT", "61462000"))));
+        assertEquals("B50.9", ConceptIcd10Map.icd10Code(concept));
+
+        concept.setConceptMappings(new ArrayList<ConceptMap>(Arrays.asList(mapping(7, "SNOMED CT", "61462000"))));
+        assertNull(ConceptIcd10Map.icd10Code(concept));
+    }
+
+    private static ConceptMap mapping(Integer conceptMapId, String sourceName, String code) {
+        ConceptSource source = new ConceptSource();
+        source.setName(sourceName);
+        ConceptMap mapping = new ConceptMap(new ConceptReferenceTerm(source, code, null), null);
+        mapping.setConceptMapId(conceptMapId);
+        return mapping;
+    }
+
+    private static ConceptIcd10Map map(ConceptIcd10DAO dao) {
+        ConceptIcd10Map map = new ConceptIcd10Map();
+        map.setDao(dao);
+        return map;
+    }
+
+    private static class FakeDAO implements ConceptIcd10DAO {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        int batchQueries;
+
+        void rows(Object... conceptIdAndCode) {
+            for (int i = 0; i < conceptIdAndCode.length; i += 2) {
+                rows.add(new Object[] { conceptIdAndCode[i], conceptIdAndCode[i + 1] });
+            }
+        }
+
+        @Override
+        public Map<Integer, String> getIcd10Codes(Collection<Integer> conceptIds) {
+            batchQueries++;
+            Map<Integer, String> codes = new HashMap<Integer, String>();
+            for (Object[] row : rows) {
+                if (conceptIds.contains(row[0])) {
+                    codes.putIfAbsent((Integer) row[0], (String) row[1]);
+                }
+            }
+            return codes;
+        }
+
+        @Override
+        public void scanIcd10Codes(ConceptIcd10Map.Sink sink) {
+            for (Object[] row : rows) {
+                sink.code((Integer) row[0], (String) row[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.openmrs.module.ghanaemr.api.fhir.FhirEncounterMapperTest.DIAGNOSES_PER_ENCOUNTER;
+import static org.openmrs.module.ghanaemr.api.fhir.FhirEncounterMapperTest.MAPPING_READS;
+import static org.openmrs.module.ghanaemr.api.fhir.FhirEncounterMapperTest.OBS_PER_ENCOUNTER;
+
+/**
+ * Times reason code mapping on the 60-obs, 50-diagnosis encounter of {@link FhirEncounterMapperTest}:
+ * walking each concept's mappings (one lazy load per concept in production) against one batched
+ * resolver call. Surefire only picks up *Test classes, so this is not part of the default test
+ * phase. Run it with {@code mvn -pl api test -Dmaven.test.skip=false -Dtest=FhirEncounterMapperBenchmark}.
+ */
+public class FhirEncounterMapperBenchmark {
+
+    private static final int ROUNDS = 2000;
+
+    @Test
+    public void largeEncounter_mappingsWalkVersusBatchedResolver() {
+        FhirEncounterMapperTest fixture = new FhirEncounterMapperTest();
+        fixture.setUp();
+        fixture.setupMinimalEncounter();
+        org.openmrs.Encounter encounter = fixture.mockEncounter;
+        when(encounter.getObs()).thenReturn(FhirEncounterMapperTest.largeEncounterObs());
+
+        MAPPING_READS.set(0);
+        double walkNanos = time(new FhirEncounterMapper(), encounter);
+        int walkReads = MAPPING_READS.get() / (ROUNDS * 2);
+
+        FhirEncounterMapper batched = new FhirEncounterMapper();
+        batched.setIcd10Resolver(new FhirEncounterMapperTest.CountingResolver());
+        MAPPING_READS.set(0);
+        double batchedNanos = time(batched, encounter);
+
+        assertEquals(0, MAPPING_READS.get());
+        System.out.println(String.format("encounter mapping (%d obs, %d diagnoses): per-concept mappings %.0f ns/op "
+                + "(%d mapping reads), batched resolver %.0f ns/op (1 lookup)",
+                OBS_PER_ENCOUNTER, DIAGNOSES_PER_ENCOUNTER, walkNanos, walkReads, batchedNanos));
+    }
+
+    /** Warms up for ROUNDS mappings, then returns the mean of ROUNDS more. */
+    private static double time(FhirEncounterMapper mapper, org.openmrs.Encounter encounter) {
+        for (int r = 0; r < ROUNDS; r++) {
+            mapper.toFhirEncounter(encounter);
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            mapper.toFhirEncounter(encounter);
+        }
+        return (System.nanoTime() - start) / (double) ROUNDS;
+    }
+}
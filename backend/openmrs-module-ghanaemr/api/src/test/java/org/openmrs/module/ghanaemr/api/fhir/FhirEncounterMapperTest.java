@@ -1,5 +1,6 @@
 package org.openmrs.module.ghanaemr.api.fhir;
 
+import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Identifier;
@@ -10,10 +11,18 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.openmrs.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -26,7 +35,7 @@ public class FhirEncounterMapperTest {
     private FhirEncounterMapper mapper;
 
     @Mock
-    private org.openmrs.Encounter mockEncounter;
+    org.openmrs.Encounter mockEncounter;
 
     @Mock
     private Patient mockPatient;
@@ -136,7 +145,159 @@ public class FhirEncounterMapperTest {
         assertEquals("Malaria, unspecified", coding.getDisplay());
     }
 
-    private void setupMinimalEncounter() {
+    @Test
+    public void toFhirEncounter_MultipleDiagnoses_EmitsAll() {
+        setupMinimalEncounter();
+        Set<Obs> obsSet = new LinkedHashSet<>();
+        obsSet.add(obs(diagnosis(1, "B54", "Malaria, unspecified")));
+        obsSet.add(obs(diagnosis(2, "A09", "Gastroenteritis")));
+        obsSet.add(obs(diagnosis(3, null, "Temperature")));
+        when(mockEncounter.getObs()).thenReturn(obsSet);
+
+        Encounter fhirEncounter = mapper.toFhirEncounter(mockEncounter);
+
+        assertEquals(Arrays.asList("B54", "A09"), reasonCodes(fhirEncounter));
+        assertEquals("Gastroenteritis", fhirEncounter.getReasonCode().get(1).getCodingFirstRep().getDisplay());
+    }
+
+    @Test
+    public void toFhirEncounter_SameCodeTwice_EmittedOnce() {
+        setupMinimalEncounter();
+        Set<Obs> obsSet = new LinkedHashSet<>();
+        obsSet.add(obs(diagnosis(1, "B54", "Malaria, unspecified")));
+        obsSet.add(obs(diagnosis(2, "B54", "Malaria")));
+        when(mockEncounter.getObs()).thenReturn(obsSet);
+
+        assertEquals(Arrays.asList("B54"), reasonCodes(mapper.toFhirEncounter(mockEncounter)));
+    }
+
+    @Test
+    public void toFhirEncounter_CodedValue_UsedWhenQuestionUnmapped() {
+        setupMinimalEncounter();
+        Obs obs = obs(diagnosis(1, null, "Visit diagnoses"));
+        obs.setValueCoded(diagnosis(2, "J06.9", "Upper respiratory infection"));
+        when(mockEncounter.getObs()).thenReturn(new LinkedHashSet<>(Arrays.asList(obs)));
+
+        assertEquals(Arrays.asList("J06.9"), reasonCodes(mapper.toFhirEncounter(mockEncounter)));
+    }
+
+    @Test
+    public void toFhirEncounter_WithResolver_ResolvesAllConceptsInOneCall() {
+        setupMinimalEncounter();
+        when(mockEncounter.getObs()).thenReturn(largeEncounterObs());
+        CountingResolver resolver = new CountingResolver();
+        mapper.setIcd10Resolver(resolver);
+        MAPPING_READS.set(0);
+
+        Encounter fhirEncounter = mapper.toFhirEncounter(mockEncounter);
+
+        assertEquals(1, resolver.calls);
+        assertEquals(OBS_PER_ENCOUNTER, resolver.ids);
+        assertEquals(0, MAPPING_READS.get());
+        assertEquals(DIAGNOSES_PER_ENCOUNTER, fhirEncounter.getReasonCode().size());
+    }
+
+    /**
+     * Reason code mapping on a 60-obs encounter with 50 diagnoses: walking each concept's mappings
+     * (one lazy load per concept in production) and one batched resolver call give the same codes.
+     */
+    @Test
+    public void largeEncounter_batchedResolverMatchesTheMappingsWalk() {
+        setupMinimalEncounter();
+        when(mockEncounter.getObs()).thenReturn(largeEncounterObs());
+
+        MAPPING_READS.set(0);
+        List<String> walked = reasonCodes(new FhirEncounterMapper().toFhirEncounter(mockEncounter));
+        assertTrue(MAPPING_READS.get() >= OBS_PER_ENCOUNTER);
+
+        FhirEncounterMapper batched = new FhirEncounterMapper();
+        batched.setIcd10Resolver(new CountingResolver());
+        MAPPING_READS.set(0);
+
+        assertEquals(walked, reasonCodes(batched.toFhirEncounter(mockEncounter)));
+        assertEquals(DIAGNOSES_PER_ENCOUNTER, walked.size());
+        assertEquals(0, MAPPING_READS.get());
+    }
+
+    // Helper methods
+
+    static final int OBS_PER_ENCOUNTER = 60;
+
+    static final int DIAGNOSES_PER_ENCOUNTER = 50;
+
+    static final AtomicInteger MAPPING_READS = new AtomicInteger();
+
+    static Set<Obs> largeEncounterObs() {
+        Set<Obs> obsSet = new LinkedHashSet<>();
+        for (int i = 1; i <= OBS_PER_ENCOUNTER; i++) {
+            String code = i <= DIAGNOSES_PER_ENCOUNTER ? "X" + i : null;
+            obsSet.add(obs(diagnosis(i, code, "Concept " + i)));
+        }
+        return obsSet;
+    }
+
+    private static Obs obs(Concept concept) {
+        Obs obs = new Obs();
+        obs.setConcept(concept);
+        return obs;
+    }
+
+    private static Concept diagnosis(int id, String icd10Code, String name) {
+        final ConceptName conceptName = new ConceptName();
+        conceptName.setName(name);
+        Concept concept = new Concept(id) {
+            @Override
+            public ConceptName getName() {
+                return conceptName;
+            }
+
+            @Override
+            public Collection<ConceptMap> getConceptMappings() {
+                MAPPING_READS.incrementAndGet();
+                return super.getConceptMappings();
+            }
+        };
+        if (icd10Code != null) {
+            ConceptSource source = new ConceptSource();
+            source.setName("ICD-10-WHO");
+            ConceptReferenceTerm term = new ConceptReferenceTerm();
+            term.setConceptSource(source);
+            term.setCode(icd10Code);
+            ConceptMap map = new ConceptMap();
+            map.setConceptReferenceTerm(term);
+            concept.addConceptMapping(map);
+        }
+        return concept;
+    }
+
+    private static List<String> reasonCodes(Encounter fhirEncounter) {
+        List<String> codes = new ArrayList<>();
+        for (CodeableConcept reason : fhirEncounter.getReasonCode()) {
+            codes.add(reason.getCodingFirstRep().getCode());
+        }
+        return codes;
+    }
+
+    /** Stands in for the single-query resolver: codes X1..X50 for concepts 1..50. */
+    static class CountingResolver implements ConceptIcd10Resolver {
+        int calls;
+        int ids;
+
+        @Override
+        public Map<Integer, String> resolve(Collection<Integer> conceptIds) {
+            calls++;
+            ids = conceptIds.size();
+            Map<Integer, String> codes = new HashMap<>();
+            for (Integer id : conceptIds) {
+                if (id <= DIAGNOSES_PER_ENCOUNTER) {
+                    codes.put(id, "X" + id);
+                }
+            }
+            return codes;
+        }
+    }
+
+    void setupMinimalEncounter() {
         // Encounter basics
         when(mockEncounter.getUuid()).thenReturn("enc-uuid-123");
         when(mockEncounter.getEncounterId()).thenReturn(null); // ensure UUID path used
@@ -284,6 +284,73 @@ public class FhirPatientMapperTest {
         assertEquals(originalPatient.getIdentifier().size(), parsedPatient.getIdentifier().size());
     }
     
+    @Test
+    public void fingerprint_SamePatient_IsStable() {
+        setupCompletePatient();
+
+        assertEquals(mapper.fingerprint(mockPatient), mapper.fingerprint(mockPatient));
+    }
+
+    @Test
+    public void fingerprint_MappedFieldChanged_Differs() {
+        setupCompletePatient();
+        long before = mapper.fingerprint(mockPatient);
+
+        when(mockPhoneAttribute.getValue()).thenReturn("+233244000000");
+        long phoneChanged = mapper.fingerprint(mockPatient);
+        assertNotEquals(before, phoneChanged);
+
+        when(mockPersonName.getMiddleName()).thenReturn(null);
+        assertNotEquals(phoneChanged, mapper.fingerprint(mockPatient));
+    }
+
+    @Test
+    public void fingerprint_UnmappedFieldChanged_IsUnchanged() {
+        setupCompletePatient();
+        long before = mapper.fingerprint(mockPatient);
+
+        when(mockPatient.getUuid()).thenReturn("another-uuid");
+        when(mockPersonAddress.getPostalCode()).thenReturn("GA-123");
+
+        assertEquals(before, mapper.fingerprint(mockPatient));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fingerprint_NullPatient_ThrowsException() {
+        mapper.fingerprint(null);
+    }
+
+    @Test
+    public void fingerprintElements_OnlyChangedElementDiffers() {
+        setupCompletePatient();
+        long[] before = mapper.fingerprintElements(mockPatient);
+
+        when(mockPersonAddress.getCityVillage()).thenReturn("Kumasi");
+        long[] after = mapper.fingerprintElements(mockPatient);
+
+        int address = FhirPatientMapper.ELEMENTS.indexOf("address");
+        for (int i = 0; i < before.length; i++) {
+            if (i == address) {
+                assertNotEquals(before[i], after[i]);
+            } else {
+                assertEquals(FhirPatientMapper.ELEMENTS.get(i), before[i], after[i]);
+            }
+        }
+        assertEquals(FhirPatientMapper.fingerprint(after), mapper.fingerprint(mockPatient));
+    }
+
+    @Test
+    public void fingerprintElements_MissingElements_AreAbsent() {
+        setupMinimalPatient();
+        long[] elements = mapper.fingerprintElements(mockPatient);
+
+        assertEquals(FhirPatientMapper.ELEMENTS.size(), elements.length);
+        assertEquals(FhirPatientMapper.ABSENT, elements[FhirPatientMapper.ELEMENTS.indexOf("telecom")]);
+        assertEquals(FhirPatientMapper.ABSENT, elements[FhirPatientMapper.ELEMENTS.indexOf("address")]);
+        assertNotEquals(FhirPatientMapper.ABSENT, elements[FhirPatientMapper.ELEMENTS.indexOf("name")]);
+        assertNotEquals(FhirPatientMapper.ABSENT, elements[FhirPatientMapper.ELEMENTS.indexOf("gender")]);
+    }
+
     @Test
     public void validate_CompletePatient_ReturnsTrue() {
         setupMinimalPatient();
@@ -0,0 +1,89 @@
+package org.openmrs.module.ghanaemr.api.fhir;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FhirResourceCacheTest {
+
+    private static String json(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void get_returnsJsonOnlyForTheCachedVersion() {
+        FhirResourceCache cache = new FhirResourceCache();
+        cache.put("Patient/a", 1L, "{\"v\":1}");
+
+        assertEquals("{\"v\":1}", cache.get("Patient/a", 1L));
+        assertNull(cache.get("Patient/a", 2L));
+        // a stale version is dropped on the miss
+        assertNull(cache.get("Patient/a", 1L));
+        assertEquals(0, cache.getStats().get("entries"));
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(2L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedWhenOverBudget() {
+        String body = json(1000);
+        long weight = FhirResourceCache.weigh("Patient/a", body);
+        FhirResourceCache cache = new FhirResourceCache();
+        cache.setMaxBytes(weight * 3);
+
+        cache.put("Patient/a", 1L, body);
+        cache.put("Patient/b", 1L, body);
+        cache.put("Patient/c", 1L, body);
+        assertNotNull(cache.get("Patient/a", 1L));
+        cache.put("Patient/d", 1L, body);
+
+        assertNull(cache.get("Patient/b", 1L));
+        assertNotNull(cache.get("Patient/a", 1L));
+        assertNotNull(cache.get("Patient/c", 1L));
+        assertNotNull(cache.get("Patient/d", 1L));
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertEquals(weight * 3, cache.getStats().get("bytes"));
+    }
+
+    @Test
+    public void put_largeEntriesWeighMoreThanSmallOnes() {
+        FhirResourceCache cache = new FhirResourceCache();
+        cache.setMaxBytes(FhirResourceCache.weigh("Patient/a", json(4000)));
+
+        cache.put("Patient/a", 1L, json(1000));
+        cache.put("Patient/b", 1L, json(1000));
+        cache.put("Patient/c", 1L, json(3000));
+
+        assertNull(cache.get("Patient/a", 1L));
+        assertNull(cache.get("Patient/b", 1L));
+        assertNotNull(cache.get("Patient/c", 1L));
+    }
+
+    @Test
+    public void put_entryLargerThanBudgetIsNotCached() {
+        FhirResourceCache cache = new FhirResourceCache();
+        cache.setMaxBytes(1000);
+        cache.put("Patient/a", 1L, "{}");
+
+        cache.put("Patient/b", 1L, json(1000));
+
+        assertNull(cache.get("Patient/b", 1L));
+        assertEquals("{}", cache.get("Patient/a", 1L));
+    }
+
+    @Test
+    public void put_replacingAnEntryKeepsTheWeightExact() {
+        FhirResourceCache cache = new FhirResourceCache();
+        cache.put("Patient/a", 1L, json(100));
+        cache.put("Patient/a", 2L, json(10));
+        cache.invalidate("Patient/b");
+
+        assertEquals(FhirResourceCache.weigh("Patient/a", json(10)), cache.getStats().get("bytes"));
+        cache.invalidate("Patient/a");
+        assertEquals(0L, cache.getStats().get("bytes"));
+    }
+}
@@ -0,0 +1,99 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    private static final double[] BOUNDS = {10, 20, 50, 100};
+
+    @Test
+    public void observe_countsValuesUpToAndIncludingEachBound() {
+        Histogram h = new Histogram(BOUNDS);
+        h.observe(0);
+        h.observe(10);
+        h.observe(10.5);
+        h.observe(100);
+        h.observe(101);
+
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(5, s.getCount());
+        assertEquals(221.5, s.getSum(), 1e-9);
+        assertEquals(2, s.getCumulativeCount(0));
+        assertEquals(3, s.getCumulativeCount(1));
+        assertEquals(4, s.getCumulativeCount(3));
+        assertEquals(5, s.getCumulativeCount(4));
+    }
+
+    @Test
+    public void quantiles_areWithinABucketOfTheExactValue() {
+        Histogram h = new Histogram(Histogram.LATENCY_MILLIS);
+        Random random = new Random(7);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            // long-tailed, like call latencies
+            values[i] = 20 + Math.exp(random.nextGaussian() * 1.2 + 4);
+            h.observe(values[i]);
+        }
+        Arrays.sort(values);
+        Histogram.Snapshot s = h.snapshot();
+        for (double q : new double[] {0.5, 0.95, 0.99}) {
+            double exact = values[(int) Math.ceil(q * values.length) - 1];
+            double estimate = s.quantile(q);
+            int bucket = bucket(exact);
+            double lower = bucket == 0 ? 0 : Histogram.LATENCY_MILLIS[bucket - 1];
+            assertTrue("p" + q + " " + estimate + " vs " + exact,
+                    estimate >= lower && estimate <= Histogram.LATENCY_MILLIS[bucket]);
+        }
+        assertEquals(0, new Histogram(BOUNDS).snapshot().quantile(0.99), 0);
+    }
+
+    @Test
+    public void quantile_aboveTheLastBound_isTheLastBound() {
+        Histogram h = new Histogram(BOUNDS);
+        h.observe(5);
+        h.observe(500);
+        h.observe(900);
+
+        assertEquals(100, h.snapshot().quantile(0.99), 0);
+        assertEquals(7.5, h.snapshot().quantile(0.25), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bounds_mustAscend() {
+        new Histogram(new double[] {1, 5, 5});
+    }
+
+    @Test
+    public void prometheusWriter_writesCumulativeBucketsInSeconds() throws Exception {
+        Histogram h = new Histogram(BOUNDS);
+        h.observe(15);
+        h.observe(250);
+        StringWriter text = new StringWriter();
+        new PrometheusWriter(text)
+                .family("x_seconds", "histogram", "Test \"latency\"")
+                .histogram("x_seconds", h.snapshot(), BOUNDS, 0.001, "call", "get\"Patient\"")
+                .sample("y_total", 3, "status", "201");
+
+        List<String> lines = Arrays.asList(text.toString().split("\n"));
+        assertEquals("# HELP x_seconds Test \"latency\"", lines.get(0));
+        assertEquals("# TYPE x_seconds histogram", lines.get(1));
+        assertEquals("x_seconds_bucket{call=\"get\\\"Patient\\\"\",le=\"0.01\"} 0", lines.get(2));
+        assertEquals("x_seconds_bucket{call=\"get\\\"Patient\\\"\",le=\"0.02\"} 1", lines.get(3));
+        assertEquals("x_seconds_bucket{call=\"get\\\"Patient\\\"\",le=\"+Inf\"} 2", lines.get(6));
+        assertEquals("x_seconds_sum{call=\"get\\\"Patient\\\"\"} 0.265", lines.get(7));
+        assertEquals("x_seconds_count{call=\"get\\\"Patient\\\"\"} 2", lines.get(8));
+        assertEquals("y_total{status=\"201\"} 3", lines.get(9));
+    }
+
+    private static int bucket(double value) {
+        int i = Arrays.binarySearch(Histogram.LATENCY_MILLIS, value);
+        return i >= 0 ? i : -i - 1;
+    }
+}
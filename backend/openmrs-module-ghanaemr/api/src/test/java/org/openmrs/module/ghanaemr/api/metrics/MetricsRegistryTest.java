@@ -0,0 +1,108 @@
+package org.openmrs.module.ghanaemr.api.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    private RequestMetrics requests;
+
+    @Before
+    public void setUp() {
+        requests = RequestMetrics.get();
+        requests.reset();
+        QueryCounter.setInstalled(false);
+    }
+
+    @Test
+    public void requests_areKeptPerControllerAndMethodWithStatusClasses() throws Exception {
+        requests.begin();
+        requests.begin();
+        assertEquals(2, requests.getInFlight());
+        requests.end("QueueController", "GET", 200, TimeUnit.MILLISECONDS.toNanos(12), 3);
+        requests.end("QueueController", "GET", 404, TimeUnit.MILLISECONDS.toNanos(4), 1);
+        requests.begin();
+        requests.end("QueueController", "PROPFIND", 0, TimeUnit.MILLISECONDS.toNanos(1), -1);
+        assertEquals(0, requests.getInFlight());
+
+        assertEquals(2, requests.getLatency("QueueController", "GET").getCount());
+        assertEquals(16.0, requests.getLatency("QueueController", "GET").getSum(), 1e-9);
+        assertEquals(4.0, requests.getQueries("QueueController", "GET").getSum(), 1e-9);
+        assertEquals(0, requests.getQueries("QueueController", "OTHER").getCount());
+
+        List<String> lines = lines(requests);
+        assertTrue(lines.contains("ghanaemr_http_responses_total{controller=\"QueueController\",method=\"GET\",status=\"2xx\"} 1"));
+        assertTrue(lines.contains("ghanaemr_http_responses_total{controller=\"QueueController\",method=\"GET\",status=\"4xx\"} 1"));
+        assertTrue(lines.contains("ghanaemr_http_responses_total{controller=\"QueueController\",method=\"OTHER\",status=\"5xx\"} 1"));
+        assertTrue(lines.contains("ghanaemr_http_request_seconds_bucket{controller=\"QueueController\",method=\"GET\",le=\"0.015\"} 2"));
+        assertTrue(lines.contains("ghanaemr_http_requests_in_flight 0"));
+    }
+
+    @Test
+    public void queryHistogram_isExportedOnceTheCounterIsInstalled() throws Exception {
+        assertFalse(lines(requests).contains("# TYPE ghanaemr_http_request_queries histogram"));
+
+        QueryCounter.setInstalled(true);
+        long before = QueryCounter.current();
+        new QueryCounter().jdbcPrepareStatementStart();
+        new QueryCounter().jdbcPrepareStatementStart();
+        assertEquals(2, QueryCounter.current() - before);
+
+        requests.end("ReportsController", "GET", 200, 1000, QueryCounter.current() - before);
+
+        List<String> lines = lines(requests);
+        assertTrue(lines.contains("# TYPE ghanaemr_http_request_queries histogram"));
+        assertTrue(lines.contains("ghanaemr_http_request_queries_bucket{controller=\"ReportsController\",method=\"GET\",le=\"1\"} 0"));
+        assertTrue(lines.contains("ghanaemr_http_request_queries_bucket{controller=\"ReportsController\",method=\"GET\",le=\"2\"} 1"));
+    }
+
+    @Test
+    public void writePrometheus_leavesOutAFailingCollectorAndCountsTheFailure() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setCollectors(Arrays.asList(
+                out -> out.family("first_total", "counter", "First").sample("first_total", 1),
+                new Failing(),
+                out -> out.family("last_total", "counter", "Last").sample("last_total", 2)));
+
+        registry.writePrometheus(new StringWriter());
+        StringWriter text = new StringWriter();
+        registry.writePrometheus(text);
+
+        String out = text.toString();
+        assertTrue(out.startsWith("# HELP first_total First\n# TYPE first_total counter\nfirst_total 1\n# HELP last_total"));
+        assertFalse(out.contains("partial_total"));
+        assertTrue(out.contains("ghanaemr_metrics_collect_failures_total{collector=\"Failing\"} 2\n"));
+        assertTrue(out.contains("ghanaemr_metrics_collect_seconds{collector=\"Failing\"} "));
+    }
+
+    @Test
+    public void jvmMetrics_reportHeapAndThreads() throws Exception {
+        List<String> lines = lines(new JvmMetrics());
+        assertTrue(lines.contains("# TYPE jvm_memory_bytes_used gauge"));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("jvm_memory_bytes_used{area=\"heap\"} ")));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("jvm_threads_current ")));
+        assertTrue(lines.stream().filter(l -> !l.startsWith("#")).allMatch(l -> l.matches("[a-z_]+(\\{.*\\})? -?[0-9.E+-]+")));
+    }
+
+    private static List<String> lines(MetricsCollector collector) throws IOException {
+        StringWriter text = new StringWriter();
+        collector.writePrometheus(new PrometheusWriter(text));
+        return Arrays.asList(text.toString().split("\n"));
+    }
+
+    private static final class Failing implements MetricsCollector {
+        @Override
+        public void writePrometheus(PrometheusWriter out) throws IOException {
+            out.family("partial_total", "counter", "Never completes");
+            throw new IllegalStateException("database unavailable");
+        }
+    }
+}
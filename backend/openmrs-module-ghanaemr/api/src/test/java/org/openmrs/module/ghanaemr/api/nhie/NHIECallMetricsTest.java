@@ -0,0 +1,98 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NHIECallMetricsTest {
+
+    private final NHIECallMetrics metrics = NHIECallMetrics.get();
+
+    @Before
+    @After
+    public void reset() {
+        metrics.reset();
+    }
+
+    @Test
+    public void calls_keepTimingsBytesAndStatusesApart() {
+        for (int i = 0; i < 100; i++) {
+            // connect on the first call only, then a reused connection
+            metrics.call("submitPatient").record(i == 0 ? ms(40) : ms(0), ms(180 + i), ms(200 + i), 1200, 300, 201);
+        }
+        metrics.call("submitPatient").record(ms(30000), -1, ms(30000), 1200, 0, null);
+        metrics.call("checkCoverage").record(ms(1), ms(60), ms(65), 0, 900, 200);
+
+        Map<String, Object> submit = call(metrics.toMap(), "submitPatient");
+        assertEquals(101L, submit.get("count"));
+        assertEquals(121200L, submit.get("requestBytes"));
+        assertEquals(30000L, submit.get("responseBytes"));
+        Map<?, ?> statuses = (Map<?, ?>) submit.get("statuses");
+        assertEquals(100L, statuses.get("201"));
+        assertEquals(1L, statuses.get("error"));
+        double p50 = (Double) ((Map<?, ?>) submit.get("totalMs")).get("p50");
+        assertTrue("p50 " + p50, p50 >= 200 && p50 <= 300);
+        assertTrue((Double) ((Map<?, ?>) submit.get("totalMs")).get("p99") <= 300);
+        assertTrue((Double) ((Map<?, ?>) submit.get("firstByteMs")).get("p99") <= 300);
+        assertEquals(100, metrics.call("submitPatient").getFirstByte().getCount());
+        assertEquals(1L, call(metrics.toMap(), "checkCoverage").get("count"));
+    }
+
+    @Test
+    public void phases_areTimedSeparatelyFromCalls() {
+        metrics.recordPhase(NHIECallMetrics.PHASE_PATIENT_MAPPING, ms(4));
+        metrics.recordPhase(NHIECallMetrics.PHASE_PATIENT_MAPPING, ms(6));
+        metrics.recordPhase(NHIECallMetrics.PHASE_MASKING, TimeUnit.MICROSECONDS.toNanos(300));
+
+        Map<?, ?> phases = (Map<?, ?>) metrics.toMap().get("phases");
+        assertEquals(2L, ((Map<?, ?>) phases.get("patientMapping")).get("count"));
+        assertTrue((Double) ((Map<?, ?>) phases.get("masking")).get("p99") <= 1.0);
+        assertTrue(((Map<?, ?>) metrics.toMap().get("calls")).isEmpty());
+    }
+
+    @Test
+    public void writePrometheus_exportsSecondsBytesAndStatuses() throws Exception {
+        metrics.call("getPatient").record(ms(2), ms(40), ms(45), 0, 512, 200);
+        metrics.call("getPatient").record(ms(2), ms(40), ms(45), 0, 64, 404);
+        metrics.recordPhase(NHIECallMetrics.PHASE_ENCOUNTER_MAPPING, ms(12));
+
+        StringWriter text = new StringWriter();
+        metrics.writePrometheus(new PrometheusWriter(text));
+        List<String> lines = Arrays.asList(text.toString().split("\n"));
+
+        assertTrue(lines.contains("# TYPE ghanaemr_nhie_request_seconds histogram"));
+        assertTrue(lines.contains("ghanaemr_nhie_request_seconds_bucket{call=\"getPatient\",le=\"0.03\"} 0"));
+        assertTrue(lines.contains("ghanaemr_nhie_request_seconds_bucket{call=\"getPatient\",le=\"0.05\"} 2"));
+        assertTrue(lines.contains("ghanaemr_nhie_request_seconds_count{call=\"getPatient\"} 2"));
+        assertTrue(lines.contains("ghanaemr_nhie_first_byte_seconds_count{call=\"getPatient\"} 2"));
+        assertTrue(lines.contains("ghanaemr_nhie_responses_total{call=\"getPatient\",status=\"404\"} 1"));
+        assertTrue(lines.contains("ghanaemr_nhie_response_bytes_total{call=\"getPatient\"} 576"));
+        assertTrue(lines.contains("ghanaemr_nhie_phase_seconds_count{phase=\"encounterMapping\"} 1"));
+    }
+
+    @Test
+    public void utf8Length_countsEncodedBytes() {
+        String body = "{\"name\":\"Kwame Nkrumah – Ɔsɛe\",\"note\":\"😀\"}";
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, NHIEHttpClient.utf8Length(body));
+        assertEquals(0, NHIEHttpClient.utf8Length(null));
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> call(Map<String, Object> map, String name) {
+        return (Map<String, Object>) ((Map<String, Object>) map.get("calls")).get(name);
+    }
+}
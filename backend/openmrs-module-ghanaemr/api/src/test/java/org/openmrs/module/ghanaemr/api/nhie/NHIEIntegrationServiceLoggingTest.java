@@ -113,6 +113,25 @@ public class NHIEIntegrationServiceLoggingTest {
                 contains("resourceType"), contains("id"), eq(201), eq(0), eq("SUCCESS"));
     }
 
+    @Test
+    public void givenTransactionId_LogsAgainstThatRow() throws Exception {
+        Patient p = buildOpenMrsPatient("GHA-123456789-7");
+        when(fhirMapper.toFhirPatient(any(Patient.class))).thenReturn(new org.hl7.fhir.r4.model.Patient());
+        when(nhieClient.submitPatient(anyString(), anyString())).thenReturn(errorResponse(503, true, "down"));
+
+        try {
+            service.syncPatientToNHIE(p, "outbox-row-1");
+            fail("Expected NHIEIntegrationException");
+        } catch (NHIEIntegrationException expected) {
+        }
+
+        verify(logger).log(eq("outbox-row-1"), eq(123), eq("Patient"), eq("POST"), eq("/Patient"),
+                anyString(), isNull(), isNull(), eq(0), eq("PENDING"));
+        verify(logger).log(eq("outbox-row-1"), eq(123), eq("Patient"), eq("POST"), eq("/Patient"),
+                anyString(), contains("down"), eq(503), eq(0), eq("FAILED"));
+        verifyNoMoreInteractions(logger);
+    }
+
     @Test
     public void logsPendingThenSuccess_On200Idempotent() throws Exception {
         Patient p = buildOpenMrsPatient("GHA-123456789-7");
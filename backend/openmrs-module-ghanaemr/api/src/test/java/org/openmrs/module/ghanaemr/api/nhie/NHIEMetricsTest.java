@@ -0,0 +1,175 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.nhie.db.NHIEMetricsDAO;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NHIEMetricsTest {
+
+    private static final long START = Instant.parse("2025-06-02T10:30:00Z").toEpochMilli();
+
+    private FakeDAO dao;
+    private NHIEMetrics metrics;
+
+    @Before
+    public void setUp() {
+        dao = new FakeDAO();
+        metrics = new NHIEMetrics();
+        metrics.setDao(dao);
+        at(START);
+    }
+
+    @Test
+    public void record_isIgnoredUntilTheFirstReconcile() {
+        metrics.record(null, state("QUEUED", "Patient", null));
+        assertFalse(metrics.isReady());
+
+        metrics.reconcile();
+
+        assertTrue(metrics.isReady());
+        assertEquals(0L, metrics.getSnapshot().get("dlqCount"));
+        assertEquals(0L, metrics.getSnapshot().get("failedRetryable"));
+        assertNull(metrics.getSnapshot().get("lastUpdatedAt"));
+    }
+
+    @Test
+    public void record_movesARowBetweenStatusResourceAndHttpCounts() {
+        metrics.reconcile();
+
+        NHIEMetrics.State pending = state("PENDING", "Patient", null);
+        NHIEMetrics.State failed = state("FAILED", "Patient", 503);
+        metrics.record(null, pending);
+        metrics.record(pending, failed);
+        assertEquals(1L, metrics.getSnapshot().get("failedRetryable"));
+
+        metrics.record(failed, state("DLQ", "Patient", 503));
+        metrics.record(null, state("FAILED", "Encounter", 400));
+        metrics.record(null, state("SUCCESS", "Encounter", 201));
+
+        Map<String, Object> snapshot = metrics.getSnapshot();
+        assertEquals(1L, snapshot.get("dlqCount"));
+        assertEquals(0L, snapshot.get("failedRetryable"));
+        assertEquals(1L, snapshot.get("success24h"));
+        assertEquals(1L, byStatus(snapshot).get("FAILED").longValue());
+        assertEquals(0L, byStatus(snapshot).get("PENDING").longValue());
+        assertEquals(1L, resource(snapshot, "Encounter").get("SUCCESS").longValue());
+        assertEquals(1L, resource(snapshot, "Patient").get("DLQ").longValue());
+        assertEquals(1L, httpStatus(snapshot).get("503").longValue());
+        assertEquals(0L, httpStatus(snapshot).get(NHIEMetrics.NO_RESPONSE).longValue());
+        assertEquals("2025-06-02", ((String) snapshot.get("lastUpdatedAt")).substring(0, 10));
+    }
+
+    @Test
+    public void successes_leaveTheWindowAnHourAtATime() {
+        dao.counts.add(new NHIEMetrics.Count(state("SUCCESS", "Patient", 201), 23, 4, START));
+        dao.counts.add(new NHIEMetrics.Count(state("SUCCESS", "Patient", 201), 0, 2, START));
+        dao.counts.add(new NHIEMetrics.Count(state("SUCCESS", "Patient", 201), null, 50, START));
+        metrics.reconcile();
+        assertEquals(6L, metrics.getSnapshot().get("success24h"));
+
+        at(START + TimeUnit.HOURS.toMillis(1));
+        metrics.record(state("PENDING", "Patient", null), state("SUCCESS", "Patient", 201));
+        assertEquals(3L, metrics.getSnapshot().get("success24h"));
+        assertEquals(57L, byStatus(metrics.getSnapshot()).get("SUCCESS").longValue());
+
+        at(START + TimeUnit.HOURS.toMillis(25));
+        assertEquals(0L, metrics.getSnapshot().get("success24h"));
+    }
+
+    @Test
+    public void successes_areBucketedByCreatedAtLikeReconcile() {
+        metrics.reconcile();
+
+        long created = START - TimeUnit.HOURS.toMillis(23);
+        NHIEMetrics.State failed = new NHIEMetrics.State("FAILED", "Patient", 503, created);
+        metrics.record(failed, new NHIEMetrics.State("SUCCESS", "Patient", 503, created));
+        assertEquals(1L, metrics.getSnapshot().get("success24h"));
+
+        // reconcile would count the row 24 hours after it was created, not after it succeeded
+        at(START + TimeUnit.HOURS.toMillis(1));
+        assertEquals(0L, metrics.getSnapshot().get("success24h"));
+    }
+
+    @Test
+    public void recordNewAfterCommit_countsEachOutboxRow() {
+        metrics.recordNewAfterCommit(state("QUEUED", "Patient", null), 5);
+        metrics.reconcile();
+
+        metrics.recordNewAfterCommit(state("QUEUED", "Patient", null), 3);
+        metrics.recordNewAfterCommit(state("QUEUED", "Patient", null), 0);
+
+        Map<String, Object> snapshot = metrics.getSnapshot();
+        assertEquals(3L, byStatus(snapshot).get("QUEUED").longValue());
+        assertEquals(3L, resource(snapshot, "Patient").get("QUEUED").longValue());
+        assertEquals(3L, metrics.getStats().get("transitions"));
+    }
+
+    @Test
+    public void reconcile_replacesDriftedCountersWithTheLog() {
+        dao.counts.add(new NHIEMetrics.Count(state("DLQ", "Patient", 500), null, 3, START - 60000));
+        dao.counts.add(new NHIEMetrics.Count(state("FAILED", "Patient", null), null, 2, START));
+        metrics.reconcile();
+        assertEquals(3L, metrics.getSnapshot().get("dlqCount"));
+        assertEquals(2L, metrics.getSnapshot().get("failedRetryable"));
+        assertEquals(0L, metrics.getStats().get("lastDrift"));
+
+        // a write nobody reported (e.g. a DLQ requeue), and one reported but rolled back
+        dao.counts.set(0, new NHIEMetrics.Count(state("DLQ", "Patient", 500), null, 2, START - 60000));
+        dao.counts.set(1, new NHIEMetrics.Count(state("FAILED", "Patient", null), null, 3, START));
+        metrics.record(null, state("QUEUED", "Patient", null));
+
+        metrics.reconcile();
+
+        Map<String, Object> snapshot = metrics.getSnapshot();
+        assertEquals(2L, snapshot.get("dlqCount"));
+        assertEquals(3L, snapshot.get("failedRetryable"));
+        assertNull(byStatus(snapshot).get("QUEUED"));
+        assertEquals(3L, metrics.getStats().get("lastDrift"));
+        assertEquals(2, dao.calls);
+    }
+
+    private void at(long millis) {
+        metrics.setClock(Clock.fixed(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+    }
+
+    private static NHIEMetrics.State state(String status, String resourceType, Integer responseStatus) {
+        return new NHIEMetrics.State(status, resourceType, responseStatus);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> byStatus(Map<String, Object> snapshot) {
+        return (Map<String, Long>) snapshot.get("byStatus");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> httpStatus(Map<String, Object> snapshot) {
+        return (Map<String, Long>) snapshot.get("byHttpStatus");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> resource(Map<String, Object> snapshot, String resourceType) {
+        return (Map<String, Long>) ((Map<String, Object>) snapshot.get("byResourceType")).get(resourceType);
+    }
+
+    private static final class FakeDAO implements NHIEMetricsDAO {
+        final List<NHIEMetrics.Count> counts = new ArrayList<NHIEMetrics.Count>();
+        int calls;
+
+        @Override
+        public List<NHIEMetrics.Count> countByState(Date now, int windowHours) {
+            calls++;
+            return new ArrayList<NHIEMetrics.Count>(counts);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.openmrs.module.ghanaemr.api.nhie;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.fhir.FhirPatientMapper;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for NHIEPatientDelta
+ *
+ * Element order follows FhirPatientMapper.ELEMENTS:
+ * identifier, name, gender, birthDate, telecom, address
+ */
+public class NHIEPatientDeltaTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String PATIENT_JSON = "{\"resourceType\":\"Patient\","
+        + "\"identifier\":[{\"system\":\"http://moh.gov.gh/fhir/identifier/ghana-card\",\"value\":\"GHA-123456789-7\"}],"
+        + "\"name\":[{\"family\":\"Mensah\",\"given\":[\"Kwame\"]}],"
+        + "\"gender\":\"male\",\"birthDate\":\"1990-01-01\","
+        + "\"telecom\":[{\"system\":\"phone\",\"value\":\"+233244123456\"}]}";
+
+    private static final long A = FhirPatientMapper.ABSENT;
+
+    @Test
+    public void changedElements_ReturnsChangedNamesInOrder() {
+        long[] previous = {1, 2, 3, 4, A, 6};
+        long[] current = {1, 9, 3, 4, 5, A};
+
+        assertEquals(Arrays.asList("name", "telecom", "address"), NHIEPatientDelta.changedElements(previous, current));
+        assertEquals(Collections.emptyList(), NHIEPatientDelta.changedElements(current, current.clone()));
+    }
+
+    @Test
+    public void jsonPatch_Unchanged_ReturnsNull() throws Exception {
+        long[] elements = {1, 2, 3, 4, 5, A};
+
+        assertNull(NHIEPatientDelta.jsonPatch(elements, elements.clone(), PATIENT_JSON));
+    }
+
+    @Test
+    public void jsonPatch_ChangedElement_ReplacesOnlyThatElement() throws Exception {
+        JsonNode ops = patch(new long[] {1, 2, 3, 4, 5, A}, new long[] {1, 7, 3, 4, 5, A});
+
+        assertEquals(1, ops.size());
+        assertEquals("replace", ops.get(0).get("op").asText());
+        assertEquals("/name", ops.get(0).get("path").asText());
+        assertEquals("Mensah", ops.get(0).get("value").get(0).get("family").asText());
+    }
+
+    @Test
+    public void jsonPatch_NewElement_IsAdded() throws Exception {
+        JsonNode ops = patch(new long[] {1, 2, 3, 4, A, A}, new long[] {1, 2, 3, 4, 5, A});
+
+        assertEquals(1, ops.size());
+        assertEquals("add", ops.get(0).get("op").asText());
+        assertEquals("/telecom", ops.get(0).get("path").asText());
+        assertEquals("+233244123456", ops.get(0).get("value").get(0).get("value").asText());
+    }
+
+    @Test
+    public void jsonPatch_RemovedElement_IsRemoved() throws Exception {
+        JsonNode ops = patch(new long[] {1, 2, 3, 4, 5, 6}, new long[] {1, 2, 3, 4, 5, A});
+
+        assertEquals(1, ops.size());
+        assertEquals("remove", ops.get(0).get("op").asText());
+        assertEquals("/address", ops.get(0).get("path").asText());
+        assertFalse(ops.get(0).has("value"));
+    }
+
+    @Test
+    public void jsonPatch_SeveralChanges_OneOperationEach() throws Exception {
+        JsonNode ops = patch(new long[] {1, 2, 3, 4, A, 6}, new long[] {8, 2, 3, 9, 5, A});
+
+        assertEquals(4, ops.size());
+        assertEquals("/identifier", ops.get(0).get("path").asText());
+        assertEquals("/birthDate", ops.get(1).get("path").asText());
+        assertEquals("1990-01-01", ops.get(1).get("value").asText());
+        assertEquals("/telecom", ops.get(2).get("path").asText());
+        assertEquals("/address", ops.get(3).get("path").asText());
+    }
+
+    private static JsonNode patch(long[] previous, long[] current) throws Exception {
+        String patch = NHIEPatientDelta.jsonPatch(previous, current, PATIENT_JSON);
+        assertNotNull(patch);
+        return MAPPER.readTree(patch);
+    }
+}
@@ -0,0 +1,94 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static org.junit.Assert.*;
+
+public class PatientImportReaderTest {
+
+    @Test
+    public void csv_mapsHeaderNamesAndQuotedFields() throws IOException {
+        String csv = "﻿Ghana Card,given_name,familyName,middleName,gender,dateOfBirth,nhisNumber\r\n"
+                + "GHA-123456789-7,Kwame,\"Mensah, Jnr\",,M,1985-03-15,0123456789\r\n"
+                + "\r\n"
+                + "GHA-987654321-0,\"Ama \"\"Maa\"\"\",Boateng,\"Line\nBreak\",F,,\n";
+        PatientImportReader reader = new PatientImportReader(new StringReader(csv), PatientImportFormat.CSV);
+
+        PatientImportRow first = reader.next();
+        assertEquals(1, first.getRowNumber());
+        assertTrue(first.isValid());
+        assertEquals("GHA-123456789-7", first.getDto().getGhanaCard());
+        assertEquals("Mensah, Jnr", first.getDto().getFamilyName());
+        assertNull(first.getDto().getMiddleName());
+        assertEquals(LocalDate.of(1985, 3, 15),
+                first.getDto().getDateOfBirth().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+
+        PatientImportRow second = reader.next();
+        assertEquals(2, second.getRowNumber());
+        assertEquals("Ama \"Maa\"", second.getDto().getGivenName());
+        assertEquals("Line\nBreak", second.getDto().getMiddleName());
+        assertNull(second.getDto().getDateOfBirth());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void csv_badRowsBecomeInvalidRowsWithoutStoppingTheFile() throws IOException {
+        String csv = "ghanaCard,givenName,dateOfBirth\n"
+                + "GHA-123456789-7,Kwame\n"
+                + "GHA-123456789-7,Kwame,15/03/1985\n"
+                + "GHA-123456789-7,Kwame,1985-03-15\n";
+        PatientImportReader reader = new PatientImportReader(new StringReader(csv), PatientImportFormat.CSV);
+
+        PatientImportRow columns = reader.next();
+        assertEquals(PatientImportError.INVALID_ROW, columns.getErrorCode());
+        PatientImportRow date = reader.next();
+        assertEquals(PatientImportError.INVALID_ROW, date.getErrorCode());
+        assertTrue(reader.next().isValid());
+    }
+
+    @Test(expected = IOException.class)
+    public void csv_requiresGhanaCardColumn() throws IOException {
+        new PatientImportReader(new StringReader("givenName,familyName\nKwame,Mensah\n"), PatientImportFormat.CSV).next();
+    }
+
+    @Test
+    public void ndjson_readsOneObjectPerLine() throws IOException {
+        String ndjson = "{\"ghanaCard\":\"GHA-123456789-7\",\"givenName\":\"Kwame\",\"dateOfBirth\":\"1985-03-15T00:00:00Z\"}\n"
+                + "\n"
+                + "{not json}\n"
+                + "{\"ghana_card\":\"GHA-987654321-0\",\"regionCode\":\"AS\"}\n";
+        PatientImportReader reader = new PatientImportReader(new StringReader(ndjson), PatientImportFormat.NDJSON);
+
+        PatientImportRow first = reader.next();
+        assertEquals("Kwame", first.getDto().getGivenName());
+        assertNotNull(first.getDto().getDateOfBirth());
+        PatientImportRow malformed = reader.next();
+        assertEquals(2, malformed.getRowNumber());
+        assertFalse(malformed.isValid());
+        PatientImportRow third = reader.next();
+        assertEquals(3, third.getRowNumber());
+        assertEquals("AS", third.getDto().getRegionCode());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void skip_resumesAfterCheckpointWithSameRowNumbers() throws IOException {
+        StringBuilder csv = new StringBuilder("ghanaCard,givenName\n");
+        for (int i = 1; i <= 10; i++) {
+            csv.append("GHA-123456789-7,Name").append(i).append('\n');
+        }
+        PatientImportReader reader = new PatientImportReader(new StringReader(csv.toString()), PatientImportFormat.CSV);
+
+        assertEquals(7, reader.skip(7));
+        PatientImportRow next = reader.next();
+        assertEquals(8, next.getRowNumber());
+        assertEquals("Name8", next.getDto().getGivenName());
+        assertEquals(2, reader.skip(5));
+    }
+}
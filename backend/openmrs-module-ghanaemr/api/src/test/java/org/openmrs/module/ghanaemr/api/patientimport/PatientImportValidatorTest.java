@@ -0,0 +1,92 @@
+package org.openmrs.module.ghanaemr.api.patientimport;
+
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PatientImportValidatorTest {
+
+    private static PatientImportRow row(int number, String ghanaCard) {
+        GhanaPatientDTO dto = new GhanaPatientDTO();
+        dto.setGhanaCard(ghanaCard);
+        dto.setGivenName("Kwame");
+        dto.setFamilyName("Mensah");
+        dto.setGender("m");
+        return new PatientImportRow(number, dto);
+    }
+
+    @Test
+    public void validate_normalizesValidRowsAndRejectsInvalidOnes() {
+        List<PatientImportRow> rows = new ArrayList<PatientImportRow>();
+        rows.add(row(1, "gha 1234567897"));
+        rows.add(row(2, "GHA-123456789-0"));
+        PatientImportRow nhis = row(3, card(1));
+        nhis.getDto().setNhisNumber("12345");
+        rows.add(nhis);
+        PatientImportRow future = row(4, card(2));
+        future.getDto().setDateOfBirth(new Date(System.currentTimeMillis() + 86400000L));
+        rows.add(future);
+        rows.add(PatientImportRow.invalid(5, "Malformed JSON"));
+
+        PatientImportValidator.validate(rows);
+
+        assertTrue(rows.get(0).isValid());
+        assertEquals("GHA-123456789-7", rows.get(0).getGhanaCard());
+        assertEquals("M", rows.get(0).getDto().getGender());
+        assertEquals(PatientImportError.VALIDATION_ERROR, rows.get(1).getErrorCode());
+        assertEquals("NHIS number must be 10 digits", rows.get(2).getErrorMessage());
+        assertEquals(PatientImportError.VALIDATION_ERROR, rows.get(3).getErrorCode());
+        assertEquals(PatientImportError.INVALID_ROW, rows.get(4).getErrorCode());
+    }
+
+    @Test
+    public void validate_firstOccurrenceOfAGhanaCardWins() {
+        List<PatientImportRow> rows = new ArrayList<PatientImportRow>();
+        for (int i = 1; i <= 2000; i++) {
+            // every card appears twice, 1000 rows apart
+            int n = (i - 1) % 1000;
+            rows.add(row(i, card(n)));
+        }
+
+        PatientImportValidator.validate(rows);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rows.get(i).isValid());
+            assertEquals(PatientImportError.DUPLICATE_IN_FILE, rows.get(i + 1000).getErrorCode());
+            assertEquals("Same Ghana Card as row " + (i + 1), rows.get(i + 1000).getErrorMessage());
+        }
+    }
+
+    @Test
+    public void mask_keepsOnlyTheLastDigits() {
+        assertEquals("GHA-*******89-7", PatientImportError.of(rows("GHA-123456789-7")).getGhanaCard());
+    }
+
+    private static PatientImportRow rows(String ghanaCard) {
+        PatientImportRow r = row(1, ghanaCard);
+        r.fail(PatientImportError.DUPLICATE_PATIENT, "exists");
+        return r;
+    }
+
+    /** Valid Ghana Card for body 100000000 + n, check digit computed like GhanaCardValidator. */
+    private static String card(int n) {
+        String body = String.valueOf(100000000 + n);
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            int d = body.charAt(i) - '0';
+            if (i % 2 == 0) {
+                d *= 2;
+            }
+            if (d > 9) {
+                d -= 9;
+            }
+            sum += d;
+        }
+        return "GHA-" + body + "-" + ((10 - sum % 10) % 10);
+    }
+}
@@ -0,0 +1,45 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.openmrs.module.ghanaemr.api.queue.scheduling.QueueSchedulingSimulationTest.MINUTE;
+import static org.openmrs.module.ghanaemr.api.queue.scheduling.QueueSchedulingSimulationTest.percentile;
+
+/**
+ * Prints average and tail waits per priority for each scheduling policy on the simulated OPD day of
+ * {@link QueueSchedulingSimulationTest}, plus the time each policy takes to schedule it. Surefire
+ * only picks up *Test classes, so this is not part of the default test phase. Run it with
+ * {@code mvn -pl api test -Dmaven.test.skip=false -Dtest=QueueSchedulingBenchmark}.
+ */
+public class QueueSchedulingBenchmark {
+
+    @Test
+    public void simulatedOpdDay_waitsPerPolicy() {
+        QueueSchedulingSimulationTest.Arrival[] day = QueueSchedulingSimulationTest.simulatedDay(3000, 25, 42L);
+
+        System.out.println(String.format("%-22s %4s %6s %9s %9s %9s %9s",
+                "policy", "prio", "n", "avg(min)", "p95(min)", "p99(min)", "max(min)"));
+        for (Map.Entry<String, QueueScheduler> e : QueueSchedulingSimulationTest.schedulers().entrySet()) {
+            long started = System.nanoTime();
+            Map<Integer, long[]> waits = QueueSchedulingSimulationTest.run(e.getValue(), day, 25);
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000L;
+            for (Map.Entry<Integer, long[]> p : waits.entrySet()) {
+                long[] w = p.getValue();
+                System.out.println(String.format("%-22s %4d %6d %9.1f %9.1f %9.1f %9.1f", e.getKey(), p.getKey(), w.length,
+                        avg(w) / MINUTE, (double) percentile(w, 95) / MINUTE,
+                        (double) percentile(w, 99) / MINUTE, (double) w[w.length - 1] / MINUTE));
+            }
+            System.out.println(String.format("%-22s scheduled %d arrivals in %d ms", e.getKey(), day.length, elapsedMs));
+        }
+    }
+
+    private static double avg(long[] values) {
+        double sum = 0;
+        for (long v : values) {
+            sum += v;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+}
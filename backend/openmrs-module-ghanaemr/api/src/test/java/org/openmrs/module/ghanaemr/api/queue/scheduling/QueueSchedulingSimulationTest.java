@@ -0,0 +1,253 @@
+package org.openmrs.module.ghanaemr.api.queue.scheduling;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ordering checks for the scheduling policies plus a simulated OPD day (3,000 arrivals over
+ * 8 hours with a morning rush, 25 clinicians) comparing tail waits per priority.
+ */
+public class QueueSchedulingSimulationTest {
+
+    static final long MINUTE = 60_000L;
+    private static final String LOCATION = "opd";
+
+    @Test
+    public void strictPolicy_ordersByPriorityThenArrival() {
+        QueueScheduler s = new QueueScheduler(new StrictPriorityPolicy());
+        s.enqueue(LOCATION, new QueueTicket("a", 5, 0));
+        s.enqueue(LOCATION, new QueueTicket("b", 3, 10));
+        s.enqueue(LOCATION, new QueueTicket("c", 5, 5));
+        s.enqueue(LOCATION, new QueueTicket("d", 3, 20));
+
+        assertEquals(Arrays.asList("b", "d", "a", "c"), s.order(LOCATION, 100));
+        assertEquals("b", s.next(LOCATION, 100));
+        assertEquals(3, s.depth(LOCATION));
+    }
+
+    @Test
+    public void agingPolicy_promotesLongWaitingEntries() {
+        QueueScheduler s = new QueueScheduler(new AgingPriorityPolicy(10 * MINUTE));
+        s.enqueue(LOCATION, new QueueTicket("routine", 5, 0));
+        s.enqueue(LOCATION, new QueueTicket("urgent", 3, 25 * MINUTE));
+
+        // routine has waited 30 minutes (3 levels) by the time urgent arrives plus 5 minutes
+        assertEquals("routine", s.next(LOCATION, 30 * MINUTE));
+        assertEquals("urgent", s.next(LOCATION, 30 * MINUTE));
+        assertNull(s.next(LOCATION, 30 * MINUTE));
+    }
+
+    @Test
+    public void weightedFairPolicy_sharesSlotsByWeight() {
+        Map<Integer, Integer> weights = new HashMap<Integer, Integer>();
+        weights.put(3, 3);
+        weights.put(5, 1);
+        QueueScheduler s = new QueueScheduler(new WeightedFairPolicy(weights));
+        for (int i = 0; i < 8; i++) {
+            s.enqueue(LOCATION, new QueueTicket("u" + i, 3, i));
+            s.enqueue(LOCATION, new QueueTicket("r" + i, 5, i));
+        }
+        int routine = 0;
+        for (int i = 0; i < 8; i++) {
+            if (s.next(LOCATION, 100).startsWith("r")) {
+                routine++;
+            }
+        }
+        assertEquals(2, routine);
+    }
+
+    @Test
+    public void emergencyLaneAndSlaPreemptionApplyToEveryPolicy() {
+        Map<Integer, Long> sla = new HashMap<Integer, Long>();
+        sla.put(5, 60 * MINUTE);
+        QueueScheduler s = new QueueScheduler(new WeightedFairPolicy(), 1, sla);
+        s.enqueue(LOCATION, new QueueTicket("overdue", 5, 0));
+        s.enqueue(LOCATION, new QueueTicket("urgent", 2, 50 * MINUTE));
+        s.enqueue(LOCATION, new QueueTicket("emergency", 1, 70 * MINUTE));
+
+        assertEquals(Arrays.asList("emergency", "overdue", "urgent"), s.order(LOCATION, 70 * MINUTE));
+        // preview must not consume anything
+        assertEquals(3, s.depth(LOCATION));
+        assertEquals("emergency", s.next(LOCATION, 70 * MINUTE));
+        assertEquals("overdue", s.next(LOCATION, 70 * MINUTE));
+    }
+
+    @Test
+    public void order_previewsOnCopiesAndMatchesTheServiceOrder() {
+        Map<Integer, Long> sla = new HashMap<Integer, Long>();
+        sla.put(5, 60 * MINUTE);
+        QueueScheduler s = new QueueScheduler(new WeightedFairPolicy(), 1, sla);
+        for (int i = 0; i < 6; i++) {
+            s.enqueue(LOCATION, new QueueTicket("u" + i, 3, i * MINUTE));
+            s.enqueue(LOCATION, new QueueTicket("r" + i, 5, i * MINUTE));
+        }
+        s.remove(LOCATION, "u2");
+
+        List<String> preview = s.order(LOCATION, 61 * MINUTE);
+        assertEquals(preview, s.order(LOCATION, 61 * MINUTE));
+        List<String> served = new ArrayList<String>();
+        String uuid;
+        while ((uuid = s.next(LOCATION, 61 * MINUTE)) != null) {
+            served.add(uuid);
+        }
+        assertEquals(preview, served);
+        assertFalse(served.contains("u2"));
+    }
+
+    @Test
+    public void reconcile_dropsUnknownAndAddsMissingEntries() {
+        QueueScheduler s = new QueueScheduler(new StrictPriorityPolicy());
+        s.enqueue(LOCATION, new QueueTicket("stale", 2, 0));
+        s.enqueue(LOCATION, new QueueTicket("kept", 5, 0));
+
+        List<String> order = s.reconcile(LOCATION, Arrays.asList(
+                new QueueTicket("kept", 5, 0), new QueueTicket("new", 3, 10)), 100);
+
+        assertEquals(Arrays.asList("new", "kept"), order);
+        assertFalse(s.remove(LOCATION, "stale"));
+    }
+
+    @Test
+    public void simulatedOpdDay_comparesTailWaitsPerPolicy() {
+        Arrival[] day = simulatedDay(3000, 25, 42L);
+
+        Map<String, Map<Integer, long[]>> results = new HashMap<String, Map<Integer, long[]>>();
+        for (Map.Entry<String, QueueScheduler> e : schedulers().entrySet()) {
+            results.put(e.getKey(), run(e.getValue(), day, 25));
+        }
+
+        for (Map<Integer, long[]> waits : results.values()) {
+            int served = 0;
+            for (long[] w : waits.values()) {
+                served += w.length;
+            }
+            assertEquals(day.length, served);
+        }
+        long strictRoutineP99 = percentile(results.get("strict").get(5), 99);
+        assertTrue(percentile(results.get("aging").get(5), 99) < strictRoutineP99);
+        assertTrue(percentile(results.get("weighted-fair").get(5), 99) <= strictRoutineP99);
+        for (Map<Integer, long[]> waits : results.values()) {
+            assertTrue(percentile(waits.get(1), 95) <= 10 * MINUTE);
+        }
+    }
+
+    /**
+     * The policies compared on the simulated day, by label: each on its own, then aging with the
+     * emergency lane and SLA pre-emption for urgent and priority patients.
+     */
+    static Map<String, QueueScheduler> schedulers() {
+        Map<Integer, Long> sla = new HashMap<Integer, Long>();
+        sla.put(2, 20 * MINUTE);
+        sla.put(3, 60 * MINUTE);
+        Map<String, QueueScheduler> schedulers = new LinkedHashMap<String, QueueScheduler>();
+        schedulers.put("strict", new QueueScheduler(new StrictPriorityPolicy()));
+        schedulers.put("aging", new QueueScheduler(new AgingPriorityPolicy(30 * MINUTE)));
+        schedulers.put("weighted-fair", new QueueScheduler(new WeightedFairPolicy()));
+        schedulers.put("aging+sla", new QueueScheduler(new AgingPriorityPolicy(30 * MINUTE), 1, sla));
+        return schedulers;
+    }
+
+    static final class Arrival {
+        final String uuid;
+        final int priority;
+        final long at;
+        final long serviceMillis;
+
+        Arrival(String uuid, int priority, long at, long serviceMillis) {
+            this.uuid = uuid;
+            this.priority = priority;
+            this.at = at;
+            this.serviceMillis = serviceMillis;
+        }
+    }
+
+    /**
+     * Arrivals over an 8-hour clinic with the usual morning rush (40% in the first 90 minutes,
+     * 35% until noon, 25% in the afternoon) and exponential consultation times sized for ~90%
+     * average utilisation, so the morning backlog exceeds capacity. Priority mix: 2% emergency
+     * (1), 8% urgent (2), 20% priority (3), 70% routine (5).
+     */
+    static Arrival[] simulatedDay(int arrivals, int servers, long seed) {
+        Random rnd = new Random(seed);
+        long dayMillis = 8 * 60 * MINUTE;
+        double meanService = 0.9 * servers * dayMillis / arrivals;
+        long[] times = new long[arrivals];
+        for (int i = 0; i < arrivals; i++) {
+            double r = rnd.nextDouble();
+            double from = r < 0.40 ? 0 : r < 0.75 ? 90 : 240;
+            double to = r < 0.40 ? 90 : r < 0.75 ? 240 : 480;
+            times[i] = (long) ((from + rnd.nextDouble() * (to - from)) * MINUTE);
+        }
+        Arrays.sort(times);
+        Arrival[] out = new Arrival[arrivals];
+        for (int i = 0; i < arrivals; i++) {
+            double r = rnd.nextDouble();
+            int priority = r < 0.02 ? 1 : r < 0.10 ? 2 : r < 0.30 ? 3 : 5;
+            long service = (long) (-Math.log(1 - rnd.nextDouble()) * meanService);
+            out[i] = new Arrival("q" + i, priority, times[i], Math.max(MINUTE, service));
+        }
+        return out;
+    }
+
+    static Map<Integer, long[]> run(QueueScheduler scheduler, Arrival[] day, int servers) {
+        Map<String, Arrival> byUuid = new HashMap<String, Arrival>();
+        Map<Integer, List<Long>> waits = new HashMap<Integer, List<Long>>();
+        PriorityQueue<Long> freeAt = new PriorityQueue<Long>();
+        for (int i = 0; i < servers; i++) {
+            freeAt.add(0L);
+        }
+        int next = 0;
+        while (next < day.length || scheduler.depth(LOCATION) > 0) {
+            long now = freeAt.peek();
+            while (next < day.length && day[next].at <= now) {
+                Arrival a = day[next++];
+                byUuid.put(a.uuid, a);
+                scheduler.enqueue(LOCATION, new QueueTicket(a.uuid, a.priority, a.at));
+            }
+            if (scheduler.depth(LOCATION) == 0) {
+                freeAt.poll();
+                freeAt.add(day[next].at);
+                continue;
+            }
+            freeAt.poll();
+            Arrival served = byUuid.remove(scheduler.next(LOCATION, now));
+            List<Long> w = waits.get(served.priority);
+            if (w == null) {
+                w = new ArrayList<Long>();
+                waits.put(served.priority, w);
+            }
+            w.add(now - served.at);
+            freeAt.add(now + served.serviceMillis);
+        }
+        Map<Integer, long[]> out = new HashMap<Integer, long[]>();
+        for (Map.Entry<Integer, List<Long>> e : waits.entrySet()) {
+            List<Long> sorted = e.getValue();
+            Collections.sort(sorted);
+            long[] arr = new long[sorted.size()];
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = sorted.get(i);
+            }
+            out.put(e.getKey(), arr);
+        }
+        return out;
+    }
+
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+}
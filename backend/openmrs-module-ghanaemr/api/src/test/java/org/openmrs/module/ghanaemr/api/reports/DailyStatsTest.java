@@ -0,0 +1,242 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.reports.db.DailyStatsDAO;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DailyStatsTest {
+
+    private static final LocalDate JUNE_1 = LocalDate.of(2025, 6, 1);
+
+    private FakeDAO dao;
+    private DailyStats stats;
+
+    @Before
+    public void setUp() {
+        dao = new FakeDAO();
+        stats = new DailyStats();
+        stats.setDao(dao);
+    }
+
+    @After
+    public void tearDown() {
+        stats.stop();
+    }
+
+    @Test
+    public void disabled_ignoresSavesAndNeverCoversARange() {
+        stats.markDirty(JUNE_1);
+
+        assertFalse(stats.prepare(ReportRange.ofDay(JUNE_1)));
+        assertEquals(0, stats.getStats().get("dirtyDays"));
+        assertTrue(dao.aggregated.isEmpty());
+    }
+
+    @Test
+    public void prepare_flushesOnlyDirtyDaysInTheRange() {
+        stats.start(7, 0);
+        stats.markDirty(JUNE_1);
+        stats.markDirty(JUNE_1.plusDays(3));
+        stats.markDirty(JUNE_1.plusDays(40));
+
+        ReportRange range = ReportRange.of(JUNE_1, JUNE_1.plusDays(29));
+        assertFalse(stats.prepare(range));
+
+        assertEquals(Arrays.asList(JUNE_1, JUNE_1.plusDays(3)), sorted(dao.calls));
+        assertEquals(1, stats.getStats().get("dirtyDays"));
+    }
+
+    @Test
+    public void prepare_coversRangeOnceEveryDayIsAggregated() {
+        stats.start(7, 0);
+        ReportRange range = ReportRange.of(JUNE_1, JUNE_1.plusDays(29));
+        stats.backfill(JUNE_1.plusDays(29), 30);
+        dao.calls.clear();
+
+        assertTrue(stats.prepare(range));
+        assertTrue(dao.calls.isEmpty());
+
+        stats.markDirty(JUNE_1.plusDays(10));
+        assertTrue(stats.prepare(range));
+        assertEquals(Arrays.asList(JUNE_1.plusDays(10)), dao.calls);
+    }
+
+    @Test
+    public void prepare_reaggregatesTodayOnceOlderThanTheMaxAge() {
+        stats.start(7, 0);
+        MutableClock clock = new MutableClock(JUNE_1.atTime(10, 0).atZone(ZoneId.systemDefault()).toInstant());
+        stats.setClock(clock);
+        stats.backfill(JUNE_1, 3);
+        dao.calls.clear();
+        ReportRange range = ReportRange.of(JUNE_1.minusDays(2), JUNE_1);
+
+        // the backfill aggregated today just now
+        assertTrue(stats.prepare(range));
+        clock.advance(TimeUnit.SECONDS.toMillis(DailyStats.TODAY_MAX_AGE_SECONDS - 1));
+        assertTrue(stats.prepare(range));
+        assertTrue(dao.calls.isEmpty());
+
+        clock.advance(TimeUnit.SECONDS.toMillis(1));
+        assertTrue(stats.prepare(ReportRange.ofDay(JUNE_1.minusDays(1))));
+        assertTrue(dao.calls.isEmpty());
+        assertTrue(stats.prepare(range));
+        assertTrue(stats.prepare(range));
+        assertEquals(Arrays.asList(JUNE_1), dao.calls);
+    }
+
+    @Test
+    public void backfill_aggregatesOnlyMissingDays() {
+        dao.aggregated.add(JUNE_1.plusDays(1));
+        dao.aggregated.add(JUNE_1.plusDays(3));
+
+        stats.backfill(JUNE_1.plusDays(4), 5);
+
+        assertEquals(Arrays.asList(JUNE_1, JUNE_1.plusDays(2), JUNE_1.plusDays(4)), dao.calls);
+    }
+
+    @Test
+    public void reconcile_reaggregatesTheWholeWindow() {
+        for (int i = 0; i < 10; i++) {
+            dao.aggregated.add(JUNE_1.plusDays(i));
+        }
+
+        stats.reconcile(JUNE_1.plusDays(9), 3);
+
+        assertEquals(Arrays.asList(JUNE_1.plusDays(7), JUNE_1.plusDays(8), JUNE_1.plusDays(9)), dao.calls);
+        assertEquals(3L, stats.getStats().get("daysAggregated"));
+    }
+
+    @Test
+    public void failedAggregation_leavesTheDayDirty() {
+        stats.start(7, 0);
+        stats.markDirty(JUNE_1);
+        dao.fail = true;
+
+        try {
+            stats.flush();
+            fail("expected the DAO failure");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, stats.getStats().get("dirtyDays"));
+        dao.fail = false;
+        stats.flush();
+        assertEquals(0, stats.getStats().get("dirtyDays"));
+        assertTrue(dao.aggregated.contains(JUNE_1));
+    }
+
+    @Test
+    public void millisUntil_nextRunIsTodayOrTomorrow() {
+        LocalTime at = LocalTime.of(2, 0);
+
+        assertEquals(TimeUnit.MINUTES.toMillis(30), DailyStats.millisUntil(LocalDateTime.of(2025, 6, 1, 1, 30), at));
+        assertEquals(TimeUnit.HOURS.toMillis(24), DailyStats.millisUntil(LocalDateTime.of(2025, 6, 1, 2, 0), at));
+        assertEquals(TimeUnit.HOURS.toMillis(23), DailyStats.millisUntil(LocalDateTime.of(2025, 6, 1, 3, 0), at));
+    }
+
+    private static List<LocalDate> sorted(List<LocalDate> days) {
+        List<LocalDate> copy = new ArrayList<LocalDate>(days);
+        copy.sort(null);
+        return copy;
+    }
+
+    /** Clock that can be moved forward between calls. */
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private static class FakeDAO implements DailyStatsDAO {
+        final Set<LocalDate> aggregated = new HashSet<LocalDate>();
+        final List<LocalDate> calls = new ArrayList<LocalDate>();
+        boolean fail;
+
+        @Override
+        public void aggregateDay(LocalDate day) {
+            if (fail) {
+                throw new IllegalStateException("database unavailable");
+            }
+            calls.add(day);
+            aggregated.add(day);
+        }
+
+        @Override
+        public long countAggregatedDays(ReportRange range) {
+            return getAggregatedDays(range).size();
+        }
+
+        @Override
+        public Set<LocalDate> getAggregatedDays(ReportRange range) {
+            Set<LocalDate> days = new HashSet<LocalDate>();
+            for (LocalDate day : aggregated) {
+                if (range.contains(day)) {
+                    days.add(day);
+                }
+            }
+            return days;
+        }
+
+        @Override
+        public BillingCounts sumBilling(ReportRange range, Integer locationId) {
+            return new BillingCounts(0, 0);
+        }
+
+        @Override
+        public long sumEncounters(ReportRange range, int encounterTypeId, Integer locationId) {
+            return 0;
+        }
+
+        @Override
+        public long sumNewPatients(ReportRange range) {
+            return 0;
+        }
+
+        @Override
+        public List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit) {
+            return new ArrayList<DiagnosisCount>();
+        }
+
+        @Override
+        public Dhims2Counters getDhims2Counters(ReportRange range, Integer locationId) {
+            return new Dhims2Counters();
+        }
+    }
+}
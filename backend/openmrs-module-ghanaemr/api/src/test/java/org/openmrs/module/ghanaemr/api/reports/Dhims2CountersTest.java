@@ -0,0 +1,224 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class Dhims2CountersTest {
+
+    private static final int BILLING = 900;
+    private static final int NHIS = 901;
+    private static final int CASH = 902;
+    private static final int NOTES = 950;
+    private static final int MALARIA = 10;
+    private static final int HYPERTENSION = 11;
+    private static final int URTI = 12;
+    private static final int DIAGNOSIS_SET = 700;
+    private static final int TEMPERATURE = 5088;
+
+    private static final YearMonth JUNE = YearMonth.of(2025, 6);
+
+    @Test
+    public void ageBands_followTheDhims2Boundaries() {
+        LocalDate visit = LocalDate.of(2025, 6, 15);
+
+        assertEquals(AgeBand.DAYS_0_28, AgeBand.of(visit.minusDays(28), visit));
+        assertEquals(AgeBand.MONTHS_1_11, AgeBand.of(visit.minusDays(29), visit));
+        assertEquals(AgeBand.MONTHS_1_11, AgeBand.of(visit.minusYears(1).plusDays(1), visit));
+        assertEquals(AgeBand.YEARS_1_4, AgeBand.of(visit.minusYears(1), visit));
+        assertEquals(AgeBand.YEARS_15_17, AgeBand.of(visit.minusYears(17), visit));
+        assertEquals(AgeBand.YEARS_18_19, AgeBand.of(visit.minusYears(18), visit));
+        assertEquals(AgeBand.YEARS_20_34, AgeBand.of(visit.minusYears(35).plusDays(1), visit));
+        assertEquals(AgeBand.YEARS_70_PLUS, AgeBand.of(visit.minusYears(92), visit));
+        assertEquals(AgeBand.UNKNOWN, AgeBand.of(null, visit));
+        assertEquals(AgeBand.UNKNOWN, AgeBand.of(visit.plusDays(1), visit));
+        assertEquals(AgeBand.UNKNOWN, AgeBand.resolve("YEARS_200_PLUS"));
+    }
+
+    @Test
+    public void assembler_countsEachVisitOnceWithItsPaymentAndDistinctDiagnoses() {
+        LocalDate day = LocalDate.of(2025, 6, 2);
+        Visit coded = new Visit(1, 1, day.minusYears(30), "F", day)
+                .obs(BILLING, NHIS, null, null)
+                .obs(DIAGNOSIS_SET, MALARIA, null, MALARIA)
+                .obs(MALARIA, null, null, MALARIA)
+                .obs(TEMPERATURE, null, null, null);
+        Visit notes = new Visit(2, 1, day.minusYears(3), "m", day)
+                .obs(NOTES, null, "Fever.\nBilling: Cash", null)
+                .obs(URTI, null, null, URTI);
+        Visit bare = new Visit(3, 0, null, null, day);
+
+        Dhims2Counters counters = new Dhims2Counters();
+        Dhims2Assembler assembler = new Dhims2Assembler(counters, BILLING, NHIS, CASH);
+        feed(assembler, Arrays.asList(coded, notes, bare));
+
+        assertEquals(3, assembler.getEncounters());
+        Dhims2Counters expected = new Dhims2Counters();
+        expected.addAttendance(1, AgeBand.YEARS_20_34, "F", Dhims2Counters.Payment.NHIS, 1);
+        expected.addMorbidity(1, MALARIA, AgeBand.YEARS_20_34, "F", 1);
+        expected.addAttendance(1, AgeBand.YEARS_1_4, "M", Dhims2Counters.Payment.CASH, 1);
+        expected.addMorbidity(1, URTI, AgeBand.YEARS_1_4, "M", 1);
+        expected.addAttendance(0, AgeBand.UNKNOWN, "U", Dhims2Counters.Payment.UNKNOWN, 1);
+        assertEquals(expected, counters);
+    }
+
+    /**
+     * The daily counters are rebuilt a day at a time as consultations are saved and edited; their
+     * sum for the month must equal one recount over the month's final rows.
+     */
+    @Test
+    public void dailyCountersSummedOverTheMonth_matchAFullScan() {
+        Random random = new Random(20250601L);
+        Map<LocalDate, List<Visit>> visitsByDay = new TreeMap<LocalDate, List<Visit>>();
+        Map<LocalDate, Dhims2Counters> dailyTable = new HashMap<LocalDate, Dhims2Counters>();
+        int encounterId = 0;
+        for (int d = 1; d <= JUNE.lengthOfMonth(); d++) {
+            LocalDate day = JUNE.atDay(d);
+            List<Visit> visits = new ArrayList<Visit>();
+            for (int i = 0; i < 40 + random.nextInt(40); i++) {
+                visits.add(randomVisit(random, ++encounterId, day));
+            }
+            visitsByDay.put(day, visits);
+            dailyTable.put(day, aggregate(visits));
+        }
+
+        // edits after the day was first aggregated: a void, a late diagnosis, a corrected payment,
+        // a new visit; each marks its day dirty and only that day is rebuilt
+        visitsByDay.get(JUNE.atDay(3)).remove(5);
+        visitsByDay.get(JUNE.atDay(7)).get(0).obs(HYPERTENSION, null, null, HYPERTENSION);
+        visitsByDay.get(JUNE.atDay(7)).get(1).obs(BILLING, CASH, null, null);
+        visitsByDay.get(JUNE.atDay(30)).add(randomVisit(random, ++encounterId, JUNE.atDay(30)));
+        for (int d : new int[] {3, 7, 30}) {
+            dailyTable.put(JUNE.atDay(d), aggregate(visitsByDay.get(JUNE.atDay(d))));
+        }
+
+        Dhims2Counters fromDays = new Dhims2Counters();
+        for (Dhims2Counters day : dailyTable.values()) {
+            fromDays.merge(day);
+        }
+
+        List<Visit> month = new ArrayList<Visit>();
+        for (List<Visit> visits : visitsByDay.values()) {
+            month.addAll(visits);
+        }
+        Dhims2Counters fullScan = aggregate(month);
+
+        assertEquals(fullScan, fromDays);
+        Map<Integer, String> names = Collections.emptyMap();
+        List<Integer> top = Dhims2MonthlyReport.topMorbidities(fromDays, 2);
+        assertEquals(Dhims2MonthlyReport.topMorbidities(fullScan, 2), top);
+        assertEquals(new Dhims2MonthlyReport(JUNE, fullScan, top, names, names).toMap(),
+                new Dhims2MonthlyReport(JUNE, fromDays, top, names, names).toMap());
+        assertEquals(month.size(), new Dhims2MonthlyReport(JUNE, fromDays, top, names, names).getTotalAttendance());
+    }
+
+    @Test
+    public void monthlyReport_ranksMorbiditiesAndWritesOneRowPerBand() throws Exception {
+        Dhims2Counters counters = new Dhims2Counters();
+        counters.addAttendance(1, AgeBand.YEARS_20_34, "F", Dhims2Counters.Payment.NHIS, 7);
+        counters.addAttendance(2, AgeBand.YEARS_20_34, "M", Dhims2Counters.Payment.CASH, 3);
+        counters.addAttendance(1, AgeBand.YEARS_1_4, "F", Dhims2Counters.Payment.UNKNOWN, 2);
+        counters.addMorbidity(1, MALARIA, AgeBand.YEARS_20_34, "F", 4);
+        counters.addMorbidity(2, MALARIA, AgeBand.YEARS_20_34, "M", 1);
+        counters.addMorbidity(1, URTI, AgeBand.YEARS_1_4, "F", 5);
+        counters.addMorbidity(1, HYPERTENSION, AgeBand.YEARS_20_34, "F", 2);
+
+        List<Integer> top = Dhims2MonthlyReport.topMorbidities(counters, 2);
+        assertEquals(Arrays.asList(MALARIA, URTI), top);
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        names.put(MALARIA, "Malaria, uncomplicated");
+        Map<Integer, String> codes = new HashMap<Integer, String>();
+        codes.put(MALARIA, "B54");
+        codes.put(URTI, "J06.9");
+        Dhims2MonthlyReport report = new Dhims2MonthlyReport(JUNE, counters, top, names, codes);
+
+        assertEquals(12, report.getTotalAttendance());
+        assertArrayEquals(new long[] {3, 7, 0}, report.getAttendance(AgeBand.YEARS_20_34));
+        assertEquals(7, report.getVisits(Dhims2Counters.Payment.NHIS));
+        assertEquals(3, report.getVisits(Dhims2Counters.Payment.CASH));
+        assertEquals(5, report.getMorbidities().get(0).getTotal());
+        assertArrayEquals(new long[] {1, 4, 0}, report.getMorbidities().get(0).getCases(AgeBand.YEARS_20_34));
+
+        StringWriter csv = new StringWriter();
+        report.writeCsv(csv);
+        List<String> lines = Arrays.asList(csv.toString().split("\n"));
+        assertEquals("section,item,icd10,ageBand,male,female,unknown,total", lines.get(0));
+        assertTrue(lines.contains("attendance,OPD attendance,,20-34,3,7,0,10"));
+        assertTrue(lines.contains("payment,Insured (NHIS),,,,,,7"));
+        assertTrue(lines.contains("morbidity,\"Malaria, uncomplicated\",B54,20-34,1,4,0,5"));
+        assertTrue(lines.contains("morbidity,12,J06.9,1-4,0,5,0,5"));
+        assertEquals(1 + AgeBand.values().length + 3 + 2, lines.size());
+    }
+
+    private static Dhims2Counters aggregate(List<Visit> visits) {
+        Dhims2Counters counters = new Dhims2Counters();
+        feed(new Dhims2Assembler(counters, BILLING, NHIS, CASH), visits);
+        return counters;
+    }
+
+    /** Rows as the joined query returns them: one per obs, or one with no obs. */
+    private static void feed(Dhims2Assembler assembler, List<Visit> visits) {
+        for (Visit v : visits) {
+            if (v.obs.isEmpty()) {
+                assembler.encounter(v.encounterId, v.locationId, v.birthdate, v.gender, v.day);
+            }
+            for (Object[] o : v.obs) {
+                assembler.encounter(v.encounterId, v.locationId, v.birthdate, v.gender, v.day);
+                assembler.obs((Integer) o[0], (Integer) o[1], (String) o[2], (Integer) o[3]);
+            }
+        }
+        assembler.finish();
+    }
+
+    private static Visit randomVisit(Random random, int encounterId, LocalDate day) {
+        LocalDate birthdate = random.nextInt(50) == 0 ? null : day.minusDays(random.nextInt(90 * 365));
+        String gender = random.nextInt(40) == 0 ? null : random.nextBoolean() ? "M" : "F";
+        Visit visit = new Visit(encounterId, 1 + random.nextInt(3), birthdate, gender, day);
+        int payment = random.nextInt(10);
+        if (payment < 6) {
+            visit.obs(BILLING, NHIS, null, null);
+        } else if (payment < 8) {
+            visit.obs(NOTES, null, "Billing: Cash", null);
+        }
+        int diagnoses = random.nextInt(3);
+        for (int i = 0; i < diagnoses; i++) {
+            int concept = MALARIA + random.nextInt(3);
+            visit.obs(concept, null, null, concept);
+        }
+        return visit;
+    }
+
+    private static final class Visit {
+        final int encounterId;
+        final int locationId;
+        final LocalDate birthdate;
+        final String gender;
+        final LocalDate day;
+        final List<Object[]> obs = new ArrayList<Object[]>();
+
+        Visit(int encounterId, int locationId, LocalDate birthdate, String gender, LocalDate day) {
+            this.encounterId = encounterId;
+            this.locationId = locationId;
+            this.birthdate = birthdate;
+            this.gender = gender;
+            this.day = day;
+        }
+
+        Visit obs(Integer conceptId, Integer valueCoded, String valueText, Integer diagnosisConceptId) {
+            obs.add(new Object[] {conceptId, valueCoded, valueText, diagnosisConceptId});
+            return this;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times single-pass assembly of the busy OPD day of {@link OpdRegisterAssemblerTest} (800 encounters
+ * x 20 obs). Surefire only picks up *Test classes, so this is not part of the default test phase.
+ * Run it with {@code mvn -pl api test -Dmaven.test.skip=false -Dtest=OpdRegisterAssemblerBenchmark}.
+ */
+public class OpdRegisterAssemblerBenchmark {
+
+    @Test
+    public void busyDay_singlePassAssembly() {
+        final int encounters = 800;
+        final int rounds = 50;
+        OpdRegisterAssemblerTest fixture = new OpdRegisterAssemblerTest();
+        fixture.setUp();
+        for (int warm = 0; warm < rounds; warm++) {
+            fixture.rows.clear();
+            OpdRegisterAssemblerTest.busyDay(fixture.assembler(fixture.icd10), encounters);
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            fixture.rows.clear();
+            OpdRegisterAssemblerTest.busyDay(fixture.assembler(fixture.icd10), encounters);
+        }
+        double microsPerDay = (System.nanoTime() - start) / 1000.0 / rounds;
+
+        assertEquals(encounters, fixture.rows.size());
+        System.out.println(String.format("OPD register assembly: %d encounters x 20 obs in %.0f us/day (%.0f ns/encounter)",
+                encounters, microsPerDay, microsPerDay * 1000 / encounters));
+    }
+}
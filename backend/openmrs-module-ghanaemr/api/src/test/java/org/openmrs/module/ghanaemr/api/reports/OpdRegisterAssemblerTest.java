@@ -0,0 +1,173 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.fhir.db.ConceptIcd10DAO;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OpdRegisterAssemblerTest {
+
+    private static final Timestamp AT = Timestamp.valueOf("2025-06-15 09:30:00");
+
+    private static final int BILLING = 100;
+    private static final int NHIS = 101;
+    private static final int CASH = 102;
+    private static final int MALARIA = 200;
+    private static final int TYPHOID = 201;
+    private static final int VISIT_DIAGNOSIS = 300;
+    private static final int TEMPERATURE = 400;
+    private static final int NOTES = 500;
+
+    final List<OpdRegisterEntry> rows = new ArrayList<OpdRegisterEntry>();
+    ConceptIcd10Map icd10;
+
+    @Before
+    public void setUp() {
+        icd10 = new ConceptIcd10Map();
+        icd10.setDao(new ConceptIcd10DAO() {
+            @Override
+            public Map<Integer, String> getIcd10Codes(Collection<Integer> conceptIds) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void scanIcd10Codes(ConceptIcd10Map.Sink sink) {
+                sink.code(MALARIA, "B54");
+                sink.code(TYPHOID, "A01.0");
+            }
+        });
+        icd10.rebuild();
+    }
+
+    @Test
+    public void codedObs_giveBillingAndDiagnosesWithoutNotes() {
+        OpdRegisterAssembler assembler = assembler(icd10);
+
+        assembler.encounter(1, "e-1", AT, "p-1", "Kwame", "Mensah");
+        assembler.obs(TEMPERATURE, null, null, "Temperature", null);
+        assembler.obs(BILLING, NHIS, null, "Billing type", "NHIS");
+        assembler.obs(MALARIA, null, null, "Malaria", null);
+        assembler.obs(VISIT_DIAGNOSIS, TYPHOID, null, "Visit diagnosis", "Typhoid fever");
+        assembler.obs(MALARIA, null, null, "Malaria", null);
+        assembler.obs(NOTES, null, "Billing: Cash\nDiagnoses: Ignored", "Notes", null);
+        assembler.finish();
+
+        assertEquals(1, rows.size());
+        OpdRegisterEntry row = rows.get(0);
+        assertEquals("e-1", row.getEncounterUuid());
+        assertEquals("Kwame", row.getGivenName());
+        assertEquals("NHIS", row.getBilling());
+        assertEquals("Malaria, Typhoid fever", row.getDiagnoses());
+        assertEquals(1, assembler.getCodedBilling());
+        assertEquals(1, assembler.getCodedDiagnoses());
+    }
+
+    @Test
+    public void freeTextMarkersAreTheFallback() {
+        OpdRegisterAssembler assembler = assembler(icd10);
+
+        assembler.encounter(1, "e-1", AT, "p-1", "Ama", "Owusu");
+        assembler.obs(NOTES, null, "Chief complaint: cough", "Notes", null);
+        assembler.obs(NOTES, null, "Billing: Cash\nDiagnoses: URTI, Asthma\nPlan: review", "Notes", null);
+        assembler.obs(NOTES, null, "Chief complaint: cough", "Notes", null);
+        assembler.encounter(2, "e-2", AT, "p-2", "Yaw", "Boateng");
+        assembler.obs(BILLING, CASH, null, "Billing type", "Cash");
+        assembler.obs(NOTES, null, "Diagnoses: Hypertension", "Notes", null);
+        assembler.finish();
+
+        assertEquals(2, rows.size());
+        assertEquals("Cash", rows.get(0).getBilling());
+        assertEquals("URTI, Asthma", rows.get(0).getDiagnoses());
+        assertEquals("Cash", rows.get(1).getBilling());
+        assertEquals("Hypertension", rows.get(1).getDiagnoses());
+        assertEquals(1, assembler.getCodedBilling());
+        assertEquals(0, assembler.getCodedDiagnoses());
+    }
+
+    @Test
+    public void withoutIcd10MapDiagnosesComeFromNotesOnly() {
+        ConceptIcd10Map notBuilt = new ConceptIcd10Map();
+        OpdRegisterAssembler assembler = assembler(notBuilt);
+
+        assembler.encounter(1, "e-1", AT, "p-1", "Kofi", "Asante");
+        assembler.obs(MALARIA, null, null, "Malaria", null);
+        assembler.finish();
+
+        assertNull(rows.get(0).getDiagnoses());
+        assertNull(rows.get(0).getBilling());
+    }
+
+    @Test
+    public void repeatedRowsForOneEncounterYieldOneEntryAndEncountersWithoutObsAreKept() {
+        OpdRegisterAssembler assembler = assembler(icd10);
+
+        assembler.encounter(1, "e-1", AT, "p-1", "Esi", "Adjei");
+        assembler.encounter(2, "e-2", AT, "p-2", "Kojo", "Darko");
+        assembler.obs(MALARIA, null, null, "Malaria", null);
+        assembler.encounter(2, "e-2", AT, "p-2", "Kojo", "Darko");
+        assembler.obs(TYPHOID, null, null, null, null);
+        assembler.encounter(3, "e-3", AT, "p-3", "Abena", "Osei");
+        assembler.finish();
+        assembler.finish();
+
+        assertEquals(3, rows.size());
+        assertNull(rows.get(0).getDiagnoses());
+        assertEquals("Malaria, " + TYPHOID, rows.get(1).getDiagnoses());
+        assertEquals("e-3", rows.get(2).getEncounterUuid());
+        assertEquals(3, assembler.getEncounters());
+    }
+
+    /**
+     * A busy facility's OPD day: 800 encounters with 20 obs each (vitals, a billing obs, two coded
+     * diagnoses and a notes obs), assembled from the joined result in one pass.
+     */
+    @Test
+    public void busyDay_singlePassAssembly() {
+        final int encounters = 800;
+        OpdRegisterAssembler assembler = assembler(icd10);
+        busyDay(assembler, encounters);
+
+        assertEquals(encounters, rows.size());
+        assertEquals(encounters, assembler.getCodedBilling());
+        assertEquals("Malaria, Typhoid fever", rows.get(0).getDiagnoses());
+        assertEquals("Malaria, Typhoid fever", rows.get(encounters - 1).getDiagnoses());
+    }
+
+    static void busyDay(OpdRegisterAssembler assembler, int encounters) {
+        for (int e = 1; e <= encounters; e++) {
+            for (int o = 0; o < 20; o++) {
+                assembler.encounter(e, "e-" + e, AT, "p-" + e, "Akosua", "Addo");
+                if (o == 0) {
+                    assembler.obs(BILLING, e % 3 == 0 ? CASH : NHIS, null, "Billing type", "NHIS");
+                } else if (o == 1) {
+                    assembler.obs(MALARIA, null, null, "Malaria", null);
+                } else if (o == 2) {
+                    assembler.obs(VISIT_DIAGNOSIS, TYPHOID, null, "Visit diagnosis", "Typhoid fever");
+                } else if (o == 3) {
+                    assembler.obs(NOTES, null, "Chief complaint: fever for 3 days", "Notes", null);
+                } else {
+                    assembler.obs(TEMPERATURE + o, null, null, "Vital " + o, null);
+                }
+            }
+        }
+        assembler.finish();
+    }
+
+    OpdRegisterAssembler assembler(ConceptIcd10Map map) {
+        return new OpdRegisterAssembler(new ReportsService.OpdRegisterSink() {
+            @Override
+            public void entry(OpdRegisterEntry entry) {
+                rows.add(entry);
+            }
+        }, BILLING, NHIS, CASH, map);
+    }
+}
@@ -0,0 +1,139 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+
+public class OpdRegisterWriterTest {
+
+    private static final Timestamp AT = Timestamp.valueOf("2025-06-15 09:30:00");
+
+    @Test
+    public void csv_writesHeaderMaskedNamesAndQuotedFields() throws IOException {
+        StringWriter out = new StringWriter();
+        OpdRegisterWriter writer = new OpdRegisterWriter(out, OpdRegisterWriter.Format.CSV);
+
+        writer.start();
+        writer.entry(new OpdRegisterEntry("e-1", AT, "p-1", "Kwame", "Mensah", "NHIS", "Malaria, Typhoid"));
+        writer.entry(new OpdRegisterEntry("e-2", AT, "p-2", null, "", null, null));
+        writer.finish();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(OpdRegisterWriter.CSV_HEADER.trim(), lines[0]);
+        assertEquals("e-1,2025-06-15 09:30:00.0,p-1,K***,M***,NHIS,\"Malaria, Typhoid\"", lines[1]);
+        assertEquals("e-2,2025-06-15 09:30:00.0,p-2,,,,", lines[2]);
+        assertEquals(2, writer.getRows());
+    }
+
+    @Test
+    public void ndjson_writesOneObjectPerLine() throws IOException {
+        StringWriter out = new StringWriter();
+        OpdRegisterWriter writer = new OpdRegisterWriter(out, OpdRegisterWriter.Format.NDJSON);
+
+        writer.start();
+        writer.entry(new OpdRegisterEntry("e-1", AT, "p-1", "Ama", "Owusu", "Cash", null));
+        writer.entry(new OpdRegisterEntry("e-2", null, "p-2", "Yaw", "Boateng", null, "\"Acute\" URTI"));
+        writer.finish();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines[0]);
+        assertEquals("e-1", first.get("encounterUuid").asText());
+        assertEquals(AT.getTime(), first.get("datetime").asLong());
+        assertEquals("A***", first.get("givenName").asText());
+        assertEquals("Cash", first.get("billing").asText());
+        assertFalse(first.has("diagnoses"));
+        JsonNode second = mapper.readTree(lines[1]);
+        assertTrue(second.get("datetime").isNull());
+        assertEquals("\"Acute\" URTI", second.get("diagnoses").asText());
+        assertTrue(out.toString().endsWith("\n"));
+    }
+
+    @Test
+    public void format_resolvesStreamingFormatsOnly() {
+        assertEquals(OpdRegisterWriter.Format.CSV, OpdRegisterWriter.Format.resolve("csv"));
+        assertEquals(OpdRegisterWriter.Format.NDJSON, OpdRegisterWriter.Format.resolve(" NDJSON "));
+        assertEquals(OpdRegisterWriter.Format.NDJSON, OpdRegisterWriter.Format.resolve("jsonl"));
+        assertNull(OpdRegisterWriter.Format.resolve("json"));
+        assertNull(OpdRegisterWriter.Format.resolve(null));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void entry_clientDisconnectSurfacesAsUncheckedIOException() throws IOException {
+        OpdRegisterWriter writer = new OpdRegisterWriter(new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, OpdRegisterWriter.Format.CSV);
+
+        writer.entry(new OpdRegisterEntry("e-1", AT, "p-1", "Kofi", "Asante", null, null));
+    }
+
+    /**
+     * A million-row export through the writer into a discarding sink: retained heap should not
+     * grow with the number of rows.
+     */
+    @Test
+    public void millionRows_heapStaysFlat() throws IOException {
+        final int rows = 1000000;
+        CountingWriter out = new CountingWriter();
+        OpdRegisterWriter writer = new OpdRegisterWriter(out, OpdRegisterWriter.Format.NDJSON);
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long before = rt.totalMemory() - rt.freeMemory();
+
+        writer.start();
+        for (int i = 0; i < rows; i++) {
+            writer.entry(new OpdRegisterEntry("enc-" + i, AT, "pat-" + i, "Akosua", "Addo", "NHIS", "Malaria"));
+        }
+        writer.finish();
+        System.gc();
+        long after = rt.totalMemory() - rt.freeMemory();
+
+        assertEquals(rows, writer.getRows());
+        assertTrue(out.chars > rows);
+        long retainedKb = Math.max(0, after - before) / 1024;
+        assertTrue("retained " + retainedKb + " KB", retainedKb < 16 * 1024);
+    }
+
+    private static class CountingWriter extends Writer {
+        long chars;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            chars += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            chars += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReportCacheTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 15);
+    private static final ReportRange TODAY_RANGE = ReportRange.ofDay(TODAY);
+    private static final ReportRange MAY = ReportRange.of(LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31));
+
+    private MutableClock clock;
+    private ReportCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(TODAY.atTime(10, 0).toInstant(ZoneOffset.UTC));
+        cache = new ReportCache();
+        cache.setClock(clock);
+        cache.setTodayTtlSeconds(30);
+        cache.setPastTtlSeconds(3600);
+    }
+
+    @Test
+    public void todayExpiresOnTheShortTtl_pastPeriodsOnTheLongOne() throws Exception {
+        ReportCache.Key today = ReportCache.key("billing-counts", TODAY_RANGE, null, ReportCache.Topic.BILLING);
+        ReportCache.Key may = ReportCache.key("billing-counts", MAY, null, ReportCache.Topic.BILLING);
+
+        assertEquals(1, load(today));
+        assertEquals(2, load(may));
+        clock.advance(20);
+        assertEquals(1, load(today));
+        clock.advance(20);
+        assertEquals(3, load(today));
+        assertEquals(2, load(may));
+        clock.advance(3600);
+        assertEquals(4, load(may));
+        assertEquals(2L, cache.getStats().get("expirations"));
+    }
+
+    @Test
+    public void rollingWindowsUseTheShortTtl() throws Exception {
+        ReportCache.Key nhie = ReportCache.key("nhie-metrics", null, null, ReportCache.Topic.NHIE_LOG);
+
+        assertEquals(1, load(nhie));
+        clock.advance(31);
+        assertEquals(2, load(nhie));
+    }
+
+    @Test
+    public void invalidate_dropsOnlyEntriesOfTheTopicDayAndLocation() throws Exception {
+        ReportCache.Key billingLoc1 = ReportCache.key("billing-counts", TODAY_RANGE, 1, ReportCache.Topic.BILLING);
+        ReportCache.Key billingLoc2 = ReportCache.key("billing-counts", TODAY_RANGE, 2, ReportCache.Topic.BILLING);
+        ReportCache.Key billingAll = ReportCache.key("billing-counts", TODAY_RANGE, null, ReportCache.Topic.BILLING);
+        ReportCache.Key billingMay = ReportCache.key("billing-counts", MAY, null, ReportCache.Topic.BILLING);
+        ReportCache.Key diagnoses = ReportCache.key("top-diagnoses?limit=10", TODAY_RANGE, null,
+                ReportCache.Topic.DIAGNOSES);
+        load(billingLoc1);
+        load(billingLoc2);
+        load(billingAll);
+        load(billingMay);
+        load(diagnoses);
+
+        cache.invalidate(ReportCache.Topic.BILLING, TODAY, 1);
+
+        assertEquals(2L, cache.getStats().get("invalidations"));
+        assertEquals(6, load(billingLoc1));
+        assertEquals(7, load(billingAll));
+        assertEquals(2, load(billingLoc2));
+        assertEquals(4, load(billingMay));
+        assertEquals(5, load(diagnoses));
+
+        // a back-dated change reaches the closed period; no location matches every location
+        cache.invalidate(ReportCache.Topic.BILLING, LocalDate.of(2025, 5, 20), null);
+        assertEquals(8, load(billingMay));
+        assertEquals(2, load(billingLoc2));
+    }
+
+    @Test
+    public void concurrentMisses_shareOneLoad() throws Exception {
+        final ReportCache.Key key = ReportCache.key("billing-counts", TODAY_RANGE, null, ReportCache.Topic.BILLING);
+        final CountDownLatch release = new CountDownLatch(1);
+        final int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return cache.get(key, () -> {
+                            release.await(5, TimeUnit.SECONDS);
+                            return loads.incrementAndGet();
+                        });
+                    }
+                }));
+            }
+            while ((Integer) cache.getStats().get("inFlight") == 0
+                    || (Long) cache.getStats().get("misses") < callers) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<Integer> f : results) {
+                assertEquals(Integer.valueOf(1), f.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals((long) callers - 1, cache.getStats().get("sharedLoads"));
+        assertEquals(1, cache.getStats().get("entries"));
+    }
+
+    @Test
+    public void loadOverlappedByAnInvalidation_isReturnedButNotCached() throws Exception {
+        ReportCache.Key key = ReportCache.key("billing-counts", TODAY_RANGE, null, ReportCache.Topic.BILLING);
+
+        int first = cache.get(key, () -> {
+            cache.invalidate(ReportCache.Topic.BILLING, TODAY, 3);
+            return loads.incrementAndGet();
+        });
+
+        assertEquals(1, first);
+        assertEquals(0, cache.getStats().get("entries"));
+        assertEquals(2, load(key));
+    }
+
+    @Test
+    public void failedLoads_areNotCached() throws Exception {
+        ReportCache.Key key = ReportCache.key("nhie-metrics", null, null, ReportCache.Topic.NHIE_LOG);
+        try {
+            cache.get(key, () -> {
+                throw new IllegalStateException("database unavailable");
+            });
+            fail("expected the loader failure");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, load(key));
+        assertEquals(0, cache.getStats().get("inFlight"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        cache.setMaxEntries(2);
+        ReportCache.Key a = ReportCache.key("a", MAY, null, ReportCache.Topic.BILLING);
+        ReportCache.Key b = ReportCache.key("b", MAY, null, ReportCache.Topic.BILLING);
+        ReportCache.Key c = ReportCache.key("c", MAY, null, ReportCache.Topic.BILLING);
+        load(a);
+        load(b);
+        load(a);
+        load(c);
+
+        assertEquals(1, load(a));
+        assertEquals(4, load(b));
+        assertEquals(2L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void disabled_alwaysLoads() throws Exception {
+        cache.setEnabled(false);
+        ReportCache.Key key = ReportCache.key("billing-counts", MAY, null, ReportCache.Topic.BILLING);
+
+        assertEquals(1, load(key));
+        assertEquals(2, load(key));
+        assertEquals(0, cache.getStats().get("entries"));
+    }
+
+    private int load(ReportCache.Key key) throws Exception {
+        return cache.get(key, loads::incrementAndGet);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(long seconds) {
+            now = now.plusSeconds(seconds);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
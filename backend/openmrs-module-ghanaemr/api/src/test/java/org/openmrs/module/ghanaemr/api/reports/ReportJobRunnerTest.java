@@ -0,0 +1,354 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.reports.db.ReportJobDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReportJobRunnerTest {
+
+    private static final LocalDate APRIL_1 = LocalDate.of(2025, 4, 1);
+    private static final LocalDate JUNE_30 = LocalDate.of(2025, 6, 30);
+
+    private File directory;
+    private FakeDAO dao;
+    private FakeReports reports;
+    private ReportJobRunner runner;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("report-jobs").toFile();
+        dao = new FakeDAO();
+        reports = new FakeReports();
+        runner = new ReportJobRunner() {
+            @Override
+            protected Runnable bind(Runnable task) {
+                return task;
+            }
+        };
+        runner.setDao(dao);
+        runner.setReportsService(reports);
+        runner.setDirectory(directory);
+    }
+
+    @After
+    public void tearDown() {
+        reports.release.countDown();
+        runner.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void revenueJob_writesResultFileAndRecordsTiming() throws Exception {
+        reports.release.countDown();
+
+        ReportJob job = awaitFinished(runner.submit(job(ReportJob.Type.REVENUE, ReportJob.Format.CSV), 1));
+
+        assertEquals(ReportJob.Status.COMPLETED, job.getStatus());
+        ReportJob stored = dao.jobs.get(job.getUuid());
+        assertEquals(ReportJob.Status.COMPLETED, stored.getStatus());
+        assertEquals(1, stored.getRows());
+        assertNotNull(stored.getDurationMs());
+        assertNotNull(stored.getStartedAt());
+        File file = runner.getResultFile(stored);
+        assertNotNull(file);
+        assertEquals("from,to,nhis,cash\n2025-04-01,2025-06-30,120,45\n",
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1L, runner.getStats().get("completed"));
+    }
+
+    @Test
+    public void identicalSubmitWhileRunning_returnsTheSameJob() throws Exception {
+        ReportJob first = runner.submit(job(ReportJob.Type.TOP_DIAGNOSES, ReportJob.Format.JSON), 1);
+        ReportJob second = runner.submit(job(ReportJob.Type.TOP_DIAGNOSES, ReportJob.Format.JSON), 2);
+        ReportJob csv = runner.submit(job(ReportJob.Type.TOP_DIAGNOSES, ReportJob.Format.CSV), 2);
+
+        assertSame(first, second);
+        assertNotSame(first, csv);
+        assertEquals(2, dao.jobs.size());
+        assertEquals(1L, runner.getStats().get("deduplicated"));
+
+        reports.release.countDown();
+        awaitFinished(first);
+        awaitFinished(csv);
+        String json = new String(Files.readAllBytes(runner.getResultFile(first).toPath()), StandardCharsets.UTF_8);
+        assertTrue(json, json.startsWith("{\"items\":[{\"conceptId\":5,\"name\":\"Malaria\",\"count\":40"));
+
+        // finished jobs are not joined
+        ReportJob again = runner.submit(job(ReportJob.Type.TOP_DIAGNOSES, ReportJob.Format.JSON), 1);
+        assertNotSame(first, again);
+        awaitFinished(again);
+    }
+
+    @Test
+    public void submitsBeyondTheQueue_areRejectedWithoutAJobRow() throws Exception {
+        runner.setMaxConcurrent(1);
+        runner.setMaxQueued(1);
+        runner.submit(job(ReportJob.Type.REVENUE, ReportJob.Format.CSV), 1);
+        runner.submit(job(ReportJob.Type.REVENUE, ReportJob.Format.JSON), 1);
+
+        try {
+            runner.submit(job(ReportJob.Type.TOP_DIAGNOSES, ReportJob.Format.CSV), 1);
+            fail("expected the third job to be rejected");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(2, dao.jobs.size());
+        assertEquals(1L, runner.getStats().get("rejected"));
+        assertTrue(reports.maxConcurrent <= 1);
+    }
+
+    @Test
+    public void failedJob_isRecordedAndLeavesNoFile() throws Exception {
+        reports.fail = true;
+        reports.release.countDown();
+
+        ReportJob job = awaitFinished(runner.submit(job(ReportJob.Type.OPD_REGISTER, ReportJob.Format.JSON), 1));
+
+        ReportJob stored = dao.jobs.get(job.getUuid());
+        assertEquals(ReportJob.Status.FAILED, stored.getStatus());
+        assertEquals("database unavailable", stored.getErrorMessage());
+        assertNull(runner.getResultFile(stored));
+        assertEquals(0, directory.listFiles().length);
+        assertEquals(1L, runner.getStats().get("failed"));
+    }
+
+    @Test
+    public void opdRegisterJob_streamsRowsToNdjson() throws Exception {
+        reports.release.countDown();
+
+        ReportJob job = awaitFinished(runner.submit(job(ReportJob.Type.OPD_REGISTER, ReportJob.Format.JSON), 1));
+
+        ReportJob stored = dao.jobs.get(job.getUuid());
+        assertEquals(3, stored.getRows());
+        assertTrue(stored.getFilePath().endsWith(".ndjson"));
+        List<String> lines = Files.readAllLines(new File(stored.getFilePath()).toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"encounterUuid\":\"e-0\""));
+    }
+
+    @Test
+    public void start_failsUnfinishedJobsAndDeletesExpiredResults() throws Exception {
+        File old = new File(directory, "old.csv");
+        Files.write(old.toPath(), "x".getBytes(StandardCharsets.UTF_8));
+        dao.expired.add(old.getAbsolutePath());
+        ReportJob running = job(ReportJob.Type.REVENUE, ReportJob.Format.CSV);
+        dao.createJob(running, 1);
+        dao.markRunning(running.getId(), new Date());
+
+        runner.start();
+
+        assertEquals(ReportJob.Status.FAILED, dao.jobs.get(running.getUuid()).getStatus());
+        assertFalse(old.exists());
+    }
+
+    private static ReportJob job(ReportJob.Type type, ReportJob.Format format) {
+        ReportJob job = new ReportJob();
+        job.setType(type);
+        job.setFormat(format);
+        job.setFrom(APRIL_1);
+        job.setTo(JUNE_30);
+        if (type == ReportJob.Type.OPD_REGISTER) {
+            job.setEncounterTypeId(5);
+        }
+        if (type == ReportJob.Type.TOP_DIAGNOSES) {
+            job.setLimit(10);
+        }
+        return job;
+    }
+
+    private static ReportJob awaitFinished(ReportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("job did not finish", job.isFinished());
+        return job;
+    }
+
+    private static class FakeReports implements ReportsService {
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean fail;
+        int running;
+        int maxConcurrent;
+
+        private void enter() {
+            synchronized (this) {
+                running++;
+                maxConcurrent = Math.max(maxConcurrent, running);
+            }
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    running--;
+                }
+            }
+            if (fail) {
+                throw new IllegalStateException("database unavailable");
+            }
+        }
+
+        @Override
+        public Integer getEncounterTypeId(String uuid) {
+            return 5;
+        }
+
+        @Override
+        public Integer getLocationId(String uuid) {
+            return 1;
+        }
+
+        @Override
+        public List<OpdRegisterEntry> getOpdRegister(ReportRange range, int encounterTypeId, Integer locationId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void streamOpdRegister(ReportRange range, int encounterTypeId, Integer locationId, OpdRegisterSink sink) {
+            enter();
+            for (int i = 0; i < 3; i++) {
+                sink.entry(new OpdRegisterEntry("e-" + i, Timestamp.valueOf("2025-04-02 09:00:00"), "p-" + i, "Ama",
+                        "Owusu", "NHIS", "Malaria"));
+            }
+        }
+
+        @Override
+        public BillingCounts countBilling(ReportRange range, Integer locationId) {
+            enter();
+            return new BillingCounts(120, 45);
+        }
+
+        @Override
+        public List<DiagnosisCount> getTopDiagnoses(ReportRange range, int limit) {
+            enter();
+            return Arrays.asList(new DiagnosisCount(5, "Malaria", 40), new DiagnosisCount(7, "Hypertension", 12));
+        }
+
+        @Override
+        public long countEncounters(ReportRange range, int encounterTypeId, Integer locationId) {
+            return 0;
+        }
+
+        @Override
+        public long countNewPatients(ReportRange range) {
+            return 0;
+        }
+
+        @Override
+        public Dhims2MonthlyReport getDhims2Monthly(YearMonth month, Integer locationId, int topMorbidities) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class FakeDAO implements ReportJobDAO {
+        final Map<String, ReportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<String, ReportJob>());
+        final List<String> expired = new ArrayList<String>();
+        private long nextId = 1;
+
+        @Override
+        public synchronized void createJob(ReportJob job, int creatorId) {
+            job.setId(nextId++);
+            job.setUuid(UUID.randomUUID().toString());
+            job.setStatus(ReportJob.Status.QUEUED);
+            job.setDateCreated(new Date());
+            ReportJob stored = new ReportJob();
+            stored.setId(job.getId());
+            stored.setUuid(job.getUuid());
+            stored.setType(job.getType());
+            stored.setFormat(job.getFormat());
+            stored.setStatus(ReportJob.Status.QUEUED);
+            jobs.put(job.getUuid(), stored);
+        }
+
+        @Override
+        public ReportJob getJobByUuid(String uuid) {
+            return jobs.get(uuid);
+        }
+
+        @Override
+        public void markRunning(Long jobId, Date startedAt) {
+            ReportJob job = byId(jobId);
+            job.setStatus(ReportJob.Status.RUNNING);
+            job.setStartedAt(startedAt);
+        }
+
+        @Override
+        public void markCompleted(Long jobId, String filePath, long rows, long durationMs, Date finishedAt) {
+            ReportJob job = byId(jobId);
+            job.setStatus(ReportJob.Status.COMPLETED);
+            job.setFilePath(filePath);
+            job.setRows(rows);
+            job.setDurationMs(durationMs);
+            job.setFinishedAt(finishedAt);
+        }
+
+        @Override
+        public void markFailed(Long jobId, String errorMessage, Long durationMs, Date finishedAt) {
+            ReportJob job = byId(jobId);
+            job.setStatus(ReportJob.Status.FAILED);
+            job.setErrorMessage(errorMessage);
+            job.setDurationMs(durationMs);
+            job.setFinishedAt(finishedAt);
+        }
+
+        @Override
+        public int failUnfinished(String errorMessage) {
+            int n = 0;
+            synchronized (jobs) {
+                for (ReportJob job : jobs.values()) {
+                    if (!job.isFinished()) {
+                        markFailed(job.getId(), errorMessage, null, new Date());
+                        n++;
+                    }
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public List<String> deleteFinishedBefore(Date cutoff) {
+            return expired;
+        }
+
+        private ReportJob byId(Long id) {
+            synchronized (jobs) {
+                for (ReportJob job : jobs.values()) {
+                    if (job.getId().equals(id)) {
+                        return job;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("No job " + id);
+        }
+    }
+}
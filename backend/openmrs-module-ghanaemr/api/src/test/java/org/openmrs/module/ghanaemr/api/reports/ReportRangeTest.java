@@ -0,0 +1,67 @@
+package org.openmrs.module.ghanaemr.api.reports;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class ReportRangeTest {
+
+    @Test
+    public void ofDay_coversMidnightToNextMidnight() {
+        ReportRange range = ReportRange.ofDay(LocalDate.of(2025, 3, 31));
+
+        assertEquals(Timestamp.valueOf("2025-03-31 00:00:00"), range.getStart());
+        assertEquals(Timestamp.valueOf("2025-04-01 00:00:00"), range.getEnd());
+        assertEquals(1, range.getDays());
+    }
+
+    @Test
+    public void parse_endIsExclusiveDayAfterTo() {
+        ReportRange range = ReportRange.parse("2024-02-01", " 2024-02-29 ");
+
+        assertEquals(Timestamp.valueOf("2024-02-01 00:00:00"), range.getStart());
+        assertEquals(Timestamp.valueOf("2024-03-01 00:00:00"), range.getEnd());
+        assertEquals(29, range.getDays());
+        assertTrue(range.contains(LocalDate.of(2024, 2, 29)));
+        assertFalse(range.contains(LocalDate.of(2024, 3, 1)));
+        assertEquals("2024-02-01..2024-02-29", range.toString());
+    }
+
+    @Test
+    public void lastSecondOfDayIsInsideAndNextMidnightIsOutside() {
+        ReportRange range = ReportRange.ofDay(LocalDate.of(2025, 6, 15));
+        Timestamp lastInstant = Timestamp.valueOf("2025-06-15 23:59:59.999999");
+        Timestamp nextMidnight = Timestamp.valueOf("2025-06-16 00:00:00");
+
+        assertFalse(lastInstant.before(range.getStart()));
+        assertTrue(lastInstant.before(range.getEnd()));
+        assertFalse(nextMidnight.before(range.getEnd()));
+    }
+
+    @Test
+    public void equalRangesAreEqual() {
+        assertEquals(ReportRange.parse("2025-01-01", "2025-01-31"),
+                ReportRange.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)));
+        assertEquals(ReportRange.parse("2025-01-01", "2025-01-31").hashCode(),
+                ReportRange.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)).hashCode());
+        assertNotEquals(ReportRange.ofDay(LocalDate.of(2025, 1, 1)), ReportRange.ofDay(LocalDate.of(2025, 1, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsReversedRange() {
+        ReportRange.parse("2025-02-01", "2025-01-31");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsMalformedDate() {
+        ReportRange.parse("2025-01-01' OR '1'='1", "2025-01-31");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseDay_rejectsMissingDate() {
+        ReportRange.parseDay(null);
+    }
+}
@@ -0,0 +1,128 @@
+package org.openmrs.module.ghanaemr.api.reports.db.hibernate;
+
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Assembler;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2Counters;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterAssembler;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The row readers against a stub ResultSet that tracks SQL NULLs the way JDBC drivers do: wasNull
+ * reports on the last column read.
+ */
+public class HibernateReportsDAOTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 6, 2);
+    private static final Timestamp AT = Timestamp.valueOf(DAY.atTime(9, 30));
+    private static final Date BIRTHDATE = Date.valueOf(DAY.minusYears(30));
+
+    @Test
+    public void readDhims2Visits_keepsCodedDiagnosesAndLeavesNotesUndiagnosed() throws Exception {
+        RecordingDhims2Assembler assembler = new RecordingDhims2Assembler();
+
+        HibernateReportsDAO.readDhims2Visits(statement(
+                // coded answer mapped to ICD-10
+                new Object[] {1, 3, BIRTHDATE, "F", AT, 10, 700, 42, null, 42},
+                // free-text notes, not a diagnosis
+                new Object[] {1, 3, BIRTHDATE, "F", AT, 11, 950, null, "Fever for 3 days", null},
+                // ICD-10 mapped concept without a value
+                new Object[] {1, 3, BIRTHDATE, "F", AT, 12, 43, null, null, 43},
+                // encounter without obs
+                new Object[] {2, 0, null, "M", AT, null, null, null, null, null}),
+                ReportRange.ofDay(DAY), null, assembler);
+
+        assertEquals(Arrays.asList("700:42:null:42", "950:null:Fever for 3 days:null", "43:null:null:43"),
+                assembler.obs);
+        assertEquals(2, assembler.getEncounters());
+    }
+
+    @Test
+    public void readOpdRegister_passesValueLessObsWithoutACodedAnswer() throws Exception {
+        RecordingOpdRegisterAssembler assembler = new RecordingOpdRegisterAssembler();
+
+        HibernateReportsDAO.readOpdRegister(statement(
+                new Object[] {1, "e-1", AT, "p-1", "Akosua", "Addo", 10, 700, 42, null, "Diagnosis", "Malaria"},
+                new Object[] {1, "e-1", AT, "p-1", "Akosua", "Addo", 11, 43, null, null, "Typhoid fever", null},
+                new Object[] {1, "e-1", AT, "p-1", "Akosua", "Addo", 12, 950, null, "Fever", "Notes", null},
+                new Object[] {2, "e-2", AT, "p-2", "Kofi", "Asante", null, null, null, null, null, null}),
+                ReportRange.ofDay(DAY), 5, null, assembler);
+
+        assertEquals(Arrays.asList("700:42:null", "43:null:null", "950:null:Fever"), assembler.obs);
+        assertEquals(2, assembler.getEncounters());
+    }
+
+    private static final class RecordingOpdRegisterAssembler extends OpdRegisterAssembler {
+        final List<String> obs = new ArrayList<String>();
+
+        RecordingOpdRegisterAssembler() {
+            super(entry -> { }, null, null, null, null);
+        }
+
+        @Override
+        public void obs(int conceptId, Integer valueCoded, String valueText, String conceptName, String answerName) {
+            obs.add(conceptId + ":" + valueCoded + ":" + valueText);
+            super.obs(conceptId, valueCoded, valueText, conceptName, answerName);
+        }
+    }
+
+    private static final class RecordingDhims2Assembler extends Dhims2Assembler {
+        final List<String> obs = new ArrayList<String>();
+
+        RecordingDhims2Assembler() {
+            super(new Dhims2Counters(), null, null, null);
+        }
+
+        @Override
+        public void obs(int conceptId, Integer valueCoded, String valueText, Integer diagnosisConceptId) {
+            obs.add(conceptId + ":" + valueCoded + ":" + valueText + ":" + diagnosisConceptId);
+            super.obs(conceptId, valueCoded, valueText, diagnosisConceptId);
+        }
+    }
+
+    /** A statement whose query returns the given rows; parameters are ignored. */
+    private static PreparedStatement statement(Object[]... rows) {
+        final ResultSet rs = resultSet(Arrays.asList(rows));
+        return (PreparedStatement) Proxy.newProxyInstance(HibernateReportsDAOTest.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    if ("executeQuery".equals(method.getName())) {
+                        return rs;
+                    }
+                    return method.getReturnType() == boolean.class ? false : null;
+                });
+    }
+
+    private static ResultSet resultSet(final List<Object[]> rows) {
+        final int[] row = {-1};
+        final boolean[] lastNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(HibernateReportsDAOTest.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++row[0] < rows.size();
+                        case "wasNull":
+                            return lastNull[0];
+                        case "close":
+                            return null;
+                        default:
+                            Object value = rows.get(row[0])[(Integer) args[0] - 1];
+                            lastNull[0] = value == null;
+                            if (method.getReturnType() == int.class) {
+                                return value == null ? 0 : value;
+                            }
+                            return value;
+                    }
+                });
+    }
+}
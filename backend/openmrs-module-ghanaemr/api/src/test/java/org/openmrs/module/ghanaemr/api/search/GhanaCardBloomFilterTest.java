@@ -0,0 +1,181 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GhanaCardBloomFilterTest {
+
+    /**
+     * Serves Ghana Card rows with patient_identifier_id = patient id, recording each watermark asked
+     * for. Cards edited in place are served again when the scan asks for changes.
+     */
+    private static final class CardDao extends StubPatientSearchDAO {
+        int cards;
+        final Map<Integer, String> edited = new HashMap<Integer, String>();
+        final List<Long> scannedFrom = new ArrayList<Long>();
+        final List<Date> changedSince = new ArrayList<Date>();
+
+        @Override
+        public long scanGhanaCards(long afterIdentifierId, Date changedSince, PatientIdentifierIndex.Sink sink) {
+            scannedFrom.add(afterIdentifierId);
+            this.changedSince.add(changedSince);
+            long max = afterIdentifierId;
+            for (int id = (int) afterIdentifierId + 1; id <= cards; id++) {
+                sink.ghanaCard(edited.containsKey(id) ? edited.get(id) : ghanaCard(id), id);
+                max = id;
+            }
+            if (changedSince != null) {
+                for (Map.Entry<Integer, String> e : edited.entrySet()) {
+                    if (e.getKey() <= afterIdentifierId) {
+                        sink.ghanaCard(e.getValue(), e.getKey());
+                    }
+                }
+            }
+            return max;
+        }
+    }
+
+    private File file;
+    private CardDao dao;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ghana-card", ".bloom");
+        assertTrue(file.delete());
+        dao = new CardDao();
+        dao.cards = 10000;
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void load_coldStartScansEverythingAndSaves() {
+        GhanaCardBloomFilter filter = newFilter();
+        filter.load(100000, 0.001);
+
+        assertTrue(filter.isReady());
+        assertEquals(0L, dao.scannedFrom.get(0).longValue());
+        assertNull(dao.changedSince.get(0));
+        assertTrue(file.isFile());
+        for (int id = 1; id <= dao.cards; id++) {
+            assertTrue(filter.mightContain(ghanaCard(id)));
+        }
+        assertEquals("database", filter.getStats().get("loadedFrom"));
+    }
+
+    @Test
+    public void load_warmStartOnlyScansAboveTheWatermark() {
+        newFilter().load(100000, 0.001);
+        dao.cards = 10050;
+
+        GhanaCardBloomFilter restarted = newFilter();
+        restarted.load(100000, 0.001);
+
+        assertEquals(10000L, dao.scannedFrom.get(1).longValue());
+        assertNotNull(dao.changedSince.get(1));
+        assertEquals("file", restarted.getStats().get("loadedFrom"));
+        assertEquals(10050L, restarted.getStats().get("cards"));
+        assertTrue(restarted.mightContain(ghanaCard(10001)));
+        assertTrue(restarted.mightContain(ghanaCard(5)));
+    }
+
+    @Test
+    public void load_warmStartPicksUpCardsEditedInPlace() {
+        newFilter().load(100000, 0.001);
+        dao.edited.put(5, ghanaCard(90005));
+
+        GhanaCardBloomFilter restarted = newFilter();
+        restarted.load(100000, 0.001);
+
+        assertTrue(restarted.mightContain(ghanaCard(90005)));
+    }
+
+    @Test
+    public void load_rebuildsAFileWithoutTheSaveTime() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeLong(10000L);
+        }
+
+        GhanaCardBloomFilter filter = newFilter();
+        filter.load(100000, 0.001);
+
+        assertEquals(0L, dao.scannedFrom.get(0).longValue());
+        assertEquals("database", filter.getStats().get("loadedFrom"));
+    }
+
+    @Test
+    public void load_keepsCardsSavedWhileScanning() {
+        final GhanaCardBloomFilter filter = newFilter();
+        filter.setDao(new StubPatientSearchDAO() {
+            @Override
+            public long scanGhanaCards(long afterIdentifierId, Date changedSince, PatientIdentifierIndex.Sink sink) {
+                filter.put(ghanaCard(90001));
+                return 0;
+            }
+        });
+
+        filter.load(100000, 0.001);
+
+        assertTrue(filter.mightContain(ghanaCard(90001)));
+        assertFalse(filter.mightContain(ghanaCard(90002)));
+    }
+
+    @Test
+    public void load_rebuildsWhenSizingChanges() {
+        newFilter().load(100000, 0.001);
+
+        GhanaCardBloomFilter resized = newFilter();
+        resized.load(200000, 0.001);
+
+        assertEquals(0L, dao.scannedFrom.get(1).longValue());
+        assertEquals("database", resized.getStats().get("loadedFrom"));
+    }
+
+    @Test
+    public void mightContain_countsDefiniteMisses() {
+        GhanaCardBloomFilter filter = newFilter();
+        filter.load(100000, 0.001);
+
+        int misses = 0;
+        for (int id = 20001; id <= 30000; id++) {
+            if (!filter.mightContain(ghanaCard(id))) {
+                misses++;
+            }
+        }
+        assertTrue("definite misses " + misses, misses > 9950);
+        filter.put(ghanaCard(20001));
+        assertTrue(filter.mightContain(ghanaCard(20001)));
+
+        Map<String, Object> stats = filter.getStats();
+        assertEquals(10001L, stats.get("checks"));
+        assertEquals((long) misses, stats.get("definiteMisses"));
+    }
+
+    private GhanaCardBloomFilter newFilter() {
+        GhanaCardBloomFilter filter = new GhanaCardBloomFilter();
+        filter.setDao(dao);
+        filter.setFile(file);
+        return filter;
+    }
+
+    private static String ghanaCard(int id) {
+        String digits = String.format("%010d", 100000000L + id * 7L);
+        return "GHA-" + digits.substring(0, 9) + "-" + digits.charAt(9);
+    }
+}
@@ -0,0 +1,45 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GhanaianNamePhoneticsTest {
+
+    private static String key(String name) {
+        return GhanaianNamePhonetics.phoneticKey(GhanaianNamePhonetics.normalize(name));
+    }
+
+    @Test
+    public void phoneticKey_commonSpellingVariantsShareAKey() {
+        String[][] variants = {
+                { "Kwame", "Kwami" }, { "Mensah", "Mensa" }, { "Adwoa", "Adjoa", "Ajoa" },
+                { "Akosua", "Akosuah" }, { "Yaw", "Yao" }, { "Appiah", "Apiah" },
+                { "Agyemang", "Agyeman" }, { "Mohammed", "Muhammad", "Mohamed" },
+                { "Kyei", "Chei" }, { "Esi", "Essie" }, { "Quaye", "Kwaye" }, { "Philip", "Filip" },
+        };
+        for (String[] group : variants) {
+            for (String v : group) {
+                assertEquals(Arrays.toString(group), key(group[0]), key(v));
+            }
+        }
+    }
+
+    @Test
+    public void phoneticKey_distinctNamesStayApart() {
+        assertNotEquals(key("Kwame"), key("Kwaku"));
+        assertNotEquals(key("Mensah"), key("Boateng"));
+        assertNotEquals(key("Ama"), key("Abena"));
+    }
+
+    @Test
+    public void normalize_foldsGhanaianLettersAndDiacritics() {
+        assertEquals("kofi", GhanaianNamePhonetics.normalize("Kɔfi"));
+        assertEquals("eyram", GhanaianNamePhonetics.normalize("Ɛyram"));
+        assertEquals("dzifa", GhanaianNamePhonetics.normalize("Dzifà"));
+        assertEquals(Arrays.asList("owusu", "ansah"), GhanaianNamePhonetics.tokens("Owusu-Ansah"));
+        assertEquals(Arrays.asList("nii", "armah"), GhanaianNamePhonetics.tokens(" Nii  Armah "));
+    }
+}
@@ -0,0 +1,133 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PatientIdentifierIndexTest {
+
+    private static final int PATIENTS = 1000000;
+
+    /** Feeds synthetic identifier rows; optionally fires a registration in the middle of the scan. */
+    private static final class ScanDao extends StubPatientSearchDAO {
+        final int patients;
+        PatientIdentifierIndex registerDuringScan;
+
+        ScanDao(int patients) {
+            this.patients = patients;
+        }
+
+        @Override
+        public void scanIdentifiers(PatientIdentifierIndex.Sink sink) {
+            for (int id = 1; id <= patients; id++) {
+                sink.ghanaCard(ghanaCard(id), id);
+                sink.nhisNumber(nhis(id), id);
+                sink.folderNumber(folder(id), id);
+                if (registerDuringScan != null && id == patients / 2) {
+                    registerDuringScan.put(patients + 1, ghanaCard(patients + 1), null, "GA-KBTH-2025-LEGACY1");
+                }
+            }
+        }
+    }
+
+    private static String ghanaCard(int id) {
+        String digits = String.format("%010d", 100000000L + id * 7L);
+        return "GHA-" + digits.substring(0, 9) + "-" + digits.charAt(9);
+    }
+
+    private static String nhis(int id) {
+        return String.format("%010d", 5000000000L + id);
+    }
+
+    private static String folder(int id) {
+        return String.format("GA-KBTH-%d-%06d", 2015 + id % 11, id);
+    }
+
+    @Test
+    public void keys_normaliseSeparatorsAndRejectMalformedValues() {
+        assertEquals(1234567897L, PatientIdentifierIndex.ghanaCardKey("GHA-123456789-7"));
+        assertEquals(1234567897L, PatientIdentifierIndex.ghanaCardKey("gha 123456789 7"));
+        assertEquals(-1, PatientIdentifierIndex.ghanaCardKey("GHA-12345678-7"));
+        assertEquals(123456789L, PatientIdentifierIndex.nhisKey("0123-456-789"));
+        assertEquals(-1, PatientIdentifierIndex.nhisKey("01234567890"));
+
+        long packed = PatientIdentifierIndex.folderKey("GA-KBTH-2025-000123");
+        assertTrue(packed >= 0);
+        assertNotEquals(packed, PatientIdentifierIndex.folderKey("GA-KBTH-2025-000124"));
+        assertNotEquals(packed, PatientIdentifierIndex.folderKey("GA-KBT-2025-000123"));
+        assertNotEquals(packed, PatientIdentifierIndex.folderKey("AS-KBTH-2025-000123"));
+        assertEquals("non-canonical padding is not packed", -1, PatientIdentifierIndex.folderKey("GA-KBTH-2025-123"));
+        assertEquals("long facility codes are not packed", -1, PatientIdentifierIndex.folderKey("GA-KORLE1-2025-000123"));
+    }
+
+    @Test
+    public void put_unpackableFolderNumbersUseTheFallbackMap() {
+        PatientIdentifierIndex index = new PatientIdentifierIndex();
+        index.put(5, "GHA-123456789-7", "0123456789", "GA-KORLE1-2025-000123");
+
+        assertEquals(Integer.valueOf(5), index.findByGhanaCard("GHA1234567897"));
+        assertEquals(Integer.valueOf(5), index.findByNhisNumber("0123456789"));
+        assertEquals(Integer.valueOf(5), index.findByFolderNumber("ga-korle1-2025-000123"));
+        assertNull(index.findByFolderNumber("GA-KBTH-2025-000123"));
+    }
+
+    @Test
+    public void rebuild_keepsRegistrationsThatArriveDuringTheScan() {
+        PatientIdentifierIndex index = new PatientIdentifierIndex();
+        ScanDao dao = new ScanDao(1000);
+        dao.registerDuringScan = index;
+        index.setDao(dao);
+
+        assertFalse(index.isReady());
+        index.rebuild();
+
+        assertTrue(index.isReady());
+        assertEquals(Integer.valueOf(1001), index.findByGhanaCard(ghanaCard(1001)));
+        assertEquals(Integer.valueOf(1001), index.findByFolderNumber("GA-KBTH-2025-LEGACY1"));
+        assertEquals(Integer.valueOf(500), index.findByFolderNumber(folder(500)));
+    }
+
+    /**
+     * One million patients: bounds the footprint and the mean lookup latency. Lookups go through
+     * the public String API so parsing is included in the figure.
+     */
+    @Test
+    public void millionPatients_footprintAndLookupLatency() {
+        PatientIdentifierIndex index = new PatientIdentifierIndex();
+        index.setDao(new ScanDao(PATIENTS));
+        index.rebuild();
+
+        Random random = new Random(42);
+        String[] cards = new String[10000];
+        String[] folders = new String[cards.length];
+        int[] expected = new int[cards.length];
+        for (int i = 0; i < cards.length; i++) {
+            expected[i] = 1 + random.nextInt(PATIENTS);
+            cards[i] = ghanaCard(expected[i]);
+            folders[i] = folder(expected[i]);
+        }
+
+        for (int warm = 0; warm < 20; warm++) {
+            for (int i = 0; i < cards.length; i++) {
+                index.findByGhanaCard(cards[i]);
+            }
+        }
+        int rounds = 50;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < cards.length; i++) {
+                if (index.findByGhanaCard(cards[i]) != expected[i] || index.findByFolderNumber(folders[i]) != expected[i]) {
+                    fail("wrong patient for " + cards[i]);
+                }
+            }
+        }
+        double nanosPerLookup = (System.nanoTime() - start) / (double) (rounds * cards.length * 2);
+
+        long bytes = index.footprintBytes();
+        assertEquals(0, index.getStats().get("folderNumbersUnpacked"));
+        assertTrue("footprint " + bytes, bytes < 96L * 1024 * 1024);
+        assertTrue("lookup " + nanosPerLookup + " ns", nanosPerLookup < 100000);
+    }
+}
@@ -0,0 +1,140 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PatientNameIndexTest {
+
+    private static final String[] GIVEN = {
+            "Kwame", "Kwaku", "Kofi", "Kwabena", "Kwasi", "Yaw", "Kwadwo", "Kojo", "Kwesi", "Ekow", "Fiifi", "Ato",
+            "Akua", "Ama", "Abena", "Akosua", "Adwoa", "Yaa", "Afia", "Esi", "Efua", "Araba", "Nana", "Akwasi",
+            "Nii", "Naa", "Selorm", "Edem", "Elikem", "Dzifa", "Mawuli", "Yayra", "Senam", "Eyram", "Delali",
+            "Aminu", "Ibrahim", "Abdul", "Mohammed", "Fatima", "Zainab", "Hawa", "Alhassan", "Issah", "Rahinatu",
+            "Emmanuel", "Grace", "Comfort", "Felicia", "Samuel",
+    };
+
+    private static final String[] FAMILY = {
+            "Mensah", "Boateng", "Asante", "Owusu", "Osei", "Agyemang", "Appiah", "Addo", "Tetteh", "Quaye",
+            "Lamptey", "Nortey", "Ankrah", "Adjei", "Amoah", "Darko", "Ofori", "Gyamfi", "Acheampong", "Danquah",
+            "Agbeko", "Agbenyega", "Kpodo", "Dzokoto", "Ahiadeke", "Gbeho", "Amedzro", "Abubakar", "Sulemana",
+            "Iddrisu", "Mahama", "Yakubu", "Lartey", "Quarshie", "Odoi", "Sowah", "Ashitey", "Nkrumah", "Kyei",
+            "Opoku", "Antwi", "Sarpong", "Frimpong", "Bonsu", "Amponsah", "Wiredu", "Ansah", "Badu", "Kumah",
+            "Adomako", "Baah", "Donkor", "Fosu", "Manu", "Nyarko", "Obeng", "Poku", "Twumasi", "Yeboah", "Zakari",
+    };
+
+    @Test
+    public void search_ranksExactSpellingFirstAndToleratesVariants() {
+        PatientNameIndex index = new PatientNameIndex();
+        index.update(1, Arrays.asList("Kwame", null, "Mensah"));
+        index.update(2, Arrays.asList("Kwami", null, "Mensa"));
+        index.update(3, Arrays.asList("Kwaku", null, "Mensah"));
+        index.update(4, Arrays.asList("Ama", null, "Boateng"));
+
+        List<PatientNameIndex.Match> matches = index.search("Kwame Mensah");
+        assertEquals(1, matches.get(0).getPatientId());
+        assertEquals(2, matches.get(1).getPatientId());
+        for (PatientNameIndex.Match m : matches) {
+            assertNotEquals("Ama Boateng does not match", 4, m.getPatientId());
+        }
+
+        assertEquals(1, index.search("Kwame Mebsah").get(0).getPatientId());
+        assertEquals(4, index.search("boa").get(0).getPatientId());
+    }
+
+    @Test
+    public void update_replacesOldNamesAndEmptyRemoves() {
+        PatientNameIndex index = new PatientNameIndex();
+        index.update(7, Arrays.asList("Akosua", null, "Owusu"));
+        index.update(7, Arrays.asList("Akosua", null, "Asante"));
+
+        assertTrue(index.search("Owusu").isEmpty());
+        assertEquals(7, index.search("Akosua Asante").get(0).getPatientId());
+
+        index.remove(7);
+        assertTrue(index.search("Akosua").isEmpty());
+        assertEquals(0, index.getStats().get("patients"));
+    }
+
+    /**
+     * Synthetic population with realistic duplication (about seven patients per full name at 1M).
+     * Queries use a spelling variant or a one-letter typo of a random patient's full name; recall is
+     * the share of queries whose ranked result contains that patient within the first page (50).
+     * The exact-prefix baseline approximates what LIKE 'x%' on person_name can find.
+     */
+    @Test
+    public void syntheticPopulation_recallBeatsExactPrefix() {
+        int patients = Integer.getInteger("ghanaemr.nameIndex.benchmarkPatients", 1000000);
+        Random random = new Random(2025);
+        int[][] people = new int[patients + 1][];
+
+        PatientNameIndex index = new PatientNameIndex();
+        for (int id = 1; id <= patients; id++) {
+            people[id] = new int[] { random.nextInt(GIVEN.length), random.nextInt(GIVEN.length), random.nextInt(FAMILY.length) };
+            index.update(id, Arrays.asList(GIVEN[people[id][0]], GIVEN[people[id][1]], FAMILY[people[id][2]]));
+        }
+
+        int queries = 2000;
+        int found = 0;
+        int baseline = 0;
+        for (int q = 0; q < queries; q++) {
+            int target = 1 + random.nextInt(patients);
+            String[] tokens = {
+                    mutate(GIVEN[people[target][0]], random),
+                    mutate(GIVEN[people[target][1]], random),
+                    mutate(FAMILY[people[target][2]], random),
+            };
+            List<PatientNameIndex.Match> result = index.search(tokens[0] + " " + tokens[1] + " " + tokens[2]);
+            for (int i = 0; i < Math.min(50, result.size()); i++) {
+                if (result.get(i).getPatientId() == target) {
+                    found++;
+                    break;
+                }
+            }
+            if (GIVEN[people[target][0]].toLowerCase().startsWith(tokens[0])
+                    && GIVEN[people[target][1]].toLowerCase().startsWith(tokens[1])
+                    && FAMILY[people[target][2]].toLowerCase().startsWith(tokens[2])) {
+                baseline++;
+            }
+        }
+        double recall = found / (double) queries;
+
+        assertTrue("recall " + recall, recall > 0.9);
+        assertTrue(found > baseline);
+    }
+
+    /** One of the spelling variants seen at registration desks, or a single-letter typo. */
+    private static String mutate(String name, Random random) {
+        String s = name.toLowerCase();
+        switch (random.nextInt(6)) {
+            case 0:
+                return s;
+            case 1:
+                return s.endsWith("h") ? s.substring(0, s.length() - 1) : s.endsWith("a") ? s + "h" : s;
+            case 2:
+                return s.endsWith("e") ? s.substring(0, s.length() - 1) + "i" : s.endsWith("i") ? s.substring(0, s.length() - 1) + "e" : s;
+            case 3:
+                return s.replace("dw", "dj").replace("pp", "p").replace("ss", "s").replace("qu", "kw");
+            case 4:
+                int i = 1 + random.nextInt(s.length() - 1);
+                return s.substring(0, i) + (char) ('a' + random.nextInt(26)) + s.substring(i + 1);
+            default:
+                List<Character> chars = new ArrayList<Character>();
+                for (char c : s.toCharArray()) {
+                    chars.add(c);
+                }
+                int d = 1 + random.nextInt(chars.size() - 1);
+                chars.remove(d);
+                StringBuilder out = new StringBuilder();
+                for (char c : chars) {
+                    out.append(c);
+                }
+                return out.toString();
+        }
+    }
+}
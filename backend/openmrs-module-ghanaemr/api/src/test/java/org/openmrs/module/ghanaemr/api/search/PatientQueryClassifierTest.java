@@ -0,0 +1,50 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.search.PatientQueryClassifier.Classification;
+import org.openmrs.module.ghanaemr.api.search.PatientQueryClassifier.QueryType;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PatientQueryClassifierTest {
+
+    @Test
+    public void classify_ghanaCardInAnySpellingIsNormalised() {
+        for (String q : Arrays.asList("GHA-123456789-7", "gha-123456789-7", " GHA1234567897 ", "GHA 123456789 7")) {
+            Classification c = PatientQueryClassifier.classify(q);
+            assertEquals(q, QueryType.GHANA_CARD, c.getType());
+            assertEquals("GHA-123456789-7", c.getValue());
+        }
+    }
+
+    @Test
+    public void classify_tenDigitsAreNhis() {
+        Classification c = PatientQueryClassifier.classify("0123-456 789");
+        assertEquals(QueryType.NHIS, c.getType());
+        assertEquals("0123456789", c.getValue());
+    }
+
+    @Test
+    public void classify_folderNumberIsUppercased() {
+        Classification c = PatientQueryClassifier.classify("ga-kbth-2025-000123");
+        assertEquals(QueryType.FOLDER_NUMBER, c.getType());
+        assertEquals("GA-KBTH-2025-000123", c.getValue());
+    }
+
+    @Test
+    public void classify_namesAreTokenised() {
+        Classification c = PatientQueryClassifier.classify("Kwame  Mensah-Bonsu");
+        assertEquals(QueryType.NAME, c.getType());
+        assertEquals(Arrays.asList("kwame", "mensah-bonsu"), c.getNameTokens());
+    }
+
+    @Test
+    public void classify_blankOrTooShortIsEmpty() {
+        assertEquals(QueryType.EMPTY, PatientQueryClassifier.classify(null).getType());
+        assertEquals(QueryType.EMPTY, PatientQueryClassifier.classify("  ").getType());
+        assertEquals(QueryType.EMPTY, PatientQueryClassifier.classify("k").getType());
+        assertEquals(QueryType.EMPTY, PatientQueryClassifier.classify("%%").getType());
+    }
+}
@@ -0,0 +1,235 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.ghanaemr.api.search.impl.PatientSearchServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PatientSearchServiceTest {
+
+    /** Records every DAO call so tests can assert exactly one lookup per search. */
+    private static final class RecordingDao extends StubPatientSearchDAO {
+        final List<String> calls = new ArrayList<String>();
+        final List<Object[]> identifierRows = new ArrayList<Object[]>();
+        int matches;
+
+        @Override
+        public List<PatientSummary> findByIdentifier(String type, String identifier, int offset, int limit) {
+            calls.add("identifier:" + type + ":" + identifier + ":" + offset + ":" + limit);
+            return page(offset, limit);
+        }
+
+        @Override
+        public long countByIdentifier(String type, String identifier) {
+            calls.add("count");
+            return matches;
+        }
+
+        @Override
+        public List<PatientSummary> findByNhisNumber(String nhis, int offset, int limit) {
+            calls.add("nhis:" + nhis);
+            return page(offset, limit);
+        }
+
+        @Override
+        public long countByNhisNumber(String nhis) {
+            calls.add("count");
+            return matches;
+        }
+
+        @Override
+        public List<PatientSummary> findByNameOrIdentifier(List<String> tokens, String identifierPrefix, int offset,
+                                                           int limit) {
+            calls.add("name:" + tokens + ":" + identifierPrefix + ":" + offset + ":" + limit);
+            return page(offset, limit);
+        }
+
+        @Override
+        public long countByNameOrIdentifier(List<String> tokens, String identifierPrefix) {
+            calls.add("count");
+            return matches;
+        }
+
+        @Override
+        public PatientSummaryBuilder.TypeIds findSummaryTypeIds() {
+            calls.add("types");
+            return new PatientSummaryBuilder.TypeIds(1, 2, null, 3);
+        }
+
+        @Override
+        public List<PatientSummary> findSummaryNames(List<Integer> patientIds) {
+            calls.add("names:" + patientIds);
+            List<PatientSummary> out = new ArrayList<PatientSummary>();
+            for (Integer id : patientIds) {
+                PatientSummary s = new PatientSummary();
+                s.setPatientId(id);
+                out.add(s);
+            }
+            return out;
+        }
+
+        @Override
+        public List<Object[]> findSummaryIdentifiers(List<Integer> patientIds, PatientSummaryBuilder.TypeIds types) {
+            calls.add("identifiers");
+            List<Object[]> out = new ArrayList<Object[]>();
+            for (Object[] row : identifierRows) {
+                if (patientIds.contains(row[0])) {
+                    out.add(row);
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public void scanIdentifiers(PatientIdentifierIndex.Sink sink) {
+            sink.ghanaCard("GHA-123456789-7", 7);
+            sink.nhisNumber("0123456789", 8);
+            sink.folderNumber("GA-KBTH-2025-000123", 9);
+        }
+
+        @Override
+        public void scanNames(PatientNameIndex.Sink sink) {
+            sink.name(11, "Kwame", null, "Mensah");
+            sink.name(12, "Kwami", null, "Mensa");
+            sink.name(13, "Kwame", null, "Boateng");
+        }
+
+        private List<PatientSummary> page(int offset, int limit) {
+            List<PatientSummary> out = new ArrayList<PatientSummary>();
+            for (int i = offset; i < Math.min(matches, offset + limit); i++) {
+                PatientSummary s = new PatientSummary();
+                s.setPatientId(i + 1);
+                out.add(s);
+            }
+            return out;
+        }
+    }
+
+    private RecordingDao dao;
+    private PatientSearchServiceImpl service;
+
+    @Before
+    public void setUp() {
+        dao = new RecordingDao();
+        service = new PatientSearchServiceImpl();
+        service.setDao(dao);
+        PatientSummaryBuilder summaryBuilder = new PatientSummaryBuilder();
+        summaryBuilder.setDao(dao);
+        service.setSummaryBuilder(summaryBuilder);
+    }
+
+    @Test
+    public void search_ghanaCardRunsOneIdentifierLookup() {
+        dao.matches = 1;
+        PatientSearchResult r = service.search("gha1234567897", 1, 50);
+
+        assertEquals(Collections.singletonList("identifier:Ghana Card:GHA-123456789-7:0:50"), dao.calls);
+        assertEquals(1, r.getTotal());
+    }
+
+    @Test
+    public void search_nhisAndFolderNumberUseTheirOwnLookup() {
+        service.search("0123456789", 1, 50);
+        service.search("GA-KBTH-2025-000123", 1, 50);
+
+        assertEquals(Arrays.asList("nhis:0123456789", "identifier:Folder Number:GA-KBTH-2025-000123:0:50"), dao.calls);
+    }
+
+    @Test
+    public void search_pagesInSqlAndCountsOnlyWhenPageIsFull() {
+        dao.matches = 120;
+        PatientSearchResult second = service.search("kwame", 2, 50);
+        assertEquals(Arrays.asList("name:[kwame]:kwame:50:50", "count"), dao.calls);
+        assertEquals(120, second.getTotal());
+        assertEquals(50, second.getItems().size());
+
+        dao.calls.clear();
+        PatientSearchResult last = service.search("kwame", 3, 50);
+        assertEquals(Collections.singletonList("name:[kwame]:kwame:100:50"), dao.calls);
+        assertEquals(120, last.getTotal());
+    }
+
+    @Test
+    public void search_identifierIndexMissAnswersWithoutTheDatabase() {
+        service.setIdentifierIndex(readyIdentifierIndex());
+
+        PatientSearchResult card = service.search("GHA-987654321-0", 1, 50);
+        service.search("0987654321", 1, 50);
+        service.search("GA-KBTH-2025-000999", 1, 50);
+
+        assertTrue(dao.calls.isEmpty());
+        assertEquals(0, card.getTotal());
+        assertTrue(card.getItems().isEmpty());
+    }
+
+    @Test
+    public void search_identifierIndexHitRunsOneIdentifierLookup() {
+        service.setIdentifierIndex(readyIdentifierIndex());
+        dao.matches = 1;
+
+        service.search("GHA 123456789 7", 1, 50);
+        service.search("0123456789", 1, 50);
+        PatientSearchResult r = service.search("ga-kbth-2025-000123", 1, 50);
+
+        assertEquals(Arrays.asList("identifier:Ghana Card:GHA-123456789-7:0:50", "nhis:0123456789",
+                "identifier:Folder Number:GA-KBTH-2025-000123:0:50"), dao.calls);
+        assertEquals(1, r.getTotal());
+    }
+
+    @Test
+    public void search_identifierIndexHitNoLongerHeldFindsNothing() {
+        service.setIdentifierIndex(readyIdentifierIndex());
+
+        PatientSearchResult r = service.search("GHA-123456789-7", 1, 50);
+
+        assertEquals(Collections.singletonList("identifier:Ghana Card:GHA-123456789-7:0:50"), dao.calls);
+        assertEquals(0, r.getTotal());
+    }
+
+    @Test
+    public void search_readyNameIndexRendersOnePageInRankOrder() {
+        PatientNameIndex index = new PatientNameIndex();
+        index.setDao(dao);
+        index.rebuild();
+        service.setNameIndex(index);
+
+        PatientSearchResult r = service.search("kwami mensa", 1, 50);
+
+        assertEquals(Arrays.asList("types", "names:[12, 11]", "identifiers"), dao.calls);
+        assertEquals(2, r.getTotal());
+        assertEquals(Integer.valueOf(12), r.getItems().get(0).getPatientId());
+    }
+
+    @Test
+    public void search_unclassifiedQueryPrefixMatchesAnyIdentifier() {
+        dao.matches = 2;
+
+        PatientSearchResult r = service.search("KBTH-2025", 1, 50);
+
+        assertEquals(Collections.singletonList("name:[]:KBTH-2025:0:50"), dao.calls);
+        assertEquals(2, r.getTotal());
+        dao.calls.clear();
+        service.search("7", 1, 50);
+        assertTrue(dao.calls.isEmpty());
+    }
+
+    @Test
+    public void search_emptyQueryDoesNotHitTheDatabase() {
+        PatientSearchResult r = service.search(" ", 1, 50);
+        assertTrue(dao.calls.isEmpty());
+        assertEquals(0, r.getTotal());
+    }
+
+    private PatientIdentifierIndex readyIdentifierIndex() {
+        PatientIdentifierIndex index = new PatientIdentifierIndex();
+        index.setDao(dao);
+        index.rebuild();
+        return index;
+    }
+}
@@ -0,0 +1,158 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PatientSummaryBuilderTest {
+
+    private static final int GHANA_CARD = 5;
+    private static final int FOLDER_NUMBER = 6;
+
+    /** Serves rows for patients 1..n and counts statements; voided patient 13 has no name row. */
+    private static final class CountingDao extends StubPatientSearchDAO {
+        int queries;
+        int typeQueries;
+
+        @Override
+        public PatientSummaryBuilder.TypeIds findSummaryTypeIds() {
+            queries++;
+            typeQueries++;
+            return new PatientSummaryBuilder.TypeIds(GHANA_CARD, FOLDER_NUMBER, null, 9);
+        }
+
+        @Override
+        public List<PatientSummary> findSummaryNames(List<Integer> patientIds) {
+            queries++;
+            List<PatientSummary> out = new ArrayList<PatientSummary>();
+            for (Integer id : patientIds) {
+                if (id == 13) {
+                    continue;
+                }
+                PatientSummary s = new PatientSummary();
+                s.setPatientId(id);
+                s.setUuid("uuid-" + id);
+                s.setGivenName("Ama");
+                s.setFamilyName("Mensah");
+                out.add(s);
+            }
+            return out;
+        }
+
+        @Override
+        public List<Object[]> findSummaryIdentifiers(List<Integer> patientIds, PatientSummaryBuilder.TypeIds types) {
+            queries++;
+            List<Object[]> rows = new ArrayList<Object[]>();
+            for (Integer id : patientIds) {
+                rows.add(new Object[] { id, -1, String.format("%010d", id) });
+                rows.add(new Object[] { id, GHANA_CARD, "GHA-00000000" + (id % 10) + "-0" });
+                rows.add(new Object[] { id, GHANA_CARD, "GHA-999999999-9" });
+                rows.add(new Object[] { id, FOLDER_NUMBER, "GA-KBTH-2025-" + String.format("%06d", id) });
+            }
+            return rows;
+        }
+
+        @Override
+        public List<Object[]> findListingNames(List<Integer> patientIds) {
+            queries++;
+            List<Object[]> rows = new ArrayList<Object[]>();
+            for (Integer id : patientIds) {
+                if (id == 13) {
+                    rows.add(new Object[] { id, "uuid-" + id, null, null, null, null, null, null, null, null, null });
+                    continue;
+                }
+                rows.add(new Object[] { id, "uuid-" + id, 100 + id, null, "Ama", "Serwaa", null, "Mensah", null, null, null });
+                rows.add(new Object[] { id, "uuid-" + id, 200 + id, null, "Akua", null, null, "Mensah", null, null, null });
+            }
+            return rows;
+        }
+
+        @Override
+        public List<Object[]> findListingIdentifiers(List<Integer> patientIds) {
+            queries++;
+            List<Object[]> rows = new ArrayList<Object[]>();
+            for (Integer id : patientIds) {
+                rows.add(new Object[] { id, "GA-KBTH-2025-" + String.format("%06d", id), "Folder Number" });
+                rows.add(new Object[] { id, "1000" + id, "OpenMRS ID" });
+            }
+            return rows;
+        }
+    }
+
+    private CountingDao dao;
+    private PatientSummaryBuilder builder;
+
+    @Before
+    public void setUp() {
+        dao = new CountingDao();
+        builder = new PatientSummaryBuilder();
+        builder.setDao(dao);
+    }
+
+    private static List<Integer> page(int from, int size) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = from; i < from + size; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void build_usesTwoQueriesPerPageWhateverItsSize() {
+        builder.build(page(1, 50));
+        assertEquals("types resolved once, then names and identifiers", 3, dao.queries);
+
+        dao.queries = 0;
+        builder.build(page(51, 50));
+        assertEquals(2, dao.queries);
+
+        dao.queries = 0;
+        builder.build(page(101, 5));
+        assertEquals(2, dao.queries);
+        assertEquals(1, dao.typeQueries);
+    }
+
+    @Test
+    public void build_keepsRequestedOrderAndFirstPreferredIdentifier() {
+        List<Integer> ids = new ArrayList<Integer>(page(10, 5));
+        Collections.reverse(ids);
+
+        List<PatientSummary> summaries = builder.build(ids);
+
+        assertEquals(4, summaries.size());
+        assertEquals(Integer.valueOf(14), summaries.get(0).getPatientId());
+        assertEquals(Integer.valueOf(12), summaries.get(1).getPatientId());
+        PatientSummary s = summaries.get(0);
+        assertEquals("GHA-000000004-0", s.getGhanaCard());
+        assertEquals("GA-KBTH-2025-000014", s.getFolderNumber());
+        assertEquals("0000000014", s.getNhisNumber());
+    }
+
+    @Test
+    public void build_emptyPageRunsNoQueries() {
+        assertTrue(builder.build(Collections.<Integer>emptyList()).isEmpty());
+        assertEquals(0, dao.queries);
+    }
+
+    @Test
+    public void buildListings_keepsFullNameAndEveryIdentifierInTwoQueries() {
+        Map<Integer, PatientListing> listings = builder.buildListings(Arrays.asList(12, 13, 12));
+
+        assertEquals(2, dao.queries);
+        PatientListing l = listings.get(12);
+        assertEquals("uuid-12", l.getUuid());
+        assertEquals("Ama Serwaa Mensah", l.getFullName());
+        assertEquals(2, l.getIdentifiers().size());
+        assertEquals("GA-KBTH-2025-000012", l.getIdentifiers().get(0).getIdentifier());
+        assertEquals("OpenMRS ID", l.getIdentifiers().get(1).getTypeName());
+        assertNull("voided patient without an active name", listings.get(13).getFullName());
+        assertEquals(2, listings.get(13).getIdentifiers().size());
+    }
+}
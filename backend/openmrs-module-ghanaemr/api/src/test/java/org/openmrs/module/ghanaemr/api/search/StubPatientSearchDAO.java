@@ -0,0 +1,84 @@
+package org.openmrs.module.ghanaemr.api.search;
+
+import org.openmrs.module.ghanaemr.api.search.db.PatientSearchDAO;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Base for the search tests' DAOs: every call fails unless the test overrides it, so a test
+ * notices any query it did not expect.
+ */
+class StubPatientSearchDAO implements PatientSearchDAO {
+
+    @Override
+    public List<PatientSummary> findByIdentifier(String identifierTypeName, String identifier, int offset, int limit) {
+        throw new UnsupportedOperationException("findByIdentifier");
+    }
+
+    @Override
+    public long countByIdentifier(String identifierTypeName, String identifier) {
+        throw new UnsupportedOperationException("countByIdentifier");
+    }
+
+    @Override
+    public List<PatientSummary> findByNhisNumber(String nhisNumber, int offset, int limit) {
+        throw new UnsupportedOperationException("findByNhisNumber");
+    }
+
+    @Override
+    public long countByNhisNumber(String nhisNumber) {
+        throw new UnsupportedOperationException("countByNhisNumber");
+    }
+
+    @Override
+    public List<PatientSummary> findByNameOrIdentifier(List<String> tokens, String identifierPrefix, int offset,
+                                                       int limit) {
+        throw new UnsupportedOperationException("findByNameOrIdentifier");
+    }
+
+    @Override
+    public long countByNameOrIdentifier(List<String> tokens, String identifierPrefix) {
+        throw new UnsupportedOperationException("countByNameOrIdentifier");
+    }
+
+    @Override
+    public PatientSummaryBuilder.TypeIds findSummaryTypeIds() {
+        throw new UnsupportedOperationException("findSummaryTypeIds");
+    }
+
+    @Override
+    public List<PatientSummary> findSummaryNames(List<Integer> patientIds) {
+        throw new UnsupportedOperationException("findSummaryNames");
+    }
+
+    @Override
+    public List<Object[]> findSummaryIdentifiers(List<Integer> patientIds, PatientSummaryBuilder.TypeIds types) {
+        throw new UnsupportedOperationException("findSummaryIdentifiers");
+    }
+
+    @Override
+    public List<Object[]> findListingNames(List<Integer> patientIds) {
+        throw new UnsupportedOperationException("findListingNames");
+    }
+
+    @Override
+    public List<Object[]> findListingIdentifiers(List<Integer> patientIds) {
+        throw new UnsupportedOperationException("findListingIdentifiers");
+    }
+
+    @Override
+    public void scanIdentifiers(PatientIdentifierIndex.Sink sink) {
+        throw new UnsupportedOperationException("scanIdentifiers");
+    }
+
+    @Override
+    public long scanGhanaCards(long afterIdentifierId, Date changedSince, PatientIdentifierIndex.Sink sink) {
+        throw new UnsupportedOperationException("scanGhanaCards");
+    }
+
+    @Override
+    public void scanNames(PatientNameIndex.Sink sink) {
+        throw new UnsupportedOperationException("scanNames");
+    }
+}
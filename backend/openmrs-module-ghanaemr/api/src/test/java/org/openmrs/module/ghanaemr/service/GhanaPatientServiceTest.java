@@ -9,6 +9,7 @@ import org.openmrs.Patient;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.search.GhanaCardBloomFilter;
 import org.openmrs.module.ghanaemr.dto.GhanaPatientDTO;
 import org.openmrs.module.ghanaemr.exception.DuplicatePatientException;
 import org.openmrs.module.ghanaemr.exception.ValidationException;
@@ -23,6 +24,7 @@ import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.*;
 
 public class GhanaPatientServiceTest {
@@ -104,6 +106,33 @@ public class GhanaPatientServiceTest {
         service.registerPatient(dto);
     }
 
+    @Test
+    public void registerPatient_DefiniteFilterMiss_SkipsDuplicateQuery() {
+        GhanaCardBloomFilter filter = mock(GhanaCardBloomFilter.class);
+        when(filter.isReady()).thenReturn(true);
+        when(filter.mightContain("GHA-123456789-7")).thenReturn(false);
+
+        GhanaPatientServiceImpl service = new GhanaPatientServiceImpl(sequenceProvider);
+        service.setGhanaCardFilter(filter);
+        service.registerPatient(sampleDto("GHA-123456789-7", null));
+
+        verify(patientService, never()).getPatients(any(), any(), any(), anyBoolean());
+        verify(filter).put("GHA-123456789-7");
+    }
+
+    @Test(expected = DuplicatePatientException.class)
+    public void registerPatient_PossibleFilterHit_RunsDuplicateQuery() {
+        GhanaCardBloomFilter filter = mock(GhanaCardBloomFilter.class);
+        when(filter.isReady()).thenReturn(true);
+        when(filter.mightContain("GHA-123456789-7")).thenReturn(true);
+        when(patientService.getPatients(null, "GHA-123456789-7", null, true))
+                .thenReturn(Collections.singletonList(new Patient()));
+
+        GhanaPatientServiceImpl service = new GhanaPatientServiceImpl(sequenceProvider);
+        service.setGhanaCardFilter(filter);
+        service.registerPatient(sampleDto("GHA-123456789-7", null));
+    }
+
     @Test
     public void folderNumberGeneration_IncrementsSequence() {
         GhanaPatientService service = new GhanaPatientServiceImpl(sequenceProvider);
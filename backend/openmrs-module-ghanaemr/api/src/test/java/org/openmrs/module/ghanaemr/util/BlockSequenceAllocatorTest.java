@@ -0,0 +1,120 @@
+package org.openmrs.module.ghanaemr.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BlockSequenceAllocatorTest {
+
+    /**
+     * In-memory stand-in for gh_folder_number_sequence: one counter per prefix, advanced
+     * atomically like INSERT ... ON DUPLICATE KEY UPDATE last_seq = LAST_INSERT_ID(last_seq + n).
+     */
+    private static final class CounterTable implements SequenceBlockSource {
+        final Map<String, Long> rows = new HashMap<String, Long>();
+        final AtomicInteger roundTrips = new AtomicInteger();
+
+        @Override
+        public synchronized long reserveBlock(String prefix, int blockSize) {
+            roundTrips.incrementAndGet();
+            Long last = rows.get(prefix);
+            long hi = (last == null ? 0L : last) + blockSize;
+            rows.put(prefix, hi);
+            return hi;
+        }
+    }
+
+    @Test
+    public void handsOutConsecutiveValuesWithinABlock() {
+        CounterTable table = new CounterTable();
+        BlockSequenceAllocator allocator = new BlockSequenceAllocator(table, 5);
+
+        for (int i = 1; i <= 12; i++) {
+            assertEquals(i, allocator.nextSequenceForPrefix("GA-KBTH-2025"));
+        }
+        assertEquals(3, table.roundTrips.get());
+        assertEquals(1, allocator.nextSequenceForPrefix("GA-KBTH-2026"));
+    }
+
+    @Test
+    public void continuesFromExistingCounterAndToleratesAbandonedBlocks() {
+        CounterTable table = new CounterTable();
+        table.rows.put("GA-KBTH-2025", 120L);
+
+        BlockSequenceAllocator first = new BlockSequenceAllocator(table, 10);
+        assertEquals(121, first.nextSequenceForPrefix("GA-KBTH-2025"));
+
+        // node restart: the rest of the first block (122..130) is a gap, never a duplicate
+        BlockSequenceAllocator restarted = new BlockSequenceAllocator(table, 10);
+        assertEquals(131, restarted.nextSequenceForPrefix("GA-KBTH-2025"));
+    }
+
+    @Test
+    public void concurrentNodesNeverIssueDuplicates() throws Exception {
+        final CounterTable table = new CounterTable();
+        final int nodes = 4;
+        final int threadsPerNode = 8;
+        final int callsPerThread = 5000;
+        final int blockSize = 20;
+        final String[] prefixes = {"GA-KBTH-2025", "AS-KATH-2025"};
+
+        List<BlockSequenceAllocator> allocators = new ArrayList<BlockSequenceAllocator>();
+        for (int n = 0; n < nodes; n++) {
+            allocators.add(new BlockSequenceAllocator(table, blockSize));
+        }
+        final Map<String, Set<Integer>> issued = new ConcurrentHashMap<String, Set<Integer>>();
+        for (String p : prefixes) {
+            issued.put(p, ConcurrentHashMap.<Integer>newKeySet());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nodes * threadsPerNode);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger duplicates = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int n = 0; n < nodes; n++) {
+            final BlockSequenceAllocator allocator = allocators.get(n);
+            for (int t = 0; t < threadsPerNode; t++) {
+                final int offset = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < callsPerThread; i++) {
+                        String prefix = prefixes[(i + offset) % prefixes.length];
+                        if (!issued.get(prefix).add(allocator.nextSequenceForPrefix(prefix))) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        int total = nodes * threadsPerNode * callsPerThread;
+        assertEquals(0, duplicates.get());
+        int issuedCount = 0;
+        for (String p : prefixes) {
+            issuedCount += issued.get(p).size();
+            // gaps are bounded by one partially used block per node
+            assertTrue(table.rows.get(p) - issued.get(p).size() < (long) nodes * blockSize);
+        }
+        assertEquals(total, issuedCount);
+        assertTrue(table.roundTrips.get() <= total / blockSize + nodes * prefixes.length);
+    }
+}
@@ -0,0 +1,113 @@
+package org.openmrs.module.ghanaemr.util;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FolderNumberGeneratorTest {
+
+    /** Clock that can be moved forward between calls. */
+    private static final class MutableClock extends Clock {
+        Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @Test
+    public void generate_rollsOverPrefixAtNewYear() {
+        final List<String> prefixes = new ArrayList<String>();
+        SequenceProvider provider = prefix -> {
+            prefixes.add(prefix);
+            return prefixes.size();
+        };
+        MutableClock clock = new MutableClock(Instant.parse("2025-12-31T23:59:59Z"));
+        FolderNumberGenerator generator = new FolderNumberGenerator(provider, clock);
+
+        assertEquals("GA-KBTH-2025-000001", generator.generate("KBTH", "GA"));
+        assertEquals("AS-KATH-2025-000002", generator.generate("KATH", "AS"));
+        clock.now = Instant.parse("2026-01-01T00:00:00Z");
+        assertEquals("GA-KBTH-2026-000003", generator.generate("KBTH", "GA"));
+        assertEquals("AS-KATH-2026-000004", generator.generate("KATH", "AS"));
+        assertEquals("GA-KBTH-2026", prefixes.get(2));
+    }
+
+    @Test
+    public void generate_usesSameDefaultsAndCaseAsFolderNumberModule() {
+        SequenceProvider provider = prefix -> 7;
+        FolderNumberGenerator generator = new FolderNumberGenerator(provider,
+                Clock.fixed(Instant.parse("2025-06-01T10:00:00Z"), ZoneOffset.UTC));
+
+        assertEquals("GA-KBTH-2025-000007", generator.generate(null, " "));
+        assertEquals("AS-KATH-2025-000007", generator.generate(" kath ", "as"));
+        assertEquals("AS-KATH-2025", FolderNumberGenerator.prefix("as", "kath", 2025));
+    }
+
+    /** Block source that also serves single sequences, like CounterTableSequenceProvider. */
+    private static final class BlockProvider implements SequenceProvider, SequenceBlockSource {
+        long last = 41;
+        int reservations;
+
+        @Override
+        public int nextSequenceForPrefix(String prefix) {
+            return (int) reserveBlock(prefix, 1);
+        }
+
+        @Override
+        public long reserveBlock(String prefix, int blockSize) {
+            reservations++;
+            last += blockSize;
+            return last;
+        }
+    }
+
+    @Test
+    public void generateBatch_reservesOneBlockWhenProviderSupportsIt() {
+        BlockProvider provider = new BlockProvider();
+        FolderNumberGenerator generator = new FolderNumberGenerator(provider,
+                Clock.fixed(Instant.parse("2025-06-01T10:00:00Z"), ZoneOffset.UTC));
+
+        List<String> numbers = generator.generate("KBTH", "GA", 3);
+
+        assertEquals(1, provider.reservations);
+        assertEquals("GA-KBTH-2025-000042", numbers.get(0));
+        assertEquals("GA-KBTH-2025-000044", numbers.get(2));
+        assertTrue(generator.generate("KBTH", "GA", 0).isEmpty());
+    }
+
+    @Test
+    public void generateBatch_fallsBackToSingleSequences() {
+        final int[] calls = { 0 };
+        SequenceProvider provider = prefix -> ++calls[0];
+        FolderNumberGenerator generator = new FolderNumberGenerator(provider,
+                Clock.fixed(Instant.parse("2025-06-01T10:00:00Z"), ZoneOffset.UTC));
+
+        List<String> numbers = generator.generate("KBTH", "GA", 2);
+
+        assertEquals(2, calls[0]);
+        assertEquals("GA-KBTH-2025-000002", numbers.get(1));
+    }
+}
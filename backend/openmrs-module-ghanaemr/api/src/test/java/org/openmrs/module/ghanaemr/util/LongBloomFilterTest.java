@@ -0,0 +1,68 @@
+package org.openmrs.module.ghanaemr.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LongBloomFilterTest {
+
+    @Test
+    public void noFalseNegatives_andFppNearTarget() {
+        int n = 200000;
+        LongBloomFilter filter = new LongBloomFilter(n, 0.01);
+        for (long key = 0; key < n; key++) {
+            filter.put(key * 31);
+        }
+        for (long key = 0; key < n; key++) {
+            assertTrue(filter.mightContain(key * 31));
+        }
+        int falsePositives = 0;
+        int probes = 200000;
+        for (long key = 0; key < probes; key++) {
+            if (filter.mightContain(key * 31 + 1)) {
+                falsePositives++;
+            }
+        }
+        double observed = falsePositives / (double) probes;
+        assertTrue("observed fpp " + observed, observed < 0.015);
+        assertEquals(0.01, filter.expectedFpp(), 0.002);
+        assertEquals(n, filter.getInsertions());
+    }
+
+    @Test
+    public void footprint_followsSizingFormula() {
+        LongBloomFilter filter = new LongBloomFilter(2000000, 0.001);
+        // m = -n ln p / (ln 2)^2 ~ 14.4 bits per card, k ~ 10
+        assertEquals(2000000 * 14.38 / 8, filter.footprintBytes(), 40000);
+        assertEquals(10, filter.getHashCount());
+    }
+
+    @Test
+    public void writeTo_roundTrips() throws IOException {
+        LongBloomFilter filter = new LongBloomFilter(1000, 0.001);
+        for (long key = 1; key <= 500; key++) {
+            filter.put(key);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        LongBloomFilter read = LongBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(filter.getInsertions(), read.getInsertions());
+        assertEquals(filter.getHashCount(), read.getHashCount());
+        assertEquals(filter.getBitCount(), read.getBitCount());
+        for (long key = 1; key <= 2000; key++) {
+            assertEquals(filter.mightContain(key), read.mightContain(key));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsOtherFiles() throws IOException {
+        LongBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 })));
+    }
+}
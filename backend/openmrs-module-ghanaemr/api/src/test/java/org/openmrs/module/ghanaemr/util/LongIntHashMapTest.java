@@ -0,0 +1,41 @@
+package org.openmrs.module.ghanaemr.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void randomOperations_matchHashMap() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> reference = new HashMap<Long, Integer>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            // small key space so puts, overwrites and removals collide often
+            long key = random.nextInt(5000) - 2500;
+            int op = random.nextInt(3);
+            if (op == 0) {
+                Integer previous = reference.remove(key);
+                assertEquals(previous == null ? LongIntHashMap.NO_VALUE : previous.intValue(), map.remove(key));
+            } else {
+                Integer previous = reference.put(key, i);
+                assertEquals(previous == null ? LongIntHashMap.NO_VALUE : previous.intValue(), map.put(key, i));
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        for (long key = -2500; key < 2500; key++) {
+            Integer expected = reference.get(key);
+            assertEquals(expected == null ? LongIntHashMap.NO_VALUE : expected.intValue(), map.get(key));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_rejectsTheReservedKey() {
+        new LongIntHashMap().put(Long.MIN_VALUE, 1);
+    }
+}
@@ -0,0 +1,65 @@
+package org.openmrs.module.ghanaemr.validation;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reports ns/op and bytes/op for {@link GhanaCardValidator#isValid} against the regex implementation
+ * it replaced; {@link GhanaCardValidatorTest} asserts agreement and zero allocation. Surefire only
+ * picks up *Test classes, so this is not part of the default test phase. Run it with
+ * {@code mvn -pl api test -Dmaven.test.skip=false -Dtest=GhanaCardValidatorBenchmark}.
+ */
+public class GhanaCardValidatorBenchmark {
+
+    @Test
+    public void isValid_versusRegex() {
+        Random random = new Random(42);
+        final String[] cards = new String[4096];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = GhanaCardValidatorTest.randomCard(random);
+        }
+        final int rounds = 500;
+        for (int warm = 0; warm < 20; warm++) {
+            GhanaCardValidatorTest.runCurrent(cards, rounds / 10);
+            GhanaCardValidatorTest.runLegacy(cards, rounds / 10);
+        }
+
+        long ops = (long) rounds * cards.length;
+        Figures current = measure(() -> GhanaCardValidatorTest.runCurrent(cards, rounds), ops);
+        Figures legacy = measure(() -> GhanaCardValidatorTest.runLegacy(cards, rounds), ops);
+
+        assertEquals(legacy.valid, current.valid);
+        System.out.println(String.format("GhanaCardValidator.isValid: %.0f ns/op, %s bytes/op (regex: %.0f ns/op, %s bytes/op)",
+                current.nanosPerOp, current.bytes(), legacy.nanosPerOp, legacy.bytes()));
+    }
+
+    private static Figures measure(IntSupplier run, long ops) {
+        long bytes = GhanaCardValidatorTest.allocatedBytes();
+        long start = System.nanoTime();
+        int valid = run.getAsInt();
+        long elapsed = System.nanoTime() - start;
+        long allocated = GhanaCardValidatorTest.allocatedBytes();
+        return new Figures(valid, elapsed / (double) ops, bytes < 0 ? -1 : (allocated - bytes) / (double) ops);
+    }
+
+    private static final class Figures {
+        final int valid;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Figures(int valid, double nanosPerOp, double bytesPerOp) {
+            this.valid = valid;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        /** "n/a" where the JVM does not count allocations. */
+        String bytes() {
+            return bytesPerOp < 0 ? "n/a" : String.format("%.1f", bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.openmrs.module.ghanaemr.validation;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GhanaCardValidatorTest {
+
+    private static final String[] SAMPLES = {
+            "GHA-123456789-7", "gha 123456789 7", "  GHA1234567897 ", "1234567897", "123-456-789-7",
+            "GHA-123456789-0", "GHA-12345678-7", "GHA-1234567890-7", "GH-123456789-7", "GHAX123456789-7",
+            "GHA-123456789-7X", "XGHA-123456789-7", "GHA-12345678A-7", "gHa_123.456.789/7", "", " ", null
+    };
+
+    @Test
+    public void pack_readsTheTenDigits() {
+        assertEquals(1234567897L, GhanaCardValidator.pack("GHA-123456789-7"));
+        assertEquals(1234567897L, GhanaCardValidator.pack("gha 123456789 7"));
+        assertEquals(1234567890L, GhanaCardValidator.pack("GHA-123456789-0"));
+        assertEquals(GhanaCardValidator.INVALID, GhanaCardValidator.pack("GH-123456789-7"));
+        assertEquals(GhanaCardValidator.INVALID, GhanaCardValidator.pack("123456789-7GHA"));
+        assertEquals(GhanaCardValidator.INVALID, GhanaCardValidator.pack(null));
+    }
+
+    @Test
+    public void parse_checksTheCheckDigit() {
+        assertEquals(1234567897L, GhanaCardValidator.parse("GHA-123456789-7"));
+        assertEquals(GhanaCardValidator.INVALID, GhanaCardValidator.parse("GHA-123456789-0"));
+        assertTrue(GhanaCardValidator.isValid("1234567897"));
+        assertFalse(GhanaCardValidator.isValid(null));
+    }
+
+    @Test
+    public void format_roundTripsPackedCards() {
+        assertEquals("GHA-123456789-7", GhanaCardValidator.format(1234567897L));
+        assertEquals("GHA-000000042-6", GhanaCardValidator.format(426L));
+        assertEquals(426L, GhanaCardValidator.pack(GhanaCardValidator.format(426L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void format_rejectsInvalidKey() {
+        GhanaCardValidator.format(GhanaCardValidator.INVALID);
+    }
+
+    @Test
+    public void normalize_returnsCanonicalInputItself() {
+        String canonical = "GHA-123456789-7";
+        assertSame(canonical, GhanaCardValidator.normalize(canonical));
+        assertEquals(canonical, GhanaCardValidator.normalize("gha1234567897"));
+        assertEquals("GHA-12345", GhanaCardValidator.normalize(" gha-12345 "));
+    }
+
+    @Test
+    public void parseAll_fillsKeysAndCountsValidCards() {
+        CharSequence[] cards = {"GHA-123456789-7", "GHA-123456789-0", null, new StringBuilder("1234567897")};
+        long[] keys = new long[cards.length];
+
+        assertEquals(2, GhanaCardValidator.parseAll(cards, keys));
+        assertArrayEquals(new long[] {1234567897L, -1L, -1L, 1234567897L}, keys);
+    }
+
+    @Test
+    public void matchesPreviousImplementation() {
+        Random random = new Random(7);
+        String[] inputs = new String[SAMPLES.length + 20000];
+        System.arraycopy(SAMPLES, 0, inputs, 0, SAMPLES.length);
+        for (int i = SAMPLES.length; i < inputs.length; i++) {
+            inputs[i] = randomCard(random);
+        }
+        for (String input : inputs) {
+            assertEquals(input, Legacy.isValid(input), GhanaCardValidator.isValid(input));
+            assertEquals(input, Legacy.normalize(input), GhanaCardValidator.normalize(input));
+            if (input != null) {
+                assertEquals(input, Legacy.validateChecksum(input), GhanaCardValidator.validateChecksum(input));
+            }
+        }
+    }
+
+    /**
+     * isValid agrees with the regex implementation it replaced and allocates nothing per call. The
+     * allocation figure uses the per-thread allocation counter of HotSpot.
+     */
+    @Test
+    public void isValid_allocatesNothing() {
+        Random random = new Random(42);
+        String[] cards = new String[4096];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = randomCard(random);
+        }
+        int rounds = 200;
+        for (int warm = 0; warm < 20; warm++) {
+            runCurrent(cards, rounds / 10);
+            runLegacy(cards, rounds / 10);
+        }
+
+        long ops = (long) rounds * cards.length;
+        long bytes = allocatedBytes();
+        int current = runCurrent(cards, rounds);
+        double currentBytes = (allocatedBytes() - bytes) / (double) ops;
+
+        int legacy = runLegacy(cards, rounds);
+        assertEquals(legacy, current);
+        if (allocatedBytes() >= 0) {
+            assertTrue("allocated " + currentBytes + " bytes/op", currentBytes < 1);
+        }
+    }
+
+    static int runCurrent(String[] cards, int rounds) {
+        int valid = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String card : cards) {
+                if (GhanaCardValidator.isValid(card)) {
+                    valid++;
+                }
+            }
+        }
+        return valid;
+    }
+
+    static int runLegacy(String[] cards, int rounds) {
+        int valid = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String card : cards) {
+                if (Legacy.isValid(card)) {
+                    valid++;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return bytes allocated so far by this thread, or -1 where the JVM does not count them
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /** Mix of canonical, unformatted, lower-case, mistyped and wrong-checksum cards. */
+    static String randomCard(Random random) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        String d = digits.toString();
+        switch (random.nextInt(6)) {
+            case 0:
+                return "GHA-" + d.substring(0, 9) + "-" + d.substring(9);
+            case 1:
+                return "gha " + d;
+            case 2:
+                return d;
+            case 3:
+                return "GHA-" + d.substring(0, 8) + "-" + d.substring(9);
+            case 4:
+                return "GHA-" + d.substring(0, 9) + "-" + d.substring(9) + (char) ('A' + random.nextInt(26));
+            default:
+                return " GHA" + d.substring(0, 5) + "." + d.substring(5) + " ";
+        }
+    }
+
+    /** The regex implementation this class replaced, kept to check behaviour and for comparison. */
+    static final class Legacy {
+        private static final String REGEX = "^GHA-\\d{9}-\\d$";
+
+        static boolean isValid(String ghanaCard) {
+            if (ghanaCard == null) return false;
+            String normalized = normalize(ghanaCard);
+            if (!normalized.matches(REGEX)) return false;
+            return validateChecksum(normalized);
+        }
+
+        static String normalize(String input) {
+            if (input == null) return null;
+            String s = input.trim().toUpperCase();
+            String cleaned = s.replaceAll("[^A-Z0-9]", "");
+            if (cleaned.length() == 13 && cleaned.startsWith("GHA")) {
+                return String.format("%s-%s-%s", cleaned.substring(0, 3), cleaned.substring(3, 12), cleaned.substring(12));
+            }
+            if (cleaned.matches("\\d{10}")) {
+                return String.format("GHA-%s-%s", cleaned.substring(0, 9), cleaned.substring(9));
+            }
+            return s;
+        }
+
+        static boolean validateChecksum(String ghanaCard) {
+            String digits = ghanaCard.replaceAll("[^0-9]", "");
+            if (digits.length() != 10) return false;
+            int sum = 0;
+            for (int i = 0; i < 9; i++) {
+                int digit = Character.getNumericValue(digits.charAt(i));
+                if (i % 2 == 0) digit *= 2;
+                if (digit > 9) digit -= 9;
+                sum += digit;
+            }
+            int checkDigit = (10 - (sum % 10)) % 10;
+            return checkDigit == Character.getNumericValue(digits.charAt(9));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.openmrs.module.ghanaemr.web;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * HTTP Basic authentication for callers without an OpenMRS session, e.g. a Prometheus scraper.
+ */
+class BasicAuth {
+
+    private BasicAuth() {
+    }
+
+    /**
+     * Authenticates from the Authorization header unless the context already is.
+     *
+     * @throws APIAuthenticationException when neither a session nor valid credentials are present
+     */
+    static void ensureAuthenticated(HttpServletRequest req) throws APIAuthenticationException {
+        if (Context.isAuthenticated()) return;
+        String auth = req.getHeader("Authorization");
+        if (auth != null && auth.toLowerCase(Locale.ROOT).startsWith("basic ")) {
+            try {
+                String base64Credentials = auth.substring(6).trim();
+                byte[] credDecoded = Base64.getDecoder().decode(base64Credentials);
+                String credentials = new String(credDecoded, StandardCharsets.UTF_8);
+                final String[] values = credentials.split(":", 2);
+                if (values.length == 2) {
+                    Context.authenticate(values[0], values[1]);
+                }
+            } catch (Exception ignored) { }
+        }
+        if (!Context.isAuthenticated()) {
+            throw new APIAuthenticationException("Not authenticated");
+        }
+    }
+}
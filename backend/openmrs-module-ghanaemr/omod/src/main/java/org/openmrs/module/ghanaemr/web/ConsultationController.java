@@ -1,6 +1,8 @@
 package org.openmrs.module.ghanaemr.web;
 
+import org.openmrs.Concept;
 import org.openmrs.Encounter;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.LocationService;
@@ -9,6 +11,7 @@ import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.Location;
 import org.openmrs.Visit;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
 import org.openmrs.module.ghanaemr.api.queue.PatientQueueService;
 import org.openmrs.module.ghanaemr.api.queue.model.PatientQueue;
 import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
@@ -125,9 +128,37 @@ public class ConsultationController {
         body.put("patientUuid", enc.getPatient() != null ? mask(enc.getPatient().getUuid()) : null);
         body.put("obsCount", enc.getObs() != null ? enc.getObs().size() : 0);
         body.put("orderCount", enc.getOrders() != null ? enc.getOrders().size() : 0);
+        body.put("diagnoses", diagnoses(enc));
         return ResponseEntity.ok(body);
     }
 
+    /** Coded diagnoses of the encounter with their ICD-10 codes from the shared concept map. */
+    private List<Map<String, Object>> diagnoses(Encounter enc) {
+        List<Map<String, Object>> out = new ArrayList<Map<String, Object>>();
+        ConceptIcd10Map icd10 = Context.getRegisteredComponents(ConceptIcd10Map.class).stream().findFirst().orElse(null);
+        if (icd10 == null || enc.getObs() == null || enc.getObs().isEmpty()) return out;
+        List<Concept> concepts = new ArrayList<Concept>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Obs obs : enc.getObs()) {
+            Concept c = obs.getConcept();
+            if (c != null && c.getConceptId() != null && !ids.contains(c.getConceptId())) {
+                concepts.add(c);
+                ids.add(c.getConceptId());
+            }
+        }
+        Map<Integer, String> codes = icd10.resolve(ids);
+        for (Concept c : concepts) {
+            String code = codes.get(c.getConceptId());
+            if (code != null) {
+                Map<String, Object> m = new HashMap<String, Object>();
+                m.put("conceptUuid", c.getUuid());
+                m.put("icd10", code);
+                out.add(m);
+            }
+        }
+        return out;
+    }
+
     private List<String> asStringList(Object o) {
         List<String> out = new ArrayList<String>();
         if (o instanceof Collection) {
@@ -1,9 +1,6 @@
 package org.openmrs.module.ghanaemr.web;
 
 import org.openmrs.Patient;
-import org.openmrs.PatientIdentifier;
-import org.openmrs.PatientIdentifierType;
-import org.openmrs.PersonName;
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
@@ -12,6 +9,13 @@ import org.openmrs.module.ghanaemr.exception.DuplicatePatientException;
 import org.openmrs.module.ghanaemr.exception.ValidationException;
 import org.openmrs.module.ghanaemr.service.GhanaPatientService;
 import org.openmrs.module.ghanaemr.api.nhie.NHIEIntegrationService;
+import org.openmrs.module.ghanaemr.api.search.GhanaCardBloomFilter;
+import org.openmrs.module.ghanaemr.api.search.PatientIdentifierIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientNameIndex;
+import org.openmrs.module.ghanaemr.api.search.PatientSearchResult;
+import org.openmrs.module.ghanaemr.api.search.PatientSearchService;
+import org.openmrs.module.ghanaemr.api.search.PatientSummary;
+import org.openmrs.module.ghanaemr.api.search.PatientSummaryBuilder;
 import org.openmrs.module.ghanaemr.exception.NHIEIntegrationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -21,7 +25,6 @@ import javax.servlet.http.HttpServletRequest;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Base64;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/ws/rest/v1/ghana/patients")
@@ -34,10 +37,11 @@ public class GhanaPatientController {
             GhanaPatientService service = getGhanaPatientService();
             Patient patient = service.registerPatient(dto);
 
+            PatientSummary summary = PatientSummaryBuilder.fromPatient(patient);
             Map<String, Object> body = new HashMap<>();
             body.put("uuid", patient.getUuid());
-            body.put("ghanaCard", maskGhanaCard(findIdentifierValue(patient, "Ghana Card")));
-            body.put("folderNumber", findIdentifierValue(patient, "Folder Number"));
+            body.put("ghanaCard", maskGhanaCard(summary.getGhanaCard()));
+            body.put("folderNumber", summary.getFolderNumber());
 
             AuditLogger.log("PATIENT_REGISTER", dto.getGhanaCard(), patient.getUuid(), body);
 
@@ -71,49 +75,19 @@ public class GhanaPatientController {
                                     @RequestParam(value = "page", required = false, defaultValue = "1") int page) {
         ensureAuthenticated(request);
         try {
-            PatientService patientService = Context.getPatientService();
-            Set<String> seen = new HashSet<>();
-            List<Patient> results = new ArrayList<>();
-
-            // Try identifier-based searches first
-            List<Patient> idMatches = safe(() -> patientService.getPatients(null, query, null, true));
-            if (idMatches != null) collectDistinct(results, seen, idMatches);
-
-            // If looks like Ghana Card normalize (uppercase)
-            if (query != null && query.toUpperCase().startsWith("GHA-")) {
-                List<Patient> ghMatches = safe(() -> patientService.getPatients(null, query.toUpperCase(), null, true));
-                if (ghMatches != null) collectDistinct(results, seen, ghMatches);
-            }
-
-            // NHIS 10 digits
-            if (query != null && query.replaceAll("[\\s-]", "").matches("\\d{10}")) {
-                List<Patient> nhisMatches = safe(() -> patientService.getPatients(null, query.replaceAll("[\\s-]", ""), null, true));
-                if (nhisMatches != null) collectDistinct(results, seen, nhisMatches);
-            }
+            PatientSearchResult result = getPatientSearchService()
+                    .search(query, page, PatientSearchService.DEFAULT_PAGE_SIZE);
 
-            // Folder number pattern [REGION]-[FACILITY]-[YEAR]-[SEQUENCE]
-            if (query != null && query.matches("[A-Z]{2}-[A-Z0-9]{4}-\\d{4}-\\d{6}")) {
-                List<Patient> folderMatches = safe(() -> patientService.getPatients(null, query, null, true));
-                if (folderMatches != null) collectDistinct(results, seen, folderMatches);
+            List<Map<String, Object>> items = new ArrayList<>(result.getItems().size());
+            for (PatientSummary s : result.getItems()) {
+                items.add(toMaskedSummary(s));
             }
 
-            // Name query fallback
-            List<Patient> nameMatches = safe(() -> patientService.getPatients(query, query, null, true));
-            if (nameMatches != null) collectDistinct(results, seen, nameMatches);
-
-            // Pagination (50 per page)
-            int pageSize = 50;
-            int from = Math.max(0, (page - 1) * pageSize);
-            int to = Math.min(results.size(), from + pageSize);
-            List<Patient> pageList = from < to ? results.subList(from, to) : Collections.emptyList();
-
-            List<Map<String, Object>> items = pageList.stream().map(this::toMaskedSummary).collect(Collectors.toList());
-
             Map<String, Object> body = new HashMap<>();
             body.put("items", items);
-            body.put("total", results.size());
-            body.put("page", page);
-            body.put("pageSize", pageSize);
+            body.put("total", result.getTotal());
+            body.put("page", result.getPage());
+            body.put("pageSize", result.getPageSize());
 
             AuditLogger.log("PATIENT_SEARCH", maskQuery(query), null, body);
             return ResponseEntity.ok(body);
@@ -122,6 +96,22 @@ public class GhanaPatientController {
         }
     }
 
+    @GetMapping("/search/index-stats")
+    public ResponseEntity<?> searchIndexStats(HttpServletRequest request) {
+        ensureAuthenticated(request);
+        Map<String, Object> body = new HashMap<>();
+        Context.getRegisteredComponents(PatientIdentifierIndex.class).stream().findFirst()
+                .ifPresent(index -> body.put("identifiers", index.getStats()));
+        Context.getRegisteredComponents(PatientNameIndex.class).stream().findFirst()
+                .ifPresent(index -> body.put("names", index.getStats()));
+        Context.getRegisteredComponents(GhanaCardBloomFilter.class).stream().findFirst()
+                .ifPresent(filter -> body.put("ghanaCardFilter", filter.getStats()));
+        if (body.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_AVAILABLE", "Search indexes not configured"));
+        }
+        return ResponseEntity.ok(body);
+    }
+
     @GetMapping("/{uuid}/nhie-status")
     public ResponseEntity<?> getNHIEStatus(HttpServletRequest request, @PathVariable("uuid") String uuid) {
         ensureAuthenticated(request);
@@ -215,6 +205,11 @@ public class GhanaPatientController {
         }
     }
 
+    private PatientSearchService getPatientSearchService() {
+        return Context.getRegisteredComponents(PatientSearchService.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("PatientSearchService not available"));
+    }
+
     private NHIEIntegrationService getNhieIntegrationService() {
         try {
             return Context.getRegisteredComponents(NHIEIntegrationService.class).stream().findFirst()
@@ -243,37 +238,19 @@ public class GhanaPatientController {
         }
     }
 
-    private Map<String, Object> toMaskedSummary(Patient p) {
+    private Map<String, Object> toMaskedSummary(PatientSummary p) {
         Map<String, Object> m = new HashMap<>();
         m.put("uuid", p.getUuid());
-        PersonName name = p.getPersonName();
-        if (name != null) {
-            m.put("givenName", maskName(name.getGivenName()));
-            m.put("familyName", maskName(name.getFamilyName()));
+        if (p.getGivenName() != null || p.getFamilyName() != null) {
+            m.put("givenName", maskName(p.getGivenName()));
+            m.put("familyName", maskName(p.getFamilyName()));
         }
-        m.put("ghanaCard", maskGhanaCard(findIdentifierValue(p, "Ghana Card")));
-        m.put("nhis", maskNHIS(findIdentifierValue(p, "NHIS Number")));
-        m.put("folderNumber", findIdentifierValue(p, "Folder Number"));
+        m.put("ghanaCard", maskGhanaCard(p.getGhanaCard()));
+        m.put("nhis", maskNHIS(p.getNhisNumber()));
+        m.put("folderNumber", p.getFolderNumber());
         return m;
     }
 
-    private String findIdentifierValue(Patient p, String typeName) {
-        PatientService ps = Context.getPatientService();
-        PatientIdentifierType pit = ps.getPatientIdentifierTypeByName(typeName);
-        if (pit != null) {
-            for (PatientIdentifier id : p.getActiveIdentifiers()) {
-                if (pit.equals(id.getIdentifierType())) return id.getIdentifier();
-            }
-        }
-        // fallback by name match if types not set consistently
-        for (PatientIdentifier id : p.getActiveIdentifiers()) {
-            if (id.getIdentifierType() != null && typeName.equalsIgnoreCase(id.getIdentifierType().getName())) {
-                return id.getIdentifier();
-            }
-        }
-        return null;
-    }
-
     private static Map<String, Object> error(String code, String message) {
         Map<String, Object> m = new HashMap<>();
         m.put("code", code);
@@ -281,13 +258,6 @@ public class GhanaPatientController {
         return m;
     }
 
-    private static <T> T safe(SupplierWithException<T> s) {
-        try { return s.get(); } catch (Throwable t) { return null; }
-    }
-
-    @FunctionalInterface
-    private interface SupplierWithException<T> { T get() throws Exception; }
-
     private static String maskGhanaCard(String v) {
         if (v == null || v.length() < 5) return null;
         // keep prefix and last 2 of body + check digit: GHA-*******89-7
@@ -316,16 +286,6 @@ public class GhanaPatientController {
         }
     }
 
-    private void collectDistinct(List<Patient> results, Set<String> seen, List<Patient> candidates) {
-        if (candidates == null) return;
-        for (Patient p : candidates) {
-            if (p != null && !seen.contains(p.getUuid())) {
-                seen.add(p.getUuid());
-                results.add(p);
-            }
-        }
-    }
-
     private String maskQuery(String query) {
         if (query == null) return null;
         if (query.length() <= 3) return "***";
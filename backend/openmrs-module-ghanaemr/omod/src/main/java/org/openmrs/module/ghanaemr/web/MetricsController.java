@@ -0,0 +1,59 @@
+package org.openmrs.module.ghanaemr.web;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.metrics.MetricsRegistry;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.StringWriter;
+
+@RestController
+@RequestMapping("/ws/rest/v1/ghana/metrics")
+public class MetricsController {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsController.class);
+
+    /**
+     * Every module metric in the Prometheus text format: REST latency per controller, SQL
+     * statements per request, queue depths, the NHIE backlog and call latency, cache counters and
+     * JVM stats. Meant to be scraped every 15-60 seconds by a user holding ghanaemr.metrics.view.
+     * Answers 503 with a plain text reason when no scrape can be produced, so the scraper marks
+     * the target down instead of parsing an error body.
+     */
+    @GetMapping("/prometheus")
+    public ResponseEntity<String> getPrometheusMetrics(HttpServletRequest request) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.metrics.view");
+        try {
+            MetricsRegistry registry = Context.getRegisteredComponents(MetricsRegistry.class).stream().findFirst().orElse(null);
+            if (registry == null) {
+                return unavailable("Metrics registry not available");
+            }
+            StringWriter text = new StringWriter();
+            registry.writePrometheus(text);
+            return ResponseEntity.ok().header("Content-Type", PrometheusWriter.CONTENT_TYPE).body(text.toString());
+        } catch (Exception e) {
+            log.warn("Metrics scrape failed", e);
+            return unavailable("Metrics scrape failed: " + e.getMessage());
+        }
+    }
+
+    private void ensurePrivilege(String privilege) throws APIAuthenticationException {
+        if (!Context.hasPrivilege(privilege)) {
+            throw new APIAuthenticationException("Required privilege: " + privilege);
+        }
+    }
+
+    private ResponseEntity<String> unavailable(String reason) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Content-Type", "text/plain; charset=UTF-8").body(reason + "\n");
+    }
+}
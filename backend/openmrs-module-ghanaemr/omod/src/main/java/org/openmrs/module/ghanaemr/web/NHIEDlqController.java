@@ -2,6 +2,7 @@ package org.openmrs.module.ghanaemr.web;
 
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -64,6 +65,7 @@ public class NHIEDlqController {
             String now = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
             String sql = "UPDATE ghanaemr_nhie_transaction_log SET status='FAILED', next_retry_at='" + now + "', updated_at='" + now + "' WHERE id=" + id;
             Context.getAdministrationService().executeSQL(sql, false);
+            Context.getRegisteredComponents(NHIEMetrics.class).stream().findFirst().ifPresent(NHIEMetrics::requestReconcile);
             Map<String, Object> body = new HashMap<>();
             body.put("requeued", true);
             body.put("id", id);
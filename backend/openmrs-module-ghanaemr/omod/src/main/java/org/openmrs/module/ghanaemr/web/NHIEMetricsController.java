@@ -2,12 +2,17 @@ package org.openmrs.module.ghanaemr.web;
 
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.metrics.PrometheusWriter;
+import org.openmrs.module.ghanaemr.api.nhie.NHIECallMetrics;
+import org.openmrs.module.ghanaemr.api.nhie.NHIEMetrics;
+import org.openmrs.module.ghanaemr.api.reports.ReportCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -19,19 +24,68 @@ public class NHIEMetricsController {
     public ResponseEntity<?> getMetrics(HttpServletRequest request) {
         ensureAuthenticated(request);
         ensurePrivilege("ghanaemr.nhie.view");
-        Map<String, Object> body = new HashMap<>();
         try {
-            body.put("dlqCount", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='DLQ'"));
-            body.put("failedRetryable", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='FAILED' AND (response_status IN (401,429,500,502,503) OR response_status IS NULL)"));
-            body.put("success24h", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='SUCCESS' AND created_at >= (NOW() - INTERVAL 1 DAY)"));
-            body.put("lastUpdatedAt", stringScalar("SELECT DATE_FORMAT(MAX(updated_at), '%Y-%m-%d %H:%i:%s') FROM ghanaemr_nhie_transaction_log"));
+            // in-memory counters once loaded; the log is only queried while they are not
+            NHIEMetrics metrics = Context.getRegisteredComponents(NHIEMetrics.class).stream().findFirst().orElse(null);
+            Map<String, Object> body;
+            if (metrics != null && metrics.isReady()) {
+                body = metrics.getSnapshot();
+            } else {
+                body = new LinkedHashMap<>(logCounts());
+            }
+            body.put("latency", NHIECallMetrics.get().toMap());
             return ResponseEntity.ok(body);
         } catch (Exception e) {
+            Map<String, Object> body = new HashMap<>();
             body.put("error", e.getMessage());
             return ResponseEntity.ok(body);
         }
     }
 
+    /**
+     * NHIE call latency histograms, status and byte counters, and the transaction log counts, in
+     * the Prometheus text format.
+     */
+    @GetMapping("/metrics/prometheus")
+    public ResponseEntity<?> getPrometheusMetrics(HttpServletRequest request) {
+        ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.nhie.view");
+        try {
+            StringWriter text = new StringWriter();
+            PrometheusWriter out = new PrometheusWriter(text);
+            NHIECallMetrics.get().writePrometheus(out);
+            NHIEMetrics metrics = Context.getRegisteredComponents(NHIEMetrics.class).stream().findFirst().orElse(null);
+            if (metrics != null) {
+                metrics.writePrometheus(out);
+            }
+            return ResponseEntity.ok().header("Content-Type", PrometheusWriter.CONTENT_TYPE).body(text.toString());
+        } catch (Exception e) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("error", e.getMessage());
+            return ResponseEntity.ok(body);
+        }
+    }
+
+    /**
+     * The four counts straight from the log, for when the in-memory counters are not loaded.
+     */
+    private Map<String, Object> logCounts() throws Exception {
+        // rolling 24h window: expires on the short TTL, and is dropped by every log write
+        return cached(ReportCache.key("nhie-metrics", null, null, ReportCache.Topic.NHIE_LOG), () -> {
+            Map<String, Object> body = new HashMap<>();
+            body.put("dlqCount", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='DLQ'"));
+            body.put("failedRetryable", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='FAILED' AND (response_status IN (401,429,500,502,503) OR response_status IS NULL)"));
+            body.put("success24h", scalar("SELECT COUNT(*) FROM ghanaemr_nhie_transaction_log WHERE status='SUCCESS' AND created_at >= (NOW() - INTERVAL 1 DAY)"));
+            body.put("lastUpdatedAt", stringScalar("SELECT DATE_FORMAT(MAX(updated_at), '%Y-%m-%d %H:%i:%s') FROM ghanaemr_nhie_transaction_log"));
+            return Collections.unmodifiableMap(body);
+        });
+    }
+
+    private static <T> T cached(ReportCache.Key key, ReportCache.Loader<T> loader) throws Exception {
+        ReportCache cache = Context.getRegisteredComponents(ReportCache.class).stream().findFirst().orElse(null);
+        return cache != null ? cache.get(key, loader) : loader.load();
+    }
+
     private Number scalar(String sql) {
         @SuppressWarnings("unchecked")
         List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
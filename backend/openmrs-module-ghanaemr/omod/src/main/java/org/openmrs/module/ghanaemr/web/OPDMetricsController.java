@@ -2,6 +2,9 @@ package org.openmrs.module.ghanaemr.web;
 
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.reports.ReportCache;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.ReportsService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,6 +14,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
 
 @RestController
@@ -24,46 +28,44 @@ public class OPDMetricsController {
         ensureAuthenticated(request);
         try {
             ensurePrivilege("ghanaemr.reports.view");
-            String encTypeIdSql = "SELECT encounter_type_id FROM encounter_type WHERE uuid='" + encounterTypeUuid + "'";
-            Integer encTypeId = intScalar(encTypeIdSql);
+            final ReportsService reports = getReportsService();
+            final Integer encTypeId = reports.getEncounterTypeId(encounterTypeUuid);
             if (encTypeId == null) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(error("INVALID_ENCOUNTER_TYPE", "Unknown encounter type uuid"));
             }
 
-            String locClause = "";
+            Integer locationId = null;
             if (locationUuid != null && !locationUuid.trim().isEmpty()) {
-                locClause = " AND location_id=(SELECT location_id FROM location WHERE uuid='" + locationUuid + "')";
+                locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                            .body(error("INVALID_LOCATION", "Unknown location uuid"));
+                }
             }
-            Number todayEncounters = scalar("SELECT COUNT(*) FROM encounter WHERE DATE(encounter_datetime)=CURDATE() AND encounter_type=" + encTypeId + locClause);
-            Number newPatients = scalar("SELECT COUNT(*) FROM patient WHERE DATE(date_created)=CURDATE()");
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("opdEncountersToday", todayEncounters);
-            body.put("newPatientsToday", newPatients);
-            return ResponseEntity.ok(body);
+            final ReportRange today = ReportRange.ofDay(LocalDate.now());
+            final Integer location = locationId;
+            return ResponseEntity.ok(cached(ReportCache.key("opd-metrics?encounterType=" + encTypeId, today, locationId,
+                    ReportCache.Topic.ENCOUNTERS, ReportCache.Topic.PATIENTS), () -> {
+                Map<String, Object> body = new HashMap<>();
+                body.put("opdEncountersToday", reports.countEncounters(today, encTypeId, location));
+                body.put("newPatientsToday", reports.countNewPatients(today));
+                return Collections.unmodifiableMap(body);
+            }));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(error("OPD_METRICS_FAILED", e.getMessage()));
         }
     }
 
-    private Integer intScalar(String sql) {
-        @SuppressWarnings("unchecked")
-        List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
-        if (rows != null && !rows.isEmpty() && !rows.get(0).isEmpty() && rows.get(0).get(0) instanceof Number) {
-            return ((Number) rows.get(0).get(0)).intValue();
-        }
-        return null;
+    private static ReportsService getReportsService() {
+        return Context.getRegisteredComponents(ReportsService.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("ReportsService not available"));
     }
 
-    private Number scalar(String sql) {
-        @SuppressWarnings("unchecked")
-        List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
-        if (rows != null && !rows.isEmpty() && !rows.get(0).isEmpty() && rows.get(0).get(0) instanceof Number) {
-            return (Number) rows.get(0).get(0);
-        }
-        return 0;
+    private static <T> T cached(ReportCache.Key key, ReportCache.Loader<T> loader) throws Exception {
+        ReportCache cache = Context.getRegisteredComponents(ReportCache.class).stream().findFirst().orElse(null);
+        return cache != null ? cache.get(key, loader) : loader.load();
     }
 
     private static Map<String, Object> error(String code, String message) {
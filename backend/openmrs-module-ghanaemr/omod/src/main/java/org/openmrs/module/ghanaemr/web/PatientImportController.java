@@ -0,0 +1,140 @@
+package org.openmrs.module.ghanaemr.web;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportError;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportFormat;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportJob;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportRunner;
+import org.openmrs.module.ghanaemr.api.patientimport.PatientImportService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+
+/**
+ * Bulk patient registration. POST the file as the request body (text/csv with a header row, or
+ * application/x-ndjson with one GhanaPatientDTO per line; ?format=csv|ndjson overrides the
+ * Content-Type). The import runs in the background; poll the job and page through its errors.
+ */
+@RestController
+@RequestMapping("/ws/rest/v1/ghana/patients/import")
+public class PatientImportController {
+
+    private static final String PRIVILEGE = "ghanaemr.patients.import";
+
+    @PostMapping
+    public ResponseEntity<?> upload(HttpServletRequest request,
+                                    @RequestParam(value = "format", required = false) String format) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        PatientImportFormat f = PatientImportFormat.resolve(format, request.getContentType());
+        if (f == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(error("VALIDATION_ERROR", "Upload text/csv or application/x-ndjson, or pass format=csv|ndjson"));
+        }
+        try {
+            PatientImportJob job = getRunner().submit(f, request.getInputStream());
+            AuditLogger.log("PATIENT_IMPORT", null, null, Collections.<String, Object>singletonMap("importUuid", job.getUuid()));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(toMap(job));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(error("SERVER_ERROR", "Failed to start patient import"));
+        }
+    }
+
+    @GetMapping("/{uuid}")
+    public ResponseEntity<?> get(HttpServletRequest request, @PathVariable("uuid") String uuid) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        PatientImportJob job = getService().getJob(uuid);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_FOUND", "Import not found"));
+        }
+        return ResponseEntity.ok(toMap(job));
+    }
+
+    @GetMapping("/{uuid}/errors")
+    public ResponseEntity<?> errors(HttpServletRequest request, @PathVariable("uuid") String uuid,
+                                    @RequestParam(value = "page", required = false, defaultValue = "1") int page,
+                                    @RequestParam(value = "size", required = false, defaultValue = "100") int size) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        PatientImportJob job = getService().getJob(uuid);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_FOUND", "Import not found"));
+        }
+        int limit = Math.max(1, Math.min(size, 1000));
+        int offset = Math.max(0, (page - 1) * limit);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (PatientImportError e : getService().getErrors(job, offset, limit)) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("row", e.getRowNumber());
+            m.put("ghanaCard", e.getGhanaCard());
+            m.put("code", e.getCode());
+            m.put("message", e.getMessage());
+            items.add(m);
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("items", items);
+        body.put("total", job.getFailed());
+        body.put("page", page);
+        body.put("size", limit);
+        return ResponseEntity.ok(body);
+    }
+
+    @PostMapping("/{uuid}/resume")
+    public ResponseEntity<?> resume(HttpServletRequest request, @PathVariable("uuid") String uuid) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        PatientImportJob job = getService().getJob(uuid);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_FOUND", "Import not found"));
+        }
+        if (!getRunner().resume(job)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(error("NOT_RESUMABLE", "Import is running or already completed"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(toMap(job));
+    }
+
+    private Map<String, Object> toMap(PatientImportJob job) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("uuid", job.getUuid());
+        m.put("status", job.getStatus() != null ? job.getStatus().name() : null);
+        m.put("running", getRunner().isRunning(job.getUuid()));
+        m.put("format", job.getFormat() != null ? job.getFormat().name() : null);
+        m.put("checkpointRow", job.getCheckpointRow());
+        m.put("imported", job.getImported());
+        m.put("failed", job.getFailed());
+        m.put("error", job.getErrorMessage());
+        m.put("dateCreated", job.getDateCreated());
+        m.put("dateChanged", job.getDateChanged());
+        return m;
+    }
+
+    private PatientImportService getService() {
+        return Context.getRegisteredComponents(PatientImportService.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("PatientImportService not available"));
+    }
+
+    private PatientImportRunner getRunner() {
+        return Context.getRegisteredComponents(PatientImportRunner.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("PatientImportRunner not available"));
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("code", code);
+        m.put("message", message);
+        return m;
+    }
+
+    private void ensurePrivilege(String privilege) throws APIAuthenticationException {
+        if (!Context.hasPrivilege(privilege)) {
+            throw new APIAuthenticationException("Required privilege: " + privilege);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.ghanaemr.api.queue.PatientQueueService;
 import org.openmrs.module.ghanaemr.api.queue.model.PatientQueue;
 import org.openmrs.module.ghanaemr.api.queue.model.QueueStatus;
+import org.openmrs.module.ghanaemr.api.search.PatientListing;
+import org.openmrs.module.ghanaemr.api.search.PatientSummaryBuilder;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -40,6 +42,13 @@ public class QueueController {
             QueueStatus st = QueueStatus.valueOf(status.toUpperCase(Locale.ENGLISH));
             List<PatientQueue> list = getQueueService().getQueueByLocationAndStatus(location, st);
 
+            // names and identifiers for the whole list in two queries instead of lazy loads per row
+            List<Integer> patientIds = new ArrayList<Integer>(list.size());
+            for (PatientQueue q : list) {
+                patientIds.add(q.getPatient().getPatientId());
+            }
+            Map<Integer, PatientListing> listings = getSummaryBuilder().buildListings(patientIds);
+
             List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
             for (PatientQueue q : list) {
                 Map<String, Object> m = new LinkedHashMap<String, Object>();
@@ -48,24 +57,7 @@ public class QueueController {
                 m.put("status", q.getStatus().name());
                 m.put("priority", q.getPriority());
                 m.put("dateCreated", q.getDateCreated());
-
-                Patient p = q.getPatient();
-                Map<String, Object> pMap = new LinkedHashMap<String, Object>();
-                pMap.put("uuid", p.getUuid());
-                pMap.put("display", p.getPersonName() != null ? p.getPersonName().getFullName() : p.getUuid());
-                List<Map<String, Object>> ids = new ArrayList<Map<String, Object>>();
-                if (p.getIdentifiers() != null) {
-                    p.getIdentifiers().forEach(pi -> {
-                        Map<String, Object> idm = new LinkedHashMap<String, Object>();
-                        idm.put("identifier", pi.getIdentifier());
-                        Map<String, Object> it = new HashMap<String, Object>();
-                        it.put("display", pi.getIdentifierType() != null ? pi.getIdentifierType().getName() : "");
-                        idm.put("identifierType", it);
-                        ids.add(idm);
-                    });
-                }
-                pMap.put("identifiers", ids);
-                m.put("patient", pMap);
+                m.put("patient", toPatientMap(q.getPatient(), listings.get(q.getPatient().getPatientId())));
                 results.add(m);
             }
 
@@ -138,6 +130,33 @@ public class QueueController {
         }
     }
 
+    @PostMapping("/next")
+    public ResponseEntity<?> callNext(HttpServletRequest request,
+                                      @RequestParam("location") String locationUuid) {
+        ensureAuthenticated(request);
+        try {
+            Location location = Context.getLocationService().getLocationByUuid(locationUuid);
+            if (location == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(error("VALIDATION_ERROR", "Invalid locationUuid"));
+            }
+            PatientQueue q = getQueueService().callNext(location);
+            if (q == null) {
+                return ResponseEntity.noContent().build();
+            }
+            Map<String, Object> res = new HashMap<String, Object>();
+            res.put("uuid", q.getUuid());
+            res.put("queueNumber", q.getQueueNumber());
+            res.put("status", q.getStatus().name());
+            res.put("priority", q.getPriority());
+            res.put("patientUuid", q.getPatient() != null ? q.getPatient().getUuid() : null);
+            return ResponseEntity.ok(res);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(error("SERVER_ERROR", "Failed to call next patient"));
+        }
+    }
+
     @PostMapping("/{queueUuid}")
     public ResponseEntity<?> updateQueueStatus(HttpServletRequest request,
                                                @PathVariable("queueUuid") String queueUuid,
@@ -168,6 +187,31 @@ public class QueueController {
         }
     }
 
+    private Map<String, Object> toPatientMap(Patient p, PatientListing listing) {
+        Map<String, Object> pMap = new LinkedHashMap<String, Object>();
+        String uuid = listing != null ? listing.getUuid() : p.getUuid();
+        pMap.put("uuid", uuid);
+        pMap.put("display", listing != null && listing.getFullName() != null ? listing.getFullName() : uuid);
+        List<Map<String, Object>> ids = new ArrayList<Map<String, Object>>();
+        if (listing != null) {
+            for (PatientListing.Identifier pi : listing.getIdentifiers()) {
+                Map<String, Object> idm = new LinkedHashMap<String, Object>();
+                idm.put("identifier", pi.getIdentifier());
+                Map<String, Object> it = new HashMap<String, Object>();
+                it.put("display", pi.getTypeName() != null ? pi.getTypeName() : "");
+                idm.put("identifierType", it);
+                ids.add(idm);
+            }
+        }
+        pMap.put("identifiers", ids);
+        return pMap;
+    }
+
+    private PatientSummaryBuilder getSummaryBuilder() {
+        return Context.getRegisteredComponents(PatientSummaryBuilder.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("PatientSummaryBuilder not available"));
+    }
+
     private PatientQueueService getQueueService() {
         return Context.getService(PatientQueueService.class);
     }
@@ -0,0 +1,186 @@
+package org.openmrs.module.ghanaemr.web;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.reports.ReportJob;
+import org.openmrs.module.ghanaemr.api.reports.ReportJobRunner;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.ReportsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Background report runs for long date ranges. POST a report request (type=revenue,
+ * top-diagnoses or opd-register with the same parameters as the synchronous endpoint), poll the
+ * job until it is COMPLETED, then download its result. An identical request while one is queued
+ * or running returns the existing job.
+ */
+@RestController
+@RequestMapping("/ws/rest/v1/ghana/reports/jobs")
+public class ReportJobController {
+
+    private static final String PRIVILEGE = "ghanaemr.reports.view";
+
+    @PostMapping
+    public ResponseEntity<?> submit(HttpServletRequest request,
+                                    @RequestParam("type") String type,
+                                    @RequestParam("from") String from,
+                                    @RequestParam("to") String to,
+                                    @RequestParam(value = "format", required = false) String format,
+                                    @RequestParam(value = "locationUuid", required = false) String locationUuid,
+                                    @RequestParam(value = "encounterTypeUuid", required = false) String encounterTypeUuid,
+                                    @RequestParam(value = "limit", required = false, defaultValue = "10") int limit) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        ReportJob.Type t = ReportJob.Type.resolve(type);
+        if (t == null) return bad("INVALID_TYPE", "type must be revenue, top-diagnoses or opd-register");
+        ReportJob.Format f = ReportJob.Format.resolve(format);
+        if (f == null) return bad("INVALID_FORMAT", "format must be json or csv");
+        ReportRange range;
+        try {
+            range = ReportRange.parse(from, to);
+        } catch (IllegalArgumentException e) {
+            return bad("INVALID_DATE", e.getMessage());
+        }
+        try {
+            ReportsService reports = getReportsService();
+            ReportJob job = new ReportJob();
+            job.setType(t);
+            job.setFormat(f);
+            job.setFrom(range.getFrom());
+            job.setTo(range.getTo());
+            if (t != ReportJob.Type.TOP_DIAGNOSES && locationUuid != null && !locationUuid.trim().isEmpty()) {
+                Integer locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) return bad("INVALID_LOCATION", "Unknown location uuid");
+                job.setLocationId(locationId);
+            }
+            if (t == ReportJob.Type.OPD_REGISTER) {
+                Integer encTypeId = encounterTypeUuid != null ? reports.getEncounterTypeId(encounterTypeUuid) : null;
+                if (encTypeId == null) return bad("INVALID_ENCOUNTER_TYPE", "Unknown encounter type uuid");
+                job.setEncounterTypeId(encTypeId);
+            }
+            if (t == ReportJob.Type.TOP_DIAGNOSES) {
+                job.setLimit(Math.max(1, Math.min(limit, 1000)));
+            }
+            job = getRunner().submit(job, Context.getAuthenticatedUser().getUserId());
+            AuditLogger.log("REPORT_JOB", null, null, Collections.<String, Object>singletonMap("jobUuid", job.getUuid()));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(toMap(job));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(error("TOO_MANY_JOBS", "Too many report jobs queued; try again later"));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(error("SERVER_ERROR", "Failed to start report job"));
+        }
+    }
+
+    @GetMapping("/{uuid}")
+    public ResponseEntity<?> get(HttpServletRequest request, @PathVariable("uuid") String uuid) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        ReportJob job = getRunner().getJob(uuid);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_FOUND", "Report job not found"));
+        }
+        return ResponseEntity.ok(toMap(job));
+    }
+
+    /**
+     * The result file as written by the job, with its content type.
+     */
+    @GetMapping("/{uuid}/result")
+    public ResponseEntity<?> result(HttpServletRequest request, HttpServletResponse response,
+                                    @PathVariable("uuid") String uuid) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        ReportJobRunner runner = getRunner();
+        ReportJob job = runner.getJob(uuid);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_FOUND", "Report job not found"));
+        }
+        if (job.getStatus() != ReportJob.Status.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(error("NOT_READY", "Report job is " + job.getStatus()));
+        }
+        File file = runner.getResultFile(job);
+        if (file == null) {
+            return ResponseEntity.status(HttpStatus.GONE).body(error("RESULT_EXPIRED", "Report result no longer available"));
+        }
+        try {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(job.contentType());
+            response.setHeader("Content-Length", String.valueOf(file.length()));
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + job.getType().name().toLowerCase(Locale.ROOT)
+                    .replace('_', '-') + "-" + job.getFrom() + "_" + job.getTo() + job.fileExtension() + "\"");
+            Files.copy(file.toPath(), response.getOutputStream());
+            response.getOutputStream().flush();
+            // response already written
+            return null;
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(error("SERVER_ERROR", "Failed to read report result"));
+        }
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<?> stats(HttpServletRequest request) {
+        BasicAuth.ensureAuthenticated(request);
+        ensurePrivilege(PRIVILEGE);
+        return ResponseEntity.ok(getRunner().getStats());
+    }
+
+    private static Map<String, Object> toMap(ReportJob job) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("uuid", job.getUuid());
+        m.put("type", job.getType() != null ? job.getType().name() : null);
+        m.put("format", job.getFormat() != null ? job.getFormat().name() : null);
+        m.put("from", job.getFrom() != null ? job.getFrom().toString() : null);
+        m.put("to", job.getTo() != null ? job.getTo().toString() : null);
+        m.put("status", job.getStatus() != null ? job.getStatus().name() : null);
+        m.put("rows", job.getRows());
+        m.put("durationMs", job.getDurationMs());
+        m.put("error", job.getErrorMessage());
+        m.put("dateCreated", job.getDateCreated());
+        m.put("startedAt", job.getStartedAt());
+        m.put("finishedAt", job.getFinishedAt());
+        return m;
+    }
+
+    private static ReportJobRunner getRunner() {
+        return Context.getRegisteredComponents(ReportJobRunner.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("ReportJobRunner not available"));
+    }
+
+    private static ReportsService getReportsService() {
+        return Context.getRegisteredComponents(ReportsService.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("ReportsService not available"));
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("code", code);
+        m.put("message", message);
+        return m;
+    }
+
+    private ResponseEntity<?> bad(String code, String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", code);
+        error.put("message", message);
+        return ResponseEntity.badRequest().body(error);
+    }
+
+    private void ensurePrivilege(String privilege) throws APIAuthenticationException {
+        if (!Context.hasPrivilege(privilege)) {
+            throw new APIAuthenticationException("Required privilege: " + privilege);
+        }
+    }
+}
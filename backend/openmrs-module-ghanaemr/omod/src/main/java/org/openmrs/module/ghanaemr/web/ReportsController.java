@@ -2,6 +2,18 @@ package org.openmrs.module.ghanaemr.web;
 
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ghanaemr.api.fhir.ConceptIcd10Map;
+import org.openmrs.module.ghanaemr.api.reports.BillingCounts;
+import org.openmrs.module.ghanaemr.api.reports.DailyStats;
+import org.openmrs.module.ghanaemr.api.reports.Dhims2MonthlyReport;
+import org.openmrs.module.ghanaemr.api.reports.DiagnosisCount;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterEntry;
+import org.openmrs.module.ghanaemr.api.reports.OpdRegisterWriter;
+import org.openmrs.module.ghanaemr.api.reports.ReportCache;
+import org.openmrs.module.ghanaemr.api.reports.ReportRange;
+import org.openmrs.module.ghanaemr.api.reports.ReportsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,86 +22,119 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 @RestController
 @RequestMapping("/ws/rest/v1/ghana/reports")
 public class ReportsController {
 
+    private static final Logger log = LoggerFactory.getLogger(ReportsController.class);
+
+    static final int MAX_JSON_REGISTER_DAYS = 31;
+
+    private static final int STREAM_BUFFER_CHARS = 16 * 1024;
+
+    /**
+     * OPD register for one day (date) or a range (from/to). format=csv or ndjson streams rows
+     * straight to the response with chunked transfer, so memory does not grow with the range;
+     * the JSON list is limited to {@value #MAX_JSON_REGISTER_DAYS} days.
+     */
     @GetMapping("/opd-register")
     public ResponseEntity<?> opdRegister(HttpServletRequest request,
-                                         @RequestParam("date") String date,
+                                         HttpServletResponse response,
+                                         @RequestParam(value = "date", required = false) String date,
+                                         @RequestParam(value = "from", required = false) String from,
+                                         @RequestParam(value = "to", required = false) String to,
                                          @RequestParam("encounterTypeUuid") String encounterTypeUuid,
                                          @RequestParam(value = "format", required = false) String format,
                                          @RequestParam(value = "locationUuid", required = false) String locationUuid) {
         ensureAuthenticated(request);
         ensurePrivilege("ghanaemr.reports.view");
         try {
-            Integer encTypeId = intScalar("SELECT encounter_type_id FROM encounter_type WHERE uuid='" + encounterTypeUuid + "'");
+            ReportsService reports = getReportsService();
+            ReportRange range;
+            try {
+                range = date != null && !date.trim().isEmpty()
+                        ? ReportRange.ofDay(ReportRange.parseDay(date)) : ReportRange.parse(from, to);
+            } catch (IllegalArgumentException e) {
+                return bad("INVALID_DATE", "date or from/to (yyyy-MM-dd) is required: " + e.getMessage());
+            }
+            Integer encTypeId = reports.getEncounterTypeId(encounterTypeUuid);
             if (encTypeId == null) return bad("INVALID_ENCOUNTER_TYPE", "Unknown encounter type uuid");
-            String locClause = "";
+            Integer locationId = null;
             if (locationUuid != null && !locationUuid.trim().isEmpty()) {
-                locClause = " AND e.location_id=(SELECT location_id FROM location WHERE uuid='" + locationUuid + "')";
+                locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) return bad("INVALID_LOCATION", "Unknown location uuid");
+            }
+            OpdRegisterWriter.Format streamFormat = OpdRegisterWriter.Format.resolve(format);
+            if (streamFormat != null) {
+                streamOpdRegister(response, reports, range, encTypeId, locationId, streamFormat);
+                // response already written
+                return null;
+            }
+            if (range.getDays() > MAX_JSON_REGISTER_DAYS) {
+                return bad("RANGE_TOO_LARGE", "Use format=csv or format=ndjson for more than "
+                        + MAX_JSON_REGISTER_DAYS + " days");
             }
-            String sql = "SELECT e.uuid, e.encounter_datetime, p.uuid as patient_uuid, pn.given_name, pn.family_name, " +
-                    "(SELECT GROUP_CONCAT(DISTINCT o.value_text SEPARATOR ' | ') FROM obs o WHERE o.encounter_id=e.encounter_id AND o.voided=0 AND o.value_text IS NOT NULL) AS notes_text " +
-                    "FROM encounter e JOIN patient p ON e.patient_id=p.patient_id " +
-                    "LEFT JOIN person_name pn ON pn.person_id=p.patient_id AND pn.preferred=1 " +
-                    "WHERE DATE(e.encounter_datetime)='" + date + "' AND e.encounter_type=" + encTypeId + locClause + " ORDER BY e.encounter_datetime";
-            @SuppressWarnings("unchecked")
-            List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
             List<Map<String, Object>> items = new ArrayList<>();
-            for (List<Object> r : rows) {
+            for (OpdRegisterEntry entry : reports.getOpdRegister(range, encTypeId, locationId)) {
                 Map<String, Object> m = new HashMap<>();
-                m.put("encounterUuid", r.get(0));
-                m.put("datetime", r.get(1));
-                m.put("patientUuid", r.get(2));
-                m.put("givenName", maskName(String.valueOf(r.get(3))));
-                m.put("familyName", maskName(String.valueOf(r.get(4))));
-                String notes = r.size() > 5 && r.get(5) != null ? String.valueOf(r.get(5)) : null;
-                if (notes != null) {
-                    // Extract billing flag heuristically
-                    String billing = null;
-                    if (notes.contains("Billing: NHIS")) billing = "NHIS";
-                    else if (notes.contains("Billing: Cash")) billing = "Cash";
-                    if (billing != null) m.put("billing", billing);
-                    // Extract diagnoses summary if present
-                    int idx = notes.indexOf("Diagnoses:");
-                    if (idx >= 0) {
-                        String tail = notes.substring(idx + "Diagnoses:".length()).trim();
-                        int nl = tail.indexOf('\n');
-                        String diag = nl >= 0 ? tail.substring(0, nl) : tail;
-                        m.put("diagnoses", diag);
-                    }
-                }
+                m.put("encounterUuid", entry.getEncounterUuid());
+                m.put("datetime", entry.getEncounterDatetime());
+                m.put("patientUuid", entry.getPatientUuid());
+                m.put("givenName", OpdRegisterWriter.maskName(entry.getGivenName()));
+                m.put("familyName", OpdRegisterWriter.maskName(entry.getFamilyName()));
+                if (entry.getBilling() != null) m.put("billing", entry.getBilling());
+                if (entry.getDiagnoses() != null) m.put("diagnoses", entry.getDiagnoses());
                 items.add(m);
             }
-            if ("csv".equalsIgnoreCase(format)) {
-                StringBuilder sb = new StringBuilder();
-                sb.append("encounterUuid,datetime,patientUuid,givenName,familyName,billing,diagnoses\n");
-                for (Map<String, Object> m : items) {
-                    sb.append(m.get("encounterUuid")).append(',')
-                      .append(m.get("datetime")).append(',')
-                      .append(m.get("patientUuid")).append(',')
-                      .append(safeCsv(m.get("givenName"))).append(',')
-                      .append(safeCsv(m.get("familyName"))).append(',')
-                      .append(safeCsv(m.get("billing"))).append(',')
-                      .append(safeCsv(m.get("diagnoses"))).append('\n');
-                }
-                return ResponseEntity.ok()
-                        .header("Content-Type", "text/csv; charset=UTF-8")
-                        .body(sb.toString());
-            } else {
-                Map<String, Object> body = new HashMap<>();
-                body.put("items", items);
-                return ResponseEntity.ok(body);
-            }
+            Map<String, Object> body = new HashMap<>();
+            body.put("items", items);
+            return ResponseEntity.ok(body);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error("OPD_REGISTER_FAILED", e.getMessage()));
         }
     }
 
+    /**
+     * No Content-Length is set, so the container uses chunked transfer as the buffer fills. Once
+     * rows have been sent the status cannot change; a failure then only ends the stream early.
+     */
+    private void streamOpdRegister(HttpServletResponse response, ReportsService reports, ReportRange range,
+                                   int encTypeId, Integer locationId, OpdRegisterWriter.Format format) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(format.contentType());
+        response.setHeader("Content-Disposition", "attachment; filename=\"opd-register-" + range.getFrom() + "_"
+                + range.getTo() + (format == OpdRegisterWriter.Format.CSV ? ".csv" : ".ndjson") + "\"");
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8),
+                STREAM_BUFFER_CHARS);
+        OpdRegisterWriter writer = new OpdRegisterWriter(out, format);
+        long start = System.currentTimeMillis();
+        try {
+            writer.start();
+            reports.streamOpdRegister(range, encTypeId, locationId, writer);
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            log.info("OPD register export for {} stopped after {} rows: {}", range, writer.getRows(), e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            log.warn("OPD register export for {} failed after {} rows", range, writer.getRows(), e);
+            out.flush();
+            return;
+        }
+        log.info("OPD register export for {}: {} rows in {} ms", range, writer.getRows(), System.currentTimeMillis() - start);
+    }
+
     @GetMapping("/nhis-vs-cash")
     public ResponseEntity<?> nhisVsCash(HttpServletRequest request,
                                         @RequestParam("date") String date,
@@ -98,37 +143,26 @@ public class ReportsController {
         ensureAuthenticated(request);
         ensurePrivilege("ghanaemr.reports.view");
         try {
-            String nhisCount = "0";
-            String cashCount = "0";
-            String locClause = "";
-            if (locationUuid != null && !locationUuid.trim().isEmpty()) {
-                locClause = " AND o.location_id=(SELECT location_id FROM location WHERE uuid='" + locationUuid + "')";
+            ReportsService reports = getReportsService();
+            ReportRange range;
+            try {
+                range = ReportRange.ofDay(ReportRange.parseDay(date));
+            } catch (IllegalArgumentException e) {
+                return bad("INVALID_DATE", e.getMessage());
             }
-            // Prefer coded obs if configured
-            String billingConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.concept.uuid", "");
-            String nhisConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.nhis.uuid", "");
-            String cashConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.cash.uuid", "");
-            if (!billingConcept.isEmpty() && (!nhisConcept.isEmpty() || !cashConcept.isEmpty())) {
-                if (!nhisConcept.isEmpty()) {
-                    nhisCount = String.valueOf(scalar("SELECT COUNT(*) FROM obs o WHERE o.concept_id=(SELECT concept_id FROM concept WHERE uuid='" + billingConcept + "') AND o.value_coded=(SELECT concept_id FROM concept WHERE uuid='" + nhisConcept + "') AND DATE(o.obs_datetime)='" + date + "'" + locClause));
-                }
-                if (!cashConcept.isEmpty()) {
-                    cashCount = String.valueOf(scalar("SELECT COUNT(*) FROM obs o WHERE o.concept_id=(SELECT concept_id FROM concept WHERE uuid='" + billingConcept + "') AND o.value_coded=(SELECT concept_id FROM concept WHERE uuid='" + cashConcept + "') AND DATE(o.obs_datetime)='" + date + "'" + locClause));
-                }
-            } else {
-                // Fallback parse notes
-                nhisCount = String.valueOf(scalar("SELECT COUNT(*) FROM obs o WHERE o.value_text LIKE '%Billing: NHIS%' AND DATE(o.obs_datetime)='" + date + "'" + locClause));
-                cashCount = String.valueOf(scalar("SELECT COUNT(*) FROM obs o WHERE o.value_text LIKE '%Billing: Cash%' AND DATE(o.obs_datetime)='" + date + "'" + locClause));
+            Integer locationId = null;
+            if (locationUuid != null && !locationUuid.trim().isEmpty()) {
+                locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) return bad("INVALID_LOCATION", "Unknown location uuid");
             }
-            int nhisVal = Integer.parseInt(nhisCount);
-            int cashVal = Integer.parseInt(cashCount);
+            BillingCounts counts = countBilling(reports, range, locationId);
             if ("csv".equalsIgnoreCase(format)) {
-                String csv = "date,nhis,cash\n" + date + "," + nhisVal + "," + cashVal + "\n";
+                String csv = "date,nhis,cash\n" + range.getFrom() + "," + counts.getNhis() + "," + counts.getCash() + "\n";
                 return ResponseEntity.ok().header("Content-Type", "text/csv; charset=UTF-8").body(csv);
             } else {
                 Map<String, Object> body = new HashMap<>();
-                body.put("nhis", nhisVal);
-                body.put("cash", cashVal);
+                body.put("nhis", counts.getNhis());
+                body.put("cash", counts.getCash());
                 return ResponseEntity.ok(body);
             }
         } catch (Exception e) {
@@ -145,26 +179,35 @@ public class ReportsController {
         ensureAuthenticated(request);
         ensurePrivilege("ghanaemr.reports.view");
         try {
-            // Prefer conditions if present
-            String sql = "SELECT c.concept_id, cn.name, COUNT(*) cnt FROM conditions c LEFT JOIN concept_name cn ON cn.concept_id=c.concept_id AND cn.locale='en' AND cn.locale_preferred=1 " +
-                    "WHERE DATE(c.date_created) BETWEEN '" + from + "' AND '" + to + "' GROUP BY c.concept_id, cn.name ORDER BY cnt DESC LIMIT " + limit;
-            @SuppressWarnings("unchecked")
-            List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
+            ReportRange range;
+            try {
+                range = ReportRange.parse(from, to);
+            } catch (IllegalArgumentException e) {
+                return bad("INVALID_DATE", e.getMessage());
+            }
             List<Map<String, Object>> items = new ArrayList<>();
-            for (List<Object> r : rows) {
+            // codes are only filled once the shared ICD-10 table is built
+            ConceptIcd10Map icd10 = conceptIcd10Map();
+            if (icd10 != null && !icd10.isReady()) icd10 = null;
+            final ReportsService reports = getReportsService();
+            List<DiagnosisCount> top = cached(ReportCache.key("top-diagnoses?limit=" + limit, range, null,
+                    ReportCache.Topic.DIAGNOSES), () -> reports.getTopDiagnoses(range, limit));
+            for (DiagnosisCount d : top) {
                 Map<String, Object> m = new HashMap<>();
-                m.put("conceptId", r.get(0));
-                m.put("name", r.get(1));
-                m.put("count", r.get(2));
+                m.put("conceptId", d.getConceptId());
+                m.put("name", d.getName());
+                m.put("count", d.getCount());
+                m.put("icd10", icd10 != null ? icd10.get(d.getConceptId()) : null);
                 items.add(m);
             }
             if ("csv".equalsIgnoreCase(format)) {
                 StringBuilder sb = new StringBuilder();
-                sb.append("conceptId,name,count\n");
+                sb.append("conceptId,name,count,icd10\n");
                 for (Map<String, Object> m : items) {
                     sb.append(m.get("conceptId")).append(',')
                       .append(safeCsv(m.get("name"))).append(',')
-                      .append(m.get("count")).append('\n');
+                      .append(m.get("count")).append(',')
+                      .append(safeCsv(m.get("icd10"))).append('\n');
                 }
                 return ResponseEntity.ok().header("Content-Type", "text/csv; charset=UTF-8").body(sb.toString());
             } else {
@@ -177,6 +220,39 @@ public class ReportsController {
         }
     }
 
+    @GetMapping("/icd10-map/stats")
+    public ResponseEntity<?> icd10MapStats(HttpServletRequest request) {
+        ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.reports.view");
+        ConceptIcd10Map icd10 = conceptIcd10Map();
+        if (icd10 == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_AVAILABLE", "ICD-10 concept map not configured"));
+        }
+        return ResponseEntity.ok(icd10.getStats());
+    }
+
+    @GetMapping("/daily-stats/stats")
+    public ResponseEntity<?> dailyStatsStats(HttpServletRequest request) {
+        ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.reports.view");
+        DailyStats stats = Context.getRegisteredComponents(DailyStats.class).stream().findFirst().orElse(null);
+        if (stats == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_AVAILABLE", "Daily report stats not configured"));
+        }
+        return ResponseEntity.ok(stats.getStats());
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> cacheStats(HttpServletRequest request) {
+        ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.reports.view");
+        ReportCache cache = Context.getRegisteredComponents(ReportCache.class).stream().findFirst().orElse(null);
+        if (cache == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("NOT_AVAILABLE", "Report cache not configured"));
+        }
+        return ResponseEntity.ok(cache.getStats());
+    }
+
     @GetMapping("/revenue")
     public ResponseEntity<?> revenue(HttpServletRequest request,
                                      @RequestParam("from") String from,
@@ -186,34 +262,28 @@ public class ReportsController {
         ensureAuthenticated(request);
         ensurePrivilege("ghanaemr.reports.view");
         try {
-            String billingConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.concept.uuid", "");
-            String nhisConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.nhis.uuid", "");
-            String cashConcept = Context.getAdministrationService().getGlobalProperty("ghana.billing.cash.uuid", "");
-            int nhis = 0, cash = 0;
-            String locClause = "";
-            if (locationUuid != null && !locationUuid.trim().isEmpty()) {
-                locClause = " AND o.location_id=(SELECT location_id FROM location WHERE uuid='" + locationUuid + "')";
+            ReportsService reports = getReportsService();
+            ReportRange range;
+            try {
+                range = ReportRange.parse(from, to);
+            } catch (IllegalArgumentException e) {
+                return bad("INVALID_DATE", e.getMessage());
             }
-            if (!billingConcept.isEmpty() && (!nhisConcept.isEmpty() || !cashConcept.isEmpty())) {
-                if (!nhisConcept.isEmpty()) {
-                    nhis = ((Number) scalar("SELECT COUNT(*) FROM obs o WHERE o.concept_id=(SELECT concept_id FROM concept WHERE uuid='" + billingConcept + "') AND o.value_coded=(SELECT concept_id FROM concept WHERE uuid='" + nhisConcept + "') AND DATE(o.obs_datetime) BETWEEN '" + from + "' AND '" + to + "'" + locClause)).intValue();
-                }
-                if (!cashConcept.isEmpty()) {
-                    cash = ((Number) scalar("SELECT COUNT(*) FROM obs o WHERE o.concept_id=(SELECT concept_id FROM concept WHERE uuid='" + billingConcept + "') AND o.value_coded=(SELECT concept_id FROM concept WHERE uuid='" + cashConcept + "') AND DATE(o.obs_datetime) BETWEEN '" + from + "' AND '" + to + "'" + locClause)).intValue();
-                }
-            } else {
-                nhis = ((Number) scalar("SELECT COUNT(*) FROM obs o WHERE o.value_text LIKE '%Billing: NHIS%' AND DATE(o.obs_datetime) BETWEEN '" + from + "' AND '" + to + "'" + locClause)).intValue();
-                cash = ((Number) scalar("SELECT COUNT(*) FROM obs o WHERE o.value_text LIKE '%Billing: Cash%' AND DATE(o.obs_datetime) BETWEEN '" + from + "' AND '" + to + "'" + locClause)).intValue();
+            Integer locationId = null;
+            if (locationUuid != null && !locationUuid.trim().isEmpty()) {
+                locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) return bad("INVALID_LOCATION", "Unknown location uuid");
             }
+            BillingCounts counts = countBilling(reports, range, locationId);
             if ("csv".equalsIgnoreCase(format)) {
-                String csv = "from,to,nhis,cash\n" + from + "," + to + "," + nhis + "," + cash + "\n";
+                String csv = "from,to,nhis,cash\n" + range.getFrom() + "," + range.getTo() + "," + counts.getNhis() + "," + counts.getCash() + "\n";
                 return ResponseEntity.ok().header("Content-Type", "text/csv; charset=UTF-8").body(csv);
             } else {
                 Map<String, Object> body = new HashMap<>();
-                body.put("from", from);
-                body.put("to", to);
-                body.put("nhis", nhis);
-                body.put("cash", cash);
+                body.put("from", range.getFrom().toString());
+                body.put("to", range.getTo().toString());
+                body.put("nhis", counts.getNhis());
+                body.put("cash", counts.getCash());
                 return ResponseEntity.ok(body);
             }
         } catch (Exception e) {
@@ -221,27 +291,72 @@ public class ReportsController {
         }
     }
 
-    private Integer intScalar(String sql) {
-        @SuppressWarnings("unchecked")
-        List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
-        if (rows != null && !rows.isEmpty() && !rows.get(0).isEmpty() && rows.get(0).get(0) instanceof Number) {
-            return ((Number) rows.get(0).get(0)).intValue();
+    /**
+     * The DHIMS2 monthly OPD dataset (month=yyyy-MM) for the district submission: attendance by
+     * age band and sex, insured vs non-insured visits and the top morbidities. format=csv gives one
+     * row per band for data entry.
+     */
+    @GetMapping("/dhims2/monthly")
+    public ResponseEntity<?> dhims2Monthly(HttpServletRequest request,
+                                           @RequestParam("month") String month,
+                                           @RequestParam(value = "top", required = false, defaultValue = "20") int top,
+                                           @RequestParam(value = "format", required = false) String format,
+                                           @RequestParam(value = "locationUuid", required = false) String locationUuid) {
+        ensureAuthenticated(request);
+        ensurePrivilege("ghanaemr.reports.view");
+        try {
+            final ReportsService reports = getReportsService();
+            final YearMonth yearMonth;
+            try {
+                yearMonth = YearMonth.parse(month.trim());
+            } catch (DateTimeParseException e) {
+                return bad("INVALID_MONTH", "month must be yyyy-MM");
+            }
+            if (yearMonth.isAfter(YearMonth.now())) {
+                return bad("INVALID_MONTH", "month is in the future");
+            }
+            Integer locationId = null;
+            if (locationUuid != null && !locationUuid.trim().isEmpty()) {
+                locationId = reports.getLocationId(locationUuid);
+                if (locationId == null) return bad("INVALID_LOCATION", "Unknown location uuid");
+            }
+            final Integer location = locationId;
+            ReportRange range = ReportRange.of(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            Dhims2MonthlyReport report = cached(ReportCache.key("dhims2-monthly?top=" + top, range, location,
+                    ReportCache.Topic.ENCOUNTERS, ReportCache.Topic.BILLING, ReportCache.Topic.PATIENTS),
+                    () -> reports.getDhims2Monthly(yearMonth, location, top));
+            if ("csv".equalsIgnoreCase(format)) {
+                StringWriter csv = new StringWriter();
+                report.writeCsv(csv);
+                return ResponseEntity.ok()
+                        .header("Content-Type", "text/csv; charset=UTF-8")
+                        .header("Content-Disposition", "attachment; filename=\"dhims2-opd-" + yearMonth + ".csv\"")
+                        .body(csv.toString());
+            }
+            return ResponseEntity.ok(report.toMap());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error("DHIMS2_MONTHLY_FAILED", e.getMessage()));
         }
-        return null;
     }
 
-    private Number scalar(String sql) {
-        @SuppressWarnings("unchecked")
-        List<List<Object>> rows = Context.getAdministrationService().executeSQL(sql, true);
-        if (rows != null && !rows.isEmpty() && !rows.get(0).isEmpty() && rows.get(0).get(0) instanceof Number) {
-            return (Number) rows.get(0).get(0);
-        }
-        return 0;
+    /** Shared by nhis-vs-cash and revenue: the same counts whatever the endpoint or format. */
+    private static BillingCounts countBilling(ReportsService reports, ReportRange range, Integer locationId) throws Exception {
+        return cached(ReportCache.key("billing-counts", range, locationId, ReportCache.Topic.BILLING),
+                () -> reports.countBilling(range, locationId));
+    }
+
+    private static <T> T cached(ReportCache.Key key, ReportCache.Loader<T> loader) throws Exception {
+        ReportCache cache = Context.getRegisteredComponents(ReportCache.class).stream().findFirst().orElse(null);
+        return cache != null ? cache.get(key, loader) : loader.load();
+    }
+
+    private static ConceptIcd10Map conceptIcd10Map() {
+        return Context.getRegisteredComponents(ConceptIcd10Map.class).stream().findFirst().orElse(null);
     }
 
-    private static String maskName(String n) {
-        if (n == null || n.isEmpty()) return null;
-        return n.substring(0, 1) + "***";
+    private static ReportsService getReportsService() {
+        return Context.getRegisteredComponents(ReportsService.class).stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("ReportsService not available"));
     }
 
     private static String safeCsv(Object v) {
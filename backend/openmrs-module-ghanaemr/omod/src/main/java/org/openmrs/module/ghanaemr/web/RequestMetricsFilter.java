@@ -0,0 +1,85 @@
+package org.openmrs.module.ghanaemr.web;
+
+import org.openmrs.module.ghanaemr.api.metrics.QueryCounter;
+import org.openmrs.module.ghanaemr.api.metrics.RequestMetrics;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times every request to the module's REST controllers into {@link RequestMetrics}, labelled by
+ * the controller that serves the path rather than the path itself, so patient uuids and other
+ * path variables do not become series. Declared in config.xml for /ws/rest/v1/ghana/*. The
+ * metrics endpoints are not timed, so scrapes do not show up as traffic.
+ */
+public class RequestMetricsFilter implements Filter {
+
+    private static final String BASE = "/ws/rest/v1/ghana/";
+
+    /** Path below BASE to controller; longer prefixes first. */
+    private static final String[][] CONTROLLERS = {
+            {"patients/import", "PatientImportController"},
+            {"patients", "GhanaPatientController"},
+            {"opd/queue", "QueueController"},
+            {"opd/triage", "TriageController"},
+            {"opd/consultation", "ConsultationController"},
+            {"opd", "OPDMetricsController"},
+            {"reports/jobs", "ReportJobController"},
+            {"reports", "ReportsController"},
+            {"coverage", "NHIECoverageController"},
+            {"nhie/dlq", "NHIEDlqController"},
+    };
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        String controller = req instanceof HttpServletRequest ? controllerFor(((HttpServletRequest) req).getRequestURI()) : null;
+        if (controller == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        RequestMetrics metrics = RequestMetrics.get();
+        long queries = QueryCounter.current();
+        long start = System.nanoTime();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        metrics.begin();
+        try {
+            chain.doFilter(req, res);
+            status = ((HttpServletResponse) res).getStatus();
+        } finally {
+            metrics.end(controller, ((HttpServletRequest) req).getMethod(), status, System.nanoTime() - start,
+                    QueryCounter.isInstalled() ? QueryCounter.current() - queries : -1);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * @return the controller serving uri, or null for paths outside the timed controllers
+     */
+    static String controllerFor(String uri) {
+        int i = uri != null ? uri.indexOf(BASE) : -1;
+        if (i < 0) {
+            return null;
+        }
+        String path = uri.substring(i + BASE.length());
+        for (String[] c : CONTROLLERS) {
+            if (path.equals(c[0]) || path.startsWith(c[0] + "/")) {
+                return c[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+-- Ghana EMR report query benchmark
+-- Compares the old DATE()-wrapped report predicates against the half-open range queries used by
+-- ReportsService, on a scratch schema seeded with 200,000 OPD encounters and 1,000,000 obs.
+--
+-- Run against the MySQL 5.7 container (takes a few minutes to seed):
+--   docker exec -i medreg-mysql mysql -uroot -p<password> < scripts/benchmark-report-queries.sql
+--
+-- "before": old SQL, core OpenMRS indexes only.
+-- "after":  new SQL, core indexes plus the ghanaemr-report-index-* changesets from liquibase.xml.
+-- Each query runs 5 times; the final SELECT prints best and mean latency per report.
+-- "opd-register joined (day)" is the single-pass encounter/obs join that replaced the correlated
+-- GROUP_CONCAT; compare its "after" row with the "opd-register (day)" rows.
+
+DROP DATABASE IF EXISTS ghanaemr_report_bench;
+CREATE DATABASE ghanaemr_report_bench;
+USE ghanaemr_report_bench;
+
+-- ========================================
+-- SCHEMA (report columns of the core tables, with core indexes)
+-- ========================================
+
+CREATE TABLE encounter (
+    encounter_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    encounter_type INT NOT NULL,
+    patient_id INT NOT NULL,
+    location_id INT NULL,
+    encounter_datetime DATETIME NOT NULL,
+    voided TINYINT(1) NOT NULL DEFAULT 0,
+    uuid CHAR(38) NOT NULL,
+    KEY encounter_datetime_idx (encounter_datetime),
+    KEY encounter_type_id (encounter_type),
+    KEY encounter_location (location_id),
+    KEY encounter_patient (patient_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE obs (
+    obs_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    encounter_id INT NULL,
+    concept_id INT NOT NULL,
+    value_coded INT NULL,
+    value_text TEXT NULL,
+    obs_datetime DATETIME NOT NULL,
+    location_id INT NULL,
+    voided TINYINT(1) NOT NULL DEFAULT 0,
+    KEY obs_datetime_idx (obs_datetime),
+    KEY obs_concept (concept_id),
+    KEY answer_concept (value_coded),
+    KEY encounter_observations (encounter_id),
+    KEY obs_location (location_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE concept_name (
+    concept_name_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    concept_id INT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    locale VARCHAR(50) NOT NULL,
+    locale_preferred TINYINT(1) NOT NULL DEFAULT 0,
+    voided TINYINT(1) NOT NULL DEFAULT 0,
+    KEY concept_name_concept (concept_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE bench_result (
+    report VARCHAR(40) NOT NULL,
+    phase VARCHAR(10) NOT NULL,
+    run INT NOT NULL,
+    micros BIGINT NOT NULL
+) ENGINE=InnoDB;
+
+CREATE TABLE digit (d INT NOT NULL PRIMARY KEY) ENGINE=InnoDB;
+INSERT INTO digit VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+
+-- ========================================
+-- SEED
+-- ========================================
+-- Encounter types: 5 = OPD, 6-8 = others. Locations 1-4. One year of visits.
+-- Concepts: 1000 = billing type (answers 1001 NHIS, 1002 Cash), 2000-2099 vitals/findings,
+-- 3000 = consultation notes (value_text).
+
+INSERT INTO encounter (encounter_type, patient_id, location_id, encounter_datetime, voided, uuid)
+SELECT 5 + (n % 4), 1 + (n * 7919) % 50000, 1 + (n % 4),
+       TIMESTAMP('2025-01-01') + INTERVAL (n % 365) DAY + INTERVAL ((n * 37) % 36000) SECOND,
+       (n % 200 = 0), UUID()
+FROM (SELECT a.d + 10 * b.d + 100 * c.d + 1000 * e.d + 10000 * f.d + 100000 * g.d AS n
+      FROM digit a, digit b, digit c, digit e, digit f, digit g) nums
+WHERE n < 200000;
+
+-- 1 billing obs, 1 notes obs and 3 other obs per encounter = 1,000,000 obs
+INSERT INTO obs (encounter_id, concept_id, value_coded, value_text, obs_datetime, location_id, voided)
+SELECT encounter_id, 1000, IF(encounter_id % 3 = 0, 1002, 1001), NULL, encounter_datetime, location_id, voided
+FROM encounter;
+
+INSERT INTO obs (encounter_id, concept_id, value_coded, value_text, obs_datetime, location_id, voided)
+SELECT encounter_id, 3000, NULL,
+       CONCAT('Chief complaint: fever\nBilling: ', IF(encounter_id % 3 = 0, 'Cash', 'NHIS'),
+              '\nDiagnoses: Malaria (B54)'),
+       encounter_datetime, location_id, voided
+FROM encounter;
+
+INSERT INTO obs (encounter_id, concept_id, value_coded, value_text, obs_datetime, location_id, voided)
+SELECT e.encounter_id, 2000 + ((e.encounter_id + k.d) % 100), NULL, NULL, e.encounter_datetime, e.location_id, e.voided
+FROM encounter e JOIN digit k ON k.d < 3;
+
+INSERT INTO concept_name (concept_id, name, locale, locale_preferred)
+VALUES (1000, 'Billing type', 'en', 1), (1001, 'NHIS', 'en', 1), (1002, 'Cash', 'en', 1),
+       (3000, 'Consultation notes', 'en', 1);
+INSERT INTO concept_name (concept_id, name, locale, locale_preferred)
+SELECT 2000 + a.d + 10 * b.d, CONCAT('Finding ', a.d + 10 * b.d), 'en', 1
+FROM digit a, digit b;
+
+ANALYZE TABLE encounter, obs, concept_name;
+
+-- ========================================
+-- TIMING
+-- ========================================
+
+DROP PROCEDURE IF EXISTS bench;
+DELIMITER //
+CREATE PROCEDURE bench(IN p_report VARCHAR(40), IN p_phase VARCHAR(10), IN p_sql TEXT)
+BEGIN
+    DECLARE i INT DEFAULT 0;
+    DECLARE t0 DATETIME(6);
+    SET @bench_sql = p_sql;
+    PREPARE stmt FROM @bench_sql;
+    EXECUTE stmt; -- warm the buffer pool
+    WHILE i < 5 DO
+        SET t0 = NOW(6);
+        EXECUTE stmt;
+        INSERT INTO bench_result VALUES (p_report, p_phase, i, TIMESTAMPDIFF(MICROSECOND, t0, NOW(6)));
+        SET i = i + 1;
+    END WHILE;
+    DEALLOCATE PREPARE stmt;
+END //
+DELIMITER ;
+
+-- Result sets are wrapped in COUNT(*) so the client does not print them.
+
+-- ----- before: old controller SQL -----
+CALL bench('opd-register (day)', 'before',
+    'SELECT COUNT(*) FROM (SELECT e.uuid, (SELECT GROUP_CONCAT(DISTINCT o.value_text SEPARATOR '' | '') FROM obs o WHERE o.encounter_id = e.encounter_id AND o.voided = 0 AND o.value_text IS NOT NULL) n FROM encounter e WHERE DATE(e.encounter_datetime) = ''2025-06-15'' AND e.encounter_type = 5 AND e.location_id = 1 ORDER BY e.encounter_datetime) x');
+CALL bench('nhis-vs-cash (day)', 'before',
+    'SELECT COUNT(*) FROM obs o WHERE o.concept_id = 1000 AND o.value_coded = 1001 AND DATE(o.obs_datetime) = ''2025-06-15'' AND o.location_id = 1');
+CALL bench('revenue (month, coded)', 'before',
+    'SELECT COUNT(*) FROM obs o WHERE o.concept_id = 1000 AND o.value_coded = 1001 AND DATE(o.obs_datetime) BETWEEN ''2025-06-01'' AND ''2025-06-30''');
+CALL bench('revenue (month, text)', 'before',
+    'SELECT COUNT(*) FROM obs o WHERE o.value_text LIKE ''%Billing: NHIS%'' AND DATE(o.obs_datetime) BETWEEN ''2025-06-01'' AND ''2025-06-30''');
+CALL bench('opd metrics (day)', 'before',
+    'SELECT COUNT(*) FROM encounter WHERE DATE(encounter_datetime) = ''2025-06-15'' AND encounter_type = 5');
+
+-- ----- after: ReportsService SQL with the report indexes -----
+CREATE INDEX idx_ghanaemr_encounter_type_datetime
+    ON encounter (encounter_type, encounter_datetime, location_id, voided, patient_id);
+CREATE INDEX idx_ghanaemr_obs_concept_coded_datetime
+    ON obs (concept_id, value_coded, obs_datetime, location_id, voided);
+ANALYZE TABLE encounter, obs;
+
+CALL bench('opd-register (day)', 'after',
+    'SELECT COUNT(*) FROM (SELECT e.uuid, (SELECT GROUP_CONCAT(DISTINCT o.value_text SEPARATOR '' | '') FROM obs o WHERE o.encounter_id = e.encounter_id AND o.voided = 0 AND o.value_text IS NOT NULL) n FROM encounter e WHERE e.encounter_type = 5 AND e.encounter_datetime >= ''2025-06-15'' AND e.encounter_datetime < ''2025-06-16'' AND e.voided = 0 AND e.location_id = 1 ORDER BY e.encounter_datetime, e.encounter_id) x');
+CALL bench('opd-register joined (day)', 'after',
+    'SELECT COUNT(*) FROM (SELECT e.encounter_id, e.uuid, o.obs_id, o.concept_id, o.value_coded, o.value_text, cnc.name cn, cnv.name vn FROM encounter e LEFT JOIN obs o ON o.encounter_id = e.encounter_id AND o.voided = 0 LEFT JOIN concept_name cnc ON cnc.concept_id = o.concept_id AND cnc.locale = ''en'' AND cnc.locale_preferred = 1 AND cnc.voided = 0 LEFT JOIN concept_name cnv ON cnv.concept_id = o.value_coded AND cnv.locale = ''en'' AND cnv.locale_preferred = 1 AND cnv.voided = 0 WHERE e.encounter_type = 5 AND e.encounter_datetime >= ''2025-06-15'' AND e.encounter_datetime < ''2025-06-16'' AND e.voided = 0 AND e.location_id = 1 ORDER BY e.encounter_datetime, e.encounter_id) x');
+CALL bench('nhis-vs-cash (day)', 'after',
+    'SELECT COUNT(*) FROM obs o WHERE o.concept_id = 1000 AND o.value_coded = 1001 AND o.obs_datetime >= ''2025-06-15'' AND o.obs_datetime < ''2025-06-16'' AND o.voided = 0 AND o.location_id = 1');
+CALL bench('revenue (month, coded)', 'after',
+    'SELECT COUNT(*) FROM obs o WHERE o.concept_id = 1000 AND o.value_coded = 1001 AND o.obs_datetime >= ''2025-06-01'' AND o.obs_datetime < ''2025-07-01'' AND o.voided = 0');
+CALL bench('revenue (month, text)', 'after',
+    'SELECT COUNT(*) FROM obs o WHERE o.obs_datetime >= ''2025-06-01'' AND o.obs_datetime < ''2025-07-01'' AND o.voided = 0 AND o.value_text LIKE ''%Billing: NHIS%''');
+CALL bench('opd metrics (day)', 'after',
+    'SELECT COUNT(*) FROM encounter e WHERE e.encounter_type = 5 AND e.encounter_datetime >= ''2025-06-15'' AND e.encounter_datetime < ''2025-06-16'' AND e.voided = 0');
+
+-- ========================================
+-- RESULTS
+-- ========================================
+
+SELECT report,
+       ROUND(MIN(CASE WHEN phase = 'before' THEN micros END) / 1000, 2) AS before_best_ms,
+       ROUND(AVG(CASE WHEN phase = 'before' THEN micros END) / 1000, 2) AS before_mean_ms,
+       ROUND(MIN(CASE WHEN phase = 'after' THEN micros END) / 1000, 2) AS after_best_ms,
+       ROUND(AVG(CASE WHEN phase = 'after' THEN micros END) / 1000, 2) AS after_mean_ms
+FROM bench_result
+GROUP BY report
+ORDER BY report;